@@ -0,0 +1,377 @@
+package com.example.biowave;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.bluetooth.BluetoothAdapter;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.core.app.NotificationChannelCompat;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Owns the acquisition (sources, GATT connections, pipelines and flight recorders) so that it
+ * outlives the activity: rotation, switching apps or turning the screen off no longer drop the
+ * link. The activity binds for a {@link LocalBinder}, configures the devices once and attaches
+ * an {@link Acquisition.Observer} while it is visible. While streaming the service runs in the
+ * foreground with a notification that can stop it.
+ */
+public class AcquisitionService extends Service {
+
+    private static final String TAG = "BioWave";
+    public static final String ACTION_STOP = "com.example.biowave.action.STOP";
+    private static final String CHANNEL_ID = "acquisition";
+    private static final int NOTIFICATION_ID = 1;
+
+    private static final int RING_CAPACITY = 4096;
+    private static final int MAILBOX_CAPACITY = 256;
+    public static final int MAX_DEVICES = 8;
+    private static final String FLIGHT_RECORDER_FILE = "flight-recorder.bin";
+    private static final long CLOSE_TIMEOUT_MS = 1000;
+    // a day of history in memory at coarse zoom; full detail from the spill files in the cache
+    private static final int HISTORY_CAPACITY = 16384;
+    private static final int HISTORY_LEVELS = MinMaxPyramid.levelsFor(
+            24L * 3600 * Math.round(DevicePipeline.SAMPLE_RATE_HZ), HISTORY_CAPACITY);
+
+    /** Same-process binder; the activity calls the service directly. */
+    public class LocalBinder extends Binder {
+        public AcquisitionService getService() {
+            return AcquisitionService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private Acquisition acquisition;
+    private Acquisition.Device primary;
+    private BluetoothAdapter bluetoothAdapter;
+    private boolean bleSource;
+    private boolean needsBluetooth;
+    private StreamCapture.Writer capture;
+    private boolean foreground;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // every device's pipeline runs on these workers, leaving a core for UI and rendering
+        acquisition = new Acquisition(
+                Math.max(1, Math.min(MAX_DEVICES, Runtime.getRuntime().availableProcessors() - 1)), MAX_DEVICES);
+        bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_STOP.equals(intent.getAction())) {
+            stopAcquisition();
+            return START_NOT_STICKY;
+        }
+        enterForeground();
+        return START_NOT_STICKY;
+    }
+
+    /** False until {@link #configure} created the devices; stays true for the service's life. */
+    public boolean isConfigured() {
+        return primary != null;
+    }
+
+    /**
+     * Creates the devices from the activity's intent extras: {@code source} selects a stand-in
+     * for the sensor (null for Bluetooth), {@code devices} lists extra sensors. Only the first
+     * call counts, so a recreated activity finds the running acquisition unchanged. Returns
+     * false if the sensor needs Bluetooth and there is none.
+     */
+    public boolean configure(String source, String devices, boolean captureStream) {
+        if (primary != null) return true;
+        SignalSource signalSource = source != null ? createTestSource(source, 1) : null;
+        if (signalSource == null) {
+            if (bluetoothAdapter == null) return false;
+            signalSource = new BleSignalSource(this, bluetoothAdapter);
+            bleSource = needsBluetooth = true;
+        }
+        primary = acquisition.addDevice("ECG", signalSource, RING_CAPACITY, MAILBOX_CAPACITY);
+        openRecorder(primary, new File(getFilesDir(), FLIGHT_RECORDER_FILE));
+        openHistory(primary);
+        if (captureStream) openCapture();
+        if (devices != null) addDevices(devices.split(","));
+        return true;
+    }
+
+    // Each extra device gets its own pipeline and flight recorder
+    private void addDevices(String[] specs) {
+        for (String spec : specs) {
+            spec = spec.trim();
+            if (spec.isEmpty()) continue;
+            int index = acquisition.getDevices().size() + 1;
+            if (index > MAX_DEVICES) {
+                Log.w(TAG, "Ignoring " + spec + ": at most " + MAX_DEVICES + " devices");
+                break;
+            }
+            SignalSource source;
+            if (bluetoothAdapter != null && BluetoothAdapter.checkBluetoothAddress(spec)) {
+                source = new BleSignalSource(this, bluetoothAdapter, spec);
+                needsBluetooth = true;
+            } else {
+                source = createTestSource(spec, index);
+                if (source == null) continue;
+            }
+            Acquisition.Device device = acquisition.addDevice("#" + index, source, RING_CAPACITY, MAILBOX_CAPACITY);
+            openRecorder(device, new File(getFilesDir(), "flight-recorder-" + index + ".bin"));
+        }
+    }
+
+    private SignalSource createTestSource(String spec, long seed) {
+        String[] parts = spec.split(":");
+        try {
+            if (parts[0].equals("synthetic")) {
+                SyntheticSignal signal = new SyntheticSignal(seed);
+                if (parts.length > 1) signal.setSampleRate(Float.parseFloat(parts[1]));
+                // bigger frames and notifications keep high rates within what BLE could carry
+                signal.setSamplesPerFrame(signal.getSampleRate() > 500 ? 16 : 2);
+                signal.setNotificationSize(signal.getSampleRate() > 500 ? 244 : 20);
+                return new SyntheticSignalSource(signal, 15, 10, seed);
+            } else if (parts[0].equals("replay") && parts.length > 1) {
+                float speed = parts.length > 2 ? Float.parseFloat(parts[2]) : 1f;
+                return new ReplaySignalSource(new File(parts[1]), speed, true);
+            }
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Bad source " + spec, e);
+        }
+        Toast.makeText(this, "Unknown source " + spec + ", using Bluetooth", Toast.LENGTH_LONG).show();
+        return null;
+    }
+
+    // file I/O happens on the pipeline's worker, never on the main thread
+    private void openRecorder(Acquisition.Device device, File file) {
+        device.execute(() -> {
+            try {
+                long recovered = device.getPipeline().openRecorder(file);
+                if (recovered > 0) {
+                    Log.i(TAG, device.getName() + ": flight recorder holds " + recovered + " samples ("
+                            + Math.round(recovered / DevicePipeline.SAMPLE_RATE_HZ) + " s) from the previous session");
+                }
+            } catch (IOException e) {
+                Log.e(TAG, device.getName() + ": flight recorder unavailable", e);
+            }
+        });
+    }
+
+    // The main charts can be zoomed out over the whole session
+    private void openHistory(Acquisition.Device device) {
+        MinMaxPyramid ecg = new MinMaxPyramid(HISTORY_LEVELS, HISTORY_CAPACITY);
+        MinMaxPyramid ppg = new MinMaxPyramid(HISTORY_LEVELS, HISTORY_CAPACITY);
+        device.getPipeline().setHistory(ecg, ppg);
+        File dir = getCacheDir();
+        device.execute(() -> {
+            try {
+                ecg.spillTo(dir, "history-ecg");
+                ppg.spillTo(dir, "history-ppg");
+            } catch (IOException e) {
+                Log.w(TAG, "History limited to memory", e);
+            }
+        });
+    }
+
+    private void openArchives() {
+        long now = System.currentTimeMillis();
+        List<Acquisition.Device> devices = acquisition.getDevices();
+        for (int i = 0; i < devices.size(); i++) {
+            Acquisition.Device device = devices.get(i);
+            File file = new File(getFilesDir(), "recording-" + (i + 1) + "-" + now + ".bwsc");
+            File edf = new File(getFilesDir(), "session-" + (i + 1) + "-" + now + ".edf");
+            device.execute(() -> {
+                try {
+                    device.getPipeline().openArchive(file);
+                } catch (IOException e) {
+                    Log.e(TAG, device.getName() + ": recording unavailable", e);
+                }
+                try {
+                    device.getPipeline().openExport(edf, System.currentTimeMillis());
+                } catch (IOException e) {
+                    Log.e(TAG, device.getName() + ": EDF export unavailable", e);
+                }
+            });
+        }
+    }
+
+    private void closeArchives() {
+        for (Acquisition.Device device : acquisition.getDevices()) {
+            device.execute(() -> {
+                DevicePipeline pipeline = device.getPipeline();
+                try {
+                    pipeline.closeArchive();
+                } catch (IOException e) {
+                    Log.e(TAG, device.getName() + ": closing recording failed", e);
+                }
+                if (pipeline.getArchiveError() != null) {
+                    Log.e(TAG, device.getName() + ": recording stopped early", pipeline.getArchiveError());
+                }
+                try {
+                    pipeline.closeExport();
+                } catch (IOException e) {
+                    Log.e(TAG, device.getName() + ": EDF export incomplete", e);
+                }
+            });
+        }
+    }
+
+    private void openCapture() {
+        File file = new File(getFilesDir(), "capture-" + System.currentTimeMillis() + ".bwcap");
+        try {
+            capture = new StreamCapture.Writer(new FileOutputStream(file));
+            Log.i(TAG, "Capturing to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Capture not possible", e);
+            return;
+        }
+        StreamCapture.Writer c = capture;
+        primary.setTap(data -> {
+            synchronized (c) {
+                try {
+                    c.write(data);
+                } catch (IOException e) {
+                    Log.e(TAG, "Capture write failed", e);
+                }
+            }
+        });
+    }
+
+    private void closeCapture() {
+        if (capture == null) return;
+        primary.setTap(null);
+        synchronized (capture) {
+            try {
+                capture.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Closing capture failed", e);
+            }
+        }
+        capture = null;
+    }
+
+    /**
+     * Starts every device and keeps the service alive, in the foreground, until stopped. Each
+     * start begins a new compressed recording and EDF+ export per device.
+     */
+    public void startAcquisition() {
+        ContextCompat.startForegroundService(this, new Intent(this, AcquisitionService.class));
+        if (!acquisition.isRunning()) openArchives();
+        acquisition.start();
+    }
+
+    /** Stops every device; the service lives on only while the activity is bound. */
+    public void stopAcquisition() {
+        acquisition.stop();
+        closeArchives();
+        if (foreground) {
+            ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+            foreground = false;
+        }
+        stopSelf();
+    }
+
+    /** Marks "now" in every device's EDF+ export with {@code text}. */
+    public void annotate(String text) {
+        for (Acquisition.Device device : acquisition.getDevices()) {
+            device.execute(() -> device.getPipeline().annotate(text));
+        }
+    }
+
+    /**
+     * For a remembered sensor: connects right away, as if START had been tapped. Bluetooth must
+     * be on and permitted.
+     */
+    public void reconnectRememberedDevice() {
+        if (!bleSource || acquisition.isRunning()) return;
+        if (((BleSignalSource) primary.getSource()).hasRememberedDevice()) startAcquisition();
+    }
+
+    private void enterForeground() {
+        if (foreground) return;
+        NotificationManagerCompat manager = NotificationManagerCompat.from(this);
+        manager.createNotificationChannel(new NotificationChannelCompat.Builder(CHANNEL_ID,
+                NotificationManagerCompat.IMPORTANCE_LOW).setName("Acquisition").build());
+        int immutable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0;
+        PendingIntent open = PendingIntent.getActivity(this, 0,
+                new Intent(this, MainActivity.class), immutable);
+        PendingIntent stop = PendingIntent.getService(this, 1,
+                new Intent(this, AcquisitionService.class).setAction(ACTION_STOP), immutable);
+        int count = acquisition.getDevices().size();
+        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_sys_data_bluetooth)
+                .setContentTitle("BioWave is recording")
+                .setContentText(count == 1 ? "1 sensor" : count + " sensors")
+                .setContentIntent(open)
+                .addAction(0, "Stop", stop)
+                .setOngoing(true)
+                .build();
+        try {
+            ServiceCompat.startForeground(this, NOTIFICATION_ID, notification,
+                    ServiceInfo.FOREGROUND_SERVICE_TYPE_CONNECTED_DEVICE);
+            foreground = true;
+        } catch (RuntimeException e) {
+            // e.g. a stand-in source without Bluetooth permission: keep running while bound
+            Log.w(TAG, "Acquisition not in the foreground", e);
+        }
+    }
+
+    public Acquisition getAcquisition() {
+        return acquisition;
+    }
+
+    public Acquisition.Device getPrimary() {
+        return primary;
+    }
+
+    public List<Acquisition.Device> getDevices() {
+        return acquisition.getDevices();
+    }
+
+    /** True when the sensor is reached over Bluetooth rather than a stand-in. */
+    public boolean isBleSource() {
+        return bleSource;
+    }
+
+    /** True when any device needs Bluetooth, so its permissions before {@link #startAcquisition}. */
+    public boolean needsBluetooth() {
+        return needsBluetooth;
+    }
+
+    public boolean isRunning() {
+        return acquisition.isRunning();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (primary != null) closeCapture();
+        try {
+            if (!acquisition.close(CLOSE_TIMEOUT_MS)) Log.w(TAG, "Pipelines still busy after " + CLOSE_TIMEOUT_MS + " ms");
+        } catch (IOException e) {
+            Log.e(TAG, "Closing flight recorder failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (primary != null) {
+            primary.getPipeline().getEcgHistory().close();
+            primary.getPipeline().getPpgHistory().close();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.biowave;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelUuid;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Connects to the HM-10 module and forwards its UART notifications, with the connection logic
+ * in a {@link ConnectionManager}: the last device that streamed is connected directly, a scan
+ * (hardware-filtered) only happens when there is none, and dropped links are re-established
+ * automatically. Permissions must have been granted before {@link #start} is called.
+ */
+public class BleSignalSource implements SignalSource, ConnectionManager.Link {
+
+    private static final String TAG = "BioWave";
+    public static final String TARGET_DEVICE_NAME = "DSD TECH";
+    private static final UUID SERVICE_UUID = UUID.fromString("0000ffe0-0000-1000-8000-00805f9b34fb");
+    private static final UUID CHARACTERISTIC_UUID = UUID.fromString("0000ffe1-0000-1000-8000-00805f9b34fb");
+    private static final UUID CCC_DESCRIPTOR_UUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+    private static final String PREFS = "ble";
+    private static final String KEY_ADDRESS = "device_address";
+
+    private final Context context;
+    private final BluetoothAdapter adapter;
+    private final BluetoothLeScanner scanner;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final SharedPreferences prefs;
+    private final ConnectionManager manager;
+    // set when this source is bound to one device, see the three-argument constructor
+    private final String fixedAddress;
+
+    private volatile Listener listener;
+    private volatile BluetoothGatt gatt;
+    // valid for the current gatt object only; kept across reconnects of that object
+    private volatile BluetoothGattCharacteristic characteristic;
+    private volatile boolean pending = false;
+    private volatile boolean connected = false;
+    private volatile boolean closing = false;
+
+    public BleSignalSource(Context context, BluetoothAdapter adapter) {
+        this(context, adapter, null);
+    }
+
+    /**
+     * A source for the device at {@code address} only, e.g. one of several sensors; it is never
+     * remembered as the default device and scans only for that address.
+     */
+    public BleSignalSource(Context context, BluetoothAdapter adapter, String address) {
+        this.fixedAddress = address;
+        this.context = context;
+        this.adapter = adapter;
+        this.scanner = adapter.getBluetoothLeScanner();
+        this.prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        this.manager = new ConnectionManager(this, scheduler, addressStore, managerCallback, System.nanoTime());
+    }
+
+    /** True when a device has streamed before, so {@link #start} connects without scanning. */
+    public boolean hasRememberedDevice() {
+        return addressStore.load() != null;
+    }
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        manager.start();
+    }
+
+    @Override
+    public void stop() {
+        manager.stop();
+        closeGatt();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return manager.isActive();
+    }
+
+    // ---- ConnectionManager.Link ----
+
+    @Override
+    public void connect(String address, boolean autoConnect) {
+        try {
+            BluetoothGatt g = gatt;
+            if (g != null && address.equals(g.getDevice().getAddress())) {
+                // reusing the gatt object keeps its discovered services, so any reconnect skips
+                // discovery; it waits like an auto-connect, the manager's timeout still applies
+                pending = true;
+                if (g.connect()) return;
+            }
+            closeGatt();
+            BluetoothDevice device = adapter.getRemoteDevice(address);
+            pending = true;
+            gatt = device.connectGatt(context, autoConnect, gattCallback);
+        } catch (SecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "Connect failed", e);
+            handler.post(() -> manager.onDisconnected(-1));
+        }
+    }
+
+    @Override
+    public boolean subscribe() {
+        BluetoothGatt g = gatt;
+        BluetoothGattCharacteristic ch = characteristic;
+        if (g == null || ch == null) return false;
+        try {
+            g.setCharacteristicNotification(ch, true);
+            BluetoothGattDescriptor descriptor = ch.getDescriptor(CCC_DESCRIPTOR_UUID);
+            // without a CCC descriptor the module notifies anyway
+            if (descriptor == null) {
+                handler.post(() -> manager.onSubscribed(true));
+                return true;
+            }
+            descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+            return g.writeDescriptor(descriptor);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Notification setup failed", e);
+            return false;
+        }
+    }
+
+    @Override
+    public void discoverServices() {
+        try {
+            BluetoothGatt g = gatt;
+            if (g != null && g.discoverServices()) return;
+        } catch (SecurityException e) {
+            Log.e(TAG, "Service discovery failed", e);
+        }
+        handler.post(() -> manager.onServicesDiscovered(false));
+    }
+
+    @Override
+    public void startScan() {
+        if (scanner == null) {
+            handler.post(() -> listener.onStatus("BLE scanner not available."));
+            return;
+        }
+        // either filter matches; both can be offloaded to the controller
+        List<ScanFilter> filters = fixedAddress != null
+                ? Arrays.asList(new ScanFilter.Builder().setDeviceAddress(fixedAddress).build())
+                : Arrays.asList(
+                        new ScanFilter.Builder().setServiceUuid(new ParcelUuid(SERVICE_UUID)).build(),
+                        new ScanFilter.Builder().setDeviceName(TARGET_DEVICE_NAME).build());
+        ScanSettings settings = new ScanSettings.Builder().setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY).build();
+        try {
+            scanner.startScan(filters, settings, scanCallback);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Scan start failed", e);
+        }
+    }
+
+    @Override
+    public void stopScan() {
+        if (scanner == null) return;
+        try {
+            scanner.stopScan(scanCallback);
+        } catch (SecurityException e) {
+            Log.e(TAG, "Stop scan failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        BluetoothGatt g = gatt;
+        if (g == null) return;
+        if (connected) {
+            // keep the object (and its services) for a later reconnect
+            closing = true;
+            try {
+                g.disconnect();
+            } catch (SecurityException ignored) {}
+        } else if (pending) {
+            // closing is the only way to cancel a connect that never reports back
+            closeGatt();
+        }
+    }
+
+    private void closeGatt() {
+        BluetoothGatt g = gatt;
+        gatt = null;
+        characteristic = null;
+        pending = false;
+        connected = false;
+        closing = false;
+        if (g != null) {
+            try {
+                g.close();
+            } catch (SecurityException ignored) {}
+        }
+    }
+
+    private final ConnectionManager.Scheduler scheduler = new ConnectionManager.Scheduler() {
+        @Override
+        public long now() {
+            return SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            handler.postDelayed(task, delayMs);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            handler.removeCallbacks(task);
+        }
+    };
+
+    private final ConnectionManager.AddressStore addressStore = new ConnectionManager.AddressStore() {
+        @Override
+        public String load() {
+            if (fixedAddress != null) return fixedAddress;
+            String address = prefs.getString(KEY_ADDRESS, null);
+            return address != null && BluetoothAdapter.checkBluetoothAddress(address) ? address : null;
+        }
+
+        @Override
+        public void save(String address) {
+            if (fixedAddress != null) return;
+            prefs.edit().putString(KEY_ADDRESS, address).apply();
+        }
+    };
+
+    private final ConnectionManager.Callback managerCallback = new ConnectionManager.Callback() {
+        @Override
+        public void onStateChanged(ConnectionManager.State state, String status) {
+            Log.i(TAG, "BLE " + state + ": " + status);
+            Listener l = listener;
+            if (l != null) l.onStatus(status);
+        }
+
+        @Override
+        public void onFirstSample(long elapsedMs, boolean reconnect) {
+            Log.i(TAG, (reconnect ? "Reconnect" : "Time to first sample") + ": " + elapsedMs + " ms");
+        }
+    };
+
+    private final ScanCallback scanCallback = new ScanCallback() {
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            manager.onScanResult(result.getDevice().getAddress());
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            Log.e(TAG, "Scan failed: " + errorCode);
+        }
+    };
+
+    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
+        @Override
+        public void onConnectionStateChange(BluetoothGatt g, int status, int newState) {
+            if (g != gatt) return;
+            pending = false;
+            if (status == BluetoothGatt.GATT_SUCCESS && newState == BluetoothGatt.STATE_CONNECTED) {
+                connected = true;
+                manager.onConnected();
+            } else if (newState == BluetoothGatt.STATE_DISCONNECTED) {
+                boolean wasConnected = connected;
+                connected = false;
+                if (closing) {
+                    // our own disconnect; nothing to report
+                    closing = false;
+                    return;
+                }
+                if (wasConnected) listener.onDisconnected();
+                manager.onDisconnected(status);
+            }
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt g, int status) {
+            if (g != gatt) return;
+            BluetoothGattService service = status == BluetoothGatt.GATT_SUCCESS ? g.getService(SERVICE_UUID) : null;
+            characteristic = service != null ? service.getCharacteristic(CHARACTERISTIC_UUID) : null;
+            manager.onServicesDiscovered(characteristic != null);
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt g, BluetoothGattDescriptor descriptor, int status) {
+            if (g != gatt) return;
+            manager.onSubscribed(status == BluetoothGatt.GATT_SUCCESS);
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt g, BluetoothGattCharacteristic ch) {
+            if (CHARACTERISTIC_UUID.equals(ch.getUuid())) {
+                manager.onData();
+                listener.onData(ch.getValue());
+            }
+        }
+    };
+}
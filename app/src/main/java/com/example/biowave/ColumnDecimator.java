@@ -0,0 +1,151 @@
+package com.example.biowave;
+
+/**
+ * Turns a run of samples into line segments for {@code Canvas.drawLines}, never producing more
+ * than about one segment per horizontal pixel.
+ * <p>
+ * When there is at least a pixel per sample the samples are simply connected. When several
+ * samples share a pixel column they are reduced to one vertical min/max segment per column; each
+ * column also includes the last sample of the column before it so the trace stays continuous.
+ * NaN samples (gaps) break the line.
+ */
+public class ColumnDecimator {
+
+    private final float[] points;
+    private float yOffset = 0f;
+    private float yScale = 1f;
+
+    /** @param maxWidth widest clip range that will be requested, in pixels */
+    public ColumnDecimator(int maxWidth) {
+        points = new float[4 * (maxWidth + 4)];
+    }
+
+    /** Output y = {@code offset - value * scale}, i.e. larger values are drawn higher. */
+    public void setYMapping(float offset, float scale) {
+        yOffset = offset;
+        yScale = scale;
+    }
+
+    /** Segment buffer filled by {@link #build}: x0, y0, x1, y1 per segment. */
+    public float[] points() {
+        return points;
+    }
+
+    /**
+     * Builds segments for samples {@code [start, end)} of a circular {@code ring}, where sample
+     * {@code i} sits at {@code x0 + (i - start) * pxPerSample}, restricted to the pixel columns
+     * {@code [clipFrom, clipTo)}. Returns the number of floats written to {@link #points()}.
+     */
+    public int build(float[] ring, int capacity, long start, long end, float x0, float pxPerSample,
+                     int clipFrom, int clipTo) {
+        if (end <= start || clipTo <= clipFrom) return 0;
+
+        // only the samples that can touch the clip range, plus one neighbour on each side
+        long from = start + (long) Math.floor((clipFrom - x0) / pxPerSample) - 1;
+        long to = start + (long) Math.ceil((clipTo - x0) / pxPerSample) + 1;
+        if (from < start) from = start;
+        if (to > end) to = end;
+        if (to <= from) return 0;
+
+        return pxPerSample >= 1f
+                ? connect(ring, capacity, start, from, to, x0, pxPerSample)
+                : columns(ring, capacity, start, from, to, x0, pxPerSample, clipFrom, clipTo);
+    }
+
+    /**
+     * Builds segments for per-column extremes as {@link MinMaxPyramid#read} produces them, column
+     * {@code c} centred at {@code x0 + (c + 0.5) * pxPerColumn}. Columns wider than a pixel hold
+     * single samples and are connected; narrower ones become vertical min/max segments,
+     * stretched to meet their neighbour so the trace stays continuous. NaN columns break the line.
+     */
+    public int buildExtremes(float[] min, float[] max, int columns, float x0, float pxPerColumn) {
+        int n = 0;
+        float prevMin = Float.NaN, prevMax = Float.NaN;
+        float prevX = 0f;
+        for (int c = 0; c < columns && n + 4 <= points.length; c++) {
+            float lo = min[c], hi = max[c];
+            float x = x0 + (c + 0.5f) * pxPerColumn;
+            if (pxPerColumn > 1f) {
+                if (!Float.isNaN(lo) && !Float.isNaN(prevMin)) {
+                    points[n++] = prevX;
+                    points[n++] = yOffset - (prevMin + prevMax) * 0.5f * yScale;
+                    points[n++] = x;
+                    points[n++] = yOffset - (lo + hi) * 0.5f * yScale;
+                }
+            } else if (!Float.isNaN(lo)) {
+                // NaN neighbours compare false and leave the column as it is
+                if (prevMax < lo) lo = prevMax;
+                if (prevMin > hi) hi = prevMin;
+                n = emit(n, (int) x, lo, hi, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            }
+            prevMin = min[c];
+            prevMax = max[c];
+            prevX = x;
+        }
+        return n;
+    }
+
+    private int connect(float[] ring, int capacity, long start, long from, long to, float x0, float px) {
+        int n = 0;
+        float prevX = x0 + (from - start) * px;
+        float prev = ring[(int) (from % capacity)];
+        for (long i = from + 1; i < to && n + 4 <= points.length; i++) {
+            float x = x0 + (i - start) * px;
+            float v = ring[(int) (i % capacity)];
+            if (!Float.isNaN(prev) && !Float.isNaN(v)) {
+                points[n++] = prevX;
+                points[n++] = yOffset - prev * yScale;
+                points[n++] = x;
+                points[n++] = yOffset - v * yScale;
+            }
+            prevX = x;
+            prev = v;
+        }
+        return n;
+    }
+
+    private int columns(float[] ring, int capacity, long start, long from, long to, float x0, float px,
+                        int clipFrom, int clipTo) {
+        int n = 0;
+        int column = (int) (x0 + (from - start) * px);
+        float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+        float last = Float.NaN;
+
+        for (long i = from; i < to; i++) {
+            int c = (int) (x0 + (i - start) * px);
+            float v = ring[(int) (i % capacity)];
+            if (c != column) {
+                n = emit(n, column, min, max, clipFrom, clipTo);
+                column = c;
+                // carry the previous column's last sample for continuity
+                min = max = last;
+                if (Float.isNaN(last)) {
+                    min = Float.POSITIVE_INFINITY;
+                    max = Float.NEGATIVE_INFINITY;
+                }
+            }
+            if (Float.isNaN(v)) {
+                // a gap ends the current column and breaks the connection to the next
+                n = emit(n, column, min, max, clipFrom, clipTo);
+                min = Float.POSITIVE_INFINITY;
+                max = Float.NEGATIVE_INFINITY;
+            } else {
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+            last = v;
+        }
+        return emit(n, column, min, max, clipFrom, clipTo);
+    }
+
+    private int emit(int n, int column, float min, float max, int clipFrom, int clipTo) {
+        if (min > max || column < clipFrom || column >= clipTo || n + 4 > points.length) return n;
+        float x = column + 0.5f;
+        points[n++] = x;
+        points[n++] = yOffset - max * yScale;
+        points[n++] = x;
+        // keep single-value columns visible as a one-pixel dot
+        points[n++] = min == max ? yOffset - max * yScale + 1f : yOffset - min * yScale;
+        return n;
+    }
+}
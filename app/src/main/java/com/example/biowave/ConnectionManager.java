@@ -0,0 +1,274 @@
+package com.example.biowave;
+
+import java.util.Random;
+
+/**
+ * Connection state machine for the sensor link, kept free of Android types so it can be driven
+ * by a fake GATT in unit tests. {@link BleSignalSource} supplies the {@link Link} and feeds the
+ * GATT callbacks back in.
+ * <p>
+ * With a remembered device address the manager connects straight to it; only without one, or
+ * when that fails, does it scan (filtered on the UART service). A connection whose
+ * characteristic is already known skips service discovery. Once a session has streamed, any
+ * unexpected disconnect is followed by reconnect attempts with exponential backoff and jitter,
+ * switching to the controller's background auto-connect after a few failures. Time to first
+ * sample is reported for the initial connection and for every reconnect.
+ * <p>
+ * All methods are synchronized; callbacks may arrive on any thread.
+ */
+public class ConnectionManager {
+
+    public enum State {
+        IDLE, CONNECTING, SCANNING, DISCOVERING, SUBSCRIBING, STREAMING, WAITING
+    }
+
+    /** Radio operations; every call is asynchronous and answered through the manager's event methods. */
+    public interface Link {
+        /** Connects to {@code address}; {@code autoConnect} lets the controller wait for the device indefinitely. */
+        void connect(String address, boolean autoConnect);
+
+        /** Enables notifications if the characteristic is known from earlier; false if discovery is needed. */
+        boolean subscribe();
+
+        void discoverServices();
+
+        void startScan();
+
+        void stopScan();
+
+        /** Tears down the connection (or pending connect) without reporting a disconnect. */
+        void close();
+    }
+
+    public interface Scheduler {
+        long now();
+
+        void schedule(Runnable task, long delayMs);
+
+        void cancel(Runnable task);
+    }
+
+    /** Persists the address of the last device that streamed. */
+    public interface AddressStore {
+        String load();
+
+        void save(String address);
+    }
+
+    public interface Callback {
+        void onStateChanged(State state, String status);
+
+        /** First data after {@link #start} ({@code reconnect} false) or after a reconnect. */
+        void onFirstSample(long elapsedMs, boolean reconnect);
+    }
+
+    static final long CONNECT_TIMEOUT_MS = 10_000;
+    static final long SCAN_TIMEOUT_MS = 30_000;
+    static final long BACKOFF_BASE_MS = 500;
+    static final long BACKOFF_MAX_MS = 30_000;
+    // after this many failed direct attempts the controller is left to auto-connect
+    static final int AUTO_CONNECT_AFTER = 3;
+
+    private final Link link;
+    private final Scheduler scheduler;
+    private final AddressStore store;
+    private final Callback callback;
+    private final Random random;
+
+    private State state = State.IDLE;
+    private String address;
+    private boolean remembered;
+    private boolean autoConnecting;
+    private boolean everStreamed;
+    private boolean awaitingFirstSample;
+    private int attempt;
+    private long sessionStart;
+
+    public ConnectionManager(Link link, Scheduler scheduler, AddressStore store, Callback callback, long seed) {
+        this.link = link;
+        this.scheduler = scheduler;
+        this.store = store;
+        this.callback = callback;
+        this.random = new Random(seed);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized boolean isActive() {
+        return state != State.IDLE;
+    }
+
+    public synchronized void start() {
+        if (state != State.IDLE) return;
+        everStreamed = false;
+        attempt = 0;
+        sessionStart = scheduler.now();
+        address = store.load();
+        remembered = address != null;
+        if (remembered) connect("Connecting to " + address + "...");
+        else scan();
+    }
+
+    public synchronized void stop() {
+        scheduler.cancel(timeout);
+        scheduler.cancel(retry);
+        if (state == State.SCANNING) link.stopScan();
+        else if (state != State.IDLE && state != State.WAITING) link.close();
+        setState(State.IDLE, "Stopped.");
+    }
+
+    private void connect(String status) {
+        autoConnecting = attempt > AUTO_CONNECT_AFTER;
+        setState(State.CONNECTING, status);
+        link.connect(address, autoConnecting);
+        // an auto-connect waits for the device as long as it takes
+        if (!autoConnecting) scheduler.schedule(timeout, CONNECT_TIMEOUT_MS);
+    }
+
+    private void scan() {
+        setState(State.SCANNING, "Scanning...");
+        link.startScan();
+        scheduler.schedule(timeout, SCAN_TIMEOUT_MS);
+    }
+
+    /** Delay before reconnect attempt {@code n} (0-based): exponential, capped, with equal jitter. */
+    long backoffDelay(int n) {
+        long delay = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << Math.min(n, 16));
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+    }
+
+    private void retry(String reason) {
+        scheduler.cancel(timeout);
+        long delay = backoffDelay(attempt);
+        setState(State.WAITING, reason + " Reconnecting in " + (delay + 500) / 1000 + " s...");
+        scheduler.schedule(retry, delay);
+    }
+
+    private final Runnable retry = this::onRetry;
+    private final Runnable timeout = this::onTimeout;
+
+    private synchronized void onRetry() {
+        if (state != State.WAITING) return;
+        attempt++;
+        connect("Reconnecting (attempt " + attempt + ")...");
+    }
+
+    private synchronized void onTimeout() {
+        if (state == State.SCANNING) {
+            link.stopScan();
+            setState(State.IDLE, "Device not found.");
+        } else if (state == State.CONNECTING || state == State.DISCOVERING || state == State.SUBSCRIBING) {
+            link.close();
+            failed("Connection timed out.");
+        }
+    }
+
+    // a connection attempt failed or a link dropped before streaming
+    private void failed(String reason) {
+        if (everStreamed) {
+            retry(reason);
+        } else if (remembered) {
+            // the remembered device did not answer; look for it (or another one) instead
+            scheduler.cancel(timeout);
+            remembered = false;
+            address = null;
+            scan();
+        } else {
+            scheduler.cancel(timeout);
+            setState(State.IDLE, reason);
+        }
+    }
+
+    // ---- events from the link ----
+
+    public synchronized void onScanResult(String deviceAddress) {
+        if (state != State.SCANNING) return;
+        link.stopScan();
+        scheduler.cancel(timeout);
+        address = deviceAddress;
+        connect("Found device: connecting...");
+    }
+
+    public synchronized void onConnected() {
+        if (state != State.CONNECTING) return;
+        // discovery and subscription get their own deadline, also after an auto-connect
+        scheduler.cancel(timeout);
+        scheduler.schedule(timeout, CONNECT_TIMEOUT_MS);
+        if (link.subscribe()) {
+            setState(State.SUBSCRIBING, "Connected. Enabling notifications...");
+        } else {
+            setState(State.DISCOVERING, "Connected. Discovering services...");
+            link.discoverServices();
+        }
+    }
+
+    public synchronized void onServicesDiscovered(boolean found) {
+        if (state != State.DISCOVERING) return;
+        if (found && link.subscribe()) {
+            setState(State.SUBSCRIBING, "Enabling notifications...");
+        } else {
+            link.close();
+            if (everStreamed) {
+                // this device has streamed before: a transient GATT error, try again
+                failed("Service discovery failed.");
+                return;
+            }
+            // not the sensor after all; forget it
+            address = null;
+            failed("Sensor service not found.");
+        }
+    }
+
+    public synchronized void onSubscribed(boolean success) {
+        if (state != State.SUBSCRIBING) return;
+        if (!success) {
+            link.close();
+            failed("Enabling notifications failed.");
+            return;
+        }
+        scheduler.cancel(timeout);
+        store.save(address);
+        awaitingFirstSample = true;
+        setState(State.STREAMING, "Connected");
+    }
+
+    public synchronized void onData() {
+        if (!awaitingFirstSample) return;
+        awaitingFirstSample = false;
+        boolean reconnect = everStreamed;
+        everStreamed = true;
+        attempt = 0;
+        callback.onFirstSample(scheduler.now() - sessionStart, reconnect);
+    }
+
+    /** The link went down; {@code status} is the platform's reason code, for the log. */
+    public synchronized void onDisconnected(int status) {
+        if (state == State.IDLE || state == State.WAITING || state == State.SCANNING) return;
+        link.close();
+        if (state == State.STREAMING) {
+            // reconnect time counts from the moment the link was lost
+            sessionStart = scheduler.now();
+            awaitingFirstSample = false;
+            everStreamed = true;
+            attempt = 0;
+            retry("Disconnected (status " + status + ").");
+        } else {
+            failed("Connection failed (status " + status + ").");
+        }
+    }
+
+    private void setState(State newState, String status) {
+        state = newState;
+        callback.onStateChanged(newState, status);
+    }
+
+    boolean isAutoConnecting() {
+        return autoConnecting;
+    }
+
+    String getAddress() {
+        return address;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.biowave;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.view.Gravity;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import java.util.Locale;
+
+/**
+ * One additional sensor shown as a small ECG trace with its heart rate. The device itself
+ * (source and {@link DevicePipeline}) lives in the {@link AcquisitionService}; the tile owns
+ * only the display side: jitter buffer, display buffer and view. {@link #onFrame} is called
+ * from the activity's frame callback.
+ */
+public class DeviceTile {
+
+    private static final int WINDOW = 800;
+    private static final long LABEL_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final Acquisition.Device device;
+    private final SampleRingBuffer ringBuffer;
+    private final JitterBuffer jitterBuffer;
+    private final SignalBuffer signalBuffer = new SignalBuffer(2 * WINDOW);
+    private final AutoScaler scaler = AutoScaler.ecg(WINDOW, -3f, 3f);
+    private final PipelineMetrics metrics;
+    private final PipelineMetrics.Report report = new PipelineMetrics.Report();
+
+    private final FrameLayout view;
+    private final WaveformView chart;
+    private final TextView label;
+    private long lastLabelNanos = 0;
+    // ECG artifact flags, read once per frame
+    private int artifacts;
+
+    // called with signalBuffer locked, see onFrame
+    private final SampleRingBuffer.Consumer toDisplay = (ecg, ppg, temp, spo2) -> {
+        signalBuffer.append(ecg, ppg);
+        scaler.add(artifacts == 0 ? ecg : Float.NaN);
+    };
+
+    public DeviceTile(Context context, Acquisition.Device device) {
+        this.device = device;
+        ringBuffer = device.getRingBuffer();
+        jitterBuffer = new JitterBuffer(DevicePipeline.SAMPLE_RATE_HZ, ringBuffer.capacity());
+        metrics = device.getMetrics();
+
+        view = new FrameLayout(context);
+        chart = new WaveformView(context);
+        chart.setLabel(device.getName());
+        chart.setTraceColor(0xFF232C5A);
+        chart.setWindow(WINDOW);
+        chart.setSource(signalBuffer, SignalBuffer.ECG);
+        chart.setYRange(-3f, 3f);
+        view.addView(chart, new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT));
+        label = new TextView(context);
+        label.setTextColor(Color.BLACK);
+        label.setTextSize(12);
+        view.addView(label, new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.WRAP_CONTENT, FrameLayout.LayoutParams.WRAP_CONTENT, Gravity.TOP | Gravity.END));
+    }
+
+    public View getView() {
+        return view;
+    }
+
+    public Acquisition.Device getDevice() {
+        return device;
+    }
+
+    /** After a disconnect or a detach: relock to the next samples. UI thread. */
+    public void reset() {
+        jitterBuffer.reset();
+    }
+
+    public void onFrame(long frameTimeNanos) {
+        ringBuffer.drainTimed(jitterBuffer);
+        artifacts = device.getPipeline().getEcgArtifacts();
+        int released;
+        synchronized (signalBuffer) {
+            released = jitterBuffer.release(frameTimeNanos, toDisplay);
+        }
+        if (released > 0) {
+            chart.onDataChanged(jitterBuffer.getLastReleasedTimestamp());
+            if (scaler.update()) chart.setYRange(scaler.getLower(), scaler.getUpper());
+        }
+        metrics.setQueueDepth(jitterBuffer.size());
+        metrics.setJitterBuffer(jitterBuffer.getLatency(), jitterBuffer.getSampleRate(), jitterBuffer.getUnderrunCount());
+
+        if (frameTimeNanos - lastLabelNanos >= LABEL_INTERVAL_NANOS) {
+            lastLabelNanos = frameTimeNanos;
+            metrics.report(System.nanoTime(), report);
+            float hr = device.getPipeline().getHeartRate();
+            String text = Float.isNaN(hr) ? "-- bpm" : Math.round(hr) + " bpm";
+            if (artifacts != 0) text += "  " + SignalQuality.describe(artifacts);
+            if (report.samplesPerSecond > 0) {
+                text += String.format(Locale.US, "  %.0f smp/s", report.samplesPerSecond);
+            } else {
+                text += "  " + device.getStatus();
+            }
+            label.setText(text);
+        }
+    }
+}
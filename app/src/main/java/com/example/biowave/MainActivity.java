@@ -6,76 +6,103 @@ import androidx.core.content.ContextCompat;
 
 import android.Manifest;
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.bluetooth.BluetoothGattDescriptor;
-import android.bluetooth.BluetoothGattService;
-import android.bluetooth.le.BluetoothLeScanner;
-import android.bluetooth.le.ScanCallback;
-import android.bluetooth.le.ScanResult;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
+import android.os.IBinder;
 import android.util.Log;
+import android.view.Choreographer;
+import android.view.View;
 import android.view.Window;
 import android.view.WindowManager;
 import android.widget.Button;
+import android.widget.LinearLayout;
 import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.github.mikephil.charting.charts.LineChart;
-import com.github.mikephil.charting.components.Legend;
-import com.github.mikephil.charting.components.XAxis;
-import com.github.mikephil.charting.components.YAxis;
-import com.github.mikephil.charting.data.Entry;
-import com.github.mikephil.charting.data.LineData;
-import com.github.mikephil.charting.data.LineDataSet;
-
-import java.nio.charset.StandardCharsets;
-import java.util.UUID;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = "BioWave";
-    private static final long SCAN_PERIOD = 30000;
     private static final int PERMISSION_REQUEST_CODE = 1;
-    private static final String TARGET_DEVICE_NAME = "DSD TECH";
-    private static final UUID SERVICE_UUID = UUID.fromString("0000ffe0-0000-1000-8000-00805f9b34fb");
-    private static final UUID CHARACTERISTIC_UUID = UUID.fromString("0000ffe1-0000-1000-8000-00805f9b34fb");
+
+    /**
+     * Intent extra selecting a stand-in for the sensor: "synthetic", "synthetic:&lt;rate Hz&gt;" or
+     * "replay:&lt;capture file&gt;[:&lt;speed&gt;]", e.g. {@code adb shell am start -e source synthetic:2000 ...}.
+     */
+    public static final String EXTRA_SOURCE = "source";
+    /** Boolean intent extra: also write every notification to a capture file for later replay. */
+    public static final String EXTRA_CAPTURE = "capture";
+    /**
+     * Intent extra adding more sensors, shown as small traces below the main charts: a comma
+     * separated list of Bluetooth addresses or {@link #EXTRA_SOURCE} specs.
+     */
+    public static final String EXTRA_DEVICES = "devices";
 
     private BluetoothAdapter bluetoothAdapter;
-    private BluetoothLeScanner bluetoothLeScanner;
-    private BluetoothGatt bluetoothGatt;
-    private Handler handler;
-    private boolean isScanning = false;
+    // acquisition lives in the service, so it survives rotation and the screen going off
+    private AcquisitionService service;
+    private Acquisition.Device primary;
+    private boolean resumed;
     private TextView deviceList;
     private Button scanButton;
 
     // Charts
-    private LineChart ecgChart, ppgChart;
-    private LineDataSet ecgDataSet, ppgDataSet;
-    private LineData ecgLineData, ppgLineData;
+    private WaveformView ecgChart, ppgChart;
 
     // Data
-    private int sampleIndex = 0;
     private float amplitudeScale = 1.0f;
     private static final float ECG_DEFAULT_MIN = -3f;
     private static final float ECG_DEFAULT_MAX = 3f;
     private static final float PPG_DEFAULT_MIN = -7000f;
     private static final float PPG_DEFAULT_MAX = 7000f;
     private float visibleWindow = 800f;
+    // twice the window so the render threads never read samples that are being overwritten
+    private final SignalBuffer signalBuffer = new SignalBuffer(2 * (int) visibleWindow);
+    private final AutoScaler ecgScaler = AutoScaler.ecg((int) visibleWindow, ECG_DEFAULT_MIN, ECG_DEFAULT_MAX);
+    private final AutoScaler ppgScaler = AutoScaler.ppg((int) visibleWindow, PPG_DEFAULT_MIN, PPG_DEFAULT_MAX);
 
-    private TextView spo2TextView, hrTextView, tempTextView;
-    private Switch autoYECGSwitch, autoYPPGSwitch;
+    private TextView spo2TextView, hrLabel, hrTextView, tempTextView, alarmTextView, debugOverlay;
+    private Switch autoYECGSwitch, autoYPPGSwitch, sweepModeSwitch, bandwidthSwitch;
     private boolean autoYECGEnabled = true;
     private boolean autoYPPGEnabled = true;
 
-    private final StringBuilder bleBuffer = new StringBuilder();
+    // Display feed: the service's pipeline parses off the UI thread, its ring is drained once per frame
+    private SampleRingBuffer ringBuffer;
+    // re-times the bursty arrivals so every frame advances the trace by the same amount
+    private JitterBuffer jitterBuffer;
+    private PipelineMetrics metrics;
+    private final PipelineMetrics.Report metricsReport = new PipelineMetrics.Report();
+    private static final long OVERLAY_INTERVAL_NANOS = 1_000_000_000L;
+    private long lastFrameTimeNanos = 0;
+    private long lastOverlayNanos = 0;
+    private final List<DeviceTile> tiles = new ArrayList<>();
+    private Choreographer choreographer;
+    private long lastDroppedCount = 0;
+    private TrendView temperatureTrend, spo2Trend;
+    private long lastTemperatureVersion = -1, lastSpo2Version = -1;
+    private int lastShownHeartRate = -1;
+    // ectopic beats stay named under the heart rate for a while
+    private static final long ECTOPIC_SHOWN_NANOS = 3_000_000_000L;
+    private long lastEctopicCount = -1, ectopicShownUntil;
+    private String shownRhythm = "";
+    private String shownAlarm;
+    private int shownAlarmCount;
+    // artifact flags of the primary device, read once per frame; flagged samples don't scale the axes
+    private int ecgArtifacts, ppgArtifacts;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -100,17 +127,57 @@ public class MainActivity extends AppCompatActivity {
 //        Button increaseButton = findViewById(R.id.increaseButton);
 //        Button decreaseButton = findViewById(R.id.decreaseButton);
         spo2TextView = findViewById(R.id.spo2TextView);
+        hrLabel = findViewById(R.id.hrLabel);
         hrTextView = findViewById(R.id.hrTextView);
         tempTextView = findViewById(R.id.tempTextView);
+        alarmTextView = findViewById(R.id.alarmTextView);
+        temperatureTrend = findViewById(R.id.temperatureTrend);
+        spo2Trend = findViewById(R.id.spo2Trend);
+
+        // long-press the device info to swap it for the pipeline metrics, tap those to save them
+        debugOverlay = findViewById(R.id.debugOverlay);
+        deviceList.setOnLongClickListener(v -> {
+            setOverlayVisible(true);
+            return true;
+        });
+        debugOverlay.setOnLongClickListener(v -> {
+            setOverlayVisible(false);
+            return true;
+        });
+        debugOverlay.setOnClickListener(v -> dumpMetrics());
 
         // switches (two independent)
         autoYECGSwitch = findViewById(R.id.autoYECGSwitch);
         autoYPPGSwitch = findViewById(R.id.autoYPPGSwitch);
 
         // default values for measurement text
-        spo2TextView.setText("98 %");
-        hrTextView.setText("76 bpm");
-        tempTextView.setText("36.7 °C");
+        spo2TextView.setText("-- %");
+        hrTextView.setText("-- bpm");
+        tempTextView.setText("-- °C");
+
+        // sweep (monitor style) or scrolling traces
+        sweepModeSwitch = findViewById(R.id.sweepModeSwitch);
+        sweepModeSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            int mode = isChecked ? SweepGeometry.MODE_SWEEP : SweepGeometry.MODE_SCROLL;
+            ecgChart.setMode(mode);
+            ppgChart.setMode(mode);
+        });
+
+        // monitor (0.5-40 Hz) or diagnostic (0.05-100 Hz) filtering
+        bandwidthSwitch = findViewById(R.id.bandwidthSwitch);
+        bandwidthSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            if (service == null) return;
+            service.getAcquisition().setBandwidth(
+                    isChecked ? FilterChain.BANDWIDTH_DIAGNOSTIC : FilterChain.BANDWIDTH_MONITOR);
+            Toast.makeText(this, isChecked ? "Diagnostic bandwidth" : "Monitor bandwidth", Toast.LENGTH_SHORT).show();
+        });
+
+        // tapping the heart rate marks an event in the EDF+ export
+        hrTextView.setOnClickListener(v -> {
+            if (service == null || !service.isRunning()) return;
+            service.annotate("Event");
+            Toast.makeText(this, "Event marked", Toast.LENGTH_SHORT).show();
+        });
 
         // switches listeners
         autoYECGSwitch.setChecked(true);
@@ -120,6 +187,7 @@ public class MainActivity extends AppCompatActivity {
             Toast.makeText(this, mode, Toast.LENGTH_SHORT).show();
             // reset or immediately adjust axis when toggled
             if (!isChecked) resetYAxis(ecgChart, true);
+            else ecgScaler.invalidate();
         });
 
         autoYPPGSwitch.setChecked(true);
@@ -128,6 +196,7 @@ public class MainActivity extends AppCompatActivity {
             String mode = isChecked ? "PPG Auto Y: ON" : "PPG Auto Y: OFF (Fixed ±6000)";
             Toast.makeText(this, mode, Toast.LENGTH_SHORT).show();
             if (!isChecked) resetYAxis(ppgChart, false);
+            else ppgScaler.invalidate();
         });
 
         // amplitude control
@@ -142,20 +211,91 @@ public class MainActivity extends AppCompatActivity {
 //            Toast.makeText(this, "Amplitude: x" + String.format("%.2f", amplitudeScale), Toast.LENGTH_SHORT).show();
 //        });
 
-        // === Bluetooth setup ===
-        handler = new Handler();
+        choreographer = Choreographer.getInstance();
         bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
 
-        if (bluetoothAdapter == null) {
+        // === Acquisition: the sensor, or a stand-in for testing, runs in the service ===
+        scanButton.setEnabled(false);
+        bindService(new Intent(this, AcquisitionService.class), connection, Context.BIND_AUTO_CREATE);
+    }
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = ((AcquisitionService.LocalBinder) binder).getService();
+            onAcquisitionReady();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // same process: only happens if the app is being killed
+            service = null;
+        }
+    };
+
+    private void onAcquisitionReady() {
+        Intent intent = getIntent();
+        if (!service.configure(intent.getStringExtra(EXTRA_SOURCE), intent.getStringExtra(EXTRA_DEVICES),
+                intent.getBooleanExtra(EXTRA_CAPTURE, false))) {
             deviceList.setText("Bluetooth not supported.");
-            scanButton.setEnabled(false);
             return;
         }
+        primary = service.getPrimary();
+        ringBuffer = primary.getRingBuffer();
+        jitterBuffer = new JitterBuffer(DevicePipeline.SAMPLE_RATE_HZ, ringBuffer.capacity());
+        metrics = primary.getMetrics();
+        // the ECG trace stands for both; they are drawn from the same drain
+        ecgChart.setMetrics(metrics.pixelLatency, metrics.renderTime);
+        // pinch and drag to review the session, double tap to return
+        ecgChart.setHistory(primary.getPipeline().getEcgHistory(), DevicePipeline.SAMPLE_RATE_HZ);
+        ppgChart.setHistory(primary.getPipeline().getPpgHistory(), DevicePipeline.SAMPLE_RATE_HZ);
+        // tap a trend to cycle 1 h / 6 h / 24 h
+        temperatureTrend.setTrend(primary.getPipeline().getTemperatureTrend(), "Temperature", "%.1f °C", 34f, 40f);
+        spo2Trend.setTrend(primary.getPipeline().getSpo2Trend(), "SpO₂", "%.0f %%", 80f, 100f);
+        addTiles();
+        if (resumed) attach();
+
+        if (!service.needsBluetooth() || checkBlePermissions()) {
+            setupScanButton();
+            reconnectRememberedDevice();
+        } else {
+            requestBlePermissions();
+        }
+    }
+
+    // a device that streamed before is connected straight away, without a scan or a tap
+    private void reconnectRememberedDevice() {
+        if (!service.isBleSource() || !bluetoothAdapter.isEnabled()) return;
+        service.reconnectRememberedDevice();
+        updateScanButton();
+    }
+
+    // Every device after the first gets a small trace in the device strip
+    private void addTiles() {
+        LinearLayout container = findViewById(R.id.deviceContainer);
+        for (Acquisition.Device device : service.getDevices()) {
+            if (device == primary) continue;
+            DeviceTile tile = new DeviceTile(this, device);
+            tiles.add(tile);
+            container.addView(tile.getView(), new LinearLayout.LayoutParams(0, LinearLayout.LayoutParams.MATCH_PARENT, 1f));
+        }
+        if (!tiles.isEmpty()) container.setVisibility(View.VISIBLE);
+    }
 
-        bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
+    // Only a visible activity takes the display feed; hidden, the service skips all chart work
+    private void attach() {
+        jitterBuffer.reset();
+        for (DeviceTile tile : tiles) tile.reset();
+        service.getAcquisition().attach(observer);
+        // whatever happened while hidden
+        if (!primary.getStatus().isEmpty()) deviceList.setText(primary.getStatus());
+        updateScanButton();
+        choreographer.postFrameCallback(frameCallback);
+    }
 
-        if (checkBlePermissions()) setupScanButton();
-        else requestBlePermissions();
+    private void detach() {
+        choreographer.removeFrameCallback(frameCallback);
+        service.getAcquisition().detach(observer);
     }
 
     private boolean checkBlePermissions() {
@@ -186,7 +326,9 @@ public class MainActivity extends AppCompatActivity {
                 if (result != PackageManager.PERMISSION_GRANTED) allGranted = false;
             if (allGranted) {
                 deviceList.setText("Permissions granted. Ready to scan.");
+                if (service == null) return;
                 setupScanButton();
+                reconnectRememberedDevice();
             } else {
                 deviceList.setText("Permissions denied. Cannot scan.");
                 scanButton.setEnabled(false);
@@ -194,320 +336,270 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void setupChart(LineChart chart, String label, int color) {
-        LineDataSet dataSet = new LineDataSet(null, label);
-        dataSet.setColor(color);
-        dataSet.setDrawCircles(false);
-        dataSet.setLineWidth(1.5f);
-
-        LineData lineData = new LineData(dataSet);
-        chart.setData(lineData);
-
-        chart.setTouchEnabled(true);
-        chart.setDragEnabled(true);
-        chart.setScaleEnabled(true);
-        chart.setPinchZoom(true);
-        chart.setHardwareAccelerationEnabled(true);
-        chart.getDescription().setEnabled(false);
-        chart.setDrawGridBackground(false);
-        chart.setDrawBorders(false);
-        chart.setBackgroundColor(Color.rgb(247, 230, 233));
-        // Remove all padding/offsets to stick charts together
-//        chart.setExtraOffsets(0, 0, 0, 0);
-//        chart.setViewPortOffsets(0, 0, 0, 0);
-
-
-        XAxis xAxis = chart.getXAxis();
-        xAxis.setDrawGridLines(true);
-        xAxis.setGridColor(0xAACB4B64);
-        xAxis.setLabelCount(10, true);
-        xAxis.setDrawLabels(false);
-
-        YAxis left = chart.getAxisLeft();
-        left.setDrawGridLines(true);
-        left.setGridColor(0x33CB4B64);
-        left.setLabelCount(20, true);
-        left.setDrawLabels(false);
-
+    private void setupChart(WaveformView chart, String label, int color) {
+        chart.setLabel(label);
+        chart.setTraceColor(color);
+        chart.setWindow((int) visibleWindow);
 
         // set default axis limits per chart type
         if (label.equals("ECG")) {
-            left.setAxisMinimum(ECG_DEFAULT_MIN);
-            left.setAxisMaximum(ECG_DEFAULT_MAX);
+            chart.setSource(signalBuffer, SignalBuffer.ECG);
+            chart.setYRange(ECG_DEFAULT_MIN, ECG_DEFAULT_MAX);
         } else {
-            left.setAxisMinimum(PPG_DEFAULT_MIN);
-            left.setAxisMaximum(PPG_DEFAULT_MAX);
-        }
-
-        chart.getAxisRight().setEnabled(false);
-
-        Legend legend = chart.getLegend();
-        legend.setEnabled(true);
-        legend.setTextSize(12f);
-
-        chart.invalidate();
-
-        if (label.equals("ECG")) {
-            ecgDataSet = dataSet;
-            ecgLineData = lineData;
-        } else {
-            ppgDataSet = dataSet;
-            ppgLineData = lineData;
+            chart.setSource(signalBuffer, SignalBuffer.PPG);
+            chart.setYRange(PPG_DEFAULT_MIN, PPG_DEFAULT_MAX);
         }
     }
 
     private void setupScanButton() {
         scanButton.setEnabled(true);
-        scanButton.setText("START SCAN");
+        updateScanButton();
         scanButton.setOnClickListener(v -> {
-            if (!bluetoothAdapter.isEnabled()) {
+            if (service.isRunning()) {
+                service.stopAcquisition();
+                updateScanButton();
+                return;
+            }
+            if (service.needsBluetooth() && !bluetoothAdapter.isEnabled()) {
                 Toast.makeText(this, "Enable Bluetooth.", Toast.LENGTH_SHORT).show();
                 return;
             }
-            if (!checkBlePermissions()) {
+            if (service.needsBluetooth() && !checkBlePermissions()) {
                 Toast.makeText(this, "Permission missing.", Toast.LENGTH_SHORT).show();
                 requestBlePermissions();
                 return;
             }
-            if (isScanning) stopScanning();
-            else scanLeDevice(true);
+            service.startAcquisition();
+            updateScanButton();
         });
     }
 
-    private void scanLeDevice(final boolean enable) {
-        if (bluetoothLeScanner == null) {
-            deviceList.setText("BLE scanner not available.");
-            return;
-        }
-
-        if (enable) {
-            deviceList.setText("Scanning: " + TARGET_DEVICE_NAME);
-            isScanning = true;
-            handler.postDelayed(this::stopScanning, SCAN_PERIOD);
-            try {
-                bluetoothLeScanner.startScan(leScanCallback);
-                scanButton.setText("STOP SCAN");
-            } catch (SecurityException e) {
-                Log.e(TAG, "Scan start failed", e);
-            }
-        } else stopScanning();
+    private void updateScanButton() {
+        if (service == null || primary == null) return;
+        boolean running = service.isRunning();
+        if (service.isBleSource()) scanButton.setText(running ? "DISCONNECT" : "START SCAN");
+        else scanButton.setText(running ? "STOP" : "START");
     }
 
-    private void stopScanning() {
-        if (!isScanning) return;
-        try {
-            bluetoothLeScanner.stopScan(leScanCallback);
-        } catch (SecurityException e) {
-            Log.e(TAG, "Stop scan failed", e);
+    // status and disconnects of every device, while this activity is attached
+    private final Acquisition.Observer observer = new Acquisition.Observer() {
+        @Override
+        public void onStatus(Acquisition.Device device, String status) {
+            if (device != primary) return;
+            runOnUiThread(() -> {
+                deviceList.setText(status);
+                updateScanButton();
+            });
         }
-        isScanning = false;
-        handler.removeCallbacksAndMessages(null);
-        scanButton.setText("START SCAN");
-    }
 
-    private final ScanCallback leScanCallback = new ScanCallback() {
         @Override
-        public void onScanResult(int callbackType, ScanResult result) {
-            BluetoothDevice device = result.getDevice();
-            String name = device.getName();
-            if (name != null && name.equals(TARGET_DEVICE_NAME)) {
-                stopScanning();
-                runOnUiThread(() -> deviceList.setText("Found device: connecting..."));
-                try {
-                    bluetoothGatt = device.connectGatt(MainActivity.this, false, gattCallback);
-                } catch (SecurityException e) {
-                    runOnUiThread(() -> deviceList.setText("Connect failed: permission missing"));
-                }
-            }
+        public void onDisconnected(Acquisition.Device device) {
+            runOnUiThread(() -> {
+                if (device == primary) jitterBuffer.reset();
+                for (DeviceTile tile : tiles) if (tile.getDevice() == device) tile.reset();
+            });
         }
     };
 
-    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
-        @Override
-        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-            if (status == BluetoothGatt.GATT_SUCCESS && newState == BluetoothGatt.STATE_CONNECTED) {
-                runOnUiThread(() -> deviceList.setText("Connected. Discovering services..."));
-                try {
-                    gatt.discoverServices();
-                } catch (SecurityException e) {
-                    Log.e(TAG, "Service discovery failed", e);
-                }
-            } else if (newState == BluetoothGatt.STATE_DISCONNECTED) {
-                runOnUiThread(() -> deviceList.setText("Disconnected."));
-                closeGatt();
-            }
-        }
+    // called with signalBuffer locked, see doFrame
+    private final SampleRingBuffer.Consumer sampleConsumer = (ecg, ppg, temp, spo2) -> {
+        float scaledEcg = ecg * amplitudeScale;
+        float scaledPpg = ppg * amplitudeScale;
+        signalBuffer.append(scaledEcg, scaledPpg);
+        ecgScaler.add(ecgArtifacts == 0 ? scaledEcg : Float.NaN);
+        ppgScaler.add(ppgArtifacts == 0 ? scaledPpg : Float.NaN);
+    };
 
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
         @Override
-        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                BluetoothGattService service = gatt.getService(SERVICE_UUID);
-                if (service != null) {
-                    BluetoothGattCharacteristic ch = service.getCharacteristic(CHARACTERISTIC_UUID);
-                    if (ch != null) {
-                        try {
-                            gatt.setCharacteristicNotification(ch, true);
-                            BluetoothGattDescriptor descriptor = ch.getDescriptor(UUID.fromString("00002902-0000-1000-8000-00805f9b34fb"));
-                            if (descriptor != null) {
-                                descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-                                gatt.writeDescriptor(descriptor);
-                                runOnUiThread(() -> deviceList.setText("Connected"));
-                            }
-                        } catch (SecurityException e) {
-                            Log.e(TAG, "Notification setup failed", e);
-                        }
-                    }
-                }
+        public void doFrame(long frameTimeNanos) {
+            if (lastFrameTimeNanos != 0) metrics.frameInterval.record(frameTimeNanos - lastFrameTimeNanos);
+            lastFrameTimeNanos = frameTimeNanos;
+
+            ringBuffer.drainTimed(jitterBuffer);
+            updateQuality();
+            int released;
+            synchronized (signalBuffer) {
+                released = jitterBuffer.release(frameTimeNanos, sampleConsumer);
+            }
+            if (released > 0) {
+                long arrival = jitterBuffer.getLastReleasedTimestamp();
+                metrics.queueLatency.record(System.nanoTime() - arrival);
+                refreshCharts(arrival);
+            }
+            metrics.setQueueDepth(jitterBuffer.size());
+            metrics.setJitterBuffer(jitterBuffer.getLatency(), jitterBuffer.getSampleRate(),
+                    jitterBuffer.getUnderrunCount());
+            updateHeartRate();
+            updateRhythm(frameTimeNanos);
+            updateAlarm();
+            updateVitals();
+            for (DeviceTile tile : tiles) tile.onFrame(frameTimeNanos);
+            if (debugOverlay.getVisibility() == View.VISIBLE
+                    && frameTimeNanos - lastOverlayNanos >= OVERLAY_INTERVAL_NANOS) {
+                lastOverlayNanos = frameTimeNanos;
+                metrics.report(System.nanoTime(), metricsReport);
+                debugOverlay.setText(metricsReport.toOverlayText());
             }
-        }
 
-        @Override
-        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-            if (CHARACTERISTIC_UUID.equals(characteristic.getUuid())) {
-                byte[] data = characteristic.getValue();
-                String chunk = new String(data, StandardCharsets.UTF_8);
-                runOnUiThread(() -> {
-                    bleBuffer.append(chunk);
-                    int index;
-                    while ((index = bleBuffer.indexOf("\n")) != -1) {
-                        String msg = bleBuffer.substring(0, index);
-                        bleBuffer.delete(0, index + 1);
-                        msg = msg.replaceAll("[\\r\\x00-\\x1F\\x7F]", "").trim();
-                        // Example parsing for messages like "E0.245;P0.370;T36.8"
-                        if (msg.startsWith("E") && msg.contains(";P")) {
-                            try {
-                                String[] parts = msg.split(";");
-
-                                // Remove the first character (E or P or T) and parse the remaining string
-                                float ecg = Float.parseFloat(parts[0].substring(1));  // skip 'E'
-                                float ppg = Float.parseFloat(parts[1].substring(1));  // skip 'P'
-                                float temp = Float.NaN;
-
-                                if (parts.length >= 3 && parts[2].startsWith("T")) {
-                                    temp = Float.parseFloat(parts[2].substring(1));   // skip 'T'
-                                }
-
-                                addEntry(ecg, -ppg, temp);
-                            } catch (Exception e) {
-                                Log.e(TAG, "Parse error: " + msg);
-                            }
-                        }
-                    }
-                });
+            long dropped = ringBuffer.getDroppedCount();
+            if (dropped != lastDroppedCount) {
+                Log.w(TAG, "UI fell behind, dropped " + (dropped - lastDroppedCount) + " samples ("
+                        + dropped + " total, " + ringBuffer.getOverflowCount() + " overflows)");
+                lastDroppedCount = dropped;
             }
+            choreographer.postFrameCallback(this);
         }
     };
 
-    private void addEntry(float ecg, float ppg, float temp) {
-        // add points
-        ecgDataSet.addEntry(new Entry(sampleIndex, ecg * amplitudeScale));
-        ppgDataSet.addEntry(new Entry(sampleIndex, ppg * amplitudeScale));
-        sampleIndex++;
-
-        // trim oldest
-        if (ecgDataSet.getEntryCount() > visibleWindow) {
-            ecgDataSet.removeFirst();
-        }
-        if (ppgDataSet.getEntryCount() > visibleWindow) {
-            ppgDataSet.removeFirst();
-        }
-
-        // notify datasets & charts
-        ecgLineData.notifyDataChanged();
-        ppgLineData.notifyDataChanged();
-        ecgChart.notifyDataSetChanged();
-        ppgChart.notifyDataSetChanged();
-
-        ecgChart.setVisibleXRangeMaximum(visibleWindow);
-        ppgChart.setVisibleXRangeMaximum(visibleWindow);
-        ecgChart.moveViewToX(sampleIndex);
-        ppgChart.moveViewToX(sampleIndex);
+    // Applies everything drained in this frame in one pass
+    private void refreshCharts(long arrivalNanos) {
+        ecgChart.onDataChanged(arrivalNanos);
+        ppgChart.onDataChanged();
 
         // independent auto Y control
-        if (autoYECGEnabled) adjustYAxis(ecgChart, ecgDataSet, true);
+        if (autoYECGEnabled) applyYAxis(ecgChart, ecgScaler);
         else resetYAxis(ecgChart, true);
 
-        if (autoYPPGEnabled) adjustYAxis(ppgChart, ppgDataSet, false);
+        if (autoYPPGEnabled) applyYAxis(ppgChart, ppgScaler);
         else resetYAxis(ppgChart, false);
+    }
 
-//        if (!Float.isNaN(spo2)) spo2TextView.setText(String.format("%.1f %%", spo2));
-        if (!Float.isNaN(temp)) tempTextView.setText(String.format("%.1f %%", temp));
+    private void setOverlayVisible(boolean visible) {
+        debugOverlay.setVisibility(visible ? View.VISIBLE : View.GONE);
+        deviceList.setVisibility(visible ? View.GONE : View.VISIBLE);
+        if (visible && metrics != null) {
+            // start a fresh interval rather than averaging over the time it was hidden
+            metrics.report(System.nanoTime(), metricsReport);
+            lastOverlayNanos = 0;
+            debugOverlay.setText("Collecting metrics...");
+        }
     }
 
-    private void adjustYAxis(LineChart chart, LineDataSet set, boolean isEcg) {
-        float maxY = Float.NEGATIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
-        float highestVisibleX = sampleIndex;
-        float lowestVisibleX = highestVisibleX - visibleWindow;
-        for (Entry e : set.getValues()) {
-            if (e.getX() >= lowestVisibleX && e.getX() <= highestVisibleX) {
-                if (e.getY() > maxY) maxY = e.getY();
-                if (e.getY() < minY) minY = e.getY();
+    // Writes the interval since the last overlay refresh plus the full histograms, off the UI thread
+    private void dumpMetrics() {
+        if (metrics == null) return;
+        final File file = new File(getFilesDir(), "metrics-" + System.currentTimeMillis() + ".txt");
+        final PipelineMetrics.Report report = new PipelineMetrics.Report();
+        metrics.report(System.nanoTime(), report);
+        new Thread(() -> {
+            try (Writer out = new FileWriter(file)) {
+                report.writeTo(out);
+                metrics.writeHistogramsTo(out);
+            } catch (IOException e) {
+                Log.e(TAG, "Writing metrics failed", e);
+                return;
             }
+            runOnUiThread(() -> Toast.makeText(this, "Metrics saved to " + file.getName(), Toast.LENGTH_SHORT).show());
+        }, "BioWave-Metrics").start();
+    }
+
+    // Names the artifacts in the chart legends and greys out the heart rate while the ECG has them
+    private void updateQuality() {
+        DevicePipeline pipeline = primary.getPipeline();
+        int ecg = pipeline.getEcgArtifacts(), ppg = pipeline.getPpgArtifacts();
+        if (ecg != ecgArtifacts) {
+            ecgChart.setLabel(ecg == 0 ? "ECG" : "ECG  " + SignalQuality.describe(ecg));
+            hrTextView.setAlpha(ecg == 0 ? 1f : 0.4f);
         }
+        if (ppg != ppgArtifacts) ppgChart.setLabel(ppg == 0 ? "PPG" : "PPG  " + SignalQuality.describe(ppg));
+        ecgArtifacts = ecg;
+        ppgArtifacts = ppg;
+    }
 
-        // if no entries in visible window, keep defaults
-        if (maxY == Float.NEGATIVE_INFINITY || minY == Float.POSITIVE_INFINITY) {
-            resetYAxis(chart, isEcg);
+    // HR comes from the pipeline's QRS detector; only touch the view when it changes
+    private void updateHeartRate() {
+        float hr = primary.getPipeline().getHeartRate();
+        int shown = Float.isNaN(hr) ? -1 : Math.round(hr);
+        if (shown == lastShownHeartRate) return;
+        lastShownHeartRate = shown;
+        hrTextView.setText(shown < 0 ? "-- bpm" : shown + " bpm");
+    }
+
+    // Names an irregular rhythm, or for a few seconds the last PVC or PAC, next to the heart rate
+    private void updateRhythm(long frameTimeNanos) {
+        DevicePipeline pipeline = primary.getPipeline();
+        long ectopic = pipeline.getPvcCount() + pipeline.getPacCount();
+        if (lastEctopicCount >= 0 && ectopic != lastEctopicCount) ectopicShownUntil = frameTimeNanos + ECTOPIC_SHOWN_NANOS;
+        lastEctopicCount = ectopic;
+        String rhythm = "";
+        if (pipeline.isRhythmIrregular()) rhythm = "irregular";
+        else if (frameTimeNanos < ectopicShownUntil) rhythm = BeatClassifier.name(pipeline.getLastEctopicLabel());
+        if (rhythm.equals(shownRhythm)) return;
+        shownRhythm = rhythm;
+        hrLabel.setText(rhythm.isEmpty() ? "Heart Rate" : "Heart Rate  " + rhythm);
+    }
+
+    // The pipeline publishes a new name only when an alarm goes off or clears
+    private void updateAlarm() {
+        DevicePipeline pipeline = primary.getPipeline();
+        String alarm = pipeline.getActiveAlarm();
+        int count = pipeline.getActiveAlarmCount();
+        if (alarm == shownAlarm && count == shownAlarmCount) return;
+        shownAlarm = alarm;
+        shownAlarmCount = count;
+        if (alarm == null) {
+            alarmTextView.setVisibility(View.GONE);
             return;
         }
+        alarmTextView.setText(count > 1 ? alarm + " (+" + (count - 1) + ")" : alarm);
+        int priority = pipeline.getActiveAlarmPriority();
+        alarmTextView.setBackgroundColor(priority == AlarmEngine.HIGH ? 0xFFD32F2F
+                : priority == AlarmEngine.MEDIUM ? 0xFFF57C00 : 0xFF00796B);
+        alarmTextView.setVisibility(View.VISIBLE);
+    }
 
-        float margin = 0.1f; // 10% padding
-        YAxis leftAxis = chart.getAxisLeft();
-
-        if (isEcg) {
-            // ECG: keep default 0..3 unless data exceeds those bounds
-            float upper = Math.max(maxY * (1 + margin), ECG_DEFAULT_MAX);
-            // ensure lower not above 0
-            float lowerCandidate = minY * (1 - margin);
-            float lower = Math.min(lowerCandidate, ECG_DEFAULT_MIN);
-            // if data entirely above 0, lowerCandidate might be > 0; keep at least 0
-            lower = Math.min(lower, ECG_DEFAULT_MIN);
-            leftAxis.setAxisMaximum(upper);
-            leftAxis.setAxisMinimum(lower);
-        } else {
-            // PPG: symmetric auto-scaling (allow negative/positive)
-            float upper = maxY * (1 + margin);
-            float lower = minY * (1 - margin);
-            // if upper==lower (flat line), provide tiny range
-            if (upper == lower) {
-                upper += 1f;
-                lower -= 1f;
-            }
-            leftAxis.setAxisMaximum(upper);
-            leftAxis.setAxisMinimum(lower);
+    // Temperature and SpO2 arrive about once a second; the views change only when their trend does
+    private void updateVitals() {
+        DevicePipeline pipeline = primary.getPipeline();
+        long version = pipeline.getTemperatureTrend().getVersion();
+        if (version != lastTemperatureVersion) {
+            lastTemperatureVersion = version;
+            float temp = pipeline.getTemperatureTrend().getLast();
+            tempTextView.setText(Float.isNaN(temp) ? "-- °C" : String.format(Locale.US, "%.1f °C", temp));
+        }
+        version = pipeline.getSpo2Trend().getVersion();
+        if (version != lastSpo2Version) {
+            lastSpo2Version = version;
+            float spo2 = pipeline.getSpo2Trend().getLast();
+            spo2TextView.setText(Float.isNaN(spo2) ? "-- %" : String.format(Locale.US, "%.0f %%", spo2));
         }
+        temperatureTrend.update();
+        spo2Trend.update();
     }
 
-    private void resetYAxis(LineChart chart, boolean isEcg) {
-        YAxis leftAxis = chart.getAxisLeft();
-        if (isEcg) {
-            leftAxis.setAxisMaximum(ECG_DEFAULT_MAX);
-            leftAxis.setAxisMinimum(ECG_DEFAULT_MIN);
-        } else {
-            leftAxis.setAxisMaximum(PPG_DEFAULT_MAX);
-            leftAxis.setAxisMinimum(PPG_DEFAULT_MIN);
-        }
+    private void applyYAxis(WaveformView chart, AutoScaler scaler) {
+        if (!scaler.update()) return;
+        chart.setYRange(scaler.getLower(), scaler.getUpper());
     }
 
-    private void closeGatt() {
-        if (bluetoothGatt != null) {
-            try {
-                bluetoothGatt.close();
-            } catch (SecurityException ignored) {}
-            bluetoothGatt = null;
-        }
+    private void resetYAxis(WaveformView chart, boolean isEcg) {
+        if (isEcg) chart.setYRange(ECG_DEFAULT_MIN, ECG_DEFAULT_MAX);
+        else chart.setYRange(PPG_DEFAULT_MIN, PPG_DEFAULT_MAX);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        resumed = true;
+        if (service != null && primary != null) attach();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        stopScanning();
-        closeGatt();
+        resumed = false;
+        if (service == null || primary == null) return;
+        detach();
+        // acquisition goes on; just make what was recorded so far durable
+        service.getAcquisition().sync();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        closeGatt();
+        // a running acquisition keeps the service in the foreground; otherwise it ends here
+        unbindService(connection);
+        service = null;
     }
 }
@@ -0,0 +1,137 @@
+package com.example.biowave;
+
+/**
+ * Maps sample indices to horizontal pixel positions for {@link WaveformView}.
+ * <p>
+ * In {@link #MODE_SCROLL} the newest {@code window} samples are laid out left to right and the
+ * whole trace moves every frame. In {@link #MODE_SWEEP} (the bedside-monitor look) sample
+ * {@code i} always lands at {@code (i mod window)}: a cursor sweeps left to right overwriting
+ * the previous pass, with a blank erase bar ahead of it, so each frame only the strip the cursor
+ * crossed has to be redrawn.
+ * <p>
+ * {@link #layout} splits the visible trace into at most two contiguous runs of samples, each
+ * with its starting x; {@link #dirty} computes the strip that changed between two frames.
+ */
+public class SweepGeometry {
+
+    public static final int MODE_SCROLL = 0;
+    public static final int MODE_SWEEP = 1;
+
+    private int mode = MODE_SCROLL;
+    private int window = 1;
+    private int width = 1;
+    private int gapColumns = 0;
+    private float pxPerSample = 1f;
+    private int gapSamples = 0;
+
+    // result of layout()
+    private int runCount;
+    private final long[] runStart = new long[2];
+    private final long[] runEnd = new long[2];
+    private final float[] runX = new float[2];
+
+    // result of dirty()
+    private int dirtyFrom, dirtyTo;
+
+    public void configure(int mode, int windowSamples, int widthPx, int eraseGapPx) {
+        if (windowSamples <= 0 || widthPx <= 0) throw new IllegalArgumentException("empty geometry");
+        this.mode = mode;
+        this.window = windowSamples;
+        this.width = widthPx;
+        this.gapColumns = Math.max(0, Math.min(eraseGapPx, widthPx - 1));
+        pxPerSample = widthPx / (float) windowSamples;
+        gapSamples = (int) Math.ceil(gapColumns / pxPerSample);
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public float pxPerSample() {
+        return pxPerSample;
+    }
+
+    /** Lays out the trace that ends just before sample {@code next}; returns the run count. */
+    public int layout(long next) {
+        runCount = 0;
+        if (mode == MODE_SCROLL) {
+            addRun(Math.max(0, next - window), next, 0f);
+            return runCount;
+        }
+        long sweepStart = next - next % window;
+        // current pass, from the left edge up to the cursor
+        addRun(sweepStart, next, 0f);
+        // previous pass, from behind the erase bar to the right edge
+        long oldStart = Math.max(0, next + gapSamples - window);
+        if (oldStart < sweepStart) {
+            addRun(oldStart, sweepStart, (oldStart % window) * pxPerSample);
+        }
+        return runCount;
+    }
+
+    private void addRun(long start, long end, float x) {
+        if (end <= start) return;
+        runStart[runCount] = start;
+        runEnd[runCount] = end;
+        runX[runCount] = x;
+        runCount++;
+    }
+
+    public long runStart(int run) {
+        return runStart[run];
+    }
+
+    public long runEnd(int run) {
+        return runEnd[run];
+    }
+
+    public float runX(int run) {
+        return runX[run];
+    }
+
+    /** Pixel column of sample {@code index} in sweep mode. */
+    public int sweepColumn(long index) {
+        return (int) ((index % window) * pxPerSample);
+    }
+
+    /**
+     * Computes the columns that changed when the trace advanced from {@code lastNext} to
+     * {@code next}: everything in scroll mode, otherwise the strip from the old cursor up to
+     * and including the erase bar. A strip that wraps past the right edge is widened to the
+     * full width, which happens once per sweep.
+     */
+    public void dirty(long lastNext, long next) {
+        if (mode == MODE_SCROLL || next - lastNext >= window || lastNext <= 0 || next < lastNext) {
+            dirtyFrom = 0;
+            dirtyTo = width;
+            return;
+        }
+        // the segment leading into the first new sample starts at the previous one
+        int from = sweepColumn(lastNext - 1);
+        int to = sweepColumn(next - 1) + 1 + gapColumns + 1;
+        boolean wrapped = (next - 1) / window != (lastNext - 1) / window || to > width;
+        if (wrapped) {
+            dirtyFrom = 0;
+            dirtyTo = width;
+        } else {
+            dirtyFrom = from;
+            dirtyTo = Math.min(width, to);
+        }
+    }
+
+    public int dirtyFrom() {
+        return dirtyFrom;
+    }
+
+    public int dirtyTo() {
+        return dirtyTo;
+    }
+}
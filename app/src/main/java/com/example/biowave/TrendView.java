@@ -0,0 +1,129 @@
+package com.example.biowave;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.view.View;
+
+import java.util.Locale;
+
+/**
+ * Trend of one {@link VitalTrend} over the last hour, six hours or day (tap to cycle): the
+ * min-max range of every pixel column as a band and the average as a line. Reads one column per
+ * pixel from the trend's coarsest fitting level, so a day costs no more to draw than an hour.
+ * Redraws only when {@link #update()} sees the trend change or the span move on by a column.
+ */
+public class TrendView extends View {
+
+    private static final long[] SPANS = {3_600_000L, 6 * 3_600_000L, 24 * 3_600_000L};
+    private static final String[] SPAN_NAMES = {"1 h", "6 h", "24 h"};
+    private static final int BAND_COLOR = 0x33232C5A;
+    private static final int LINE_COLOR = 0xFF232C5A;
+    private static final int GRID_COLOR = 0x33CB4B64;
+
+    private final float density;
+    private final Paint bandPaint = new Paint();
+    private final Paint linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint gridPaint = new Paint();
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path line = new Path();
+    private String label = "";
+    private String format = "%.1f";
+    private float yMin = 0f, yMax = 1f;
+
+    private VitalTrend trend;
+    private int span;
+    private long lastVersion = -1;
+    private long lastColumn;
+    private float[] min = new float[0], avg = new float[0], max = new float[0];
+
+    public TrendView(Context context) {
+        this(context, null);
+    }
+
+    public TrendView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        density = context.getResources().getDisplayMetrics().density;
+        bandPaint.setColor(BAND_COLOR);
+        bandPaint.setStrokeWidth(1f);
+        linePaint.setStyle(Paint.Style.STROKE);
+        linePaint.setStrokeWidth(1.5f * density);
+        linePaint.setColor(LINE_COLOR);
+        gridPaint.setColor(GRID_COLOR);
+        labelPaint.setTextSize(11f * context.getResources().getDisplayMetrics().scaledDensity);
+        labelPaint.setColor(Color.BLACK);
+        setOnClickListener(v -> {
+            span = (span + 1) % SPANS.length;
+            lastVersion = -1;
+            update();
+        });
+    }
+
+    /** Shows {@code trend} on a fixed axis from {@code yMin} to {@code yMax}, values printed with {@code format}. */
+    public void setTrend(VitalTrend trend, String label, String format, float yMin, float yMax) {
+        this.trend = trend;
+        this.label = label;
+        this.format = format;
+        this.yMin = yMin;
+        this.yMax = yMax;
+        lastVersion = -1;
+        invalidate();
+    }
+
+    /** Once per frame on the UI thread; cheap unless something changed. */
+    public void update() {
+        if (trend == null || getWidth() == 0) return;
+        long version = trend.getVersion();
+        long column = System.currentTimeMillis() / Math.max(1, SPANS[span] / getWidth());
+        if (version == lastVersion && column == lastColumn) return;
+        lastVersion = version;
+        lastColumn = column;
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        min = new float[w];
+        avg = new float[w];
+        max = new float[w];
+        lastVersion = -1;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        int width = getWidth(), height = getHeight();
+        for (int i = 1; i < 4; i++) canvas.drawLine(0, height * i / 4f, width, height * i / 4f, gridPaint);
+        float size = labelPaint.getTextSize();
+        String text = label + "  " + SPAN_NAMES[span];
+        if (trend == null || width == 0) {
+            canvas.drawText(text, 5 * density, size, labelPaint);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        trend.read(now - SPANS[span], now, width, min, avg, max);
+        float scale = height / (yMax - yMin);
+        line.rewind();
+        boolean drawing = false;
+        for (int x = 0; x < width; x++) {
+            if (Float.isNaN(avg[x])) {
+                drawing = false;
+                continue;
+            }
+            float top = height - (Math.min(max[x], yMax) - yMin) * scale;
+            float bottom = height - (Math.max(min[x], yMin) - yMin) * scale;
+            canvas.drawLine(x, top, x, Math.max(bottom, top + 1), bandPaint);
+            float y = height - (avg[x] - yMin) * scale;
+            if (drawing) line.lineTo(x, y);
+            else line.moveTo(x, y);
+            drawing = true;
+        }
+        canvas.drawPath(line, linePaint);
+        float last = trend.getLast();
+        if (!Float.isNaN(last)) text += "  " + String.format(Locale.US, format, last);
+        canvas.drawText(text, 5 * density, size, labelPaint);
+    }
+}
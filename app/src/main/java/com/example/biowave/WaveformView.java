@@ -0,0 +1,412 @@
+package com.example.biowave;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import java.util.Locale;
+
+/**
+ * Waveform display for one {@link SignalBuffer} channel, drawn on a dedicated render thread.
+ * <p>
+ * Supports the classic scrolling trace and a monitor-style sweep with an erase bar, in which
+ * only the strip the cursor crossed since the last frame is redrawn. Traces are decimated to
+ * at most one segment per pixel column by {@link ColumnDecimator}.
+ * <p>
+ * The UI thread appends to the shared {@link SignalBuffer} while holding its monitor and then
+ * calls {@link #onDataChanged()}; the render thread takes the same monitor only while it builds
+ * the segments for a frame.
+ * <p>
+ * With a {@link #setHistory history}, pinching and dragging review the whole session: the
+ * trace is then drawn from the {@link MinMaxPyramid}, one column of extremes per pixel at any
+ * zoom. Dragging back to the newest sample follows it live at that zoom; a double tap returns
+ * to the live trace.
+ */
+public class WaveformView extends SurfaceView implements SurfaceHolder.Callback {
+
+    private static final int BACKGROUND_COLOR = Color.rgb(247, 230, 233);
+    private static final int X_GRID_COLOR = 0xAACB4B64;
+    private static final int Y_GRID_COLOR = 0x33CB4B64;
+    private static final int X_GRID_LINES = 10;
+    private static final int Y_GRID_LINES = 20;
+    private static final float ERASE_GAP_DP = 12f;
+
+    private final float density;
+    private final Paint tracePaint = new Paint();
+    private final Paint xGridPaint = new Paint();
+    private final Paint yGridPaint = new Paint();
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint legendPaint = new Paint();
+    private String label = "";
+
+    // shared with the render thread; written on the UI thread
+    private volatile SignalBuffer source;
+    private volatile int channel;
+    private volatile int window = 800;
+    private volatile int mode = SweepGeometry.MODE_SCROLL;
+    private volatile float yMin = -1f, yMax = 1f;
+    private volatile boolean dataChanged = false;
+    private volatile boolean layoutChanged = true;
+    private volatile int surfaceWidth, surfaceHeight;
+    private volatile long dataTimestamp;
+    private volatile LatencyHistogram pixelLatency, renderTime;
+    private volatile MinMaxPyramid history;
+    private volatile float sampleRate = 250f;
+    private volatile boolean reviewing;
+    // right edge of the review, or LIVE to follow the newest sample
+    private volatile long reviewEnd = LIVE;
+    private volatile long reviewSpan;
+    private static final long LIVE = -1;
+    private static final int MIN_REVIEW_SPAN = 64;
+
+    // render thread only
+    private HandlerThread renderThread;
+    private Handler renderHandler;
+    private Choreographer renderChoreographer;
+    private final SweepGeometry geometry = new SweepGeometry();
+    private ColumnDecimator decimator;
+    private long drawnNext = 0;
+    private long drawnTimestamp = 0;
+    private final Rect dirty = new Rect();
+    private float[] reviewMin = new float[0], reviewMax = new float[0];
+    private String reviewLabel = "";
+
+    // UI thread only
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector gestureDetector;
+
+    public WaveformView(Context context) {
+        this(context, null);
+    }
+
+    public WaveformView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        density = context.getResources().getDisplayMetrics().density;
+
+        tracePaint.setStyle(Paint.Style.STROKE);
+        tracePaint.setStrokeWidth(1.5f * density);
+        tracePaint.setColor(0xFF232C5A);
+        legendPaint.setColor(0xFF232C5A);
+        xGridPaint.setColor(X_GRID_COLOR);
+        yGridPaint.setColor(Y_GRID_COLOR);
+        labelPaint.setTextSize(12f * context.getResources().getDisplayMetrics().scaledDensity);
+        labelPaint.setColor(Color.BLACK);
+
+        getHolder().addCallback(this);
+
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                MinMaxPyramid h = history;
+                if (h == null) return false;
+                startReview();
+                long count = h.getSampleCount();
+                long span = (long) (reviewSpan / detector.getScaleFactor());
+                reviewSpan = Math.max(MIN_REVIEW_SPAN, Math.min(Math.max(window, count - h.getFirstIndex()), span));
+                layoutChanged = true;
+                return true;
+            }
+        });
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                MinMaxPyramid h = history;
+                int width = surfaceWidth;
+                if (h == null || width <= 0) return false;
+                startReview();
+                long count = h.getSampleCount();
+                long end = (reviewEnd == LIVE ? count : reviewEnd) + (long) (distanceX * reviewSpan / width);
+                long earliest = h.getFirstIndex() + reviewSpan;
+                reviewEnd = end >= count ? LIVE : Math.max(Math.min(earliest, count), end);
+                layoutChanged = true;
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                if (!reviewing) return false;
+                reviewing = false;
+                layoutChanged = true;
+                return true;
+            }
+        });
+    }
+
+    public void setSource(SignalBuffer buffer, int channel) {
+        this.source = buffer;
+        this.channel = channel;
+        layoutChanged = true;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+        layoutChanged = true;
+    }
+
+    public void setTraceColor(int color) {
+        tracePaint.setColor(color);
+        legendPaint.setColor(color);
+        layoutChanged = true;
+    }
+
+    /** Number of samples across the full width. */
+    public void setWindow(int samples) {
+        window = samples;
+        layoutChanged = true;
+    }
+
+    /** {@link SweepGeometry#MODE_SCROLL} or {@link SweepGeometry#MODE_SWEEP}. */
+    public void setMode(int mode) {
+        this.mode = mode;
+        layoutChanged = true;
+    }
+
+    public void setYRange(float min, float max) {
+        if (min == yMin && max == yMax) return;
+        yMin = min;
+        yMax = max;
+        layoutChanged = true;
+    }
+
+    /** Call after appending to the source buffer; the next vsync on the render thread draws it. */
+    public void onDataChanged() {
+        dataChanged = true;
+    }
+
+    /**
+     * Same as {@link #onDataChanged()}; {@code timestamp} is the {@link System#nanoTime()} at
+     * which the newest appended sample arrived, for the pixel latency histogram.
+     */
+    public void onDataChanged(long timestamp) {
+        dataTimestamp = timestamp;
+        dataChanged = true;
+    }
+
+    /**
+     * Records arrival-to-posted-frame latency and the time spent drawing each frame; either may
+     * be null. Latency is measured up to handing the frame to the compositor, about one vsync
+     * before it is visible.
+     */
+    public void setMetrics(LatencyHistogram pixelLatency, LatencyHistogram renderTime) {
+        this.pixelLatency = pixelLatency;
+        this.renderTime = renderTime;
+    }
+
+    /**
+     * Enables reviewing {@code pyramid}, the history of the same trace, sampled at
+     * {@code sampleRate} Hz; null turns it off.
+     */
+    public void setHistory(MinMaxPyramid pyramid, float sampleRate) {
+        this.sampleRate = sampleRate;
+        history = pyramid;
+        if (pyramid == null) reviewing = false;
+        layoutChanged = true;
+    }
+
+    /** True while showing the history rather than the live trace. */
+    public boolean isReviewing() {
+        return reviewing;
+    }
+
+    private void startReview() {
+        if (reviewing) return;
+        reviewEnd = LIVE;
+        reviewSpan = window;
+        reviewing = true;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (history == null) return super.onTouchEvent(event);
+        boolean handled = scaleDetector.onTouchEvent(event);
+        if (!scaleDetector.isInProgress()) handled |= gestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        renderThread = new HandlerThread("BioWave-Render", Process.THREAD_PRIORITY_DISPLAY);
+        renderThread.start();
+        renderHandler = new Handler(renderThread.getLooper());
+        renderHandler.post(() -> {
+            renderChoreographer = Choreographer.getInstance();
+            renderChoreographer.postFrameCallback(frameCallback);
+        });
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        surfaceWidth = width;
+        surfaceHeight = height;
+        layoutChanged = true;
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // the surface must not be touched after this returns
+        renderHandler.post(() -> renderChoreographer.removeFrameCallback(frameCallback));
+        renderThread.quitSafely();
+        try {
+            renderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        renderThread = null;
+        renderHandler = null;
+    }
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            renderFrame();
+            renderChoreographer.postFrameCallback(this);
+        }
+    };
+
+    private void renderFrame() {
+        MinMaxPyramid h = history;
+        if (reviewing && h != null) {
+            renderReview(h);
+            return;
+        }
+        SignalBuffer buffer = source;
+        int width = surfaceWidth, height = surfaceHeight;
+        if (buffer == null || width <= 0 || height <= 0) return;
+
+        boolean full = layoutChanged;
+        if (!full && !dataChanged) return;
+        layoutChanged = false;
+        dataChanged = false;
+        long timestamp = dataTimestamp;
+        long start = System.nanoTime();
+
+        long next;
+        synchronized (buffer) {
+            next = buffer.getNextIndex();
+        }
+        if (full) {
+            geometry.configure(mode, Math.min(window, buffer.capacity()), width, (int) (ERASE_GAP_DP * density));
+            if (decimator == null || decimator.points().length < 4 * (width + 4)) {
+                decimator = new ColumnDecimator(width);
+            }
+            float scale = height / (yMax - yMin);
+            decimator.setYMapping(height + yMin * scale, scale);
+            dirty.set(0, 0, width, height);
+        } else {
+            geometry.dirty(drawnNext, next);
+            dirty.set(geometry.dirtyFrom(), 0, geometry.dirtyTo(), height);
+        }
+
+        SurfaceHolder holder = getHolder();
+        Canvas canvas = holder.lockCanvas(dirty);
+        if (canvas == null) return;
+        try {
+            // lockCanvas may have grown the dirty rect; everything inside it must be redrawn
+            drawBackground(canvas, width, height);
+            synchronized (buffer) {
+                float[] ring = buffer.channel(channel);
+                int runs = geometry.layout(next);
+                for (int r = 0; r < runs; r++) {
+                    int n = decimator.build(ring, buffer.capacity(), geometry.runStart(r), geometry.runEnd(r),
+                            geometry.runX(r), geometry.pxPerSample(), dirty.left, dirty.right);
+                    if (n > 0) canvas.drawLines(decimator.points(), 0, n, tracePaint);
+                }
+            }
+            drawLegend(canvas, height, label);
+        } finally {
+            holder.unlockCanvasAndPost(canvas);
+        }
+        drawnNext = next;
+
+        long now = System.nanoTime();
+        LatencyHistogram render = renderTime, pixel = pixelLatency;
+        if (render != null) render.record(now - start);
+        if (pixel != null && timestamp != 0 && timestamp != drawnTimestamp) pixel.record(now - timestamp);
+        drawnTimestamp = timestamp;
+    }
+
+    // The whole width from the pyramid; redrawn when the view moves or, following live, on new data
+    private void renderReview(MinMaxPyramid pyramid) {
+        int width = surfaceWidth, height = surfaceHeight;
+        if (width <= 0 || height <= 0) return;
+        long end = reviewEnd;
+        boolean full = layoutChanged;
+        if (!full && !(dataChanged && end == LIVE)) return;
+        layoutChanged = false;
+        dataChanged = false;
+        long start = System.nanoTime();
+
+        if (decimator == null || decimator.points().length < 4 * (width + 4)) {
+            decimator = new ColumnDecimator(width);
+        }
+        if (reviewMin.length < width) {
+            reviewMin = new float[width];
+            reviewMax = new float[width];
+        }
+        float scale = height / (yMax - yMin);
+        decimator.setYMapping(height + yMin * scale, scale);
+
+        long count = pyramid.getSampleCount();
+        long span = reviewSpan;
+        long to = end == LIVE ? count : end;
+        int columns = (int) Math.min(width, span);
+        pyramid.read(to - span, to, columns, reviewMin, reviewMax);
+        if (full) reviewLabel = reviewLabel(span, count - to);
+
+        dirty.set(0, 0, width, height);
+        SurfaceHolder holder = getHolder();
+        Canvas canvas = holder.lockCanvas(dirty);
+        if (canvas == null) return;
+        try {
+            drawBackground(canvas, width, height);
+            int n = decimator.buildExtremes(reviewMin, reviewMax, columns, 0f, width / (float) columns);
+            if (n > 0) canvas.drawLines(decimator.points(), 0, n, tracePaint);
+            drawLegend(canvas, height, reviewLabel);
+        } finally {
+            holder.unlockCanvasAndPost(canvas);
+        }
+        LatencyHistogram render = renderTime;
+        if (render != null) render.record(System.nanoTime() - start);
+    }
+
+    // e.g. "ECG  10 min, 1:02:03 ago"
+    private String reviewLabel(long span, long behind) {
+        double seconds = span / sampleRate;
+        String zoom = seconds >= 120 ? Math.round(seconds / 60) + " min" : Math.round(seconds) + " s";
+        if (behind <= 0) return label + "  " + zoom + ", live";
+        long ago = Math.round(behind / sampleRate);
+        return label + "  " + zoom + ", " + String.format(Locale.US, "%d:%02d:%02d", ago / 3600, ago / 60 % 60, ago % 60) + " ago";
+    }
+
+    private void drawBackground(Canvas canvas, int width, int height) {
+        canvas.drawColor(BACKGROUND_COLOR);
+        for (int i = 0; i < X_GRID_LINES; i++) {
+            float x = i * (width - 1) / (float) (X_GRID_LINES - 1);
+            canvas.drawLine(x, 0, x, height, xGridPaint);
+        }
+        for (int i = 0; i < Y_GRID_LINES; i++) {
+            float y = i * (height - 1) / (float) (Y_GRID_LINES - 1);
+            canvas.drawLine(0, y, width, y, yGridPaint);
+        }
+    }
+
+    private void drawLegend(Canvas canvas, int height, String text) {
+        float size = labelPaint.getTextSize();
+        float x = 5 * density;
+        float y = height - 5 * density;
+        canvas.drawRect(x, y - size * 0.8f, x + size * 0.8f, y, legendPaint);
+        canvas.drawText(text, x + size * 1.2f, y, labelPaint);
+    }
+}
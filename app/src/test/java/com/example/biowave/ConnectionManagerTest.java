@@ -0,0 +1,341 @@
+package com.example.biowave;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ConnectionManagerTest {
+
+    private static final String SENSOR = "00:11:22:33:44:55";
+
+    /**
+     * Records what the manager asked the radio to do; the test plays the GATT callbacks. Like
+     * the real link it keeps one gatt object per address, with its characteristic, until a
+     * pending connect is cancelled by closing it.
+     */
+    private static final class FakeGatt implements ConnectionManager.Link {
+        final List<String> calls = new ArrayList<>();
+        boolean characteristicKnown = false;
+        String gattAddress;
+        // a connect the radio has not answered yet
+        boolean pending;
+
+        @Override
+        public void connect(String address, boolean autoConnect) {
+            calls.add((autoConnect ? "autoConnect " : "connect ") + address);
+            // a new gatt object knows no services
+            if (!address.equals(gattAddress)) characteristicKnown = false;
+            gattAddress = address;
+            pending = true;
+        }
+
+        @Override
+        public boolean subscribe() {
+            calls.add("subscribe");
+            return characteristicKnown;
+        }
+
+        @Override
+        public void discoverServices() {
+            calls.add("discover");
+            characteristicKnown = true;
+        }
+
+        @Override
+        public void startScan() {
+            calls.add("scan");
+        }
+
+        @Override
+        public void stopScan() {
+            calls.add("stopScan");
+        }
+
+        @Override
+        public void close() {
+            calls.add("close");
+            if (pending) {
+                // cancelling a connect closes the gatt object
+                gattAddress = null;
+                characteristicKnown = false;
+                pending = false;
+            }
+        }
+
+        String last() {
+            return calls.get(calls.size() - 1);
+        }
+    }
+
+    /** Manual clock; {@link #advance} runs whatever falls due. */
+    private static final class FakeScheduler implements ConnectionManager.Scheduler {
+        long now = 1000;
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Long> due = new ArrayList<>();
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            tasks.add(task);
+            due.add(now + delayMs);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                if (tasks.get(i) == task) {
+                    tasks.remove(i);
+                    due.remove(i);
+                }
+            }
+        }
+
+        void advance(long ms) {
+            long end = now + ms;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < due.size(); i++) {
+                    if (due.get(i) <= end && (next < 0 || due.get(i) < due.get(next))) next = i;
+                }
+                if (next < 0) break;
+                now = due.remove(next);
+                tasks.remove(next).run();
+            }
+            now = end;
+        }
+
+        long nextDelay() {
+            long min = Long.MAX_VALUE;
+            for (long d : due) min = Math.min(min, d);
+            return min - now;
+        }
+    }
+
+    private final FakeGatt gatt = new FakeGatt();
+    private final FakeScheduler scheduler = new FakeScheduler();
+    private String stored;
+    private final List<Long> firstSamples = new ArrayList<>();
+    private final List<Boolean> reconnects = new ArrayList<>();
+    private ConnectionManager manager;
+
+    @Before
+    public void setUp() {
+        ConnectionManager.AddressStore store = new ConnectionManager.AddressStore() {
+            @Override
+            public String load() {
+                return stored;
+            }
+
+            @Override
+            public void save(String address) {
+                stored = address;
+            }
+        };
+        ConnectionManager.Callback callback = new ConnectionManager.Callback() {
+            @Override
+            public void onStateChanged(ConnectionManager.State state, String status) {
+            }
+
+            @Override
+            public void onFirstSample(long elapsedMs, boolean reconnect) {
+                firstSamples.add(elapsedMs);
+                reconnects.add(reconnect);
+            }
+        };
+        manager = new ConnectionManager(gatt, scheduler, store, callback, 42);
+    }
+
+    private void connected() {
+        gatt.pending = false;
+        manager.onConnected();
+    }
+
+    private void dropped(int status) {
+        gatt.pending = false;
+        manager.onDisconnected(status);
+    }
+
+    private void stream() {
+        connected();
+        if (manager.getState() == ConnectionManager.State.DISCOVERING) manager.onServicesDiscovered(true);
+        manager.onSubscribed(true);
+        assertEquals(ConnectionManager.State.STREAMING, manager.getState());
+        manager.onData();
+    }
+
+    @Test
+    public void firstRunScansThenRemembersDevice() {
+        manager.start();
+        assertEquals(ConnectionManager.State.SCANNING, manager.getState());
+        assertEquals("scan", gatt.last());
+
+        scheduler.advance(1200);
+        manager.onScanResult(SENSOR);
+        assertEquals(List.of("scan", "stopScan", "connect " + SENSOR), gatt.calls);
+        scheduler.advance(300);
+        stream();
+        assertEquals(List.of("scan", "stopScan", "connect " + SENSOR, "subscribe", "discover", "subscribe"), gatt.calls);
+        assertEquals(SENSOR, stored);
+        assertEquals(List.of(1500L), firstSamples);
+        assertEquals(List.of(false), reconnects);
+    }
+
+    @Test
+    public void rememberedDeviceIsConnectedWithoutScan() {
+        stored = SENSOR;
+        manager.start();
+        assertEquals(ConnectionManager.State.CONNECTING, manager.getState());
+        assertEquals("connect " + SENSOR, gatt.last());
+        assertFalse(gatt.calls.contains("scan"));
+    }
+
+    @Test
+    public void unreachableRememberedDeviceFallsBackToScan() {
+        stored = SENSOR;
+        manager.start();
+        scheduler.advance(ConnectionManager.CONNECT_TIMEOUT_MS);
+        assertEquals(ConnectionManager.State.SCANNING, manager.getState());
+        assertEquals(List.of("connect " + SENSOR, "close", "scan"), gatt.calls);
+
+        scheduler.advance(ConnectionManager.SCAN_TIMEOUT_MS);
+        assertEquals(ConnectionManager.State.IDLE, manager.getState());
+        assertEquals("stopScan", gatt.last());
+    }
+
+    @Test
+    public void reconnectsWithBackoffAndSkipsDiscovery() {
+        stored = SENSOR;
+        manager.start();
+        stream();
+        assertEquals(1, gatt.calls.stream().filter("discover"::equals).count());
+
+        scheduler.advance(60_000);
+        dropped(8);
+        assertEquals(ConnectionManager.State.WAITING, manager.getState());
+
+        // failed attempts wait longer each time, and later ones hand over to auto-connect
+        long previous = 0;
+        for (int attempt = 0; attempt < ConnectionManager.AUTO_CONNECT_AFTER; attempt++) {
+            long delay = scheduler.nextDelay();
+            long nominal = ConnectionManager.BACKOFF_BASE_MS << attempt;
+            assertTrue("delay " + delay, delay >= nominal / 2 && delay <= nominal);
+            assertTrue(delay > previous || attempt == 0);
+            previous = delay;
+            scheduler.advance(delay);
+            assertEquals("connect " + SENSOR, gatt.last());
+            dropped(133);
+        }
+        scheduler.advance(scheduler.nextDelay());
+        assertEquals("autoConnect " + SENSOR, gatt.last());
+        assertTrue(manager.isAutoConnecting());
+
+        // the device comes back: the known characteristic is subscribed without discovery
+        scheduler.advance(5_000);
+        connected();
+        assertEquals(ConnectionManager.State.SUBSCRIBING, manager.getState());
+        manager.onSubscribed(true);
+        manager.onData();
+        assertEquals(1, gatt.calls.stream().filter("discover"::equals).count());
+        assertEquals(List.of(false, true), reconnects);
+        assertTrue(firstSamples.get(1) > 5_000);
+
+        // a later drop starts again from the shortest delay
+        dropped(8);
+        assertTrue(scheduler.nextDelay() <= ConnectionManager.BACKOFF_BASE_MS);
+    }
+
+    @Test
+    public void directReconnectSkipsDiscovery() {
+        stored = SENSOR;
+        manager.start();
+        stream();
+        dropped(8);
+        scheduler.advance(scheduler.nextDelay());
+        assertEquals("connect " + SENSOR, gatt.last());
+        connected();
+        assertEquals(ConnectionManager.State.SUBSCRIBING, manager.getState());
+        assertEquals(1, gatt.calls.stream().filter("discover"::equals).count());
+    }
+
+    @Test
+    public void timedOutConnectNeedsDiscoveryAgain() {
+        stored = SENSOR;
+        manager.start();
+        stream();
+        dropped(8);
+        scheduler.advance(scheduler.nextDelay());
+        // no answer: the pending connect is cancelled, and its gatt object with it
+        scheduler.advance(ConnectionManager.CONNECT_TIMEOUT_MS);
+        assertEquals(ConnectionManager.State.WAITING, manager.getState());
+        scheduler.advance(scheduler.nextDelay());
+        connected();
+        assertEquals(ConnectionManager.State.DISCOVERING, manager.getState());
+    }
+
+    @Test
+    public void failedDiscoveryOnReconnectRetries() {
+        stored = SENSOR;
+        manager.start();
+        stream();
+        dropped(8);
+        scheduler.advance(scheduler.nextDelay());
+        gatt.characteristicKnown = false;
+        connected();
+        // a transient GATT error, not the wrong device
+        manager.onServicesDiscovered(false);
+        assertEquals(ConnectionManager.State.WAITING, manager.getState());
+        assertEquals(SENSOR, manager.getAddress());
+        scheduler.advance(scheduler.nextDelay());
+        assertEquals("connect " + SENSOR, gatt.last());
+        stream();
+        assertEquals(List.of(false, true), reconnects);
+    }
+
+    @Test
+    public void backoffIsCappedAndJittered() {
+        long min = Long.MAX_VALUE, max = 0;
+        for (int i = 0; i < 200; i++) {
+            long d = manager.backoffDelay(30);
+            min = Math.min(min, d);
+            max = Math.max(max, d);
+        }
+        assertTrue(max <= ConnectionManager.BACKOFF_MAX_MS);
+        assertTrue(min >= ConnectionManager.BACKOFF_MAX_MS / 2);
+        assertTrue(max - min > ConnectionManager.BACKOFF_MAX_MS / 4);
+    }
+
+    @Test
+    public void wrongDeviceIsForgotten() {
+        stored = SENSOR;
+        manager.start();
+        manager.onConnected();
+        manager.onServicesDiscovered(false);
+        assertEquals(ConnectionManager.State.SCANNING, manager.getState());
+        assertNull(manager.getAddress());
+    }
+
+    @Test
+    public void stopCancelsPendingReconnect() {
+        stored = SENSOR;
+        manager.start();
+        stream();
+        dropped(8);
+        manager.stop();
+        assertEquals(ConnectionManager.State.IDLE, manager.getState());
+        int calls = gatt.calls.size();
+        scheduler.advance(120_000);
+        assertEquals(calls, gatt.calls.size());
+        // late callbacks from the radio are ignored
+        manager.onConnected();
+        dropped(0);
+        assertEquals(ConnectionManager.State.IDLE, manager.getState());
+    }
+}
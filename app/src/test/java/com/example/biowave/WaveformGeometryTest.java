@@ -0,0 +1,162 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WaveformGeometryTest {
+
+    @Test
+    public void scrollShowsNewestWindowFromLeftEdge() {
+        SweepGeometry g = new SweepGeometry();
+        g.configure(SweepGeometry.MODE_SCROLL, 800, 1600, 0);
+        assertEquals(1, g.layout(300));
+        assertEquals(0, g.runStart(0));
+        assertEquals(300, g.runEnd(0));
+
+        assertEquals(1, g.layout(5000));
+        assertEquals(4200, g.runStart(0));
+        assertEquals(5000, g.runEnd(0));
+        assertEquals(0f, g.runX(0), 0f);
+
+        g.dirty(4990, 5000);
+        assertEquals(0, g.dirtyFrom());
+        assertEquals(1600, g.dirtyTo());
+    }
+
+    @Test
+    public void sweepSplitsIntoCurrentAndPreviousPass() {
+        SweepGeometry g = new SweepGeometry();
+        g.configure(SweepGeometry.MODE_SWEEP, 1000, 1000, 10);
+        assertEquals(2, g.layout(2300));
+        // current pass from the left edge to the cursor
+        assertEquals(2000, g.runStart(0));
+        assertEquals(2300, g.runEnd(0));
+        assertEquals(0f, g.runX(0), 0f);
+        // previous pass resumes behind the erase bar
+        assertEquals(1310, g.runStart(1));
+        assertEquals(2000, g.runEnd(1));
+        assertEquals(310f, g.runX(1), 0f);
+    }
+
+    @Test
+    public void firstSweepHasNoPreviousPass() {
+        SweepGeometry g = new SweepGeometry();
+        g.configure(SweepGeometry.MODE_SWEEP, 800, 1600, 20);
+        assertEquals(1, g.layout(100));
+        assertEquals(0, g.runStart(0));
+    }
+
+    @Test
+    public void sweepDirtyStripCoversNewSamplesAndEraseBar() {
+        SweepGeometry g = new SweepGeometry();
+        g.configure(SweepGeometry.MODE_SWEEP, 800, 1600, 20);
+        g.dirty(1000, 1004);
+        // previous sample 999 sits at column 398, newest 1003 at 406, plus the 20px bar
+        assertEquals(398, g.dirtyFrom());
+        assertEquals(406 + 1 + 20 + 1, g.dirtyTo());
+        assertTrue(g.dirtyTo() - g.dirtyFrom() < 1600 / 10);
+    }
+
+    @Test
+    public void sweepDirtyStripWidensOnWrap() {
+        SweepGeometry g = new SweepGeometry();
+        g.configure(SweepGeometry.MODE_SWEEP, 800, 1600, 20);
+        g.dirty(1598, 1603);
+        assertEquals(0, g.dirtyFrom());
+        assertEquals(1600, g.dirtyTo());
+    }
+
+    @Test
+    public void decimatesToAtMostOneSegmentPerColumn() {
+        int capacity = 10_000;
+        float[] ring = new float[capacity];
+        for (int i = 0; i < capacity; i++) ring[i] = (float) Math.sin(i * 0.01);
+
+        ColumnDecimator d = new ColumnDecimator(500);
+        int n = d.build(ring, capacity, 0, capacity, 0f, 500f / capacity, 0, 500);
+        assertTrue(n / 4 <= 500);
+        assertTrue(n / 4 >= 499);
+
+        // each column spans the min/max of its samples (plus the carried neighbour)
+        float[] pts = d.points();
+        for (int k = 0; k < n; k += 4) {
+            int column = (int) pts[k];
+            float top = -pts[k + 1], bottom = -pts[k + 3];
+            int from = column * capacity / 500, to = (column + 1) * capacity / 500;
+            for (int i = from; i < to; i++) {
+                assertTrue(ring[i] <= top + 1e-6f && ring[i] >= bottom - 1f - 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void connectsSamplesWhenPixelsOutnumberThem() {
+        float[] ring = {0f, 1f, 2f, Float.NaN, 4f, 5f};
+        ColumnDecimator d = new ColumnDecimator(100);
+        d.setYMapping(100f, 10f);
+        int n = d.build(ring, ring.length, 0, 6, 0f, 10f, 0, 100);
+        // segments 0-1, 1-2 and 4-5; the gap breaks the line
+        assertEquals(12, n);
+        float[] pts = d.points();
+        assertEquals(0f, pts[0], 0f);
+        assertEquals(100f, pts[1], 0f);
+        assertEquals(10f, pts[2], 0f);
+        assertEquals(90f, pts[3], 0f);
+        assertEquals(40f, pts[8], 0f);
+    }
+
+    @Test
+    public void clipLimitsWorkToDirtyStrip() {
+        int capacity = 8000;
+        float[] ring = new float[capacity];
+        ColumnDecimator d = new ColumnDecimator(1600);
+        int n = d.build(ring, capacity, 0, capacity, 0f, 0.2f, 100, 120);
+        assertTrue(n / 4 <= 20);
+        for (int k = 0; k < n; k += 4) {
+            assertTrue(d.points()[k] >= 100 && d.points()[k] < 120);
+        }
+    }
+
+    @Test
+    public void readsWrappedRing() {
+        SignalBuffer buffer = new SignalBuffer(4);
+        for (int i = 0; i < 6; i++) buffer.append(i, 0);
+        ColumnDecimator d = new ColumnDecimator(100);
+        d.setYMapping(0f, -1f); // y == value
+        int n = d.build(buffer.channel(SignalBuffer.ECG), 4, 2, 6, 0f, 10f, 0, 100);
+        assertEquals(12, n);
+        assertEquals(2f, d.points()[1], 0f);
+        assertEquals(5f, d.points()[11], 0f);
+    }
+
+    @Test
+    public void extremesStayContinuousAndBreakAtGaps() {
+        ColumnDecimator d = new ColumnDecimator(100);
+        d.setYMapping(0f, -1f); // y == value
+        float[] min = {0f, 5f, Float.NaN, 1f};
+        float[] max = {1f, 6f, Float.NaN, 2f};
+        int n = d.buildExtremes(min, max, 4, 0f, 1f);
+        assertEquals(12, n);
+        float[] pts = d.points();
+        // the second column reaches down to the first one's maximum
+        assertEquals(6f, pts[5], 0f);
+        assertEquals(1f, pts[7], 0f);
+        // after the gap the column stands alone
+        assertEquals(3.5f, pts[8], 0f);
+        assertEquals(2f, pts[9], 0f);
+        assertEquals(1f, pts[11], 0f);
+    }
+
+    @Test
+    public void wideExtremeColumnsAreConnected() {
+        ColumnDecimator d = new ColumnDecimator(100);
+        d.setYMapping(0f, -1f);
+        float[] v = {1f, 2f, Float.NaN, 4f, 5f};
+        int n = d.buildExtremes(v, v, 5, 0f, 10f);
+        assertEquals(8, n);
+        assertEquals(5f, d.points()[0], 0f);
+        assertEquals(15f, d.points()[2], 0f);
+        assertEquals(5f, d.points()[7], 0f);
+    }
+}
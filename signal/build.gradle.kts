@@ -0,0 +1,26 @@
+// Plain-JVM signal processing shared by the app: parsing, buffering, scaling, filtering,
+// detection. Kept free of Android APIs so it can be unit tested and benchmarked on the JVM.
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+// ./gradlew :signal:jmh writes build/results/jmh/results.json; keep it per release to compare
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+}
@@ -0,0 +1,82 @@
+package com.example.biowave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-sample cost of an {@link AlarmEngine} as the pipeline drives it: SpO2 and temperature once
+ * a second, lead-off every sample, heart rate every beat and the block values every 256 samples,
+ * all wandering across the rules' thresholds so alarms keep going off and clearing. With the
+ * rules grouped by channel and one pending deadline, hundreds of rules should cost little more
+ * per sample than a handful.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AlarmBenchmark {
+
+    static final int RATE = 250;
+    static final int SAMPLES = 60 * RATE;
+
+    @Param({"6", "300"})
+    public int rules;
+
+    private final float[] spo2 = new float[SAMPLES], temp = new float[SAMPLES], heartRate = new float[SAMPLES];
+    private final float[] leadOff = new float[SAMPLES];
+    private AlarmEngine engine;
+    private int position;
+    private long transitions;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        String[] channels = {"hr", "spo2", "temp", "resp", "ptt", "ecgquality", "ppgquality", "leadoff", "irregular"};
+        float[] centres = {90, 93, 37.5f, 15, 200, 0.5f, 0.5f, 0.5f, 0.5f};
+        StringBuilder text = new StringBuilder(AlarmEngine.DEFAULT_RULES);
+        for (int i = 6; i < rules; i++) {
+            int c = random.nextInt(channels.length);
+            text.append("Rule ").append(i).append(": ").append(channels[c]).append(random.nextBoolean() ? " > " : " <= ")
+                    .append(centres[c] * (0.9f + 0.2f * random.nextFloat())).append(" for ").append(random.nextInt(20)).append(" s")
+                    .append(" hysteresis ").append(centres[c] * 0.02f).append('\n');
+        }
+        engine = AlarmEngine.compile(text.toString(), RATE, (rule, active) -> transitions++);
+        for (int i = 0; i < SAMPLES; i++) {
+            double t = i / (double) RATE;
+            boolean second = i % RATE == 0, beat = i % (RATE * 60 / 80) == 0;
+            spo2[i] = second ? (float) (93 + 5 * Math.sin(t / 7)) : Float.NaN;
+            temp[i] = second ? (float) (37.5 + 0.8 * Math.sin(t / 11)) : Float.NaN;
+            heartRate[i] = beat ? (float) (90 + 40 * Math.sin(t / 5)) : Float.NaN;
+            leadOff[i] = (i / (3 * RATE)) % 4 == 3 ? 1 : 0;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(256)
+    public long perSample() {
+        for (int i = 0; i < 256; i++) {
+            int p = position;
+            if (!Float.isNaN(spo2[p])) engine.update(AlarmEngine.SPO2, spo2[p]);
+            if (!Float.isNaN(temp[p])) engine.update(AlarmEngine.TEMPERATURE, temp[p]);
+            if (!Float.isNaN(heartRate[p])) engine.update(AlarmEngine.HEART_RATE, heartRate[p]);
+            engine.update(AlarmEngine.ECG_LEAD_OFF, leadOff[p]);
+            engine.tick();
+            if (++position == SAMPLES) position = 0;
+        }
+        float wander = (float) Math.sin(position * 1e-3);
+        engine.update(AlarmEngine.RESPIRATION, 15 + 5 * wander);
+        engine.update(AlarmEngine.PULSE_TRANSIT, 200 + 30 * wander);
+        engine.update(AlarmEngine.ECG_QUALITY, 0.5f + 0.4f * wander);
+        engine.update(AlarmEngine.PPG_QUALITY, 0.5f - 0.4f * wander);
+        return transitions;
+    }
+}
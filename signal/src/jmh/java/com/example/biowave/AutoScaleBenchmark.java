@@ -0,0 +1,75 @@
+package com.example.biowave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per sample of Y-axis auto-scaling at different window sizes, with one update per four
+ * samples as at 250 Hz and 60 fps: the incremental {@link AutoScaler} against a full rescan of
+ * the window, which is what the chart code did before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AutoScaleBenchmark {
+
+    private static final int SAMPLES = ParseBenchmark.SAMPLES;
+    private static final int SAMPLES_PER_FRAME = 4;
+
+    @Param({"200", "800", "3200", "12800"})
+    public int window;
+
+    private float[] values;
+    private AutoScaler scaler;
+    private SignalBuffer buffer;
+
+    @Setup
+    public void setup() {
+        values = new float[SAMPLES];
+        new SyntheticSignal(1).nextSamples(values, new float[SAMPLES], 0, SAMPLES);
+        scaler = AutoScaler.ecg(window, -3, 3);
+        buffer = new SignalBuffer(window);
+        for (int i = 0; i < window; i++) {
+            scaler.add(values[i % SAMPLES]);
+            buffer.append(values[i % SAMPLES], 0);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float incremental() {
+        for (int i = 0; i < SAMPLES; i++) {
+            scaler.add(values[i]);
+            if (i % SAMPLES_PER_FRAME == SAMPLES_PER_FRAME - 1) scaler.update();
+        }
+        return scaler.getUpper();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float fullScan() {
+        float upper = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            buffer.append(values[i], 0);
+            if (i % SAMPLES_PER_FRAME == SAMPLES_PER_FRAME - 1) {
+                float max = Float.NEGATIVE_INFINITY, min = Float.POSITIVE_INFINITY;
+                for (long k = buffer.getFirstIndex(); k < buffer.getNextIndex(); k++) {
+                    float v = buffer.get(SignalBuffer.ECG, k);
+                    if (v > max) max = v;
+                    if (v < min) min = v;
+                }
+                upper = Math.max(max * 1.1f, 3f) + Math.min(min * 0.9f, -3f);
+            }
+        }
+        return upper;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.biowave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link BeatClassifier} on a filtered synthetic ECG with 10 % PVCs and 10 % PACs, so three
+ * templates compete: per sample with the generator's beats handed over late as the detector
+ * would, and for a whole minute in one go. The difference to {@code samplesOnly} is what the
+ * beats cost; at 72 bpm there are about 200 samples per beat, so a beat may cost well over a
+ * hundred samples' worth and the classifier still keeps up many times over.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClassifierBenchmark {
+
+    static final int RATE = 250;
+    static final int SAMPLES = 60 * RATE;
+    // the detector reports a beat this many samples after its R peak
+    static final int REPORT_DELAY = 40;
+
+    private final float[] ecg = new float[SAMPLES];
+    // R peak of the beat reported at each sample, else -1
+    private final long[] beatAt = new long[SAMPLES];
+    private final int[] rrAt = new int[SAMPLES];
+    private BeatClassifier classifier, noBeats;
+    private int position;
+    private long base;
+    private long labels;
+
+    @Setup
+    public void setup() {
+        SyntheticSignal signal = new SyntheticSignal(1);
+        signal.setEctopy(0.1f, 0.1f);
+        float[] ppg = new float[SAMPLES];
+        Arrays.fill(beatAt, -1);
+        int next = 0;
+        long previous = -1;
+        for (int s = 0; s < SAMPLES; s += RATE) {
+            signal.nextSamples(ecg, ppg, s, RATE);
+            while (next < signal.getBeatCount() && signal.getBeatTime(next) * RATE + REPORT_DELAY < s + RATE) {
+                long r = Math.round(signal.getBeatTime(next++) * RATE);
+                beatAt[(int) (r + REPORT_DELAY)] = r;
+                rrAt[(int) (r + REPORT_DELAY)] = previous < 0 ? 0 : (int) (r - previous);
+                previous = r;
+            }
+        }
+        FilterChain.ecg(RATE, FilterChain.BANDWIDTH_MONITOR, FilterChain.MAINS_50HZ).process(ecg, 0, SAMPLES);
+        classifier = new BeatClassifier(RATE, (sample, label) -> labels++);
+        noBeats = new BeatClassifier(RATE, (sample, label) -> labels++);
+        // templates learnt before measuring
+        for (int i = 0; i < SAMPLES; i++) step(i);
+        base = SAMPLES;
+    }
+
+    private void step(int i) {
+        classifier.process(ecg[i]);
+        if (beatAt[i] >= 0) classifier.addBeat(base + beatAt[i], rrAt[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(256)
+    public long perSample() {
+        for (int i = 0; i < 256; i++) {
+            step(position);
+            if (++position == SAMPLES) {
+                position = 0;
+                base += SAMPLES;
+            }
+        }
+        return labels;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(256)
+    public void samplesOnly() {
+        for (int i = 0; i < 256; i++) {
+            noBeats.process(ecg[position]);
+            if (++position == SAMPLES) position = 0;
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long minute() {
+        for (int i = 0; i < SAMPLES; i++) {
+            step(position);
+            if (++position == SAMPLES) {
+                position = 0;
+                base += SAMPLES;
+            }
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.biowave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SampleCodec} speed in MB/s of raw samples (four float32 channels, 16 bytes per
+ * sample), encoding into memory and decoding from a file. The compression ratio is printed at
+ * setup. {@code trace} is {@code synthetic} or the path of a {@link StreamCapture} recorded with
+ * {@code --ez capture true}, e.g. {@code -p trace=/tmp/capture-1.bwcap}; a short capture is
+ * repeated to make up {@link #SAMPLES}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+
+    /** Four minutes at 250 Hz. */
+    static final int SAMPLES = 60_000;
+    static final int RAW_BYTES = SAMPLES * 16;
+
+    @Param({"synthetic"})
+    public String trace;
+
+    private final long[] times = new long[SAMPLES];
+    private final float[][] samples = new float[4][SAMPLES];
+    private int count;
+    private File file;
+
+    /** Discards the encoded bytes, counting them. */
+    private static final class Sink extends OutputStream {
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        StreamDecoder decoder = new StreamDecoder(new StreamDecoder.Listener() {
+            long time;
+
+            @Override
+            public void onFrame(float ecg, float ppg, float temp, float spo2) {
+                if (count == SAMPLES) return;
+                times[count] = time;
+                samples[0][count] = ecg;
+                samples[1][count] = ppg;
+                samples[2][count] = temp;
+                samples[3][count++] = spo2;
+            }
+
+            @Override
+            public void onParseError() {
+            }
+
+            @Override
+            public void onSequenceGap(int lostFrames, int lostSamples) {
+            }
+        });
+        if (trace.equals("synthetic")) {
+            SyntheticSignal signal = new SyntheticSignal(1);
+            signal.setBinary(true);
+            while (count < SAMPLES) decoder.feed(signal.nextNotification());
+            // one notification every 8 ms
+            for (int i = 0; i < SAMPLES; i++) times[i] = 1_700_000_000_000L + i / 2 * 8;
+        } else {
+            try (StreamCapture.Reader reader = new StreamCapture.Reader(new FileInputStream(trace))) {
+                for (byte[] data; count < SAMPLES && (data = reader.next()) != null; ) {
+                    int before = count;
+                    decoder.feed(data);
+                    for (int i = before; i < count; i++) times[i] = reader.getTimeMicros() / 1000;
+                }
+            }
+            if (count == 0) throw new IOException(trace + " holds no samples");
+            for (int i = count; i < SAMPLES; i++) {
+                int from = i % count;
+                times[i] = times[from] + (times[count - 1] - times[0] + 8) * (i / count);
+                for (int c = 0; c < 4; c++) samples[c][i] = samples[c][from];
+            }
+        }
+
+        file = File.createTempFile("codec", ".bwsc");
+        try (SampleCodec.Encoder encoder = new SampleCodec.Encoder(new BufferedOutputStream(new FileOutputStream(file)))) {
+            encode(encoder);
+        }
+        System.out.printf(Locale.US, "%n%s: %.2f bytes per sample, %.1fx smaller than float32%n",
+                trace, (double) file.length() / SAMPLES, (double) RAW_BYTES / file.length());
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    private void encode(SampleCodec.Encoder encoder) throws IOException {
+        for (int i = 0; i < SAMPLES; i++) {
+            encoder.append(times[i], samples[0][i], samples[1][i], samples[2][i], samples[3][i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAW_BYTES)
+    public long encode() throws IOException {
+        Sink sink = new Sink();
+        SampleCodec.Encoder encoder = new SampleCodec.Encoder(sink);
+        encode(encoder);
+        encoder.close();
+        return sink.bytes;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAW_BYTES)
+    public int decode(Blackhole blackhole) throws IOException {
+        try (SampleCodec.Reader reader = new SampleCodec.Reader(file)) {
+            return reader.read(0, SAMPLES, (index, time, ecg, ppg, temp, spo2) -> blackhole.consume(ecg + ppg));
+        }
+    }
+}
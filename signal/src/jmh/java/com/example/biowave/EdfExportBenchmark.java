@@ -0,0 +1,64 @@
+package com.example.biowave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained {@link EdfExporter} throughput: a four-hour session at 250 Hz, in the pipeline's
+ * 256-sample blocks with a beat annotation every 200 samples, written to a temporary file and
+ * finished. The score is in samples per millisecond; the sensor delivers 0.25, so the export
+ * must keep far ahead of it even on a phone, and the acquiring thread's share (copying into the
+ * batch) should stay a small fraction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EdfExportBenchmark {
+
+    static final int RATE = 250;
+    static final int BLOCK = 256;
+    static final int SESSION = 4 * 3600 * RATE / BLOCK * BLOCK;
+
+    private final float[] ecg = new float[BLOCK], ppg = new float[BLOCK];
+    private final float[] temp = new float[BLOCK], spo2 = new float[BLOCK];
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("export", ".edf");
+        SyntheticSignal signal = new SyntheticSignal(1);
+        signal.nextSamples(ecg, ppg, 0, BLOCK);
+        for (int i = 0; i < BLOCK; i++) {
+            temp[i] = i == 0 ? 36.6f : Float.NaN;
+            spo2[i] = i == 0 ? 97f : Float.NaN;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SESSION)
+    public long fourHourSession() throws IOException {
+        EdfExporter export = new EdfExporter(file, "Bench", 0, RATE, "None", "None");
+        for (int i = 0; i < SESSION; i += BLOCK) {
+            export.write(ecg, ppg, temp, spo2, BLOCK);
+            for (int j = i - i % 200 + 200; j < i + BLOCK; j += 200) export.annotate(j, 0, EdfExporter.BEAT);
+        }
+        export.close();
+        return file.length();
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.biowave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-sample cost of each step between a decoded sample and the display buffer, and of the
+ * whole chain as the ingestion thread and the UI frame callback run it, with and without
+ * {@link PipelineMetrics} instrumentation. With the GC profiler enabled,
+ * {@code gc.alloc.rate.norm} should read 0 B/op for every benchmark here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IngestBenchmark {
+
+    private static final int SAMPLES = ParseBenchmark.SAMPLES;
+    private static final float RATE = SyntheticSignal.DEFAULT_SAMPLE_RATE;
+    private static final int BLOCK = 256;
+
+    private float[] ecg, ppg;
+    private final float[] ecgBlock = new float[BLOCK], ppgBlock = new float[BLOCK];
+    private byte[][] binary;
+
+    private SampleRingBuffer ring;
+    private SignalBuffer signal;
+    private AutoScaler ecgScaler, ppgScaler;
+    private FilterChain ecgFilter, ppgFilter;
+    private QrsDetector detector;
+    private HeartRateTracker tracker;
+    private StreamDecoder decoder;
+    private SampleRingBuffer.Consumer toDisplay;
+    private int blockCount;
+    private PipelineMetrics metrics;
+    private JitterBuffer jitter;
+    private long clock;
+    private long arrival;
+
+    @Setup
+    public void setup() {
+        ecg = new float[SAMPLES];
+        ppg = new float[SAMPLES];
+        new SyntheticSignal(1).nextSamples(ecg, ppg, 0, SAMPLES);
+        binary = ParseBenchmark.notifications(true);
+        metrics = new PipelineMetrics();
+        jitter = new JitterBuffer(RATE, 4096);
+
+        ring = new SampleRingBuffer(4096);
+        signal = new SignalBuffer(1600);
+        ecgScaler = AutoScaler.ecg(800, -3, 3);
+        ppgScaler = AutoScaler.ppg(800, -7000, 7000);
+        ecgFilter = FilterChain.ecg(RATE, FilterChain.BANDWIDTH_MONITOR, FilterChain.MAINS_50HZ);
+        ppgFilter = FilterChain.ppg(RATE, FilterChain.BANDWIDTH_MONITOR);
+        tracker = new HeartRateTracker(RATE, 30);
+        detector = new QrsDetector(RATE, (index, rr) -> {
+            if (rr > 0) tracker.addRrSamples(rr);
+        });
+        toDisplay = (e, p, temp, spo2) -> {
+            signal.append(e, p);
+            ecgScaler.add(e);
+            ppgScaler.add(p);
+        };
+        // mirrors DevicePipeline: collect, filter a block, then hand over
+        decoder = new StreamDecoder(new StreamDecoder.Listener() {
+            @Override
+            public void onFrame(float e, float p, float temp, float spo2) {
+                ecgBlock[blockCount] = e;
+                ppgBlock[blockCount] = p;
+                if (++blockCount == BLOCK) flush();
+            }
+
+            @Override
+            public void onParseError() {
+            }
+
+            @Override
+            public void onSequenceGap(int lostFrames, int lostSamples) {
+            }
+        });
+    }
+
+    private void flush() {
+        int n = blockCount;
+        blockCount = 0;
+        ecgFilter.process(ecgBlock, 0, n);
+        ppgFilter.process(ppgBlock, 0, n);
+        for (int i = 0; i < n; i++) {
+            ring.offer(ecgBlock[i], -ppgBlock[i], Float.NaN, Float.NaN, arrival);
+            detector.process(ecgBlock[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int ringBufferOfferDrain() {
+        int drained = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            ring.offer(ecg[i], ppg[i], Float.NaN, Float.NaN);
+            // the UI drains about four samples per frame at 250 Hz
+            if ((i & 3) == 3) drained += ring.drain(toDisplay);
+        }
+        return drained;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long signalBufferAppend() {
+        long last = 0;
+        for (int i = 0; i < SAMPLES; i++) last = signal.append(ecg[i], ppg[i]);
+        return last;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float ecgFilterPerSample() {
+        float sum = 0;
+        for (int i = 0; i < SAMPLES; i++) sum += ecgFilter.process(ecg[i]);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void ecgFilterBlock(Blackhole bh) {
+        for (int i = 0; i < SAMPLES; i += BLOCK) {
+            int n = Math.min(BLOCK, SAMPLES - i);
+            System.arraycopy(ecg, i, ecgBlock, 0, n);
+            ecgFilter.process(ecgBlock, 0, n);
+        }
+        bh.consume(ecgBlock);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void ppgFilterBlock(Blackhole bh) {
+        for (int i = 0; i < SAMPLES; i += BLOCK) {
+            int n = Math.min(BLOCK, SAMPLES - i);
+            System.arraycopy(ppg, i, ppgBlock, 0, n);
+            ppgFilter.process(ppgBlock, 0, n);
+        }
+        bh.consume(ppgBlock);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public long qrsDetector() {
+        for (int i = 0; i < SAMPLES; i++) detector.process(ecg[i]);
+        return detector.getSampleCount();
+    }
+
+    /** Binary notifications in, display buffer and heart rate out. */
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float endToEnd() {
+        for (byte[] n : binary) {
+            decoder.feed(n);
+            if (blockCount > 0) flush();
+            ring.drain(toDisplay);
+        }
+        ecgScaler.update();
+        ppgScaler.update();
+        return tracker.getHeartRate();
+    }
+
+    /** Five-sample batches 20 ms apart into the jitter buffer, released at 60 Hz. */
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int jitterBuffer() {
+        int released = 0;
+        for (int i = 0; i < SAMPLES; i += 5) {
+            clock += 20_000_000;
+            for (int k = i; k < i + 5; k++) jitter.onSample(ecg[k], ppg[k], Float.NaN, Float.NaN, clock);
+            if (i % 20 == 0) released += jitter.release(clock, toDisplay);
+        }
+        return released;
+    }
+
+    /** {@link #endToEnd} plus the counters and histograms DevicePipeline and MainActivity record. */
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float endToEndInstrumented() {
+        for (byte[] n : binary) {
+            arrival = System.nanoTime();
+            metrics.onNotification(n.length);
+            decoder.feed(n);
+            int count = blockCount;
+            if (count > 0) flush();
+            metrics.onSamples(count);
+            metrics.setDroppedSamples(ring.getDroppedCount());
+            metrics.parseLatency.record(System.nanoTime() - arrival);
+            if (ring.drain(toDisplay) > 0) metrics.queueLatency.record(System.nanoTime() - ring.getLastDrainedTimestamp());
+            metrics.setQueueDepth(ring.size());
+        }
+        ecgScaler.update();
+        ppgScaler.update();
+        return tracker.getHeartRate();
+    }
+
+    /** One histogram record, including the clock read that usually comes with it. */
+    @Benchmark
+    public void histogramRecord() {
+        metrics.pixelLatency.record(System.nanoTime() - arrival);
+    }
+}
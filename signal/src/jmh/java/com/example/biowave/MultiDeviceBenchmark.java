@@ -0,0 +1,75 @@
+package com.example.biowave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to process one second of stream from each of {@code devices} sensors on a
+ * {@link PipelineExecutor} with as many workers as devices (up to the core count). While
+ * there are cores to spare, the score should stay roughly flat as devices are added, i.e.
+ * throughput scales with the number of devices.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MultiDeviceBenchmark {
+
+    // 125 notifications per second at 250 Hz
+    private static final int NOTIFICATIONS = 125;
+
+    @Param({"1", "2", "4", "8"})
+    public int devices;
+
+    private PipelineExecutor executor;
+    private PipelineExecutor.Channel[] channels;
+    private SampleRingBuffer[] rings;
+    private byte[][][] streams;
+    private final SampleRingBuffer.Consumer discard = (ecg, ppg, temp, spo2) -> { };
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int threads = Math.min(devices, Runtime.getRuntime().availableProcessors());
+        executor = new PipelineExecutor(threads, devices);
+        channels = new PipelineExecutor.Channel[devices];
+        rings = new SampleRingBuffer[devices];
+        streams = new byte[devices][NOTIFICATIONS][];
+        for (int d = 0; d < devices; d++) {
+            rings[d] = new SampleRingBuffer(4096);
+            channels[d] = executor.register(new DevicePipeline("device " + d, rings[d], new PipelineMetrics()), NOTIFICATIONS);
+            SyntheticSignal signal = new SyntheticSignal(d);
+            signal.setBinary(true);
+            for (int i = 0; i < NOTIFICATIONS; i++) streams[d][i] = signal.nextNotification();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public long oneSecondPerDevice() {
+        long[] target = new long[devices];
+        for (int d = 0; d < devices; d++) target[d] = channels[d].getProcessedCount() + NOTIFICATIONS;
+        // interleaved like notifications from several links
+        for (int i = 0; i < NOTIFICATIONS; i++) {
+            for (int d = 0; d < devices; d++) channels[d].post(streams[d][i]);
+        }
+        long samples = 0;
+        for (int d = 0; d < devices; d++) {
+            while (channels[d].getProcessedCount() < target[d]) Thread.onSpinWait();
+            samples += rings[d].drain(discard);
+        }
+        return samples;
+    }
+}
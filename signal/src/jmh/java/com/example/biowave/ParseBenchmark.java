@@ -0,0 +1,134 @@
+package com.example.biowave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode cost per sample of the BLE byte stream: legacy ASCII lines through {@link FrameParser}
+ * and {@link StreamDecoder}, binary frames through {@link StreamDecoder}, and the original
+ * String/regex/split parser for reference. Input arrives in 20-byte notifications.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ParseBenchmark {
+
+    static final int SAMPLES = 10_000;
+
+    private byte[][] ascii;
+    private byte[][] binary;
+    private FrameParser parser;
+    private StreamDecoder decoder;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        ascii = notifications(false);
+        binary = notifications(true);
+        parser = new FrameParser(new FrameParser.Listener() {
+            @Override
+            public void onFrame(float ecg, float ppg, float temp, float spo2) {
+                ParseBenchmark.this.blackhole.consume(ecg + ppg);
+            }
+
+            @Override
+            public void onParseError() {
+            }
+        });
+        decoder = new StreamDecoder(new StreamDecoder.Listener() {
+            @Override
+            public void onFrame(float ecg, float ppg, float temp, float spo2) {
+                ParseBenchmark.this.blackhole.consume(ecg + ppg);
+            }
+
+            @Override
+            public void onParseError() {
+            }
+
+            @Override
+            public void onSequenceGap(int lostFrames, int lostSamples) {
+            }
+        });
+    }
+
+    /** Exactly {@link #SAMPLES} samples in 20-byte notifications. */
+    static byte[][] notifications(boolean binaryFormat) {
+        float[] ecg = new float[SAMPLES], ppg = new float[SAMPLES];
+        new SyntheticSignal(1).nextSamples(ecg, ppg, 0, SAMPLES);
+        byte[] stream;
+        if (binaryFormat) {
+            BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+            stream = new byte[SAMPLES / 2 * BinaryFrame.frameSize(2, true)];
+            int p = 0;
+            for (int i = 0; i < SAMPLES; i += 2) p += encoder.encode(ecg, ppg, i, 2, 36.8f, 97f, stream, p);
+        } else {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < SAMPLES; i++) {
+                sb.append(String.format(Locale.US, "E%.3f;P%.2f;T36.80\n", ecg[i], ppg[i]));
+            }
+            stream = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        }
+        int count = (stream.length + 19) / 20;
+        byte[][] chunks = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            chunks[i] = Arrays.copyOfRange(stream, i * 20, Math.min(stream.length, i * 20 + 20));
+        }
+        return chunks;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void frameParserAscii() {
+        for (byte[] chunk : ascii) parser.feed(chunk);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void streamDecoderAscii() {
+        for (byte[] chunk : ascii) decoder.feed(chunk);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void streamDecoderBinary() {
+        for (byte[] chunk : binary) decoder.feed(chunk);
+    }
+
+    /** The parser MainActivity used before FrameParser existed. */
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public void legacySplitAscii(Blackhole bh) {
+        StringBuilder bleBuffer = new StringBuilder();
+        for (byte[] data : ascii) {
+            bleBuffer.append(new String(data, StandardCharsets.UTF_8));
+            int index;
+            while ((index = bleBuffer.indexOf("\n")) != -1) {
+                String msg = bleBuffer.substring(0, index);
+                bleBuffer.delete(0, index + 1);
+                msg = msg.replaceAll("[\\r\\x00-\\x1F\\x7F]", "").trim();
+                if (msg.startsWith("E") && msg.contains(";P")) {
+                    try {
+                        String[] parts = msg.split(";");
+                        float ecg = Float.parseFloat(parts[0].substring(1));
+                        float ppg = Float.parseFloat(parts[1].substring(1));
+                        bh.consume(ecg + ppg);
+                    } catch (Exception ignored) {
+                    }
+                }
+            }
+        }
+    }
+}
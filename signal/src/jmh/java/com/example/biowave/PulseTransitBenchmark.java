@@ -0,0 +1,73 @@
+package com.example.biowave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-sample cost of {@link PulseTransitTime} on the synthetic PPG, with the generator's R peaks
+ * handed over as the pipeline would. It runs for every sample of every sensor on the ingest
+ * thread next to the QRS detector, so it should cost about as little and allocate nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PulseTransitBenchmark {
+
+    static final int RATE = 250;
+    static final int SAMPLES = 60 * RATE;
+
+    private final float[] ppg = new float[SAMPLES];
+    // R peak sample of every sample that has one, else -1
+    private final double[] beatAt = new double[SAMPLES];
+    private PulseTransitTime ptt;
+    private int position;
+    // samples processed before this pass over the minute
+    private long base;
+
+    @Setup
+    public void setup() {
+        SyntheticSignal signal = new SyntheticSignal(1);
+        signal.setPulseArrival(0.35f);
+        float[] ecg = new float[SAMPLES];
+        Arrays.fill(beatAt, -1);
+        int next = 0;
+        for (int s = 0; s < SAMPLES; s += RATE) {
+            signal.nextSamples(ecg, ppg, s, RATE);
+            // the detector reports each beat about 0.2 s after its R peak
+            while (next < signal.getBeatCount() && signal.getBeatTime(next) * RATE + 50 < s + RATE) {
+                double r = signal.getBeatTime(next++) * RATE;
+                if (r + 50 >= 0 && r + 50 < SAMPLES) beatAt[(int) (r + 50)] = r;
+            }
+        }
+        ptt = new PulseTransitTime(RATE);
+        for (int i = 0; i < SAMPLES; i++) step(i);
+        base = SAMPLES;
+    }
+
+    private void step(int i) {
+        ptt.process(ppg[i]);
+        if (beatAt[i] >= 0) ptt.addBeat(base + beatAt[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(256)
+    public float perSample() {
+        for (int i = 0; i < 256; i++) {
+            step(position);
+            if (++position == SAMPLES) {
+                position = 0;
+                base += SAMPLES;
+            }
+        }
+        return ptt.getPtt();
+    }
+}
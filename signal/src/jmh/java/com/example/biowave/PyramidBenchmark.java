@@ -0,0 +1,81 @@
+package com.example.biowave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MinMaxPyramid} over a four-hour session at 250 Hz, spilling to a temporary directory:
+ * the cost of appending a sample, and of one frame of a 1080 px review at {@code span} seconds
+ * across, either ending at the newest sample or three hours back (which reads the spill files
+ * when zoomed in). A frame should stay far below the 16 ms vsync budget at every zoom.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PyramidBenchmark {
+
+    static final int RATE = 250;
+    static final long SESSION = 4L * 3600 * RATE;
+    static final int WIDTH = 1080;
+
+    @Param({"10", "600", "14400"})
+    public int span;
+
+    private MinMaxPyramid pyramid;
+    private File dir;
+    private final float[] min = new float[WIDTH], max = new float[WIDTH];
+    private final float[] block = new float[256];
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("pyramid").toFile();
+        pyramid = new MinMaxPyramid(MinMaxPyramid.levelsFor(24L * 3600 * RATE, 16384), 16384);
+        pyramid.spillTo(dir, "ecg");
+        SyntheticSignal signal = new SyntheticSignal(1);
+        float[] ppg = new float[block.length];
+        for (long i = 0; i < SESSION; i += block.length) {
+            signal.nextSamples(block, ppg, 0, block.length);
+            pyramid.append(block, 0, block.length);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pyramid.close();
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(256)
+    public long appendPerSample() {
+        pyramid.append(block, 0, block.length);
+        return pyramid.getSampleCount();
+    }
+
+    @Benchmark
+    public int frameLive() {
+        long to = pyramid.getSampleCount();
+        return pyramid.read(to - (long) span * RATE, to, WIDTH, min, max);
+    }
+
+    @Benchmark
+    public int frameThreeHoursBack() {
+        long to = pyramid.getSampleCount() - 3L * 3600 * RATE;
+        return pyramid.read(to - (long) span * RATE, to, WIDTH, min, max);
+    }
+}
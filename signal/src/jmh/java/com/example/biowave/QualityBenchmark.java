@@ -0,0 +1,51 @@
+package com.example.biowave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-sample cost of one {@link SignalQuality} channel on the synthetic ECG, raw and filtered as
+ * the pipeline passes them. It runs for every sample of both channels of every sensor, so it
+ * should stay well under a microsecond (a few times the filter chain) and allocate nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QualityBenchmark {
+
+    static final int RATE = 250;
+    static final int SAMPLES = 60 * RATE;
+
+    private final float[] raw = new float[SAMPLES], filtered = new float[SAMPLES];
+    private SignalQuality quality;
+    private int position;
+
+    @Setup
+    public void setup() {
+        float[] ppg = new float[SAMPLES];
+        new SyntheticSignal(1).nextSamples(raw, ppg, 0, SAMPLES);
+        System.arraycopy(raw, 0, filtered, 0, SAMPLES);
+        FilterChain.ecg(RATE, FilterChain.BANDWIDTH_MONITOR, FilterChain.MAINS_50HZ).process(filtered, 0, SAMPLES);
+        quality = SignalQuality.ecg(RATE);
+        for (int i = 0; i < SAMPLES; i++) quality.add(raw[i], filtered[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(256)
+    public int perSample() {
+        int flags = 0;
+        for (int i = 0; i < 256; i++) {
+            flags |= quality.add(raw[position], filtered[position]);
+            if (++position == SAMPLES) position = 0;
+        }
+        return flags;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.biowave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PpgSpectrum}: the worker's latency per update (five 512-point segments and the peak
+ * search), the FFT kernel alone, and what the acquiring thread pays per sample. An update every
+ * five seconds has to stay far below that, and the per-sample part near nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpectrumBenchmark {
+
+    static final int RATE = 250;
+
+    private final float[] history = new float[PpgSpectrum.HISTORY];
+    private final float[] samples = new float[60 * RATE];
+    private final float[] re = new float[512], im = new float[512];
+    private final Fft fft = new Fft(512);
+    // analysed inline, and fed sample by sample with its own worker
+    private PpgSpectrum spectrum, streaming;
+    private int position;
+
+    @Setup
+    public void setup() {
+        SyntheticSignal signal = new SyntheticSignal(1);
+        signal.setRespiration(15, 0.3f);
+        signal.nextSamples(new float[samples.length], samples, 0, samples.length);
+        // decimated like the engine does
+        for (int i = 0; i < history.length; i++) {
+            float sum = 0;
+            for (int j = 0; j < 10; j++) sum += samples[(i * 10 + j) % samples.length];
+            history[i] = sum / 10;
+        }
+        spectrum = new PpgSpectrum(RATE);
+        streaming = new PpgSpectrum(RATE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        streaming.close();
+    }
+
+    @Benchmark
+    public float update() {
+        spectrum.analyse(history);
+        return spectrum.getPulseRate();
+    }
+
+    @Benchmark
+    public float fft512() {
+        System.arraycopy(history, 0, re, 0, re.length);
+        Arrays.fill(im, 0f);
+        fft.transform(re, im);
+        return re[1];
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(256)
+    public void perSample() {
+        for (int i = 0; i < 256; i++) {
+            streaming.add(samples[position]);
+            if (++position == samples.length) position = 0;
+        }
+    }
+}
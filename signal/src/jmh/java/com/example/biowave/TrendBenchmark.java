@@ -0,0 +1,44 @@
+package com.example.biowave;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading a {@link VitalTrend} for a trend chart a screen wide, over spans from a
+ * minute to a week of one reading a second. The level is chosen so the cost stays about the same
+ * whatever the span.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrendBenchmark {
+
+    static final int COLUMNS = 1000;
+    static final long START = 1_699_999_200_000L;
+    static final long WEEK = 7 * 24 * 3_600_000L;
+
+    @Param({"60000", "3600000", "86400000", "604800000"})
+    public long span;
+
+    private final VitalTrend trend = new VitalTrend();
+    private final float[] min = new float[COLUMNS], avg = new float[COLUMNS], max = new float[COLUMNS];
+
+    @Setup
+    public void setup() {
+        for (long t = 0; t < WEEK; t += 1000) trend.add(START + t, 36.5f + (float) Math.sin(t * 1e-7));
+    }
+
+    @Benchmark
+    public float read() {
+        trend.read(START + WEEK - span, START + WEEK, COLUMNS, min, avg, max);
+        return avg[COLUMNS - 1];
+    }
+}
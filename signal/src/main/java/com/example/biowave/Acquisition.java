@@ -0,0 +1,215 @@
+package com.example.biowave;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * All sensors being acquired, independent of any UI: each {@link Device} couples a
+ * {@link SignalSource} to its {@link DevicePipeline} on a shared {@link PipelineExecutor}.
+ * <p>
+ * A UI takes part by attaching an {@link Observer}, which turns on the display feed (every
+ * pipeline's ring buffer) and passes on status changes and disconnects. Without an observer
+ * the pipelines keep decoding, recording and detecting beats but queue nothing for display, so
+ * a hidden or recreated UI costs no samples and no chart work. Rings must be drained by one
+ * thread, the one that calls {@link #attach}.
+ */
+public class Acquisition {
+
+    /** UI feed; called on source threads, keep it short. */
+    public interface Observer {
+        void onStatus(Device device, String status);
+
+        /** The device's stream was interrupted; its pipeline has been reset. */
+        void onDisconnected(Device device);
+    }
+
+    /** Sees every notification of one device before it is queued, e.g. to capture the stream. */
+    public interface Tap {
+        void onData(byte[] data);
+    }
+
+    private final PipelineExecutor executor;
+    private final List<Device> devices = new ArrayList<>();
+    private volatile Observer observer;
+
+    private static final SampleRingBuffer.Consumer DISCARD = (ecg, ppg, temp, spo2) -> { };
+
+    /** @see PipelineExecutor#PipelineExecutor(int, int) */
+    public Acquisition(int threads, int maxDevices) {
+        executor = new PipelineExecutor(threads, maxDevices);
+    }
+
+    /** Adds a device whose display ring holds {@code ringCapacity} samples; does not start it. */
+    public synchronized Device addDevice(String name, SignalSource source, int ringCapacity, int mailboxCapacity) {
+        DevicePipeline pipeline = new DevicePipeline(name, new SampleRingBuffer(ringCapacity), new PipelineMetrics());
+        pipeline.setDisplayEnabled(observer != null);
+        Device device = new Device(source, pipeline, executor.register(pipeline, mailboxCapacity));
+        devices.add(device);
+        return device;
+    }
+
+    public synchronized List<Device> getDevices() {
+        return Collections.unmodifiableList(new ArrayList<>(devices));
+    }
+
+    /**
+     * Starts the display feed for {@code o}, replacing any previous observer. Samples queued
+     * before the last {@link #detach} are discarded first, so the UI starts with live data.
+     */
+    public synchronized void attach(Observer o) {
+        for (Device d : devices) {
+            d.pipeline.getRingBuffer().drain(DISCARD);
+            d.pipeline.setDisplayEnabled(true);
+        }
+        observer = o;
+    }
+
+    /** Stops the display feed if {@code o} is the attached observer. */
+    public synchronized void detach(Observer o) {
+        if (observer != o) return;
+        observer = null;
+        for (Device d : devices) d.pipeline.setDisplayEnabled(false);
+    }
+
+    public boolean isAttached() {
+        return observer != null;
+    }
+
+    public synchronized void start() {
+        for (Device d : devices) d.start();
+    }
+
+    public synchronized void stop() {
+        for (Device d : devices) d.stop();
+    }
+
+    /** True while any device's source is running. */
+    public synchronized boolean isRunning() {
+        for (Device d : devices) if (d.source.isRunning()) return true;
+        return false;
+    }
+
+    public synchronized void setBandwidth(int bandwidth) {
+        for (Device d : devices) d.execute(() -> d.pipeline.setBandwidth(bandwidth));
+    }
+
+    /** Flushes every flight recorder to storage, on the pipeline threads. */
+    public synchronized void sync() {
+        for (Device d : devices) d.execute(d.pipeline::sync);
+    }
+
+    /**
+     * Stops the sources, lets the pipelines finish what is queued and closes their recorders.
+     * Waits up to {@code timeoutMs}; returns false if the pipelines did not finish in time.
+     *
+     * @throws IOException the first recorder that failed to close
+     */
+    public boolean close(long timeoutMs) throws IOException, InterruptedException {
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        synchronized (this) {
+            observer = null;
+            for (Device d : devices) {
+                d.stop();
+                d.execute(() -> {
+                    try {
+                        d.pipeline.close();
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+            }
+        }
+        executor.shutdown();
+        boolean done = executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+        if (failure.get() != null) throw failure.get();
+        return done;
+    }
+
+    /** One sensor: its source, its pipeline and the mailbox between them. */
+    public final class Device implements SignalSource.Listener {
+
+        private final SignalSource source;
+        private final DevicePipeline pipeline;
+        private final PipelineExecutor.Channel channel;
+        private volatile Tap tap;
+        private volatile String status = "";
+
+        private Device(SignalSource source, DevicePipeline pipeline, PipelineExecutor.Channel channel) {
+            this.source = source;
+            this.pipeline = pipeline;
+            this.channel = channel;
+        }
+
+        public void start() {
+            if (!source.isRunning()) source.start(this);
+        }
+
+        public void stop() {
+            source.stop();
+        }
+
+        /** Runs {@code task} on the pipeline's thread, after everything queued before it. */
+        public void execute(Runnable task) {
+            channel.execute(task);
+        }
+
+        public void setTap(Tap tap) {
+            this.tap = tap;
+        }
+
+        @Override
+        public void onData(byte[] data) {
+            Tap t = tap;
+            if (t != null) t.onData(data);
+            channel.post(data);
+        }
+
+        @Override
+        public void onStatus(String status) {
+            this.status = status;
+            Observer o = observer;
+            if (o != null) o.onStatus(this, status);
+        }
+
+        @Override
+        public void onDisconnected() {
+            channel.execute(pipeline::reset);
+            Observer o = observer;
+            if (o != null) o.onDisconnected(this);
+        }
+
+        public String getName() {
+            return pipeline.getName();
+        }
+
+        public SignalSource getSource() {
+            return source;
+        }
+
+        public DevicePipeline getPipeline() {
+            return pipeline;
+        }
+
+        public PipelineExecutor.Channel getChannel() {
+            return channel;
+        }
+
+        /** Shorthand for the pipeline's ring, which only the attached UI drains. */
+        public SampleRingBuffer getRingBuffer() {
+            return pipeline.getRingBuffer();
+        }
+
+        public PipelineMetrics getMetrics() {
+            return pipeline.getMetrics();
+        }
+
+        /** The source's last status message, for a UI that attaches later. */
+        public String getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.biowave;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Threshold alarms on the vitals and on values derived from the waveforms, compiled from
+ * declarative rules such as
+ * <pre>
+ * Low SpO2: spo2 &lt; 90 for 10 s hysteresis 2 high
+ * </pre>
+ * one per line: a name, a channel ({@code hr spo2 temp resp ptt ecgquality ppgquality leadoff
+ * irregular beatgap}), a comparison ({@code < <= > >=}), a threshold, an optional sustain time,
+ * an optional hysteresis and a priority ({@code low medium high}). Blank lines and lines starting
+ * with {@code #} are skipped.
+ * <p>
+ * An alarm goes off once its condition has held for the sustain time and clears once the value
+ * has stayed beyond the threshold by the hysteresis for as long, so a value hovering at the
+ * threshold neither flickers nor re-triggers. An unknown value (NaN) starts nothing and clears
+ * nothing. Time is counted in samples: {@link #tick} once per sample.
+ * <p>
+ * The rules compile into flat arrays grouped by channel, every comparison turned into "greater
+ * than" by a sign, so {@link #update} only looks at the rules of a channel whose value changed
+ * and {@link #tick} only at a single deadline, the earliest pending one. Nothing is allocated or
+ * locked after compiling. Not thread-safe: updates, ticks and the listener run on the acquiring
+ * thread.
+ */
+public class AlarmEngine {
+
+    public interface Listener {
+        /** An alarm went off ({@code active}) or cleared; {@code rule} indexes the getters. */
+        void onAlarm(int rule, boolean active);
+    }
+
+    public static final int HEART_RATE = 0, SPO2 = 1, TEMPERATURE = 2, RESPIRATION = 3, PULSE_TRANSIT = 4,
+            ECG_QUALITY = 5, PPG_QUALITY = 6, ECG_LEAD_OFF = 7, IRREGULAR_RHYTHM = 8, BEAT_GAP = 9;
+    private static final String[] CHANNELS = {"hr", "spo2", "temp", "resp", "ptt", "ecgquality", "ppgquality", "leadoff",
+            "irregular", "beatgap"};
+    public static final int LOW = 0, MEDIUM = 1, HIGH = 2;
+    private static final String[] PRIORITIES = {"low", "medium", "high"};
+
+    /** What the app watches unless configured otherwise. */
+    public static final String DEFAULT_RULES = ""
+            + "# name: channel comparison threshold [for <seconds> s] [hysteresis <delta>] priority\n"
+            + "Low SpO2: spo2 < 90 for 10 s hysteresis 2 high\n"
+            + "Tachycardia: hr > 120 for 10 s hysteresis 5 medium\n"
+            + "Bradycardia: hr < 45 for 10 s hysteresis 5 medium\n"
+            + "Asystole: beatgap >= 4 high\n"
+            + "Fever: temp >= 38 for 60 s hysteresis 0.3 low\n"
+            + "ECG lead off: leadoff >= 1 for 2 s medium\n"
+            + "Irregular rhythm: irregular >= 1 for 30 s low\n";
+
+    private static final byte CLEAR = 0, RAISING = 1, ACTIVE = 2, CLEARING = 3;
+
+    private final Listener listener;
+    private final String[] names;
+    private final int[] priorities;
+    // rules of channel c are [channelStart[c], channelStart[c + 1])
+    private final int[] channelStart = new int[CHANNELS.length + 1];
+    // condition: sign * value > level, or >= if inclusive; cleared below release
+    private final float[] sign, level, release;
+    private final boolean[] inclusive;
+    private final int[] sustain;
+
+    private final float[] values = new float[CHANNELS.length];
+    private final byte[] state;
+    private final long[] due;
+    private long now, nextDue = Long.MAX_VALUE;
+    private int activeCount;
+
+    private AlarmEngine(List<Rule> rules, float sampleRate, Listener listener) {
+        this.listener = listener;
+        int n = rules.size();
+        names = new String[n];
+        priorities = new int[n];
+        sign = new float[n];
+        level = new float[n];
+        release = new float[n];
+        inclusive = new boolean[n];
+        sustain = new int[n];
+        state = new byte[n];
+        due = new long[n];
+        Arrays.fill(values, Float.NaN);
+        int r = 0;
+        for (int c = 0; c < CHANNELS.length; c++) {
+            channelStart[c] = r;
+            for (Rule rule : rules) {
+                if (rule.channel != c) continue;
+                names[r] = rule.name;
+                priorities[r] = rule.priority;
+                boolean above = rule.comparison.charAt(0) == '>';
+                sign[r] = above ? 1 : -1;
+                level[r] = sign[r] * rule.threshold;
+                release[r] = level[r] - rule.hysteresis;
+                inclusive[r] = rule.comparison.length() == 2;
+                sustain[r] = Math.round(rule.seconds * sampleRate);
+                r++;
+            }
+        }
+        channelStart[CHANNELS.length] = r;
+    }
+
+    private static final class Rule {
+        String name;
+        int channel, priority = MEDIUM;
+        String comparison;
+        float threshold, seconds, hysteresis;
+    }
+
+    /**
+     * Compiles {@code rules}, timing them at {@code sampleRate} ticks per second.
+     *
+     * @throws IllegalArgumentException naming the line of a rule that doesn't parse
+     */
+    public static AlarmEngine compile(String rules, float sampleRate, Listener listener) {
+        List<Rule> parsed = new ArrayList<>();
+        String[] lines = rules.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            try {
+                parsed.add(parse(line));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("line " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+        return new AlarmEngine(parsed, sampleRate, listener);
+    }
+
+    private static Rule parse(String line) {
+        int colon = line.indexOf(':');
+        if (colon <= 0) throw new IllegalArgumentException("expected 'name: condition'");
+        Rule rule = new Rule();
+        rule.name = line.substring(0, colon).trim();
+        String[] t = line.substring(colon + 1).trim().toLowerCase(Locale.US).split("\\s+");
+        if (t.length < 3) throw new IllegalArgumentException("expected 'channel comparison threshold'");
+        rule.channel = indexOf(CHANNELS, t[0], "channel");
+        if (!t[1].matches("[<>]=?")) throw new IllegalArgumentException("unknown comparison '" + t[1] + "'");
+        rule.comparison = t[1];
+        rule.threshold = number(t[2]);
+        int p = 3;
+        if (p < t.length && t[p].equals("for")) {
+            if (p + 2 >= t.length || !t[p + 2].equals("s")) throw new IllegalArgumentException("expected 'for <seconds> s'");
+            rule.seconds = number(t[p + 1]);
+            p += 3;
+        }
+        if (p < t.length && t[p].equals("hysteresis")) {
+            if (p + 1 >= t.length) throw new IllegalArgumentException("expected 'hysteresis <delta>'");
+            rule.hysteresis = number(t[p + 1]);
+            p += 2;
+        }
+        if (p < t.length) rule.priority = indexOf(PRIORITIES, t[p++], "priority");
+        if (p < t.length) throw new IllegalArgumentException("unexpected '" + t[p] + "'");
+        if (rule.seconds < 0 || rule.hysteresis < 0) throw new IllegalArgumentException("negative sustain or hysteresis");
+        return rule;
+    }
+
+    private static int indexOf(String[] names, String name, String what) {
+        for (int i = 0; i < names.length; i++) if (names[i].equals(name)) return i;
+        throw new IllegalArgumentException("unknown " + what + " '" + name + "'");
+    }
+
+    private static float number(String s) {
+        try {
+            return Float.parseFloat(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number: '" + s + "'");
+        }
+    }
+
+    /** Sets the current value of {@code channel}, NaN if unknown; only its rules are evaluated. */
+    public void update(int channel, float value) {
+        if (Float.compare(values[channel], value) == 0) return;
+        values[channel] = value;
+        for (int r = channelStart[channel], end = channelStart[channel + 1]; r < end; r++) {
+            float v = sign[r] * value;
+            boolean on = v > level[r] || inclusive[r] && v == level[r];
+            switch (state[r]) {
+                case CLEAR:
+                    if (on) start(r, RAISING);
+                    break;
+                case RAISING:
+                    if (!on) state[r] = CLEAR;
+                    break;
+                case ACTIVE:
+                    if (v < release[r]) start(r, CLEARING);
+                    break;
+                default:
+                    if (!(v < release[r])) state[r] = ACTIVE;
+                    break;
+            }
+        }
+    }
+
+    private void start(int r, byte pending) {
+        state[r] = pending;
+        due[r] = now + sustain[r];
+        if (sustain[r] == 0) fire(r);
+        else if (due[r] < nextDue) nextDue = due[r];
+    }
+
+    /** Advances the clock by one sample. */
+    public void tick() {
+        if (++now >= nextDue) expire();
+    }
+
+    /** Advances the clock by {@code samples}, e.g. over lost frames. */
+    public void advance(int samples) {
+        now += samples;
+        if (now >= nextDue) expire();
+    }
+
+    // Fires every pending transition that is due and finds the next deadline
+    private void expire() {
+        long next = Long.MAX_VALUE;
+        for (int r = 0; r < state.length; r++) {
+            if (state[r] != RAISING && state[r] != CLEARING) continue;
+            if (due[r] <= now) fire(r);
+            else if (due[r] < next) next = due[r];
+        }
+        nextDue = next;
+    }
+
+    private void fire(int r) {
+        boolean active = state[r] == RAISING;
+        state[r] = active ? ACTIVE : CLEAR;
+        activeCount += active ? 1 : -1;
+        listener.onAlarm(r, active);
+    }
+
+    public int getRuleCount() {
+        return names.length;
+    }
+
+    public String getName(int rule) {
+        return names[rule];
+    }
+
+    /** {@link #LOW}, {@link #MEDIUM} or {@link #HIGH}. */
+    public int getPriority(int rule) {
+        return priorities[rule];
+    }
+
+    /** Whether the alarm is on, including while it waits out its sustain time to clear. */
+    public boolean isActive(int rule) {
+        return state[rule] >= ACTIVE;
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /** The active rule of the highest priority, the first such, or -1 if none is active. */
+    public int getHighestActive() {
+        int best = -1;
+        for (int r = 0; r < state.length && activeCount > 0; r++) {
+            if (state[r] >= ACTIVE && (best < 0 || priorities[r] > priorities[best])) best = r;
+        }
+        return best;
+    }
+
+    /** "low", "medium" or "high". */
+    public static String describePriority(int priority) {
+        return PRIORITIES[priority];
+    }
+}
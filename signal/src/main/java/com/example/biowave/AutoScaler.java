@@ -0,0 +1,149 @@
+package com.example.biowave;
+
+/**
+ * Incremental Y-axis auto-scaling for one chart channel.
+ * <p>
+ * The target bounds follow the rules the charts always used (10% margin, ECG never narrower
+ * than its default range, PPG flat-line guard) but are computed from a {@link SlidingMinMax}
+ * in O(1) per sample instead of scanning the visible window. On top of that the applied bounds
+ * have hysteresis: they expand (with some headroom) as soon as the signal leaves them, and only
+ * contract once the signal has stayed well inside for a while, so the axis does not jitter.
+ */
+public class AutoScaler {
+
+    private static final float MARGIN = 0.1f;          // 10% padding, as before
+    private static final float EXPAND_HEADROOM = 0.05f; // extra span added when growing
+    private static final float CONTRACT_RATIO = 0.6f;   // shrink once the target is this much smaller
+
+    private final boolean isEcg;
+    private final float defaultMin, defaultMax;
+    private final SlidingMinMax range;
+    private final int contractDelay;
+
+    private float targetLower, targetUpper;
+    private float lower, upper;
+    private boolean applied = false;
+    private int pendingSamples = 0;
+    private int contractTimer = 0;
+
+    private AutoScaler(boolean isEcg, int window, float defaultMin, float defaultMax) {
+        this.isEcg = isEcg;
+        this.defaultMin = defaultMin;
+        this.defaultMax = defaultMax;
+        this.range = new SlidingMinMax(window);
+        this.contractDelay = window / 2;
+        lower = defaultMin;
+        upper = defaultMax;
+    }
+
+    /** ECG: keeps at least {@code [defaultMin, defaultMax]} visible. */
+    public static AutoScaler ecg(int window, float defaultMin, float defaultMax) {
+        return new AutoScaler(true, window, defaultMin, defaultMax);
+    }
+
+    /** PPG: fits the data on both sides, falling back to the defaults while empty. */
+    public static AutoScaler ppg(int window, float defaultMin, float defaultMax) {
+        return new AutoScaler(false, window, defaultMin, defaultMax);
+    }
+
+    public void add(float value) {
+        range.add(value);
+        pendingSamples++;
+    }
+
+    /**
+     * Recomputes the target and moves the applied bounds if the hysteresis rules say so.
+     * Returns true when {@link #getLower()}/{@link #getUpper()} changed and the axis needs a relayout.
+     */
+    public boolean update() {
+        int elapsed = pendingSamples;
+        pendingSamples = 0;
+        computeTarget();
+
+        if (!applied) {
+            return apply(targetLower, targetUpper);
+        }
+
+        if (targetLower < lower || targetUpper > upper) {
+            float headroom = (targetUpper - targetLower) * EXPAND_HEADROOM;
+            float newLower = targetLower < lower ? targetLower - headroom : lower;
+            float newUpper = targetUpper > upper ? targetUpper + headroom : upper;
+            contractTimer = 0;
+            return apply(newLower, newUpper);
+        }
+
+        if (targetUpper - targetLower < CONTRACT_RATIO * (upper - lower)) {
+            contractTimer += elapsed;
+            if (contractTimer >= contractDelay) {
+                contractTimer = 0;
+                return apply(targetLower, targetUpper);
+            }
+        } else {
+            contractTimer = 0;
+        }
+        return false;
+    }
+
+    private boolean apply(float newLower, float newUpper) {
+        boolean changed = !applied || newLower != lower || newUpper != upper;
+        lower = newLower;
+        upper = newUpper;
+        applied = true;
+        return changed;
+    }
+
+    /** Target bounds for the current window without hysteresis, as the old full scan computed them. */
+    void computeTarget() {
+        if (range.isEmpty()) {
+            targetLower = defaultMin;
+            targetUpper = defaultMax;
+            return;
+        }
+        float maxY = range.max();
+        float minY = range.min();
+
+        if (isEcg) {
+            targetUpper = Math.max(maxY * (1 + MARGIN), defaultMax);
+            targetLower = Math.min(minY * (1 - MARGIN), defaultMin);
+        } else {
+            float up = maxY * (1 + MARGIN);
+            float low = minY * (1 - MARGIN);
+            // flat line: provide a tiny range
+            if (up == low) {
+                up += 1f;
+                low -= 1f;
+            }
+            targetUpper = up;
+            targetLower = low;
+        }
+    }
+
+    /** Forces the next {@link #update()} to apply the target directly, e.g. after re-enabling. */
+    public void invalidate() {
+        applied = false;
+        contractTimer = 0;
+    }
+
+    public void clear() {
+        range.clear();
+        invalidate();
+        lower = defaultMin;
+        upper = defaultMax;
+    }
+
+    public float getLower() {
+        return lower;
+    }
+
+    public float getUpper() {
+        return upper;
+    }
+
+    float getTargetLower() {
+        return targetLower;
+    }
+
+    float getTargetUpper() {
+        return targetUpper;
+    }
+}
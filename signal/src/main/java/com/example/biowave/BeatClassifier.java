@@ -0,0 +1,397 @@
+package com.example.biowave;
+
+/**
+ * Live beat labelling (normal, premature ventricular, premature atrial) and a rhythm-level
+ * irregularity check for atrial fibrillation, from the filtered ECG and the R peaks of the
+ * {@link QrsDetector}.
+ * <p>
+ * Each beat's QRS (100 ms before to 150 ms after the R peak) is normalised to zero mean and unit
+ * energy and matched against a small cache of morphology templates by normalised
+ * cross-correlation, at lags of up to 12 ms to absorb jitter in the R peak. Since both vectors
+ * are normalised, the correlation is 1 - d/2 for their squared distance d, so a comparison is
+ * abandoned as soon as its partial distance can no longer beat the best match so far; the
+ * dominant template is tried first, which usually settles the bound after one comparison. A
+ * matched template follows its beats by a running average; a beat that matches none starts a
+ * cluster of its own, replacing the least recently seen one when the cache is full. The
+ * template with most recent beats is the patient's normal morphology.
+ * <p>
+ * Beats of the normal morphology are normal, or PAC-like if they come more than 15 % early
+ * against the average normal RR interval. Beats of another morphology whose QRS is half as wide
+ * again as the normal one are PVCs; anything else is unknown, as is every beat while the first
+ * templates are learnt. The rhythm is irregular when the successive differences of the last 32
+ * RR intervals, trimmed of their largest quarter so isolated ectopic beats don't count, are
+ * large and their turning-point ratio looks random; intervals next to a PVC are left out. While
+ * the rhythm is irregular, early beats are not called PAC.
+ * <p>
+ * The QRS detector reports a beat a little late, so beats are classified once the samples after
+ * them have arrived; the listener hears of each beat in order. Every sample costs O(1), a beat a
+ * few templates' comparisons, and nothing is allocated after construction. Not thread-safe.
+ */
+public class BeatClassifier {
+
+    public interface Listener {
+        /**
+         * @param sampleIndex R peak as reported to {@link #addBeat}
+         * @param label       {@link #NORMAL}, {@link #PVC}, {@link #PAC} or {@link #UNKNOWN}
+         */
+        void onBeatClassified(long sampleIndex, int label);
+    }
+
+    public static final int NORMAL = 0, PVC = 1, PAC = 2, UNKNOWN = 3;
+    private static final String[] NAMES = {"Normal", "PVC", "PAC", "Unknown"};
+
+    private static final float PRE_S = 0.1f, POST_S = 0.15f;
+    private static final float MAX_LAG_S = 0.012f;
+    // how far back a late beat can still be found in the ring
+    private static final float HISTORY_S = 4f;
+    private static final int MAX_TEMPLATES = 6;
+    private static final float MATCH = 0.9f;
+    // templates average over this many beats once full
+    private static final int AVERAGE_BEATS = 32;
+    // recent beats per template fade by this factor per beat
+    private static final float DECAY = 0.99f;
+    private static final int LEARNING_BEATS = 8;
+    // the QRS width is where the template exceeds this fraction of its peak
+    private static final float WIDTH_LEVEL = 0.3f;
+    private static final float WIDE = 1.5f;
+    private static final float PREMATURE = 0.85f;
+    private static final float RR_RATE = 0.125f;
+    private static final int RHYTHM_WINDOW = 32;
+    private static final int MIN_INTERVALS = 16;
+    private static final float TRIM = 0.25f;
+    private static final float MIN_IRREGULARITY = 0.1f;
+    // a random series turns at 2/3 of its points; alternation (bigeminy) turns at every one
+    private static final float MIN_TURNING = 0.4f, MAX_TURNING = 0.9f;
+    private static final int PENDING = 8;
+
+    private final Listener listener;
+    private final int pre, post, lag, length;
+
+    // filtered ECG, a power of two long
+    private final float[] ring;
+    private final int mask;
+    private long index = -1;
+
+    // beats waiting for the samples after them
+    private final long[] pendingBeat = new long[PENDING];
+    private final int[] pendingRr = new int[PENDING];
+    private long pendingStart, pendingEnd;
+
+    // the beat at every lag, normalised
+    private final float[][] shifted;
+    private final boolean[] usable;
+
+    // running averages and their normalised copies
+    private final float[][] averages = new float[MAX_TEMPLATES][];
+    private final float[][] templates = new float[MAX_TEMPLATES][];
+    private final int[] counts = new int[MAX_TEMPLATES];
+    private final float[] recent = new float[MAX_TEMPLATES];
+    private final long[] lastSeen = new long[MAX_TEMPLATES];
+    private final float[] widths = new float[MAX_TEMPLATES];
+    private int templateCount, dominant;
+
+    private long beats, comparisons, abandoned;
+    private float averageRr;
+    private int previousLabel = UNKNOWN, lastLabel = UNKNOWN;
+    private final long[] labelCounts = new long[NAMES.length];
+
+    // RR intervals in samples, oldest first from rhythmPos
+    private final int[] intervals = new int[RHYTHM_WINDOW];
+    private final float[] differences = new float[RHYTHM_WINDOW];
+    private int rhythmPos, rhythmCount;
+    private float irregularity = Float.NaN, turningPoints = Float.NaN;
+    private boolean irregular;
+
+    public BeatClassifier(float sampleRate, Listener listener) {
+        this.listener = listener;
+        pre = Math.round(PRE_S * sampleRate);
+        post = Math.round(POST_S * sampleRate);
+        lag = Math.round(MAX_LAG_S * sampleRate);
+        length = pre + post + 1;
+        ring = new float[Integer.highestOneBit(Math.round(HISTORY_S * sampleRate)) << 1];
+        mask = ring.length - 1;
+        shifted = new float[2 * lag + 1][length];
+        usable = new boolean[2 * lag + 1];
+        for (int k = 0; k < MAX_TEMPLATES; k++) {
+            averages[k] = new float[length];
+            templates[k] = new float[length];
+        }
+    }
+
+    /** Adds the next filtered ECG sample; call it before the QRS detector sees the sample. */
+    public void process(float ecg) {
+        ring[(int) (++index & mask)] = ecg;
+        drain();
+    }
+
+    /** Queues a beat from {@link QrsDetector.Listener#onBeat}; it is classified once its QRS is complete. */
+    public void addBeat(long sampleIndex, int rrSamples) {
+        if (pendingEnd - pendingStart == PENDING) {
+            // cannot happen at any heart rate, but don't lose the order if it does
+            int slot = (int) (pendingStart++ % PENDING);
+            classify(pendingBeat[slot], pendingRr[slot]);
+        }
+        int slot = (int) (pendingEnd++ % PENDING);
+        pendingBeat[slot] = sampleIndex;
+        pendingRr[slot] = rrSamples;
+        drain();
+    }
+
+    // Classifies the queued beats whose QRS is complete
+    private void drain() {
+        while (pendingStart < pendingEnd && pendingBeat[(int) (pendingStart % PENDING)] + post + lag <= index) {
+            int slot = (int) (pendingStart++ % PENDING);
+            classify(pendingBeat[slot], pendingRr[slot]);
+        }
+    }
+
+    /**
+     * Forgets queued beats and the RR context, e.g. after lost samples; the templates are kept,
+     * the rhythm window starts over.
+     */
+    public void reset() {
+        pendingStart = pendingEnd;
+        previousLabel = UNKNOWN;
+        rhythmCount = 0;
+        rhythmPos = 0;
+        irregularity = turningPoints = Float.NaN;
+        irregular = false;
+    }
+
+    private void classify(long r, int rr) {
+        int label = UNKNOWN;
+        int cluster = -1;
+        // a beat reported later than the ring reaches back is lost
+        if (r - pre - lag > index - ring.length && extract(r)) cluster = match();
+        if (cluster >= 0) {
+            boolean premature = rr > 0 && averageRr > 0 && rr < PREMATURE * averageRr;
+            if (beats <= LEARNING_BEATS) {
+                label = UNKNOWN;
+            } else if (cluster == dominant) {
+                label = premature && !irregular ? PAC : NORMAL;
+            } else if (widths[cluster] >= WIDE * widths[dominant]) {
+                label = PVC;
+            }
+        }
+        if (rr > 0) {
+            boolean normal = label == NORMAL && previousLabel == NORMAL;
+            if (normal || beats <= LEARNING_BEATS) {
+                averageRr = averageRr == 0 ? rr : averageRr + (rr - averageRr) * RR_RATE;
+            }
+            if (!ectopic(label) && !ectopic(previousLabel)) addInterval(rr);
+        }
+        previousLabel = label;
+        lastLabel = label;
+        labelCounts[label]++;
+        listener.onBeatClassified(r, label);
+    }
+
+    private static boolean ectopic(int label) {
+        return label == PVC || label == PAC;
+    }
+
+    // Fills shifted[] with the beat at every lag; false if it is flat
+    private boolean extract(long r) {
+        boolean any = false;
+        for (int l = 0; l < shifted.length; l++) {
+            float[] out = shifted[l];
+            long start = r - pre + l - lag;
+            float sum = 0;
+            for (int i = 0; i < length; i++) {
+                out[i] = ring[(int) ((start + i) & mask)];
+                sum += out[i];
+            }
+            usable[l] = normalise(out, sum / length);
+            any |= usable[l];
+        }
+        return any;
+    }
+
+    // Subtracts the mean and scales to unit energy in place; false if nothing is left
+    private static boolean normalise(float[] x, float mean) {
+        float energy = 0;
+        for (int i = 0; i < x.length; i++) {
+            x[i] -= mean;
+            energy += x[i] * x[i];
+        }
+        if (!(energy > 1e-12f)) return false;
+        float scale = (float) (1 / Math.sqrt(energy));
+        for (int i = 0; i < x.length; i++) x[i] *= scale;
+        return true;
+    }
+
+    // Best template for shifted[], updated; or a new one. Returns its slot.
+    private int match() {
+        beats++;
+        for (int k = 0; k < templateCount; k++) recent[k] *= DECAY;
+        float bound = 2 * (1 - MATCH);
+        int best = -1, bestLag = lag;
+        for (int n = 0; n < templateCount; n++) {
+            // the dominant one first, so the bound is tight from the start
+            int k = n == 0 ? dominant : n == dominant ? 0 : n;
+            float[] template = templates[k];
+            for (int l = 0; l < shifted.length; l++) {
+                if (!usable[l]) continue;
+                comparisons++;
+                float d = distance(shifted[l], template, bound);
+                if (d < bound) {
+                    bound = d;
+                    best = k;
+                    bestLag = l;
+                } else if (d == Float.POSITIVE_INFINITY) {
+                    abandoned++;
+                }
+            }
+        }
+        if (best < 0) return newTemplate();
+        float[] beat = shifted[bestLag], average = averages[best];
+        if (counts[best] < AVERAGE_BEATS) counts[best]++;
+        float rate = 1f / counts[best];
+        for (int i = 0; i < length; i++) average[i] += (beat[i] - average[i]) * rate;
+        float[] template = templates[best];
+        float sum = 0;
+        for (int i = 0; i < length; i++) sum += template[i] = average[i];
+        normalise(template, sum / length);
+        widths[best] = width(template);
+        seen(best);
+        return best;
+    }
+
+    // Squared distance of two unit vectors, or infinity once it is certain to reach bound
+    private static float distance(float[] a, float[] b, float bound) {
+        float d = 0;
+        int n = a.length;
+        for (int i = 0; i < n; i += 8) {
+            int end = Math.min(n, i + 8);
+            for (int j = i; j < end; j++) {
+                float e = a[j] - b[j];
+                d += e * e;
+            }
+            if (d >= bound) return end < n ? Float.POSITIVE_INFINITY : d;
+        }
+        return d;
+    }
+
+    private int newTemplate() {
+        int slot;
+        if (templateCount < MAX_TEMPLATES) {
+            slot = templateCount++;
+        } else {
+            slot = dominant == 0 ? 1 : 0;
+            for (int k = 0; k < MAX_TEMPLATES; k++) {
+                if (k != dominant && lastSeen[k] < lastSeen[slot]) slot = k;
+            }
+        }
+        float[] beat = usable[lag] ? shifted[lag] : firstUsable();
+        System.arraycopy(beat, 0, averages[slot], 0, length);
+        System.arraycopy(beat, 0, templates[slot], 0, length);
+        counts[slot] = 1;
+        recent[slot] = 0;
+        widths[slot] = width(beat);
+        seen(slot);
+        return slot;
+    }
+
+    private float[] firstUsable() {
+        int l = 0;
+        while (!usable[l]) l++;
+        return shifted[l];
+    }
+
+    private void seen(int k) {
+        recent[k] += 1;
+        lastSeen[k] = beats;
+        if (recent[k] > recent[dominant]) dominant = k;
+    }
+
+    // Samples where the template exceeds WIDTH_LEVEL of its peak
+    private static float width(float[] template) {
+        float peak = 0;
+        for (float v : template) peak = Math.max(peak, Math.abs(v));
+        float level = WIDTH_LEVEL * peak;
+        int wide = 0;
+        for (float v : template) if (Math.abs(v) >= level) wide++;
+        return wide;
+    }
+
+    private void addInterval(int rr) {
+        if (rhythmCount < RHYTHM_WINDOW) {
+            intervals[(rhythmPos + rhythmCount++) % RHYTHM_WINDOW] = rr;
+        } else {
+            intervals[rhythmPos] = rr;
+            rhythmPos = (rhythmPos + 1) % RHYTHM_WINDOW;
+        }
+        if (rhythmCount < MIN_INTERVALS) return;
+
+        float sum = 0;
+        int turns = 0;
+        int n = rhythmCount;
+        for (int i = 0; i < n; i++) {
+            int x = intervals[(rhythmPos + i) % RHYTHM_WINDOW];
+            sum += x;
+            if (i == 0) continue;
+            int p = intervals[(rhythmPos + i - 1) % RHYTHM_WINDOW];
+            // insertion sort of the absolute successive differences
+            float d = Math.abs(x - p);
+            int j = i - 1;
+            while (j > 0 && differences[j - 1] > d) {
+                differences[j] = differences[j - 1];
+                j--;
+            }
+            differences[j] = d;
+            if (i < n - 1) {
+                int q = intervals[(rhythmPos + i + 1) % RHYTHM_WINDOW];
+                if ((x - p) * (q - x) < 0) turns++;
+            }
+        }
+        int kept = Math.max(1, Math.round((n - 1) * (1 - TRIM)));
+        float squares = 0;
+        for (int i = 0; i < kept; i++) squares += differences[i] * differences[i];
+        irregularity = (float) Math.sqrt(squares / kept) / (sum / n);
+        turningPoints = turns / (float) (n - 2);
+        irregular = irregularity >= MIN_IRREGULARITY && turningPoints >= MIN_TURNING && turningPoints <= MAX_TURNING;
+    }
+
+    /** "Normal", "PVC", "PAC" or "Unknown". */
+    public static String name(int label) {
+        return NAMES[label];
+    }
+
+    /** Label of the last classified beat. */
+    public int getLastLabel() {
+        return lastLabel;
+    }
+
+    /** Beats given {@code label} so far. */
+    public long getCount(int label) {
+        return labelCounts[label];
+    }
+
+    /** Whether the recent RR intervals look like atrial fibrillation. */
+    public boolean isIrregular() {
+        return irregular;
+    }
+
+    /** Trimmed RMS of successive RR differences over the mean RR, or NaN before 16 intervals. */
+    public float getIrregularity() {
+        return irregularity;
+    }
+
+    /** Share of the recent RR intervals that are a local minimum or maximum, or NaN. */
+    public float getTurningPointRatio() {
+        return turningPoints;
+    }
+
+    public int getTemplateCount() {
+        return templateCount;
+    }
+
+    /** Template comparisons made so far, and how many of them were abandoned early. */
+    public long getComparisonCount() {
+        return comparisons;
+    }
+
+    public long getAbandonedCount() {
+        return abandoned;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.biowave;
+
+/**
+ * Layout of the compact binary frame, shared by {@link BinaryFrameEncoder} and {@link StreamDecoder}.
+ * <pre>
+ * offset  size  field
+ *   0      1    sync 0xA5
+ *   1      1    sync 0x5A
+ *   2      1    flags: bits 0-3 version (1), bit 4 vitals present
+ *   3      1    sequence number, +1 per frame, wraps at 256
+ *   4      1    sample count N (1..{@value #MAX_SAMPLES})
+ *   5     5*N   N x { ECG int16 LE in ECG_LSB units, PPG int24 LE in PPG_LSB units }
+ *   ..     3    optional vitals: temperature int16 LE in TEMP_LSB units (-32768 = none),
+ *                SpO2 uint8 % (0xFF = none)
+ *   ..     2    CRC-16/CCITT-FALSE (poly 0x1021, init 0xFFFF) LE over bytes 2 .. end of payload
+ * </pre>
+ * Two sample pairs plus vitals fit exactly in one 20-byte HM-10 notification; larger frames
+ * may span several notifications. Sync bytes are non-ASCII, so binary and legacy text frames
+ * can be told apart on the same stream.
+ */
+public final class BinaryFrame {
+
+    public static final byte SYNC0 = (byte) 0xA5;
+    public static final byte SYNC1 = (byte) 0x5A;
+    public static final int VERSION = 1;
+    public static final int FLAG_VITALS = 0x10;
+
+    public static final int HEADER_SIZE = 5;
+    public static final int SAMPLE_SIZE = 5;
+    public static final int VITALS_SIZE = 3;
+    public static final int CRC_SIZE = 2;
+    public static final int MAX_SAMPLES = 32;
+    public static final int MAX_FRAME_SIZE = HEADER_SIZE + MAX_SAMPLES * SAMPLE_SIZE + VITALS_SIZE + CRC_SIZE;
+
+    /** ECG resolution: 1 µV per count, +-32.7 mV range. */
+    public static final float ECG_LSB = 0.001f;
+    /** PPG resolution: 0.01 per count, +-83886 range. */
+    public static final float PPG_LSB = 0.01f;
+    /** Temperature resolution: 0.01 °C per count. */
+    public static final float TEMP_LSB = 0.01f;
+    public static final int TEMP_NONE = Short.MIN_VALUE;
+    public static final int SPO2_NONE = 0xFF;
+
+    private static final short[] CRC_TABLE = new short[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC_TABLE[i] = (short) crc;
+        }
+    }
+
+    private BinaryFrame() {
+    }
+
+    public static int frameSize(int sampleCount, boolean vitals) {
+        return HEADER_SIZE + sampleCount * SAMPLE_SIZE + (vitals ? VITALS_SIZE : 0) + CRC_SIZE;
+    }
+
+    /** CRC-16/CCITT-FALSE; {@code crc16("123456789") == 0x29B1}. */
+    public static int crc16(byte[] data, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc = ((crc << 8) ^ CRC_TABLE[((crc >> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.biowave;
+
+/**
+ * Reference encoder for the {@link BinaryFrame} format. Kept deliberately simple (plain integer
+ * arithmetic and byte stores) so the STM32 firmware can mirror it line by line; also used by
+ * the tests and the synthetic signal sources.
+ */
+public class BinaryFrameEncoder {
+
+    private int sequence = 0;
+
+    /**
+     * Encodes {@code count} samples starting at {@code offset} into {@code out}. Pass NaN for
+     * {@code temp} to leave the vitals block out. Returns the frame length in bytes.
+     */
+    public int encode(float[] ecg, float[] ppg, int offset, int count, float temp, float spo2,
+                      byte[] out, int outOffset) {
+        if (count < 1 || count > BinaryFrame.MAX_SAMPLES) {
+            throw new IllegalArgumentException("sample count out of range: " + count);
+        }
+        boolean vitals = !Float.isNaN(temp) || !Float.isNaN(spo2);
+        int p = outOffset;
+        out[p++] = BinaryFrame.SYNC0;
+        out[p++] = BinaryFrame.SYNC1;
+        out[p++] = (byte) (BinaryFrame.VERSION | (vitals ? BinaryFrame.FLAG_VITALS : 0));
+        out[p++] = (byte) sequence;
+        out[p++] = (byte) count;
+
+        for (int i = offset; i < offset + count; i++) {
+            int e = quantize(ecg[i], BinaryFrame.ECG_LSB, 0x7FFF);
+            out[p++] = (byte) e;
+            out[p++] = (byte) (e >> 8);
+            int v = quantize(ppg[i], BinaryFrame.PPG_LSB, 0x7FFFFF);
+            out[p++] = (byte) v;
+            out[p++] = (byte) (v >> 8);
+            out[p++] = (byte) (v >> 16);
+        }
+
+        if (vitals) {
+            int t = Float.isNaN(temp) ? BinaryFrame.TEMP_NONE : quantize(temp, BinaryFrame.TEMP_LSB, 0x7FFF);
+            out[p++] = (byte) t;
+            out[p++] = (byte) (t >> 8);
+            out[p++] = (byte) (Float.isNaN(spo2) ? BinaryFrame.SPO2_NONE : Math.max(0, Math.min(100, Math.round(spo2))));
+        }
+
+        int crc = BinaryFrame.crc16(out, outOffset + 2, p - outOffset - 2);
+        out[p++] = (byte) crc;
+        out[p++] = (byte) (crc >> 8);
+
+        sequence = (sequence + 1) & 0xFF;
+        return p - outOffset;
+    }
+
+    /** Rounds to the nearest count and saturates at +-limit. */
+    private static int quantize(float value, float lsb, int limit) {
+        long q = Math.round(value / (double) lsb);
+        if (q > limit) return limit;
+        if (q < -limit) return -limit;
+        return (int) q;
+    }
+
+    public void setSequence(int sequence) {
+        this.sequence = sequence & 0xFF;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.biowave;
+
+/**
+ * Second-order IIR section (transposed direct form II) with the usual RBJ cookbook designs.
+ * Coefficients and state are kept in double precision so very low cut-offs stay stable.
+ */
+public class Biquad implements FilterStage {
+
+    private final double b0, b1, b2, a1, a2;
+    private double z1, z2;
+
+    public Biquad(double b0, double b1, double b2, double a0, double a1, double a2) {
+        this.b0 = b0 / a0;
+        this.b1 = b1 / a0;
+        this.b2 = b2 / a0;
+        this.a1 = a1 / a0;
+        this.a2 = a2 / a0;
+    }
+
+    public static Biquad lowPass(double sampleRate, double cutoff, double q) {
+        double w = 2 * Math.PI * cutoff / sampleRate;
+        double cos = Math.cos(w), alpha = Math.sin(w) / (2 * q);
+        return new Biquad((1 - cos) / 2, 1 - cos, (1 - cos) / 2, 1 + alpha, -2 * cos, 1 - alpha);
+    }
+
+    public static Biquad highPass(double sampleRate, double cutoff, double q) {
+        double w = 2 * Math.PI * cutoff / sampleRate;
+        double cos = Math.cos(w), alpha = Math.sin(w) / (2 * q);
+        return new Biquad((1 + cos) / 2, -(1 + cos), (1 + cos) / 2, 1 + alpha, -2 * cos, 1 - alpha);
+    }
+
+    /** Band-pass with 0 dB peak gain at {@code center}. */
+    public static Biquad bandPass(double sampleRate, double center, double q) {
+        double w = 2 * Math.PI * center / sampleRate;
+        double cos = Math.cos(w), alpha = Math.sin(w) / (2 * q);
+        return new Biquad(alpha, 0, -alpha, 1 + alpha, -2 * cos, 1 - alpha);
+    }
+
+    /** Notch with -3 dB bandwidth {@code center / q}. */
+    public static Biquad notch(double sampleRate, double center, double q) {
+        double w = 2 * Math.PI * center / sampleRate;
+        double cos = Math.cos(w), alpha = Math.sin(w) / (2 * q);
+        return new Biquad(1, -2 * cos, 1, 1 + alpha, -2 * cos, 1 - alpha);
+    }
+
+    /** Magnitude response at {@code freq}. */
+    public double gain(double sampleRate, double freq) {
+        double w = 2 * Math.PI * freq / sampleRate;
+        return Math.sqrt(power(b0, b1, b2, w) / power(1, a1, a2, w));
+    }
+
+    private static double power(double c0, double c1, double c2, double w) {
+        double re = c0 + c1 * Math.cos(w) + c2 * Math.cos(2 * w);
+        double im = -c1 * Math.sin(w) - c2 * Math.sin(2 * w);
+        return re * re + im * im;
+    }
+
+    /** Group delay at {@code freq} in samples. */
+    public double groupDelay(double sampleRate, double freq) {
+        double w = 2 * Math.PI * freq / sampleRate;
+        return delay(b0, b1, b2, w) - delay(1, a1, a2, w);
+    }
+
+    // group delay of c0 + c1 z^-1 + c2 z^-2: Re(sum k c_k e^-jwk / sum c_k e^-jwk)
+    private static double delay(double c0, double c1, double c2, double w) {
+        double re = c0 + c1 * Math.cos(w) + c2 * Math.cos(2 * w);
+        double im = -c1 * Math.sin(w) - c2 * Math.sin(2 * w);
+        double kre = c1 * Math.cos(w) + 2 * c2 * Math.cos(2 * w);
+        double kim = -c1 * Math.sin(w) - 2 * c2 * Math.sin(2 * w);
+        return (kre * re + kim * im) / (re * re + im * im);
+    }
+
+    @Override
+    public float process(float x) {
+        double y = b0 * x + z1;
+        z1 = b1 * x - a1 * y + z2;
+        z2 = b2 * x - a2 * y;
+        return (float) y;
+    }
+
+    @Override
+    public void process(float[] data, int offset, int count) {
+        // state in locals so it stays in registers across the loop
+        double s1 = z1, s2 = z2;
+        for (int i = offset; i < offset + count; i++) {
+            double x = data[i];
+            double y = b0 * x + s1;
+            s1 = b1 * x - a1 * y + s2;
+            s2 = b2 * x - a2 * y;
+            data[i] = (float) y;
+        }
+        z1 = s1;
+        z2 = s2;
+    }
+
+    @Override
+    public void reset() {
+        z1 = 0;
+        z2 = 0;
+    }
+}
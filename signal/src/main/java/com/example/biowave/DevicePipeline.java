@@ -0,0 +1,610 @@
+package com.example.biowave;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Everything that happens to one sensor's byte stream before the display sees it:
+ * <ul>
+ * <li>decoding of binary or ASCII frames, and per-channel {@link FilterChain}s applied in blocks;
+ * <li>a {@link SignalQuality} index per channel;
+ * <li>R-peak detection with heart rate and HRV, leaving out intervals touched by ECG artifacts;
+ * <li>{@link BeatClassifier} labels and rhythm irregularity;
+ * <li>{@link PulseTransitTime} from the R peaks to the raw PPG, and respiration and pulse rate
+ * from a {@link PpgSpectrum} of the raw PPG;
+ * <li>optionally a {@link FlightRecorder} of the raw samples, a compressed {@link SampleCodec}
+ * archive of the whole session and an {@link EdfExporter} of the filtered session, with artifact
+ * segments and ectopic beats annotated;
+ * <li>optionally {@link MinMaxPyramid} histories of the filtered traces for zooming out;
+ * <li>{@link VitalTrend}s of temperature and SpO2;
+ * <li>{@link AlarmEngine} rules on all of these, with transitions annotated in the export;
+ * <li>the {@link SampleRingBuffer} the UI drains.
+ * </ul>
+ * Counts and latencies go to the pipeline's own {@link PipelineMetrics}.
+ * <p>
+ * Every sample is stamped with the arrival time of its notification. Frames that sequence
+ * numbers show as lost are queued as NaN samples, so the display keeps a gap of the right
+ * length. Not thread-safe: all calls for one pipeline must be serialized, which
+ * {@link PipelineExecutor} does. The heart-rate, quality and alarm getters may be read from any
+ * thread.
+ */
+public class DevicePipeline implements StreamDecoder.Listener {
+
+    private static final int BLOCK_SIZE = 256;
+
+    /** Nominal sample rate of the sensor firmware. */
+    public static final float SAMPLE_RATE_HZ = 250f;
+    /** Mains frequency removed by the notch filter. */
+    public static final float MAINS_HZ = FilterChain.MAINS_50HZ;
+    /** How much raw signal the flight recorder keeps. */
+    public static final int RECORDER_MINUTES = 10;
+    /** Number of RR intervals the HRV metrics are computed over. */
+    private static final int HRV_WINDOW_BEATS = 30;
+    /** Centre of the QRS band, where the ECG filter delay is measured. */
+    private static final double QRS_HZ = 10;
+
+    private final String name;
+    private final SampleRingBuffer ringBuffer;
+    private final PipelineMetrics metrics;
+    private FlightRecorder recorder;
+    private SampleCodec.Encoder archive;
+    private EdfExporter export;
+    // export sample index minus detector sample index, so beats land on the right sample
+    private long exportOffset;
+    private long exportStartMillis;
+    // set by a reset: the first notification after it pads the export for the time in between
+    private boolean exportResumed;
+    private volatile MinMaxPyramid ecgHistory, ppgHistory;
+    private final VitalTrend temperatureTrend = new VitalTrend();
+    private final VitalTrend spo2Trend = new VitalTrend();
+    private volatile IOException archiveError;
+    private long packetTime;
+    private long arrivalNanos;
+    private final StreamDecoder decoder = new StreamDecoder(this);
+    private final HeartRateTracker heartRate = new HeartRateTracker(SAMPLE_RATE_HZ, HRV_WINDOW_BEATS);
+    private final QrsDetector qrsDetector = new QrsDetector(SAMPLE_RATE_HZ, this::onBeat);
+    private final BeatClassifier beatClassifier = new BeatClassifier(SAMPLE_RATE_HZ, this::onBeatClassified);
+    private final PulseTransitTime pulseTransit = new PulseTransitTime(SAMPLE_RATE_HZ);
+    private final PpgSpectrum ppgSpectrum = new PpgSpectrum(SAMPLE_RATE_HZ);
+    private AlarmEngine alarms = AlarmEngine.compile(AlarmEngine.DEFAULT_RULES, SAMPLE_RATE_HZ, this::onAlarm);
+
+    private int bandwidth = FilterChain.BANDWIDTH_MONITOR;
+    private FilterChain ecgFilter = FilterChain.ecg(SAMPLE_RATE_HZ, FilterChain.BANDWIDTH_MONITOR, MAINS_HZ);
+    private FilterChain ppgFilter = FilterChain.ppg(SAMPLE_RATE_HZ, FilterChain.BANDWIDTH_MONITOR);
+    // how late the filtered ECG shows the QRS, taken off the R peaks paired with the raw PPG
+    private double ecgDelay = ecgFilter.groupDelay(SAMPLE_RATE_HZ, QRS_HZ);
+    private SignalQuality ecgQuality = SignalQuality.ecg(SAMPLE_RATE_HZ);
+    private SignalQuality ppgQuality = SignalQuality.ppg(SAMPLE_RATE_HZ);
+    private final float[] ecgRaw = new float[BLOCK_SIZE];
+    private final float[] ppgRaw = new float[BLOCK_SIZE];
+    private final float[] ecgBlock = new float[BLOCK_SIZE];
+    private final float[] ppgBlock = new float[BLOCK_SIZE];
+    private final float[] tempBlock = new float[BLOCK_SIZE];
+    private final float[] spo2Block = new float[BLOCK_SIZE];
+    private int blockCount = 0;
+
+    // off while no UI is watching: everything but the display ring keeps running
+    private volatile boolean displayEnabled = true;
+
+    private volatile float currentHeartRate = Float.NaN;
+    private volatile float currentRmssd = Float.NaN;
+    private volatile float currentSdnn = Float.NaN;
+    private volatile float currentPtt = Float.NaN;
+    private volatile long beatCount = 0;
+    private volatile long pvcCount, pacCount;
+    private volatile int lastEctopic = BeatClassifier.UNKNOWN;
+    private volatile boolean rhythmIrregular;
+    // highest-priority active alarm, replaced only when an alarm goes off or clears
+    private volatile String activeAlarm;
+    private volatile int activeAlarmPriority = -1, activeAlarmCount;
+    private volatile float ecgScore = Float.NaN, ppgScore = Float.NaN;
+    private volatile int ecgArtifacts, ppgArtifacts;
+    private boolean artifactSinceBeat;
+    // detector sample of the last R peak since the stream (re)started, -1 if none
+    private long lastBeatSample = -1;
+    // open artifact segment per channel (ECG, PPG) in export samples, -1 if none
+    private final long[] artifactStart = {-1, -1};
+    private final int[] artifactFlags = new int[2];
+
+    public DevicePipeline(String name, SampleRingBuffer ringBuffer, PipelineMetrics metrics) {
+        this.name = name;
+        this.ringBuffer = ringBuffer;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Opens (or recovers) the flight recorder ring in {@code file}; does file I/O, so call it
+     * on the pipeline's thread. Returns the number of samples kept from the previous session.
+     */
+    public long openRecorder(File file) throws IOException {
+        recorder = new FlightRecorder(file, Math.round(RECORDER_MINUTES * 60 * SAMPLE_RATE_HZ));
+        return recorder.getRecoveredCount();
+    }
+
+    /**
+     * Starts a compressed archive of every raw sample in {@code file}, replacing any open one.
+     * Encoding runs inline with the pipeline; a write failure ends the archive without
+     * disturbing the stream (see {@link #getArchiveError()}). Call on the pipeline's thread.
+     */
+    public void openArchive(File file) throws IOException {
+        closeArchive();
+        archiveError = null;
+        archive = new SampleCodec.Encoder(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+
+    /** Writes the archive's index and closes it; does nothing if none is open. */
+    public void closeArchive() throws IOException {
+        if (archive == null) return;
+        SampleCodec.Encoder a = archive;
+        archive = null;
+        a.close();
+    }
+
+    /** Why the last archive stopped early, or null. Any thread. */
+    public IOException getArchiveError() {
+        return archiveError;
+    }
+
+    /**
+     * Starts an EDF+ export of the filtered signals, beats and gaps to {@code file}, replacing
+     * any open one; {@code startMillis} is the wall-clock time of the next sample. Writing runs
+     * on the exporter's own thread. Call on the pipeline's thread.
+     */
+    public void openExport(File file, long startMillis) throws IOException {
+        closeExport();
+        export = new EdfExporter(file, name, startMillis, Math.round(SAMPLE_RATE_HZ),
+                FilterChain.describeEcg(SAMPLE_RATE_HZ, bandwidth, MAINS_HZ),
+                FilterChain.describePpg(SAMPLE_RATE_HZ, bandwidth));
+        exportOffset = -qrsDetector.getSampleCount();
+        exportStartMillis = startMillis;
+        exportResumed = false;
+        artifactStart[0] = artifactStart[1] = -1;
+    }
+
+    // EDF+C has no breaks, so the outage before a reconnect becomes a gap as long as the wall
+    // clock says it was; a sensor clock running fast may leave it a little short, never negative
+    private void resumeExport() {
+        exportResumed = false;
+        if (export == null) return;
+        long due = Math.round((packetTime - exportStartMillis) * (SAMPLE_RATE_HZ / 1000.0));
+        long missing = due - export.getSampleCount();
+        if (missing > 0) exportGap((int) Math.min(Integer.MAX_VALUE, missing));
+    }
+
+    private void exportGap(int samples) {
+        // artifact segments end where the signal does
+        trackArtifact(0, 0, export.getSampleCount());
+        trackArtifact(1, 0, export.getSampleCount());
+        export.gap(samples);
+        exportOffset += samples;
+    }
+
+    /**
+     * Finishes the export, waiting for it to be written; does nothing if none is open.
+     *
+     * @throws IOException the first write error of the export
+     */
+    public void closeExport() throws IOException {
+        if (export == null) return;
+        EdfExporter e = export;
+        export = null;
+        e.close();
+    }
+
+    /** Marks the current sample of the export with {@code text}, e.g. a user event. Call on the pipeline's thread. */
+    public void annotate(String text) {
+        if (export != null) export.annotate(export.getSampleCount() + blockCount, 0, text);
+    }
+
+    /**
+     * Keeps the filtered traces, as displayed (PPG inverted), in {@code ecg} and {@code ppg}
+     * from now on, whether or not a UI is attached; lost frames are kept as gaps. Either may be
+     * null. Call before the source starts or on the pipeline's thread.
+     */
+    public void setHistory(MinMaxPyramid ecg, MinMaxPyramid ppg) {
+        ecgHistory = ecg;
+        ppgHistory = ppg;
+    }
+
+    public MinMaxPyramid getEcgHistory() {
+        return ecgHistory;
+    }
+
+    public MinMaxPyramid getPpgHistory() {
+        return ppgHistory;
+    }
+
+    /** Temperature readings in °C, kept for the last week. Any thread. */
+    public VitalTrend getTemperatureTrend() {
+        return temperatureTrend;
+    }
+
+    /** SpO2 readings in %, kept for the last week. Any thread. */
+    public VitalTrend getSpo2Trend() {
+        return spo2Trend;
+    }
+
+    /** Processes one notification payload that arrived at {@code arrivalNanos} ({@link System#nanoTime()}). */
+    public void onData(byte[] data, long arrivalNanos) {
+        this.arrivalNanos = arrivalNanos;
+        packetTime = System.currentTimeMillis();
+        metrics.onNotification(data.length);
+        if (exportResumed) resumeExport();
+        decoder.feed(data);
+        flush();
+        metrics.parseLatency.record(System.nanoTime() - arrivalNanos);
+    }
+
+    /** Switches both channels to {@link FilterChain#BANDWIDTH_MONITOR} or {@link FilterChain#BANDWIDTH_DIAGNOSTIC}. */
+    public void setBandwidth(int bandwidth) {
+        if (export != null && bandwidth != this.bandwidth) {
+            export.annotate(export.getSampleCount() + blockCount, 0,
+                    "Filter " + FilterChain.describeEcg(SAMPLE_RATE_HZ, bandwidth, MAINS_HZ));
+        }
+        this.bandwidth = bandwidth;
+        // settings change, allocating new filters is fine here
+        ecgFilter = FilterChain.ecg(SAMPLE_RATE_HZ, bandwidth, MAINS_HZ);
+        ppgFilter = FilterChain.ppg(SAMPLE_RATE_HZ, bandwidth);
+        ecgDelay = ecgFilter.groupDelay(SAMPLE_RATE_HZ, QRS_HZ);
+        // what clean signal looks like depends on the bandwidth
+        ecgQuality = SignalQuality.ecg(SAMPLE_RATE_HZ);
+        ppgQuality = SignalQuality.ppg(SAMPLE_RATE_HZ);
+    }
+
+    /**
+     * Whether filtered samples are queued for display. While off, decoding, recording and beat
+     * detection continue but nothing is offered to the ring buffer. Any thread.
+     */
+    public void setDisplayEnabled(boolean enabled) {
+        displayEnabled = enabled;
+    }
+
+    public boolean isDisplayEnabled() {
+        return displayEnabled;
+    }
+
+    /** Drops any half-received frame and filter state, e.g. after the link was re-established. */
+    public void reset() {
+        decoder.reset();
+        blockCount = 0;
+        exportResumed = export != null;
+        ecgFilter.reset();
+        ppgFilter.reset();
+        ecgQuality.reset();
+        ppgQuality.reset();
+        qrsDetector.resetRr();
+        heartRate.reset();
+        beatClassifier.reset();
+        rhythmIrregular = false;
+        pulseTransit.reset();
+        ppgSpectrum.gap();
+        currentHeartRate = currentRmssd = currentSdnn = Float.NaN;
+        forgetBeats();
+    }
+
+    // The rhythm before a reconnect says nothing about the one after it
+    private void forgetBeats() {
+        lastBeatSample = -1;
+        alarms.update(AlarmEngine.HEART_RATE, Float.NaN);
+        alarms.update(AlarmEngine.BEAT_GAP, Float.NaN);
+        alarms.update(AlarmEngine.IRREGULAR_RHYTHM, Float.NaN);
+    }
+
+    /**
+     * Replaces the alarm rules (see {@link AlarmEngine} for the format); alarms of the old rules
+     * end without a transition. Call on the pipeline's thread.
+     *
+     * @throws IllegalArgumentException if a rule doesn't parse; the old rules stay
+     */
+    public void setAlarmRules(String rules) {
+        alarms = AlarmEngine.compile(rules, SAMPLE_RATE_HZ, this::onAlarm);
+        activeAlarm = null;
+        activeAlarmPriority = -1;
+        activeAlarmCount = 0;
+    }
+
+    /** Flushes the flight recorder to storage. */
+    public void sync() {
+        if (recorder != null) recorder.force();
+    }
+
+    /**
+     * Stops the spectrum worker and closes the export, the archive and the flight recorder; the
+     * pipeline must not be used afterwards.
+     */
+    public void close() throws IOException {
+        ppgSpectrum.close();
+        try {
+            closeExport();
+        } finally {
+            try {
+                closeArchive();
+            } finally {
+                if (recorder != null) {
+                    FlightRecorder r = recorder;
+                    recorder = null;
+                    r.close();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onFrame(float ecg, float ppg, float temp, float spo2) {
+        if (recorder != null) recorder.append(packetTime, ecg, ppg, temp, spo2);
+        if (archive != null) archive(ecg, ppg, temp, spo2);
+        // vitals come with some frames or all of them, apart from the waveform path
+        if (!Float.isNaN(temp)) temperatureTrend.add(packetTime, temp);
+        if (!Float.isNaN(spo2)) spo2Trend.add(packetTime, spo2);
+        ecgRaw[blockCount] = ecgBlock[blockCount] = ecg;
+        ppgRaw[blockCount] = ppgBlock[blockCount] = ppg;
+        tempBlock[blockCount] = temp;
+        spo2Block[blockCount] = spo2;
+        if (++blockCount == BLOCK_SIZE) flush();
+    }
+
+    private void archive(float ecg, float ppg, float temp, float spo2) {
+        try {
+            archive.append(packetTime, ecg, ppg, temp, spo2);
+        } catch (IOException e) {
+            // e.g. storage full: give up on the archive, not on the stream
+            archiveError = e;
+            SampleCodec.Encoder a = archive;
+            archive = null;
+            try {
+                a.close();
+            } catch (IOException ignored) {
+                // the archive is already broken; what was written can still be read by scanning
+            }
+        }
+    }
+
+    private void flush() {
+        int n = blockCount;
+        if (n == 0) return;
+        if (recorder != null) recorder.commit();
+        blockCount = 0;
+        ecgFilter.process(ecgBlock, 0, n);
+        ppgFilter.process(ppgBlock, 0, n);
+        if (export != null) export.write(ecgBlock, ppgBlock, tempBlock, spo2Block, n);
+        long exported = export != null ? export.getSampleCount() - n : 0;
+        boolean display = displayEnabled;
+        for (int i = 0; i < n; i++) {
+            int ecgFlags = ecgQuality.add(ecgRaw[i], ecgBlock[i]);
+            int ppgFlags = ppgQuality.add(ppgRaw[i], ppgBlock[i]);
+            if (ecgFlags != 0) artifactSinceBeat = true;
+            if (export != null) {
+                trackArtifact(0, ecgFlags, exported + i);
+                trackArtifact(1, ppgFlags, exported + i);
+            }
+            // PPG is plotted inverted
+            ppgBlock[i] = -ppgBlock[i];
+            if (display) ringBuffer.offer(ecgBlock[i], ppgBlock[i], tempBlock[i], spo2Block[i], arrivalNanos);
+            beatClassifier.process(ecgBlock[i]);
+            qrsDetector.process(ecgBlock[i]);
+            // raw, so the display filters' delay doesn't count; the sensor's pulse is a dip
+            pulseTransit.process(ppgFlags == 0 ? -ppgRaw[i] : Float.NaN);
+            ppgSpectrum.add(ppgFlags == 0 ? ppgRaw[i] : Float.NaN);
+            if (!Float.isNaN(tempBlock[i])) alarms.update(AlarmEngine.TEMPERATURE, tempBlock[i]);
+            if (!Float.isNaN(spo2Block[i])) alarms.update(AlarmEngine.SPO2, spo2Block[i]);
+            alarms.update(AlarmEngine.ECG_LEAD_OFF, (ecgFlags & SignalQuality.FLATLINE) != 0 ? 1 : 0);
+            alarms.tick();
+        }
+        currentPtt = pulseTransit.getPtt();
+        ecgScore = ecgQuality.getScore();
+        ppgScore = ppgQuality.getScore();
+        // derived once per block
+        alarms.update(AlarmEngine.PULSE_TRANSIT, currentPtt);
+        alarms.update(AlarmEngine.RESPIRATION, ppgSpectrum.getRespirationRate());
+        alarms.update(AlarmEngine.ECG_QUALITY, ecgScore);
+        alarms.update(AlarmEngine.PPG_QUALITY, ppgScore);
+        updateBeatGap();
+        ecgArtifacts = ecgQuality.getFlags();
+        ppgArtifacts = ppgQuality.getFlags();
+        MinMaxPyramid ecgTrace = ecgHistory, ppgTrace = ppgHistory;
+        if (ecgTrace != null) ecgTrace.append(ecgBlock, 0, n);
+        if (ppgTrace != null) ppgTrace.append(ppgBlock, 0, n);
+        metrics.onSamples(n);
+        metrics.setDroppedSamples(ringBuffer.getDroppedCount());
+    }
+
+    // Marks a segment of artifacts in the export once it ends, with everything seen during it
+    private void trackArtifact(int channel, int flags, long sample) {
+        if (flags != 0) {
+            if (artifactStart[channel] < 0) {
+                artifactStart[channel] = sample;
+                artifactFlags[channel] = 0;
+            }
+            artifactFlags[channel] |= flags;
+        } else if (artifactStart[channel] >= 0) {
+            export.annotate(artifactStart[channel], sample - artifactStart[channel],
+                    (channel == 0 ? "ECG" : "PPG") + " artifact: " + SignalQuality.describe(artifactFlags[channel]));
+            artifactStart[channel] = -1;
+        }
+    }
+
+    // Heart rate only changes on beats, so without them the engine is told how long it has been
+    // and, once a beat is overdue by a whole interval, the highest rate that gap still allows
+    private void updateBeatGap() {
+        if (lastBeatSample < 0) return;
+        float gap = (qrsDetector.getSampleCount() - lastBeatSample) / SAMPLE_RATE_HZ;
+        float hr = currentHeartRate;
+        if (gap > 120 / hr) hr = 60 / gap;
+        alarms.update(AlarmEngine.BEAT_GAP, gap);
+        alarms.update(AlarmEngine.HEART_RATE, hr);
+    }
+
+    private void onBeat(long sampleIndex, int rrSamples) {
+        beatCount++;
+        lastBeatSample = sampleIndex;
+        if (export != null) export.annotate(sampleIndex + exportOffset, 0, EdfExporter.BEAT);
+        boolean clean = !artifactSinceBeat;
+        artifactSinceBeat = false;
+        if (clean) pulseTransit.addBeat(sampleIndex - ecgDelay);
+        beatClassifier.addBeat(sampleIndex, rrSamples);
+        if (rrSamples > 0 && clean && heartRate.addRrSamples(rrSamples)) {
+            currentHeartRate = heartRate.getHeartRate();
+            currentRmssd = heartRate.getRmssd();
+            currentSdnn = heartRate.getSdnn();
+            alarms.update(AlarmEngine.HEART_RATE, currentHeartRate);
+        }
+    }
+
+    private void onBeatClassified(long sampleIndex, int label) {
+        rhythmIrregular = beatClassifier.isIrregular();
+        alarms.update(AlarmEngine.IRREGULAR_RHYTHM, rhythmIrregular ? 1 : 0);
+        if (label != BeatClassifier.PVC && label != BeatClassifier.PAC) return;
+        if (label == BeatClassifier.PVC) pvcCount++;
+        else pacCount++;
+        lastEctopic = label;
+        if (export != null) export.annotate(sampleIndex + exportOffset, 0, BeatClassifier.name(label));
+    }
+
+    private void onAlarm(int rule, boolean active) {
+        int top = alarms.getHighestActive();
+        activeAlarm = top < 0 ? null : alarms.getName(top);
+        activeAlarmPriority = top < 0 ? -1 : alarms.getPriority(top);
+        activeAlarmCount = alarms.getActiveCount();
+        if (export != null) {
+            // the sample being processed
+            export.annotate(qrsDetector.getSampleCount() - 1 + exportOffset, 0,
+                    (active ? "Alarm: " : "Alarm cleared: ") + alarms.getName(rule));
+        }
+    }
+
+    @Override
+    public void onParseError() {
+        metrics.onParseError();
+    }
+
+    @Override
+    public void onSequenceGap(int lostFrames, int lostSamples) {
+        metrics.onLostFrames(lostFrames);
+        // the interval spanning the gap would be wrong; samples before the gap go through first
+        flush();
+        // the archive keeps the sample clock: lost frames are stored as missing samples
+        for (int i = 0; archive != null && i < lostSamples; i++) archive(Float.NaN, Float.NaN, Float.NaN, Float.NaN);
+        if (export != null) exportGap(lostSamples);
+        for (int i = 0; displayEnabled && i < lostSamples; i++) {
+            ringBuffer.offer(Float.NaN, Float.NaN, Float.NaN, Float.NaN, arrivalNanos);
+        }
+        MinMaxPyramid ecgTrace = ecgHistory, ppgTrace = ppgHistory;
+        for (int i = 0; ecgTrace != null && i < lostSamples; i++) ecgTrace.append(Float.NaN);
+        for (int i = 0; ppgTrace != null && i < lostSamples; i++) ppgTrace.append(Float.NaN);
+        qrsDetector.resetRr();
+        heartRate.onGap();
+        beatClassifier.reset();
+        rhythmIrregular = false;
+        pulseTransit.reset();
+        ppgSpectrum.gap();
+        ecgQuality.reset();
+        ppgQuality.reset();
+        // a rhythm that stopped before the gap is still gone after it: the lost time counts
+        if (lastBeatSample >= 0) lastBeatSample -= lostSamples;
+        // sustain times run on through the gap
+        alarms.advance(lostSamples);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public SampleRingBuffer getRingBuffer() {
+        return ringBuffer;
+    }
+
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Smoothed heart rate in bpm, or NaN until two beats were detected. */
+    public float getHeartRate() {
+        return currentHeartRate;
+    }
+
+    public float getRmssd() {
+        return currentRmssd;
+    }
+
+    public float getSdnn() {
+        return currentSdnn;
+    }
+
+    /** Median pulse transit time of the last beats in ms, or NaN; see {@link PulseTransitTime}. */
+    public float getPulseTransitTime() {
+        return currentPtt;
+    }
+
+    /** Pulse rate in bpm from the PPG spectrum, a cross-check of {@link #getHeartRate()}; NaN for the first minute. */
+    public float getPulseRate() {
+        return ppgSpectrum.getPulseRate();
+    }
+
+    /** Breaths per minute from the PPG spectrum, or NaN. */
+    public float getRespirationRate() {
+        return ppgSpectrum.getRespirationRate();
+    }
+
+    /** How clearly periodic the PPG is, 0 to 1; see {@link PpgSpectrum#getQuality()}. */
+    public float getSpectralQuality() {
+        return ppgSpectrum.getQuality();
+    }
+
+    public long getBeatCount() {
+        return beatCount;
+    }
+
+    /** Premature ventricular beats labelled so far; see {@link BeatClassifier}. */
+    public long getPvcCount() {
+        return pvcCount;
+    }
+
+    /** Premature atrial beats labelled so far. */
+    public long getPacCount() {
+        return pacCount;
+    }
+
+    /** {@link BeatClassifier#PVC} or {@link BeatClassifier#PAC} for the last ectopic beat, else {@link BeatClassifier#UNKNOWN}. */
+    public int getLastEctopicLabel() {
+        return lastEctopic;
+    }
+
+    /** Whether the recent RR intervals look like atrial fibrillation. */
+    public boolean isRhythmIrregular() {
+        return rhythmIrregular;
+    }
+
+    /** Name of the highest-priority active alarm, or null; see {@link AlarmEngine}. */
+    public String getActiveAlarm() {
+        return activeAlarm;
+    }
+
+    /** {@link AlarmEngine#HIGH} etc. of {@link #getActiveAlarm()}, or -1. */
+    public int getActiveAlarmPriority() {
+        return activeAlarmPriority;
+    }
+
+    public int getActiveAlarmCount() {
+        return activeAlarmCount;
+    }
+
+    /** ECG quality from 0 (unusable) to 1 (clean), NaN while unknown; see {@link SignalQuality}. */
+    public float getEcgQuality() {
+        return ecgScore;
+    }
+
+    /** {@link SignalQuality} flags in effect on the ECG, 0 if it can be trusted. */
+    public int getEcgArtifacts() {
+        return ecgArtifacts;
+    }
+
+    public float getPpgQuality() {
+        return ppgScore;
+    }
+
+    public int getPpgArtifacts() {
+        return ppgArtifacts;
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.biowave;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Exports a session as an EDF+ file for clinical review: ECG (mV) and PPG at the sample rate,
+ * temperature (°C) and SpO2 (%) at one value per second, and annotations for beats, gaps and
+ * user events, in one-second records.
+ * <p>
+ * The acquiring thread only copies blocks of samples into one of two batches of
+ * {@value #RECORDS_PER_BATCH} records; a full batch is handed to a writer thread, which
+ * converts and writes it while the other batch fills. If the writer is a whole batch behind,
+ * handing off waits for it. Gaps are exported as zero, with a "Signal gap" annotation over
+ * their duration; vitals hold their last value (0 until the first) through seconds without
+ * one. After a write error the rest of the session is discarded; see {@link #getError()}.
+ * <p>
+ * All methods but {@link #getError()} must be called from the acquiring thread.
+ */
+public class EdfExporter implements Closeable {
+
+    public static final int RECORDS_PER_BATCH = 60;
+    /** Room for TALs per record: the time stamp plus about ten beats or events. */
+    static final int ANNOTATION_BYTES = 160;
+    public static final String BEAT = "R";
+    public static final String GAP = "Signal gap";
+
+    private final int rate;
+    private final EdfWriter writer;
+    private final EdfWriter.Signal[] signals;
+    private final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(2);
+    private final BlockingQueue<Batch> full = new ArrayBlockingQueue<>(2);
+    private final Thread thread;
+    private Batch current;
+    private long sampleCount;
+    private boolean closed;
+    private volatile IOException error;
+
+    /** Samples and annotations of whole records, filled by the acquiring thread. */
+    private static final class Batch {
+        final float[][] samples;
+        int count;
+        long firstSample;
+        long[] onsets = new long[64];
+        long[] durations = new long[64];
+        String[] texts = new String[64];
+        int annotations;
+        boolean last;
+
+        Batch(int capacity) {
+            samples = new float[4][capacity];
+        }
+
+        void add(long onset, long duration, String text) {
+            if (annotations == onsets.length) {
+                onsets = Arrays.copyOf(onsets, annotations * 2);
+                durations = Arrays.copyOf(durations, annotations * 2);
+                texts = Arrays.copyOf(texts, annotations * 2);
+            }
+            onsets[annotations] = onset;
+            durations[annotations] = duration;
+            texts[annotations++] = text;
+        }
+
+        void clear(long first) {
+            count = 0;
+            firstSample = first;
+            Arrays.fill(texts, 0, annotations, null);
+            annotations = 0;
+        }
+    }
+
+    /**
+     * Creates {@code file} (replacing it) and starts the writer thread. {@code startMillis} is the
+     * wall-clock time of the first sample; {@code ecgFilter} and {@code ppgFilter} describe how
+     * the samples were filtered, see {@link FilterChain#describeEcg}.
+     */
+    public EdfExporter(File file, String device, long startMillis, int sampleRate,
+                       String ecgFilter, String ppgFilter) throws IOException {
+        rate = sampleRate;
+        signals = new EdfWriter.Signal[]{
+                // 1 µV per count, the sensor's own resolution
+                new EdfWriter.Signal("ECG", "ECG_electrodes", "mV", -32.768, 32.767, -32768, 32767, ecgFilter, rate),
+                new EdfWriter.Signal("Pleth", "PPG_sensor", "", -16384, 16383.5, -32768, 32767, ppgFilter, rate),
+                new EdfWriter.Signal("Temp", "Temperature_probe", "degC", 0, 50, 0, 5000, "None", 1),
+                new EdfWriter.Signal("SpO2", "Pulse_oximeter", "%", 0, 100, 0, 100, "None", 1),
+        };
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        FileChannel channel = raf.getChannel();
+        try {
+            writer = new EdfWriter(channel, "X", "BioWave_" + device.replace(' ', '_'), startMillis, 1,
+                    Arrays.asList(signals), ANNOTATION_BYTES);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        current = new Batch(RECORDS_PER_BATCH * rate);
+        free.add(new Batch(RECORDS_PER_BATCH * rate));
+        thread = new Thread(this::writeLoop, "BioWave-Export");
+        thread.start();
+    }
+
+    /** Appends {@code n} samples of each channel; NaN marks a missing value. */
+    public void write(float[] ecg, float[] ppg, float[] temp, float[] spo2, int n) {
+        if (closed) return;
+        for (int i = 0; i < n; ) {
+            Batch b = current;
+            int chunk = Math.min(n - i, b.samples[0].length - b.count);
+            System.arraycopy(ecg, i, b.samples[0], b.count, chunk);
+            System.arraycopy(ppg, i, b.samples[1], b.count, chunk);
+            System.arraycopy(temp, i, b.samples[2], b.count, chunk);
+            System.arraycopy(spo2, i, b.samples[3], b.count, chunk);
+            b.count += chunk;
+            i += chunk;
+            sampleCount += chunk;
+            if (b.count == b.samples[0].length) handOff(false);
+        }
+    }
+
+    /** Appends {@code n} missing samples with a {@link #GAP} annotation over them. */
+    public void gap(int n) {
+        if (closed || n <= 0) return;
+        current.add(sampleCount, n, GAP);
+        for (int i = 0; i < n; i++) {
+            Batch b = current;
+            for (float[] channel : b.samples) channel[b.count] = Float.NaN;
+            b.count++;
+            sampleCount++;
+            if (b.count == b.samples[0].length) handOff(false);
+        }
+    }
+
+    /**
+     * Annotates sample {@code onset} (counted from the first sample of the file, possibly one
+     * already written) with {@code text}, lasting {@code duration} samples or 0 for an instant.
+     */
+    public void annotate(long onset, long duration, String text) {
+        if (closed || onset < 0) return;
+        current.add(onset, duration, text);
+    }
+
+    /** Samples appended so far, gaps included. */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /** Why the export stopped, or null. Any thread. */
+    public IOException getError() {
+        return error;
+    }
+
+    private void handOff(boolean last) {
+        Batch b = current;
+        b.last = last;
+        try {
+            full.put(b);
+            if (last) return;
+            current = free.take();
+            current.clear(sampleCount);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = new InterruptedIOException("export interrupted");
+            closed = true;
+        }
+    }
+
+    /**
+     * Pads the last record, waits for everything to be written and finishes the file.
+     *
+     * @throws IOException the first write error of the export
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            Batch b = current;
+            // EDF has whole records only
+            while (b.count % rate != 0) {
+                for (float[] channel : b.samples) channel[b.count] = Float.NaN;
+                b.count++;
+            }
+            handOff(true);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("export still being written");
+            }
+        }
+        if (error != null) throw error;
+    }
+
+    // Writer thread: converts batches to records and writes them, then returns them for refilling
+    private void writeLoop() {
+        short[][] digital = new short[signals.length][RECORDS_PER_BATCH * rate];
+        float[] held = new float[signals.length];
+        ArrayDeque<byte[]> pending = new ArrayDeque<>();
+        byte[] tal = new byte[ANNOTATION_BYTES];
+        boolean last = false;
+        while (!last) {
+            Batch b;
+            try {
+                b = full.take();
+            } catch (InterruptedException e) {
+                error = new InterruptedIOException("export interrupted");
+                break;
+            }
+            last = b.last;
+            if (error == null) {
+                try {
+                    writeBatch(b, digital, held, pending, tal);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+            free.add(b);
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            if (error == null) error = e;
+        }
+    }
+
+    private void writeBatch(Batch b, short[][] digital, float[] held, ArrayDeque<byte[]> pending,
+                            byte[] tal) throws IOException {
+        int records = b.count / rate;
+        for (int c = 0; c < 2; c++) {
+            float[] in = b.samples[c];
+            short[] out = digital[c];
+            for (int i = 0; i < b.count; i++) out[i] = (short) signals[c].toDigital(Float.isNaN(in[i]) ? 0f : in[i]);
+        }
+        sortAnnotations(b);
+        int next = 0;
+        for (int r = 0; r < records; r++) {
+            // vitals: the last reading of the second, else the one before
+            for (int c = 2; c < 4; c++) {
+                float[] in = b.samples[c];
+                for (int i = r * rate; i < (r + 1) * rate; i++) if (!Float.isNaN(in[i])) held[c] = in[i];
+                digital[c][r] = (short) signals[c].toDigital(held[c]);
+            }
+            long record = b.firstSample / rate + r;
+            while (next < b.annotations && b.onsets[next] / rate <= record) {
+                pending.add(tal(b.onsets[next], b.durations[next], b.texts[next]));
+                next++;
+            }
+            writer.writeRecord(digital, r, tal, fillTal(tal, record, pending));
+        }
+        // annotations of later samples, e.g. the end of a long gap, go into later records
+        for (; next < b.annotations; next++) pending.add(tal(b.onsets[next], b.durations[next], b.texts[next]));
+        if (b.last) {
+            // no samples left to carry them: pad with empty records until all are written
+            Arrays.fill(digital[0], 0, rate, (short) signals[0].toDigital(0f));
+            Arrays.fill(digital[1], 0, rate, (short) signals[1].toDigital(0f));
+            for (long record = b.firstSample / rate + records; !pending.isEmpty(); record++) {
+                digital[2][0] = (short) signals[2].toDigital(held[2]);
+                digital[3][0] = (short) signals[3].toDigital(held[3]);
+                writer.writeRecord(digital, 0, tal, fillTal(tal, record, pending));
+            }
+        }
+    }
+
+    // Beats are reported late, after gaps and events; usually only a few are out of order
+    private static void sortAnnotations(Batch b) {
+        for (int i = 1; i < b.annotations; i++) {
+            long onset = b.onsets[i], duration = b.durations[i];
+            String text = b.texts[i];
+            int j = i - 1;
+            for (; j >= 0 && b.onsets[j] > onset; j--) {
+                b.onsets[j + 1] = b.onsets[j];
+                b.durations[j + 1] = b.durations[j];
+                b.texts[j + 1] = b.texts[j];
+            }
+            b.onsets[j + 1] = onset;
+            b.durations[j + 1] = duration;
+            b.texts[j + 1] = text;
+        }
+    }
+
+    // The record's time-keeping TAL, then as many pending annotations as fit
+    private int fillTal(byte[] tal, long record, ArrayDeque<byte[]> pending) {
+        byte[] stamp = ("+" + record + "\u0014\u0014\u0000").getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(stamp, 0, tal, 0, stamp.length);
+        int n = stamp.length;
+        while (!pending.isEmpty() && n + pending.peek().length <= tal.length) {
+            byte[] a = pending.poll();
+            System.arraycopy(a, 0, tal, n, a.length);
+            n += a.length;
+        }
+        return n;
+    }
+
+    private byte[] tal(long onset, long duration, String text) {
+        StringBuilder s = new StringBuilder("+").append(seconds(onset));
+        if (duration > 0) s.append('\u0015').append(seconds(duration));
+        s.append('\u0014').append(text).append('\u0014').append('\u0000');
+        byte[] bytes = s.toString().getBytes(StandardCharsets.UTF_8);
+        // the time stamp must always fit next to it
+        int max = ANNOTATION_BYTES - 24;
+        if (bytes.length <= max) return bytes;
+        byte[] cut = Arrays.copyOf(bytes, max);
+        cut[max - 2] = 0x14;
+        cut[max - 1] = 0;
+        return cut;
+    }
+
+    private String seconds(long samples) {
+        String s = String.format(Locale.US, "%.3f", samples / (double) rate);
+        return s.endsWith(".000") ? s.substring(0, s.length() - 4) : s;
+    }
+}
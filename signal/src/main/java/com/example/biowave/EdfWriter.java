@@ -0,0 +1,192 @@
+package com.example.biowave;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes an EDF+ file (continuous, "EDF+C"): the ASCII header, then fixed-length data records
+ * of 16-bit samples, one block per signal, with an "EDF Annotations" signal last. Records are
+ * collected in a large buffer and written sequentially; the number of records in the header is
+ * filled in by {@link #close()} (-1 until then, as the standard asks of unfinished files).
+ * Not thread-safe.
+ */
+public class EdfWriter implements Closeable {
+
+    /** One ordinary signal, i.e. one header column. */
+    public static final class Signal {
+        final String label, transducer, dimension, prefiltering;
+        final double physicalMin, physicalMax;
+        final int digitalMin, digitalMax;
+        final int samplesPerRecord;
+
+        public Signal(String label, String transducer, String dimension, double physicalMin, double physicalMax,
+                      int digitalMin, int digitalMax, String prefiltering, int samplesPerRecord) {
+            if (physicalMin == physicalMax || digitalMin >= digitalMax) throw new IllegalArgumentException("empty range");
+            this.label = label;
+            this.transducer = transducer;
+            this.dimension = dimension;
+            this.physicalMin = physicalMin;
+            this.physicalMax = physicalMax;
+            this.digitalMin = digitalMin;
+            this.digitalMax = digitalMax;
+            this.prefiltering = prefiltering;
+            this.samplesPerRecord = samplesPerRecord;
+        }
+
+        /** The digital value for {@code physical}, clipped to the digital range. */
+        public int toDigital(float physical) {
+            double d = digitalMin + (physical - physicalMin) * (digitalMax - digitalMin) / (physicalMax - physicalMin);
+            return (int) Math.max(digitalMin, Math.min(digitalMax, Math.round(d)));
+        }
+    }
+
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final List<Signal> signals;
+    private final int annotationBytes;
+    private final int recordBytes;
+    private final ByteBuffer buffer;
+    private final double recordSeconds;
+    private long records;
+
+    /**
+     * Writes the header for {@code signals} plus an annotation signal of {@code annotationBytes}
+     * per record. {@code patient} and {@code recording} are the EDF+ subfields after the
+     * standard's fixed ones, already without spaces.
+     */
+    public EdfWriter(FileChannel channel, String patient, String recording, long startMillis, double recordSeconds,
+                     List<Signal> signals, int annotationBytes) throws IOException {
+        if (annotationBytes % 2 != 0) throw new IllegalArgumentException("annotation bytes must be even");
+        this.channel = channel;
+        this.signals = signals;
+        this.annotationBytes = annotationBytes;
+        this.recordSeconds = recordSeconds;
+        int bytes = annotationBytes;
+        for (Signal s : signals) bytes += 2 * s.samplesPerRecord;
+        recordBytes = bytes;
+        buffer = ByteBuffer.allocate(Math.max(recordBytes, BUFFER_BYTES / recordBytes * recordBytes))
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        Date start = new Date(startMillis);
+        int ns = signals.size() + 1;
+        StringBuilder h = new StringBuilder(256 * (ns + 1));
+        field(h, "0", 8);
+        field(h, "X X X " + patient, 80);
+        field(h, "Startdate " + format("dd-MMM-yyyy", start).toUpperCase(Locale.US) + " X X " + recording, 80);
+        field(h, format("dd.MM.yy", start), 8);
+        field(h, format("HH.mm.ss", start), 8);
+        field(h, Integer.toString(256 * (ns + 1)), 8);
+        field(h, "EDF+C", 44);
+        field(h, "-1", 8);
+        field(h, number(recordSeconds), 8);
+        field(h, Integer.toString(ns), 4);
+        for (Signal s : signals) field(h, s.label, 16);
+        field(h, "EDF Annotations", 16);
+        for (Signal s : signals) field(h, s.transducer, 80);
+        field(h, "", 80);
+        for (Signal s : signals) field(h, s.dimension, 8);
+        field(h, "", 8);
+        for (Signal s : signals) field(h, number(s.physicalMin), 8);
+        field(h, "-1", 8);
+        for (Signal s : signals) field(h, number(s.physicalMax), 8);
+        field(h, "1", 8);
+        for (Signal s : signals) field(h, Integer.toString(s.digitalMin), 8);
+        field(h, "-32768", 8);
+        for (Signal s : signals) field(h, Integer.toString(s.digitalMax), 8);
+        field(h, "32767", 8);
+        for (Signal s : signals) field(h, s.prefiltering, 80);
+        field(h, "", 80);
+        for (Signal s : signals) field(h, Integer.toString(s.samplesPerRecord), 8);
+        field(h, Integer.toString(annotationBytes / 2), 8);
+        for (int i = 0; i < ns; i++) field(h, "", 32);
+        write(ByteBuffer.wrap(h.toString().getBytes(StandardCharsets.US_ASCII)), 0);
+    }
+
+    private static String format(String pattern, Date date) {
+        return new SimpleDateFormat(pattern, Locale.US).format(date);
+    }
+
+    // EDF numbers are plain ASCII decimals of at most 8 characters
+    private static String number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e7) return Long.toString((long) value);
+        String s = String.format(Locale.US, "%.6f", value);
+        s = s.replaceAll("0+$", "");
+        return s.length() > 8 ? s.substring(0, 8) : s;
+    }
+
+    private static void field(StringBuilder out, String value, int width) {
+        int start = out.length();
+        for (int i = 0; i < value.length() && i < width; i++) {
+            char c = value.charAt(i);
+            // only printable US-ASCII is allowed in the header
+            out.append(c >= 32 && c < 127 ? c : '_');
+        }
+        while (out.length() < start + width) out.append(' ');
+    }
+
+    public int getAnnotationBytes() {
+        return annotationBytes;
+    }
+
+    public double getRecordSeconds() {
+        return recordSeconds;
+    }
+
+    /** Records written so far, including those still buffered. */
+    public long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Appends one record: for each signal its {@code samplesPerRecord} digital values from
+     * {@code digital[signal]} for record {@code record} of the arrays, then
+     * {@code annotationLength} bytes of TALs (zero-padded to the annotation size).
+     */
+    public void writeRecord(short[][] digital, int record, byte[] annotations, int annotationLength) throws IOException {
+        if (buffer.remaining() < recordBytes) flush();
+        for (int s = 0; s < signals.size(); s++) {
+            short[] values = digital[s];
+            int n = signals.get(s).samplesPerRecord;
+            for (int i = record * n; i < (record + 1) * n; i++) buffer.putShort(values[i]);
+        }
+        int length = Math.min(annotationLength, annotationBytes);
+        buffer.put(annotations, 0, length);
+        for (int i = length; i < annotationBytes; i++) buffer.put((byte) 0);
+        records++;
+    }
+
+    /** Writes out everything buffered. */
+    public void flush() throws IOException {
+        buffer.flip();
+        write(buffer, channel.size());
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer b, long position) throws IOException {
+        while (b.hasRemaining()) position += channel.write(b, position);
+    }
+
+    /** Writes the rest, fills in the record count and closes the channel. */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            byte[] count = new byte[8];
+            String n = Long.toString(records);
+            for (int i = 0; i < 8; i++) count[i] = (byte) (i < n.length() ? n.charAt(i) : ' ');
+            write(ByteBuffer.wrap(count), 236);
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.biowave;
+
+/**
+ * In-place radix-2 FFT of one power-of-two size. The twiddle factors and the bit-reversal
+ * permutation are tabulated once, so a transform allocates nothing and does no trigonometry.
+ * <p>
+ * {@link #powerSpectra} transforms two real signals with one complex FFT (one as the real and
+ * one as the imaginary part), which halves the work for Welch averaging. The tables are
+ * read-only, so threads may share an instance as long as each transforms its own arrays.
+ */
+public class Fft {
+
+    private final int n;
+    private final float[] cos, sin;
+    private final int[] reverse;
+
+    public Fft(int n) {
+        if (n < 2 || Integer.bitCount(n) != 1) throw new IllegalArgumentException("size must be a power of two");
+        this.n = n;
+        cos = new float[n / 2];
+        sin = new float[n / 2];
+        for (int k = 0; k < n / 2; k++) {
+            double a = -2 * Math.PI * k / n;
+            cos[k] = (float) Math.cos(a);
+            sin[k] = (float) Math.sin(a);
+        }
+        reverse = new int[n];
+        int bits = Integer.numberOfTrailingZeros(n);
+        for (int i = 0; i < n; i++) reverse[i] = Integer.reverse(i) >>> (32 - bits);
+    }
+
+    public int size() {
+        return n;
+    }
+
+    /** Forward transform of {@code re + i im}, in place. */
+    public void transform(float[] re, float[] im) {
+        for (int i = 0; i < n; i++) {
+            int j = reverse[i];
+            if (j <= i) continue;
+            float t = re[i];
+            re[i] = re[j];
+            re[j] = t;
+            t = im[i];
+            im[i] = im[j];
+            im[j] = t;
+        }
+        for (int half = 1, step = n / 2; half < n; half <<= 1, step >>= 1) {
+            for (int start = 0; start < n; start += half << 1) {
+                for (int k = 0, w = 0; k < half; k++, w += step) {
+                    int a = start + k, b = a + half;
+                    float wr = cos[w], wi = sin[w];
+                    float tr = re[b] * wr - im[b] * wi;
+                    float ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    /**
+     * Transforms the real signals in {@code a} and {@code b} together (both are overwritten) and
+     * adds their power spectra, bins 0 to n/2, to {@code powerA} and {@code powerB}.
+     */
+    public void powerSpectra(float[] a, float[] b, float[] powerA, float[] powerB) {
+        transform(a, b);
+        // X = A + iB with A, B hermitian: A_k = (X_k + X*_{n-k}) / 2, B_k = (X_k - X*_{n-k}) / 2i
+        for (int k = 0; k <= n / 2; k++) {
+            int m = (n - k) & (n - 1);
+            float ar = 0.5f * (a[k] + a[m]), ai = 0.5f * (b[k] - b[m]);
+            float br = 0.5f * (b[k] + b[m]), bi = 0.5f * (a[m] - a[k]);
+            powerA[k] += ar * ar + ai * ai;
+            powerB[k] += br * br + bi * bi;
+        }
+    }
+}
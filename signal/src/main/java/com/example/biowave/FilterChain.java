@@ -0,0 +1,119 @@
+package com.example.biowave;
+
+/**
+ * Ordered list of {@link FilterStage}s applied to one channel, plus the ECG/PPG presets used by
+ * the app.
+ * <p>
+ * Two bandwidths are offered: {@link #BANDWIDTH_MONITOR} (0.5-40 Hz for ECG) suppresses baseline
+ * wander and muscle noise for a stable display, {@link #BANDWIDTH_DIAGNOSTIC} (0.05 Hz up to
+ * 150 Hz or 0.4 fs) keeps ST segments and QRS detail. Both remove mains hum with a notch.
+ */
+public class FilterChain implements FilterStage {
+
+    public static final int BANDWIDTH_MONITOR = 0;
+    public static final int BANDWIDTH_DIAGNOSTIC = 1;
+
+    public static final float MAINS_50HZ = 50f;
+    public static final float MAINS_60HZ = 60f;
+
+    // Q values of the two sections of a 4th-order Butterworth
+    private static final double BUTTERWORTH4_Q1 = 0.5412;
+    private static final double BUTTERWORTH4_Q2 = 1.3066;
+    private static final double BUTTERWORTH2_Q = 0.7071;
+    private static final double NOTCH_Q = 30;
+
+    private final FilterStage[] stages;
+
+    public FilterChain(FilterStage... stages) {
+        this.stages = stages.clone();
+    }
+
+    public static FilterChain ecg(float sampleRate, int bandwidth, float mainsHz) {
+        boolean diagnostic = bandwidth == BANDWIDTH_DIAGNOSTIC;
+        double highPass = diagnostic ? 0.05 : 0.5;
+        double lowPass = Math.min(diagnostic ? 150 : 40, 0.4 * sampleRate);
+        // the notch is pointless (and unstable) above Nyquist
+        boolean notch = mainsHz > 0 && mainsHz < 0.5f * sampleRate;
+        Biquad[] chain = new Biquad[notch ? 4 : 3];
+        int n = 0;
+        chain[n++] = Biquad.highPass(sampleRate, highPass, BUTTERWORTH2_Q);
+        if (notch) chain[n++] = Biquad.notch(sampleRate, mainsHz, NOTCH_Q);
+        chain[n++] = Biquad.lowPass(sampleRate, lowPass, BUTTERWORTH4_Q1);
+        chain[n] = Biquad.lowPass(sampleRate, lowPass, BUTTERWORTH4_Q2);
+        return new FilterChain(chain);
+    }
+
+    /** PPG only needs the pulse band; the DC level carries no waveform information for display. */
+    public static FilterChain ppg(float sampleRate, int bandwidth) {
+        boolean diagnostic = bandwidth == BANDWIDTH_DIAGNOSTIC;
+        double lowPass = Math.min(diagnostic ? 15 : 8, 0.4 * sampleRate);
+        MedianFilter despike = new MedianFilter(3);
+        Biquad highPass = Biquad.highPass(sampleRate, diagnostic ? 0.05 : 0.3, BUTTERWORTH2_Q);
+        Biquad lowPassStage = Biquad.lowPass(sampleRate, lowPass, BUTTERWORTH2_Q);
+        if (diagnostic) return new FilterChain(despike, highPass, lowPassStage);
+        // a short boxcar on top smooths the display trace further
+        return new FilterChain(despike, highPass, lowPassStage,
+                new MovingAverage(Math.max(1, Math.round(0.04f * sampleRate))));
+    }
+
+    /** What {@link #ecg} does, in the EDF prefiltering notation, e.g. "HP:0.5Hz LP:40Hz N:50Hz". */
+    public static String describeEcg(float sampleRate, int bandwidth, float mainsHz) {
+        boolean diagnostic = bandwidth == BANDWIDTH_DIAGNOSTIC;
+        String s = "HP:" + hz(diagnostic ? 0.05 : 0.5) + " LP:" + hz(Math.min(diagnostic ? 150 : 40, 0.4 * sampleRate));
+        return mainsHz > 0 && mainsHz < 0.5f * sampleRate ? s + " N:" + hz(mainsHz) : s;
+    }
+
+    /** What {@link #ppg} does, in the EDF prefiltering notation. */
+    public static String describePpg(float sampleRate, int bandwidth) {
+        boolean diagnostic = bandwidth == BANDWIDTH_DIAGNOSTIC;
+        String s = "Median:3 HP:" + hz(diagnostic ? 0.05 : 0.3) + " LP:" + hz(Math.min(diagnostic ? 15 : 8, 0.4 * sampleRate));
+        return diagnostic ? s : s + " MA:" + Math.max(1, Math.round(0.04f * sampleRate));
+    }
+
+    private static String hz(double f) {
+        return (f == Math.rint(f) ? Long.toString((long) f) : Double.toString(f)) + "Hz";
+    }
+
+    public int getStageCount() {
+        return stages.length;
+    }
+
+    public FilterStage getStage(int index) {
+        return stages[index];
+    }
+
+    /** Product of the magnitude responses of the biquad stages at {@code freq}. */
+    public double gain(double sampleRate, double freq) {
+        double g = 1;
+        for (FilterStage stage : stages) {
+            if (stage instanceof Biquad) g *= ((Biquad) stage).gain(sampleRate, freq);
+        }
+        return g;
+    }
+
+    /** Sum of the group delays of the biquad stages at {@code freq}, in samples. */
+    public double groupDelay(double sampleRate, double freq) {
+        double d = 0;
+        for (FilterStage stage : stages) {
+            if (stage instanceof Biquad) d += ((Biquad) stage).groupDelay(sampleRate, freq);
+        }
+        return d;
+    }
+
+    @Override
+    public float process(float x) {
+        for (FilterStage stage : stages) x = stage.process(x);
+        return x;
+    }
+
+    /** Runs each stage over the whole block in turn, which keeps the inner loops tight. */
+    @Override
+    public void process(float[] data, int offset, int count) {
+        for (FilterStage stage : stages) stage.process(data, offset, count);
+    }
+
+    @Override
+    public void reset() {
+        for (FilterStage stage : stages) stage.reset();
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.biowave;
+
+/**
+ * One step of a {@link FilterChain}. Implementations keep their state in primitive fields and
+ * must not allocate in {@link #process(float)} or {@link #process(float[], int, int)}.
+ */
+public interface FilterStage {
+
+    float process(float x);
+
+    /** Filters {@code count} samples in place; same result as calling {@link #process(float)} on each. */
+    void process(float[] data, int offset, int count);
+
+    void reset();
+}
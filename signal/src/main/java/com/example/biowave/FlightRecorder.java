@@ -0,0 +1,202 @@
+package com.example.biowave;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Always-on recorder of the raw samples, kept in a fixed-size memory-mapped ring file so that
+ * the last {@code capacity} samples survive a disconnect, a process kill or a crash.
+ * <p>
+ * Appending is a handful of stores into the mapping: no system call, no allocation. The kernel
+ * owns the dirty pages, so everything written before a crash of the app is on disk afterwards;
+ * {@link #force()} additionally protects against power loss.
+ * <pre>
+ * header (64 bytes, little-endian)
+ *   0  magic "BWFR", version, record size, capacity (int each)
+ *  16  commit slot A: next index (long), check (int)
+ *  32  commit slot B: same; commits alternate between the slots so one is always intact
+ * record i at 64 + (i % capacity) * 40
+ *   index (long), time ms (long), ECG, PPG, temperature, SpO2 (float), check (int), unused (int)
+ * </pre>
+ * The record check mixes in the record's own index, so torn records and stale records from
+ * an earlier lap are both recognised and skipped when reading. Not thread-safe.
+ */
+public class FlightRecorder implements Closeable {
+
+    public interface Visitor {
+        void onRecord(long index, long timeMillis, float ecg, float ppg, float temp, float spo2);
+    }
+
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 40;
+    private static final int MAGIC = 0x52465742; // "BWFR"
+    private static final int VERSION = 1;
+    private static final int SLOT_A = 16;
+    private static final int SLOT_B = 32;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private final int capacity;
+
+    private long nextIndex;
+    private long committedIndex;
+    // the slot the next commit overwrites: always the older one
+    private int nextSlot = SLOT_A;
+    private final long recoveredCount;
+
+    public FlightRecorder(File path, int capacity) throws IOException {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        file = new RandomAccessFile(path, "rw");
+        boolean reuse = file.length() == size;
+        if (!reuse) file.setLength(size);
+        map = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        map.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (reuse && map.getInt(0) == MAGIC && map.getInt(4) == VERSION
+                && map.getInt(8) == RECORD_SIZE && map.getInt(12) == capacity) {
+            nextIndex = recover();
+            nextSlot = readSlot(SLOT_A) >= readSlot(SLOT_B) ? SLOT_B : SLOT_A;
+        } else {
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(8, RECORD_SIZE);
+            map.putInt(12, capacity);
+            writeSlot(SLOT_A, 0);
+            writeSlot(SLOT_B, 0);
+            nextIndex = 0;
+        }
+        committedIndex = nextIndex;
+        recoveredCount = nextIndex - getFirstIndex();
+    }
+
+    private long recover() {
+        long a = readSlot(SLOT_A), b = readSlot(SLOT_B);
+        long next = Math.max(Math.max(a, b), 0);
+        // records appended after the last commit are kept as long as they are intact
+        while (isValid(next)) next++;
+        return next;
+    }
+
+    public void append(long timeMillis, float ecg, float ppg, float temp, float spo2) {
+        long index = nextIndex++;
+        int p = offset(index);
+        int e = Float.floatToRawIntBits(ecg), q = Float.floatToRawIntBits(ppg);
+        int t = Float.floatToRawIntBits(temp), s = Float.floatToRawIntBits(spo2);
+        map.putLong(p, index);
+        map.putLong(p + 8, timeMillis);
+        map.putInt(p + 16, e);
+        map.putInt(p + 20, q);
+        map.putInt(p + 24, t);
+        map.putInt(p + 28, s);
+        map.putInt(p + 32, check(index, timeMillis, e, q, t, s));
+    }
+
+    /** Publishes everything appended so far; call once per batch rather than per sample. */
+    public void commit() {
+        if (committedIndex == nextIndex) return;
+        committedIndex = nextIndex;
+        // alternate slots so a torn header write never loses the previous commit
+        writeSlot(nextSlot, committedIndex);
+        nextSlot = nextSlot == SLOT_A ? SLOT_B : SLOT_A;
+    }
+
+    /** Commits and flushes the mapping to storage; a blocking call for pause/shutdown. */
+    public void force() {
+        commit();
+        map.force();
+    }
+
+    /**
+     * Visits up to {@code max} intact records from index {@code from} (clamped to
+     * {@link #getFirstIndex()}) in order; returns the number of records visited.
+     */
+    public int read(long from, int max, Visitor visitor) {
+        int visited = 0;
+        for (long i = Math.max(from, getFirstIndex()); i < nextIndex && visited < max; i++) {
+            if (!isValid(i)) continue;
+            int p = offset(i);
+            visitor.onRecord(i, map.getLong(p + 8), map.getFloat(p + 16), map.getFloat(p + 20),
+                    map.getFloat(p + 24), map.getFloat(p + 28));
+            visited++;
+        }
+        return visited;
+    }
+
+    /** Oldest index still held by the ring. */
+    public long getFirstIndex() {
+        return Math.max(0, nextIndex - capacity);
+    }
+
+    public long getNextIndex() {
+        return nextIndex;
+    }
+
+    /** Number of samples found in the file when it was opened. */
+    public long getRecoveredCount() {
+        return recoveredCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        file.close();
+    }
+
+    private int offset(long index) {
+        return HEADER_SIZE + (int) (index % capacity) * RECORD_SIZE;
+    }
+
+    private boolean isValid(long index) {
+        int p = offset(index);
+        if (map.getLong(p) != index) return false;
+        return map.getInt(p + 32) == check(index, map.getLong(p + 8), map.getInt(p + 16),
+                map.getInt(p + 20), map.getInt(p + 24), map.getInt(p + 28));
+    }
+
+    private void writeSlot(int slot, long value) {
+        map.putLong(slot, value);
+        map.putInt(slot + 8, check(value, ~value, MAGIC, 0, 0, 0));
+    }
+
+    private long readSlot(int slot) {
+        long value = map.getLong(slot);
+        return map.getInt(slot + 8) == check(value, ~value, MAGIC, 0, 0, 0) ? value : -1;
+    }
+
+    // murmur3-style mixing; cheap, and any torn or misplaced record fails it with high probability
+    static int check(long index, long time, int a, int b, int c, int d) {
+        int h = 0x9E3779B9;
+        h = mix(h, (int) index);
+        h = mix(h, (int) (index >>> 32));
+        h = mix(h, (int) time);
+        h = mix(h, (int) (time >>> 32));
+        h = mix(h, a);
+        h = mix(h, b);
+        h = mix(h, c);
+        h = mix(h, d);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static int mix(int h, int k) {
+        k *= 0xCC9E2D51;
+        k = Integer.rotateLeft(k, 15);
+        k *= 0x1B873593;
+        h ^= k;
+        h = Integer.rotateLeft(h, 13);
+        return h * 5 + 0xE6546B64;
+    }
+}
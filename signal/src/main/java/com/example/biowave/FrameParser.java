@@ -0,0 +1,192 @@
+package com.example.biowave;
+
+/**
+ * Streaming parser for the ASCII frames sent by the STM32, e.g. {@code E0.245;P0.370;T36.8;S98\n}.
+ * <p>
+ * Works directly on the notification bytes: incoming chunks are accumulated in a fixed line
+ * buffer and every complete line is scanned in place, so no objects are created per frame.
+ * Lines that are malformed, truncated or longer than the buffer are dropped and reported
+ * through {@link Listener#onParseError()}; parsing resumes at the next newline.
+ * <p>
+ * Not thread-safe; feed it from a single thread.
+ */
+public class FrameParser {
+
+    public interface Listener {
+        /** Called for every valid frame. Missing temperature / SpO2 fields are reported as NaN. */
+        void onFrame(float ecg, float ppg, float temp, float spo2);
+
+        /** Called once for every line that could not be parsed. */
+        void onParseError();
+    }
+
+    static final int MAX_LINE_LENGTH = 128;
+
+    // exact powers of ten for the fraction part; the mantissa is capped below 10^18
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+    private static final long MANTISSA_LIMIT = 100_000_000_000_000_000L;
+
+    private final Listener listener;
+    private final byte[] line = new byte[MAX_LINE_LENGTH];
+    private int length = 0;
+    private boolean overflowed = false;
+
+    // result of the last scanNumber() call
+    private boolean numberValid;
+
+    private long frameCount = 0;
+    private long errorCount = 0;
+
+    public FrameParser(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void feed(byte[] data) {
+        feed(data, 0, data.length);
+    }
+
+    public void feed(byte[] data, int offset, int count) {
+        int end = offset + count;
+        for (int i = offset; i < end; i++) {
+            byte b = data[i];
+            if (b == '\n') {
+                if (overflowed) reportError();
+                else if (length > 0) parseLine();
+                length = 0;
+                overflowed = false;
+            } else if (b < 0x20 || b == 0x7F) {
+                // '\r', NUL and other control characters never belong to a frame
+            } else if (length < MAX_LINE_LENGTH) {
+                line[length++] = b;
+            } else {
+                overflowed = true;
+            }
+        }
+    }
+
+    /** Drops any partially received line, e.g. after a reconnect. */
+    public void reset() {
+        length = 0;
+        overflowed = false;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    private void parseLine() {
+        int start = 0, end = length;
+        while (start < end && line[start] == ' ') start++;
+        while (end > start && line[end - 1] == ' ') end--;
+
+        // lines that are not sample frames (status messages, echoes) are skipped silently
+        if (start == end || line[start] != 'E') return;
+
+        float ecg = Float.NaN, ppg = Float.NaN, temp = Float.NaN, spo2 = Float.NaN;
+        boolean hasEcg = false, hasPpg = false;
+
+        int fieldStart = start;
+        while (fieldStart <= end) {
+            int fieldEnd = fieldStart;
+            while (fieldEnd < end && line[fieldEnd] != ';') fieldEnd++;
+
+            if (fieldEnd > fieldStart) {
+                byte tag = line[fieldStart];
+                int valueStart = fieldStart + 1;
+                // tolerate the "E:<value>" spelling used in the README
+                if (valueStart < fieldEnd && line[valueStart] == ':') valueStart++;
+
+                if (tag == 'E' || tag == 'P' || tag == 'T' || tag == 'S') {
+                    float value = scanNumber(valueStart, fieldEnd);
+                    if (!numberValid) {
+                        reportError();
+                        return;
+                    }
+                    if (tag == 'E') {
+                        ecg = value;
+                        hasEcg = true;
+                    } else if (tag == 'P') {
+                        ppg = value;
+                        hasPpg = true;
+                    } else if (tag == 'T') {
+                        temp = value;
+                    } else {
+                        spo2 = value;
+                    }
+                }
+                // unknown tags are ignored so the firmware can add fields later
+            }
+            fieldStart = fieldEnd + 1;
+        }
+
+        if (!hasEcg || !hasPpg) {
+            reportError();
+            return;
+        }
+        frameCount++;
+        listener.onFrame(ecg, ppg, temp, spo2);
+    }
+
+    /**
+     * Scans a plain decimal number ({@code -12.345}) in {@code line[from, to)}. Exponents are not
+     * supported since the firmware never prints them. Sets {@link #numberValid}.
+     */
+    private float scanNumber(int from, int to) {
+        numberValid = false;
+        int i = from;
+        while (i < to && line[i] == ' ') i++;
+        while (to > i && line[to - 1] == ' ') to--;
+        if (i == to) return Float.NaN;
+
+        boolean negative = false;
+        if (line[i] == '-' || line[i] == '+') {
+            negative = line[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int fractionDigits = 0;
+        int droppedDigits = 0;
+        boolean seenDigit = false;
+        boolean seenDot = false;
+
+        for (; i < to; i++) {
+            byte c = line[i];
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (!seenDot) {
+                    // integer part longer than the mantissa: keep the magnitude only
+                    if (mantissa < MANTISSA_LIMIT) mantissa = mantissa * 10 + (c - '0');
+                    else droppedDigits++;
+                } else if (mantissa < MANTISSA_LIMIT && fractionDigits < POW10.length - 1) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    fractionDigits++;
+                }
+                // fraction digits beyond the mantissa precision are ignored
+            } else if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                return Float.NaN;
+            }
+        }
+        if (!seenDigit) return Float.NaN;
+
+        double value = mantissa;
+        if (droppedDigits > 0) value *= Math.pow(10, droppedDigits);
+        if (fractionDigits > 0) value /= POW10[fractionDigits];
+        numberValid = true;
+        return (float) (negative ? -value : value);
+    }
+
+    private void reportError() {
+        errorCount++;
+        listener.onParseError();
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.biowave;
+
+/**
+ * Heart rate and rolling HRV from a stream of RR intervals.
+ * <p>
+ * The heart rate is smoothed over the last eight beats. SDNN and RMSSD cover the last
+ * {@code window} intervals and are kept as exact running integer sums of milliseconds, so each
+ * beat costs O(1) and nothing drifts over long sessions. Intervals outside 250-3000 ms
+ * (240-20 bpm) are treated as detection errors and skipped.
+ */
+public class HeartRateTracker {
+
+    private static final int MIN_RR_MS = 250;
+    private static final int MAX_RR_MS = 3000;
+    private static final int HR_BEATS = 8;
+
+    private final float sampleRate;
+
+    private final int[] hrRing = new int[HR_BEATS];
+    private int hrCount = 0, hrPos = 0;
+    private long hrSum = 0;
+
+    private final int[] rrRing;
+    private int rrCount = 0, rrPos = 0;
+    private long rrSum = 0, rrSumSq = 0;
+
+    private final long[] diffRing;
+    private int diffCount = 0, diffPos = 0;
+    private long diffSumSq = 0;
+
+    private int previousRr = -1;
+
+    public HeartRateTracker(float sampleRate, int window) {
+        if (window < 2) throw new IllegalArgumentException("window must hold at least two beats");
+        this.sampleRate = sampleRate;
+        rrRing = new int[window];
+        diffRing = new long[window - 1];
+    }
+
+    /** Adds an interval given in samples; returns false if it was rejected. */
+    public boolean addRrSamples(int rrSamples) {
+        return addRrMillis(Math.round(rrSamples * 1000f / sampleRate));
+    }
+
+    public boolean addRrMillis(int rr) {
+        if (rr < MIN_RR_MS || rr > MAX_RR_MS) {
+            previousRr = -1;
+            return false;
+        }
+
+        hrSum += rr - hrRing[hrPos];
+        hrRing[hrPos] = rr;
+        hrPos = (hrPos + 1) % HR_BEATS;
+        if (hrCount < HR_BEATS) hrCount++;
+
+        int evicted = rrRing[rrPos];
+        if (rrCount == rrRing.length) {
+            rrSum -= evicted;
+            rrSumSq -= (long) evicted * evicted;
+        } else {
+            rrCount++;
+        }
+        rrRing[rrPos] = rr;
+        rrPos = (rrPos + 1) % rrRing.length;
+        rrSum += rr;
+        rrSumSq += (long) rr * rr;
+
+        if (previousRr > 0) {
+            long diff = rr - previousRr;
+            long sq = diff * diff;
+            if (diffCount == diffRing.length) diffSumSq -= diffRing[diffPos];
+            else diffCount++;
+            diffRing[diffPos] = sq;
+            diffPos = (diffPos + 1) % diffRing.length;
+            diffSumSq += sq;
+        }
+        previousRr = rr;
+        return true;
+    }
+
+    /** Lost samples: the next interval does not follow the previous one. */
+    public void onGap() {
+        previousRr = -1;
+    }
+
+    /** Beats per minute over the last few beats, or NaN before the first interval. */
+    public float getHeartRate() {
+        return hrCount == 0 ? Float.NaN : 60_000f * hrCount / hrSum;
+    }
+
+    /** Standard deviation of the intervals in the window, in ms (NaN below two intervals). */
+    public float getSdnn() {
+        if (rrCount < 2) return Float.NaN;
+        double variance = (rrSumSq - (double) rrSum * rrSum / rrCount) / (rrCount - 1);
+        return (float) Math.sqrt(Math.max(0, variance));
+    }
+
+    /** Root mean square of successive differences in the window, in ms (NaN without a pair). */
+    public float getRmssd() {
+        return diffCount == 0 ? Float.NaN : (float) Math.sqrt(diffSumSq / (double) diffCount);
+    }
+
+    public void reset() {
+        hrCount = hrPos = 0;
+        hrSum = 0;
+        java.util.Arrays.fill(hrRing, 0);
+        rrCount = rrPos = 0;
+        rrSum = rrSumSq = 0;
+        diffCount = diffPos = 0;
+        diffSumSq = 0;
+        previousRr = -1;
+    }
+}
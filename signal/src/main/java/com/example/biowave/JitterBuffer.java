@@ -0,0 +1,308 @@
+package com.example.biowave;
+
+import java.util.Arrays;
+
+/**
+ * Re-times bursty sample arrivals onto a steady sample clock, so the display advances by the
+ * same number of samples every frame instead of leaping whenever a burst lands.
+ * <p>
+ * Samples arrive in batches (one per BLE notification) that share an arrival timestamp. The
+ * arrival of each batch's last sample drives a second-order delay-locked loop that tracks the
+ * clock's phase and its actual rate, so a sensor crystal a few hundred ppm off nominal neither
+ * fills nor drains the buffer over time. Sample {@code k} is released at its reconstructed
+ * time plus a latency that follows the worst lateness of a batch over the last half minute
+ * (measured on its first sample, so the batch length is covered too). The latency is slewed
+ * so the playback rate never changes abruptly: it grows quickly and shrinks slowly.
+ * <p>
+ * Time is never compressed. Samples the producer marks as lost (NaN, e.g. from sequence
+ * numbers) keep their slots like any other sample, and a batch arriving more than the gap
+ * threshold later than the clock predicts is preceded by NaN samples covering the missing
+ * time. Without sequence numbers a long stall that is later caught up cannot be told from a
+ * loss; the clock re-locks when the catch-up arrives. Not thread-safe: fill and release from
+ * one thread, typically the UI frame callback.
+ */
+public class JitterBuffer implements SampleRingBuffer.TimedConsumer {
+
+    private static final double LOOP_BANDWIDTH_HZ = 0.1;
+    private static final double MAX_RATE_DEVIATION = 0.05;
+    // lateness is the maximum over JITTER_BLOCKS blocks of JITTER_BLOCK_NANOS each
+    private static final int JITTER_BLOCKS = 8;
+    private static final long JITTER_BLOCK_NANOS = 4_000_000_000L;
+    // latency slew, as a fraction of the elapsed time: playback runs at most 10% slow or 1% fast
+    private static final double LATENCY_GROW_RATE = 0.1;
+    private static final double LATENCY_SHRINK_RATE = 0.01;
+    private static final long SAFETY_MARGIN_NANOS = 2_000_000;
+    private static final long INITIAL_LATENCY_NANOS = 50_000_000;
+
+    private final float nominalRate;
+    private final double nominalPeriod;
+    private final int capacity, mask;
+    private final float[] ecg, ppg, temp, spo2;
+    private final long[] timestamps;
+    private long writeIndex = 0, readIndex = 0;
+
+    private long minLatency = 10_000_000, maxLatency = 300_000_000, gapThreshold = 1_000_000_000;
+
+    // current batch
+    private long batchTimestamp;
+    private long batchStart;
+    private int lastBatchSize = 1;
+    private boolean inBatch = false;
+
+    // sample clock: index clockIndex sits at origin + clockTime ns, then period ns per sample
+    private boolean locked = false;
+    private long origin;
+    private long clockIndex;
+    private double clockTime, period;
+
+    private final double[] blockLateness = new double[JITTER_BLOCKS];
+    private int block = 0;
+    private double blockElapsed = 0;
+    private double latency, targetLatency;
+    private long lastReleaseNanos;
+    private long lastReleasedTimestamp;
+    private boolean underrun = false;
+
+    private long underruns = 0, inferredGaps = 0, gapSamples = 0, relocks = 0, overflows = 0;
+
+    /** @param capacity samples held; rounded up to a power of two, should cover the maximum latency */
+    public JitterBuffer(float nominalRateHz, int capacity) {
+        if (nominalRateHz <= 0) throw new IllegalArgumentException("rate must be positive");
+        if (capacity < 2) throw new IllegalArgumentException("capacity must be at least 2");
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.nominalRate = nominalRateHz;
+        this.nominalPeriod = 1e9 / nominalRateHz;
+        this.capacity = size;
+        this.mask = size - 1;
+        ecg = new float[size];
+        ppg = new float[size];
+        temp = new float[size];
+        spo2 = new float[size];
+        timestamps = new long[size];
+        period = nominalPeriod;
+        Arrays.fill(blockLateness, Double.NEGATIVE_INFINITY);
+    }
+
+    /** Bounds for the adaptive latency, in nanoseconds (defaults 10 ms and 300 ms). */
+    public void setLatencyLimits(long minNanos, long maxNanos) {
+        if (minNanos < 0 || maxNanos < minNanos) throw new IllegalArgumentException("invalid latency limits");
+        minLatency = minNanos;
+        maxLatency = maxNanos;
+    }
+
+    /** A batch this much later than predicted is taken as lost samples (default 1 s). */
+    public void setGapThreshold(long nanos) {
+        gapThreshold = nanos;
+    }
+
+    /** Appends a sample; {@code timestamp} is the arrival time of its batch in nanoseconds. */
+    @Override
+    public void onSample(float ecgValue, float ppgValue, float tempValue, float spo2Value, long timestamp) {
+        if (!inBatch || timestamp != batchTimestamp) startBatch(timestamp);
+        put(ecgValue, ppgValue, tempValue, spo2Value, timestamp);
+    }
+
+    private void startBatch(long timestamp) {
+        if (inBatch) {
+            lastBatchSize = (int) (writeIndex - batchStart);
+            updateClock(writeIndex - 1, batchTimestamp);
+        }
+        inBatch = true;
+        batchTimestamp = timestamp;
+        if (locked) {
+            // the first sample of a batch normally arrives (size - 1) periods after its own time
+            double late = timestamp - origin - timeOf(writeIndex) - (lastBatchSize - 1) * period;
+            if (late > gapThreshold) {
+                long missing = Math.round(late / period);
+                if (missing >= capacity) {
+                    relock(writeIndex, timestamp);
+                } else {
+                    inferredGaps++;
+                    gapSamples += missing;
+                    for (long i = 0; i < missing; i++) put(Float.NaN, Float.NaN, Float.NaN, Float.NaN, timestamp);
+                }
+            }
+        }
+        batchStart = writeIndex;
+    }
+
+    private void put(float ecgValue, float ppgValue, float tempValue, float spo2Value, long timestamp) {
+        if (writeIndex - readIndex == capacity) {
+            // far behind the clock; losing the oldest sample keeps the trace current
+            readIndex++;
+            overflows++;
+        }
+        int i = (int) writeIndex & mask;
+        ecg[i] = ecgValue;
+        ppg[i] = ppgValue;
+        temp[i] = tempValue;
+        spo2[i] = spo2Value;
+        timestamps[i] = timestamp;
+        writeIndex++;
+    }
+
+    private double timeOf(long index) {
+        return clockTime + (index - clockIndex) * period;
+    }
+
+    private void relock(long index, long arrival) {
+        if (locked) relocks++;
+        locked = true;
+        origin = arrival;
+        clockIndex = index;
+        clockTime = 0;
+        if (latency == 0) latency = targetLatency = clamp(INITIAL_LATENCY_NANOS);
+        // samples already queued keep their order; the clock restarts at the newest one
+        lastReleaseNanos = 0;
+    }
+
+    private void updateClock(long index, long arrival) {
+        if (!locked) {
+            relock(index, arrival);
+            return;
+        }
+        long samples = index - clockIndex;
+        if (samples <= 0) return;
+        double error = arrival - origin - timeOf(index);
+        if (Math.abs(error) > gapThreshold) {
+            relock(index, arrival);
+            return;
+        }
+
+        // lateness of the batch's first sample, the one that needs the most buffering
+        double elapsed = samples * period;
+        double firstLate = error + (lastBatchSize - 1) * period;
+        trackLateness(firstLate, elapsed);
+
+        // loop filter; arrivals later than the latency bound are outliers and only nudge the clock
+        double e = Math.min(error, maxLatency);
+        double omega = 2 * Math.PI * LOOP_BANDWIDTH_HZ * elapsed / 1e9;
+        clockTime = timeOf(index) + Math.sqrt(2) * omega * e;
+        clockIndex = index;
+        period += omega * omega * e / samples;
+        period = Math.max(nominalPeriod * (1 - MAX_RATE_DEVIATION),
+                Math.min(nominalPeriod * (1 + MAX_RATE_DEVIATION), period));
+    }
+
+    private void trackLateness(double late, double elapsed) {
+        blockElapsed += elapsed;
+        if (blockElapsed >= JITTER_BLOCK_NANOS) {
+            blockElapsed = 0;
+            block = (block + 1) % JITTER_BLOCKS;
+            blockLateness[block] = Double.NEGATIVE_INFINITY;
+        }
+        if (late > blockLateness[block]) blockLateness[block] = late;
+        double peak = Double.NEGATIVE_INFINITY;
+        for (double l : blockLateness) peak = Math.max(peak, l);
+        targetLatency = clamp((long) peak + SAFETY_MARGIN_NANOS);
+    }
+
+    private long clamp(long nanos) {
+        return Math.max(minLatency, Math.min(maxLatency, nanos));
+    }
+
+    /**
+     * Hands {@code consumer} every sample due at {@code nowNanos} (e.g. the frame time of the
+     * display callback), oldest first. Returns the number released.
+     */
+    public int release(long nowNanos, SampleRingBuffer.Consumer consumer) {
+        if (!locked) return 0;
+        if (lastReleaseNanos != 0) {
+            double elapsed = nowNanos - lastReleaseNanos;
+            double step = targetLatency - latency;
+            step = Math.max(-LATENCY_SHRINK_RATE * elapsed, Math.min(LATENCY_GROW_RATE * elapsed, step));
+            latency += step;
+        }
+        lastReleaseNanos = nowNanos;
+
+        double t = nowNanos - origin - latency;
+        long due = clockIndex + (long) Math.floor((t - clockTime) / period) + 1;
+        long end = Math.min(due, writeIndex);
+        if (due > writeIndex) {
+            if (!underrun) underruns++;
+            underrun = true;
+        } else {
+            underrun = false;
+        }
+
+        int n = 0;
+        for (long k = readIndex; k < end; k++, n++) {
+            int i = (int) k & mask;
+            consumer.onSample(ecg[i], ppg[i], temp[i], spo2[i]);
+        }
+        if (n > 0) {
+            lastReleasedTimestamp = timestamps[(int) (end - 1) & mask];
+            readIndex = end;
+        }
+        return n;
+    }
+
+    /** Drops everything and unlocks the clock, e.g. after the source reconnected. */
+    public void reset() {
+        readIndex = writeIndex;
+        inBatch = false;
+        locked = false;
+        period = nominalPeriod;
+        Arrays.fill(blockLateness, Double.NEGATIVE_INFINITY);
+        blockElapsed = 0;
+        latency = targetLatency = 0;
+        lastBatchSize = 1;
+        underrun = false;
+    }
+
+    /** Estimated sensor sample rate in Hz, the nominal rate until the clock locks. */
+    public double getSampleRate() {
+        return 1e9 / period;
+    }
+
+    public float getNominalRate() {
+        return nominalRate;
+    }
+
+    /** Current added latency in nanoseconds. */
+    public long getLatency() {
+        return (long) latency;
+    }
+
+    /** Latency the buffer is moving towards, in nanoseconds. */
+    public long getTargetLatency() {
+        return targetLatency == 0 ? 0 : (long) targetLatency;
+    }
+
+    public int size() {
+        return (int) (writeIndex - readIndex);
+    }
+
+    public boolean isLocked() {
+        return locked;
+    }
+
+    /** Timestamp of the newest sample released so far, 0 before the first. */
+    public long getLastReleasedTimestamp() {
+        return lastReleasedTimestamp;
+    }
+
+    /** Number of times the display caught up with the data and had to wait. */
+    public long getUnderrunCount() {
+        return underruns;
+    }
+
+    /** Gaps inferred from arrival times; lost samples marked by the producer are not counted. */
+    public long getInferredGapCount() {
+        return inferredGaps;
+    }
+
+    public long getInferredGapSamples() {
+        return gapSamples;
+    }
+
+    /** Times the clock was restarted because arrivals moved too far from it. */
+    public long getRelockCount() {
+        return relocks;
+    }
+
+    /** Samples discarded because the buffer was full. */
+    public long getOverflowCount() {
+        return overflows;
+    }
+}
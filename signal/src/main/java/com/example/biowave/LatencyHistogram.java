@@ -0,0 +1,86 @@
+package com.example.biowave;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size log-linear histogram of durations in nanoseconds, safe to record into from any
+ * number of threads without locks.
+ * <p>
+ * Each power of two is split into {@value #SUB_BUCKETS} linear buckets, so a reported value
+ * is never more than 1/{@value #SUB_BUCKETS} above the true one, from 1 ns up to about 18
+ * minutes; larger values land in the last bucket. Recording is a shift, a count of leading
+ * zeros and one atomic increment. Readers take a {@link #copyTo copy} of the counts and
+ * compute percentiles on it, typically on the difference between two copies to get the
+ * distribution of a recent interval.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    public static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40; // 2^40 ns, about 18 min
+    public static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(nanos));
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return value < 0 ? 0 : (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Smallest value that falls into {@code bucket}. */
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+
+    /** Largest value that falls into {@code bucket}. */
+    static long upperBound(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+
+    /** Copies the current counts into {@code out}, which must hold {@link #BUCKET_COUNT} entries. */
+    public void copyTo(long[] out) {
+        for (int i = 0; i < BUCKET_COUNT; i++) out[i] = counts.get(i);
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) total += counts.get(i);
+        return total;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) counts.set(i, 0);
+    }
+
+    /**
+     * Value at quantile {@code q} (0..1) of a copy of the counts, reported as the upper end of
+     * its bucket, or -1 when the histogram is empty.
+     */
+    public static long percentile(long[] counts, double q) {
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return -1;
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return upperBound(i);
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    public static long count(long[] counts) {
+        long total = 0;
+        for (long c : counts) total += c;
+        return total;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.biowave;
+
+/**
+ * Running median over an odd window, for removing isolated spikes (e.g. motion or contact
+ * artefacts) without smearing edges. Keeps the window sorted, so each sample costs O(length);
+ * meant for short windows of a few samples.
+ */
+public class MedianFilter implements FilterStage {
+
+    private final float[] ring;
+    private final float[] sorted;
+    private int pos = 0;
+    private int count = 0;
+
+    public MedianFilter(int length) {
+        if (length < 1 || length % 2 == 0) throw new IllegalArgumentException("length must be odd");
+        ring = new float[length];
+        sorted = new float[length];
+    }
+
+    @Override
+    public float process(float x) {
+        if (count < ring.length) {
+            insert(count, x);
+            count++;
+        } else {
+            // replace the oldest value in the sorted copy, then restore the order
+            float old = ring[pos];
+            int i = 0;
+            while (Float.compare(sorted[i], old) != 0) i++;
+            System.arraycopy(sorted, i + 1, sorted, i, count - i - 1);
+            insert(count - 1, x);
+        }
+        ring[pos] = x;
+        pos = (pos + 1) % ring.length;
+        return sorted[count / 2];
+    }
+
+    // inserts x into sorted[0..n), which has room for one more element
+    private void insert(int n, float x) {
+        int i = n;
+        while (i > 0 && Float.compare(sorted[i - 1], x) > 0) {
+            sorted[i] = sorted[i - 1];
+            i--;
+        }
+        sorted[i] = x;
+    }
+
+    @Override
+    public void process(float[] data, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) data[i] = process(data[i]);
+    }
+
+    @Override
+    public void reset() {
+        pos = 0;
+        count = 0;
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.biowave;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Whole-session history of one signal for zooming out: level 0 holds the samples, level
+ * {@code k} the minimum and maximum of each bucket of {@value #FANOUT}<sup>k</sup> samples,
+ * all maintained as samples are appended (amortised O(1) per sample).
+ * <p>
+ * Any zoom, from a few seconds to hours, is drawn by {@link #read} from the coarsest level
+ * whose buckets still fit in one pixel column, i.e. fewer than {@value #FANOUT} buckets per
+ * column: the cost depends on the width, never on the length of the session. Each level keeps
+ * its last {@code capacity} buckets in memory, so coarse levels reach back much further than
+ * fine ones; with a spill directory every completed chunk of every level is also appended to
+ * a file, and older detail is read from there.
+ * <p>
+ * NaN samples (gaps) count as samples but never as extremes; a bucket of nothing but gaps
+ * reads as NaN. Thread-safe: one thread appends, any other may read; reading spilled history
+ * doesn't hold up the appending thread.
+ */
+public class MinMaxPyramid implements Closeable {
+
+    public static final int FANOUT = 4;
+    /** Buckets written to a spill file at a time. */
+    static final int CHUNK = 1024;
+
+    private final Level[] levels;
+    private final int capacity;
+    private long sampleCount;
+
+    private final class Level {
+        final int index;
+        // level 0 stores each sample once: max aliases min
+        final float[] min;
+        final float[] max;
+        long next;
+        // the bucket being filled
+        float partialMin = Float.POSITIVE_INFINITY;
+        float partialMax = Float.NEGATIVE_INFINITY;
+        int partialCount;
+        FileChannel spill;
+        ByteBuffer spillBuffer;
+        // the spill file holds buckets [spillFrom, spilled)
+        long spillFrom;
+        long spilled;
+
+        Level(int index) {
+            this.index = index;
+            min = new float[capacity];
+            max = index == 0 ? min : new float[capacity];
+        }
+
+        int bucketBytes() {
+            return index == 0 ? 4 : 8;
+        }
+
+        void add(float lo, float hi) {
+            if (lo < partialMin) partialMin = lo;
+            if (hi > partialMax) partialMax = hi;
+            if (++partialCount < (index == 0 ? 1 : FANOUT)) return;
+            boolean empty = partialMin > partialMax;
+            float bucketMin = empty ? Float.NaN : partialMin;
+            float bucketMax = empty ? Float.NaN : partialMax;
+            int slot = (int) (next % capacity);
+            min[slot] = bucketMin;
+            max[slot] = bucketMax;
+            next++;
+            partialMin = Float.POSITIVE_INFINITY;
+            partialMax = Float.NEGATIVE_INFINITY;
+            partialCount = 0;
+            if (spill != null && next % CHUNK == 0 && next - CHUNK >= spillFrom) writeChunk();
+            if (index + 1 < levels.length) {
+                levels[index + 1].add(empty ? Float.POSITIVE_INFINITY : bucketMin, empty ? Float.NEGATIVE_INFINITY : bucketMax);
+            }
+        }
+
+        private void writeChunk() {
+            ByteBuffer b = spillBuffer;
+            b.clear();
+            int first = (int) ((next - CHUNK) % capacity);
+            for (int i = first; i < first + CHUNK; i++) {
+                b.putFloat(min[i]);
+                if (index > 0) b.putFloat(max[i]);
+            }
+            b.flip();
+            try {
+                while (b.hasRemaining()) spill.write(b, (next - CHUNK) * bucketBytes() + b.position());
+                spilled = next;
+            } catch (IOException e) {
+                // the history stops reaching back further than memory; recording goes on
+                closeSpill();
+            }
+        }
+
+        void closeSpill() {
+            if (spill == null) return;
+            try {
+                spill.close();
+            } catch (IOException ignored) {
+                // nothing left to lose
+            }
+            spill = null;
+        }
+
+        /** Smallest bucket index that can be read. */
+        long first() {
+            long inMemory = Math.max(0, next - capacity);
+            return spilled > spillFrom ? Math.min(spillFrom, inMemory) : inMemory;
+        }
+    }
+
+    /**
+     * @param levels   number of levels including the samples; {@code FANOUT^(levels-1)} samples
+     *                 per bucket at the top
+     * @param capacity buckets kept in memory per level, a multiple of {@value #CHUNK}
+     */
+    public MinMaxPyramid(int levels, int capacity) {
+        if (levels < 1) throw new IllegalArgumentException("need at least one level");
+        if (capacity < CHUNK || capacity % CHUNK != 0) throw new IllegalArgumentException("capacity must be a multiple of " + CHUNK);
+        this.capacity = capacity;
+        this.levels = new Level[levels];
+        for (int i = 0; i < levels; i++) this.levels[i] = new Level(i);
+    }
+
+    /** Levels needed so the top level's memory alone spans {@code samples}. */
+    public static int levelsFor(long samples, int capacity) {
+        int levels = 1;
+        for (long span = capacity; span < samples; span *= FANOUT) levels++;
+        return levels;
+    }
+
+    /**
+     * Also keeps everything in files {@code <prefix>-<level>.bin} in {@code dir} (replacing
+     * them), so the full resolution of the whole session stays readable; called later, from
+     * the next whole chunk on. Does file I/O, call it on the appending thread. If writing fails
+     * later, spilling stops.
+     */
+    public synchronized void spillTo(File dir, String prefix) throws IOException {
+        for (Level level : levels) {
+            if (level.spill != null) continue;
+            RandomAccessFile file = new RandomAccessFile(new File(dir, prefix + "-" + level.index + ".bin"), "rw");
+            file.setLength(0);
+            level.spill = file.getChannel();
+            level.spillBuffer = ByteBuffer.allocate(CHUNK * level.bucketBytes()).order(ByteOrder.LITTLE_ENDIAN);
+            level.spillFrom = level.spilled = (level.next + CHUNK - 1) / CHUNK * CHUNK;
+        }
+    }
+
+    public synchronized void append(float value) {
+        sampleCount++;
+        levels[0].add(value, value);
+    }
+
+    public synchronized void append(float[] values, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            sampleCount++;
+            levels[0].add(values[i], values[i]);
+        }
+    }
+
+    /** Samples appended so far, gaps included; the next sample's index. */
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /** Oldest sample index that {@link #read} returns anything for, at any zoom. */
+    public synchronized long getFirstIndex() {
+        long first = sampleCount;
+        long size = 1;
+        for (Level level : levels) {
+            first = Math.min(first, level.first() * size);
+            size *= FANOUT;
+        }
+        return first;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * Splits samples {@code [from, to)} into {@code columns} equal columns and writes each
+     * column's extremes to {@code min} and {@code max}, NaN where nothing is known (a gap, the
+     * future, or history no longer kept at this zoom). Columns are snapped to bucket boundaries,
+     * so an edge may be off by less than a column. Returns the level read.
+     */
+    public int read(long from, long to, int columns, float[] min, float[] max) {
+        if (columns <= 0) return 0;
+        double perColumn = (double) (to - from) / columns;
+        int k = 0;
+        long size = 1;
+        while (k + 1 < levels.length && size * FANOUT <= perColumn) {
+            k++;
+            size *= FANOUT;
+        }
+        Level level = levels[k];
+        long lowest, inMemory, spilled;
+        FileChannel spill;
+        // memory under the lock; the spill files only after it, so appending never waits on disk
+        synchronized (this) {
+            lowest = level.first();
+            inMemory = Math.max(lowest, level.next - capacity);
+            spilled = level.spilled;
+            spill = level.spill;
+            for (int c = 0; c < columns; c++) {
+                long a = Math.floorDiv(from + (long) Math.floor(c * perColumn), size);
+                long b = Math.max(a + 1, Math.floorDiv(from + (long) Math.floor((c + 1) * perColumn), size));
+                float lo = Float.POSITIVE_INFINITY, hi = Float.NEGATIVE_INFINITY;
+                for (long i = Math.max(a, inMemory); i < b && i <= level.next; i++) {
+                    float bucketMin, bucketMax;
+                    if (i == level.next) {
+                        bucketMin = level.partialMin;
+                        bucketMax = level.partialMax;
+                    } else {
+                        int slot = (int) (i % capacity);
+                        bucketMin = level.min[slot];
+                        bucketMax = level.max[slot];
+                    }
+                    // NaN fails both comparisons, so gaps never become extremes
+                    if (bucketMin < lo) lo = bucketMin;
+                    if (bucketMax > hi) hi = bucketMax;
+                }
+                min[c] = lo;
+                max[c] = hi;
+            }
+        }
+        if (spill != null && lowest < inMemory) {
+            // spilled buckets never change, and the file is only ever appended to
+            synchronized (spillRead) {
+                for (int c = 0; c < columns; c++) {
+                    long a = Math.floorDiv(from + (long) Math.floor(c * perColumn), size);
+                    long b = Math.max(a + 1, Math.floorDiv(from + (long) Math.floor((c + 1) * perColumn), size));
+                    for (long i = Math.max(a, lowest); i < b && i < inMemory; i++) {
+                        float[] bucket = readSpilled(spill, level.index, i, spilled);
+                        if (bucket[0] < min[c]) min[c] = bucket[0];
+                        if (bucket[1] > max[c]) max[c] = bucket[1];
+                    }
+                }
+            }
+        }
+        for (int c = 0; c < columns; c++) {
+            if (min[c] > max[c]) min[c] = max[c] = Float.NaN;
+        }
+        return k;
+    }
+
+    // guarded by spillRead rather than the pyramid, so a slow disk holds up readers only
+    private final float[] spilledBucket = new float[2];
+    private final ByteBuffer spillRead = ByteBuffer.allocate(CHUNK * 8).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel spillReadFile;
+    private long spillReadFirst = -1;
+    private int spillReadCount;
+
+    // Spilled buckets are read a chunk at a time; a column sweep asks for them in order. Buckets
+    // from spilled on weren't written when the read started and show as gaps.
+    private float[] readSpilled(FileChannel spill, int index, long i, long spilled) {
+        int bucketBytes = index == 0 ? 4 : 8;
+        if (spillReadFile != spill || i < spillReadFirst || i >= spillReadFirst + spillReadCount) {
+            spillReadFile = spill;
+            spillReadFirst = i - i % CHUNK;
+            spillReadCount = 0;
+            spillRead.clear();
+            spillRead.limit((int) Math.max(0, Math.min(CHUNK, spilled - spillReadFirst)) * bucketBytes);
+            try {
+                long position = spillReadFirst * bucketBytes;
+                while (spillRead.hasRemaining()) {
+                    if (spill.read(spillRead, position + spillRead.position()) < 0) break;
+                }
+            } catch (IOException e) {
+                // unreadable or closed meanwhile: the bucket shows as a gap
+            }
+            spillReadCount = spillRead.position() / bucketBytes;
+        }
+        if (i >= spillReadFirst + spillReadCount) {
+            spilledBucket[0] = spilledBucket[1] = Float.NaN;
+        } else {
+            int p = (int) (i - spillReadFirst) * bucketBytes;
+            spilledBucket[0] = spillRead.getFloat(p);
+            spilledBucket[1] = index == 0 ? spilledBucket[0] : spillRead.getFloat(p + 4);
+        }
+        return spilledBucket;
+    }
+
+    /** Closes the spill files; they stay on disk until the next {@link #spillTo} replaces them. */
+    @Override
+    public synchronized void close() {
+        for (Level level : levels) level.closeSpill();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.biowave;
+
+/**
+ * Boxcar moving average over the last {@code length} samples. The running sum is kept in double
+ * precision and rebuilt from the window once per pass, so rounding errors cannot accumulate.
+ */
+public class MovingAverage implements FilterStage {
+
+    private final float[] window;
+    private int pos = 0;
+    private int count = 0;
+    private double sum = 0;
+
+    public MovingAverage(int length) {
+        if (length < 1) throw new IllegalArgumentException("length must be positive");
+        window = new float[length];
+    }
+
+    @Override
+    public float process(float x) {
+        sum += x - window[pos];
+        window[pos] = x;
+        if (++pos == window.length) {
+            pos = 0;
+            sum = 0;
+            for (float v : window) sum += v;
+        }
+        if (count < window.length) count++;
+        return (float) (sum / count);
+    }
+
+    @Override
+    public void process(float[] data, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) data[i] = process(data[i]);
+    }
+
+    @Override
+    public void reset() {
+        java.util.Arrays.fill(window, 0);
+        pos = 0;
+        count = 0;
+        sum = 0;
+    }
+}
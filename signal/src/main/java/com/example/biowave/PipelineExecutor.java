@@ -0,0 +1,196 @@
+package com.example.biowave;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the {@link DevicePipeline}s of any number of sensors on a fixed pool of worker threads.
+ * <p>
+ * Each pipeline is reached through a {@link Channel}, a bounded mailbox of notifications and
+ * control tasks. A channel is processed by at most one worker at a time and in order, so the
+ * pipeline needs no locking; after a batch a busy channel goes to the back of the run queue,
+ * so one chatty device cannot starve the others. When a mailbox is full new notifications are
+ * dropped and counted rather than blocking the BLE thread. Enqueueing does not allocate.
+ */
+public class PipelineExecutor {
+
+    /** Items one channel processes before yielding the worker. */
+    private static final int BATCH = 32;
+    /** Mailbox slots only control tasks may use, so they are never refused. */
+    private static final int TASK_RESERVE = 16;
+
+    private final ThreadPoolExecutor executor;
+    private final int maxChannels;
+    private final AtomicInteger channels = new AtomicInteger();
+
+    /**
+     * @param threads     worker threads, e.g. the number of cores the pipelines may use
+     * @param maxChannels most channels that will ever be registered
+     */
+    public PipelineExecutor(int threads, int maxChannels) {
+        this.maxChannels = maxChannels;
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "BioWave-Pipeline-" + count.incrementAndGet());
+            t.setDaemon(true);
+            // on Android this maps to the urgent-display nice level the ingestion thread used
+            t.setPriority(Thread.MAX_PRIORITY);
+            return t;
+        };
+        // each channel is queued at most once, so the bounded queue never rejects
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxChannels), factory);
+        executor.prestartAllCoreThreads();
+    }
+
+    /** @param capacity notifications the mailbox holds (at least) before dropping */
+    public Channel register(DevicePipeline pipeline, int capacity) {
+        if (channels.incrementAndGet() > maxChannels) {
+            channels.decrementAndGet();
+            throw new IllegalStateException("at most " + maxChannels + " channels");
+        }
+        return new Channel(pipeline, capacity);
+    }
+
+    /** Finishes what is queued, then stops the workers. */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    public final class Channel implements Runnable {
+
+        private final DevicePipeline pipeline;
+        private final Object[] items;
+        private final long[] stamps;
+        private final int mask;
+        private int head, tail;
+        private boolean scheduled;
+
+        private volatile long processed, dropped, failures;
+
+        private Channel(DevicePipeline pipeline, int capacity) {
+            this.pipeline = pipeline;
+            int size = Integer.highestOneBit(Math.max(2, capacity) + TASK_RESERVE - 1) << 1;
+            items = new Object[size];
+            stamps = new long[size];
+            mask = size - 1;
+        }
+
+        public DevicePipeline getPipeline() {
+            return pipeline;
+        }
+
+        /** Queues a notification payload, stamped with its arrival time; any thread. False if full. */
+        public boolean post(byte[] data) {
+            return enqueue(data, System.nanoTime());
+        }
+
+        /**
+         * Runs {@code task} on the pipeline's thread, after everything queued before it. Not
+         * subject to the capacity; only a burst of more than 16 pending tasks is refused.
+         */
+        public void execute(Runnable task) {
+            enqueue(task, 0);
+        }
+
+        private boolean enqueue(Object item, long stamp) {
+            boolean schedule;
+            synchronized (this) {
+                int queued = tail - head;
+                if (item instanceof byte[]) {
+                    if (queued >= items.length - TASK_RESERVE) {
+                        dropped++;
+                        return false;
+                    }
+                } else if (queued == items.length) {
+                    throw new IllegalStateException("too many pending tasks");
+                }
+                int i = tail++ & mask;
+                items[i] = item;
+                stamps[i] = stamp;
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // shut down; whatever arrives now is not processed
+                    synchronized (this) {
+                        scheduled = false;
+                    }
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                if (!runBatch()) return;
+                // still busy: let the other channels have a turn
+                try {
+                    executor.execute(this);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // shutting down; finish the queue on this worker
+                }
+            }
+        }
+
+        // false once the mailbox is empty
+        private boolean runBatch() {
+            for (int n = 0; n < BATCH; n++) {
+                Object item;
+                long stamp;
+                synchronized (this) {
+                    if (head == tail) {
+                        scheduled = false;
+                        return false;
+                    }
+                    int i = head++ & mask;
+                    item = items[i];
+                    stamp = stamps[i];
+                    items[i] = null;
+                }
+                try {
+                    if (item instanceof byte[]) pipeline.onData((byte[]) item, stamp);
+                    else ((Runnable) item).run();
+                } catch (RuntimeException e) {
+                    // one bad payload or task must not take down the device, let alone the others
+                    failures++;
+                }
+                processed++;
+            }
+            return true;
+        }
+
+        /** Queued items not yet processed. */
+        public synchronized int size() {
+            return tail - head;
+        }
+
+        public long getProcessedCount() {
+            return processed;
+        }
+
+        /** Notifications lost because the mailbox was full. */
+        public long getDroppedCount() {
+            return dropped;
+        }
+
+        /** Items whose processing threw. */
+        public long getFailureCount() {
+            return failures;
+        }
+    }
+}
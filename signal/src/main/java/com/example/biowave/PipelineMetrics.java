@@ -0,0 +1,201 @@
+package com.example.biowave;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms for the path from BLE notification to pixels, cheap enough
+ * to stay on in production builds.
+ * <p>
+ * Times are {@link System#nanoTime()} values. A notification is stamped on arrival; the stamp
+ * follows its samples through the ingestion thread and the sample queue to the screen, giving
+ * arrival-to-parsed, arrival-to-released (including the jitter buffer's deliberate delay) and
+ * arrival-to-pixel latencies. Counters are written
+ * by one thread each and read from anywhere. {@link #report} turns the totals into per-second
+ * rates and interval percentiles; call it from one thread only.
+ */
+public class PipelineMetrics {
+
+    public final LatencyHistogram parseLatency = new LatencyHistogram();
+    public final LatencyHistogram queueLatency = new LatencyHistogram();
+    public final LatencyHistogram pixelLatency = new LatencyHistogram();
+    public final LatencyHistogram frameInterval = new LatencyHistogram();
+    public final LatencyHistogram renderTime = new LatencyHistogram();
+
+    private final AtomicLong notifications = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong parseErrors = new AtomicLong();
+    private final AtomicLong lostFrames = new AtomicLong();
+    private final AtomicLong droppedSamples = new AtomicLong();
+    private volatile int queueDepth;
+    private volatile int maxQueueDepth;
+    private volatile long bufferLatency;
+    private volatile double sensorRate;
+    private volatile long underruns;
+
+    // report() state
+    private final LatencyHistogram[] histograms = {parseLatency, queueLatency, pixelLatency, frameInterval, renderTime};
+    private long lastReportNanos = -1;
+    private final long[] lastTotals = new long[6];
+    private final long[] totals = new long[6];
+    private final long[][] lastCounts = new long[5][LatencyHistogram.BUCKET_COUNT];
+    private final long[][] counts = new long[5][LatencyHistogram.BUCKET_COUNT];
+
+    // single writer per counter, so a plain read-add-publish is enough
+    private static void add(AtomicLong counter, long n) {
+        counter.lazySet(counter.get() + n);
+    }
+
+    /** Ingestion thread: a notification of {@code length} bytes was received. */
+    public void onNotification(int length) {
+        add(notifications, 1);
+        add(bytes, length);
+    }
+
+    public void onSamples(int count) {
+        add(samples, count);
+    }
+
+    public void onParseError() {
+        add(parseErrors, 1);
+    }
+
+    public void onLostFrames(int count) {
+        add(lostFrames, count);
+    }
+
+    /** Total samples dropped because the UI did not keep up; a running total, not a delta. */
+    public void setDroppedSamples(long total) {
+        droppedSamples.lazySet(total);
+    }
+
+    /** UI thread: samples still queued after the last drain. */
+    public void setQueueDepth(int depth) {
+        queueDepth = depth;
+        if (depth > maxQueueDepth) maxQueueDepth = depth;
+    }
+
+    /** UI thread: state of the {@link JitterBuffer} pacing the display. */
+    public void setJitterBuffer(long latencyNanos, double sampleRateHz, long underrunCount) {
+        bufferLatency = latencyNanos;
+        sensorRate = sampleRateHz;
+        underruns = underrunCount;
+    }
+
+    public static final class Report {
+        public double seconds;
+        public double notificationsPerSecond, samplesPerSecond, bytesPerSecond;
+        public long parseErrors, lostFrames, droppedSamples;
+        public int queueDepth, maxQueueDepth;
+        public long bufferLatency, underruns;
+        public double sensorRate;
+        /** p50, p99, p99.9 in ns, or -1 when nothing was recorded in the interval. */
+        public final long[] parse = new long[3], queue = new long[3], pixel = new long[3],
+                frame = new long[3], render = new long[3];
+
+        /** Short lines for the on-screen overlay; latencies are p50/p99/p99.9. */
+        public String toOverlayText() {
+            return String.format(Locale.US,
+                    "%.0f ntf/s %.0f smp/s%n%.1f kB/s queue %d/%d%nerr %d gap %d drop %d%n"
+                            + "jb %dms %.1fHz ur %d%npixel %s%nparse %s%nframe %s%ndraw  %s",
+                    notificationsPerSecond, samplesPerSecond, bytesPerSecond / 1000, queueDepth, maxQueueDepth,
+                    parseErrors, lostFrames, droppedSamples, bufferLatency / 1_000_000, sensorRate, underruns,
+                    format(pixel), format(parse), format(frame), format(render));
+        }
+
+        public void writeTo(Writer out) throws IOException {
+            out.write(String.format(Locale.US,
+                    "interval_s=%.3f notifications_per_s=%.1f samples_per_s=%.1f bytes_per_s=%.1f%n"
+                            + "parse_errors=%d lost_frames=%d dropped_samples=%d queue_depth=%d max_queue_depth=%d%n"
+                            + "buffer_latency_ns=%d sensor_rate_hz=%.3f underruns=%d%n",
+                    seconds, notificationsPerSecond, samplesPerSecond, bytesPerSecond,
+                    parseErrors, lostFrames, droppedSamples, queueDepth, maxQueueDepth,
+                    bufferLatency, sensorRate, underruns));
+            writeLatency(out, "parse", parse);
+            writeLatency(out, "queue", queue);
+            writeLatency(out, "pixel", pixel);
+            writeLatency(out, "frame_interval", frame);
+            writeLatency(out, "render", render);
+        }
+
+        private static void writeLatency(Writer out, String name, long[] p) throws IOException {
+            out.write(String.format(Locale.US, "%s_ns p50=%d p99=%d p999=%d%n", name, p[0], p[1], p[2]));
+        }
+
+        private static String format(long[] p) {
+            return p[0] < 0 ? "-" : ms(p[0]) + "/" + ms(p[1]) + "/" + ms(p[2]) + "ms";
+        }
+
+        private static String ms(long nanos) {
+            return nanos < 10_000_000 ? String.format(Locale.US, "%.1f", nanos / 1e6) : Long.toString(nanos / 1_000_000);
+        }
+    }
+
+    /**
+     * Rates and percentiles since the previous call (since creation for the first one),
+     * written into {@code report}; counts (errors, gaps, drops) are totals.
+     */
+    public void report(long nowNanos, Report report) {
+        totals[0] = notifications.get();
+        totals[1] = samples.get();
+        totals[2] = bytes.get();
+        totals[3] = parseErrors.get();
+        totals[4] = lostFrames.get();
+        totals[5] = droppedSamples.get();
+        for (int h = 0; h < histograms.length; h++) histograms[h].copyTo(counts[h]);
+
+        double seconds = lastReportNanos < 0 ? 0 : (nowNanos - lastReportNanos) / 1e9;
+        report.seconds = seconds;
+        report.notificationsPerSecond = seconds > 0 ? (totals[0] - lastTotals[0]) / seconds : 0;
+        report.samplesPerSecond = seconds > 0 ? (totals[1] - lastTotals[1]) / seconds : 0;
+        report.bytesPerSecond = seconds > 0 ? (totals[2] - lastTotals[2]) / seconds : 0;
+        report.parseErrors = totals[3];
+        report.lostFrames = totals[4];
+        report.droppedSamples = totals[5];
+        report.queueDepth = queueDepth;
+        report.maxQueueDepth = maxQueueDepth;
+        report.bufferLatency = bufferLatency;
+        report.sensorRate = sensorRate;
+        report.underruns = underruns;
+        long[][] out = {report.parse, report.queue, report.pixel, report.frame, report.render};
+        for (int h = 0; h < histograms.length; h++) {
+            long[] interval = lastCounts[h];
+            // turn the previous totals into the interval's counts in place
+            for (int i = 0; i < interval.length; i++) interval[i] = counts[h][i] - interval[i];
+            out[h][0] = LatencyHistogram.percentile(interval, 0.5);
+            out[h][1] = LatencyHistogram.percentile(interval, 0.99);
+            out[h][2] = LatencyHistogram.percentile(interval, 0.999);
+            System.arraycopy(counts[h], 0, lastCounts[h], 0, interval.length);
+        }
+        System.arraycopy(totals, 0, lastTotals, 0, totals.length);
+        lastReportNanos = nowNanos;
+    }
+
+    /**
+     * Writes every non-empty bucket of every histogram since creation, one
+     * {@code name lower_ns upper_ns count} line each, for offline analysis.
+     */
+    public void writeHistogramsTo(Writer out) throws IOException {
+        String[] names = {"parse", "queue", "pixel", "frame_interval", "render"};
+        long[] buckets = new long[LatencyHistogram.BUCKET_COUNT];
+        for (int h = 0; h < histograms.length; h++) {
+            histograms[h].copyTo(buckets);
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] == 0) continue;
+                out.write(names[h] + " " + LatencyHistogram.lowerBound(i) + " "
+                        + LatencyHistogram.upperBound(i) + " " + buckets[i] + "\n");
+            }
+        }
+    }
+
+    public long getNotificationCount() {
+        return notifications.get();
+    }
+
+    public long getSampleCount() {
+        return samples.get();
+    }
+}
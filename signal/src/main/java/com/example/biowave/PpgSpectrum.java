@@ -0,0 +1,254 @@
+package com.example.biowave;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Respiration rate, pulse rate and a spectral quality from the PPG, by Welch averaging of FFTs
+ * over the last minute.
+ * <p>
+ * The acquiring thread only averages the samples down to about 25 Hz into a one-minute ring, in
+ * O(1) per sample. Every {@value #UPDATE_SECONDS} s a copy of the ring is handed to a worker
+ * thread (started with the first full minute), which splits it into five half-overlapping 20 s
+ * segments, removes their linear trend, applies a Hann window and averages their power spectra,
+ * two segments per complex {@link Fft}. The pulse rate is the strongest peak at 42-210 bpm; the
+ * respiration rate the strongest at 6-36 breaths/min, where breathing modulates the baseline of
+ * the PPG, if it stands well above the rest of that band. Both are interpolated between bins.
+ * The quality is the share of the pulse band's power in the fundamental and its harmonic, near 1
+ * for a clean periodic pulse. If the worker is still busy, an update is skipped rather than
+ * waited for. A gap starts the minute over.
+ * <p>
+ * All buffers are allocated up front. {@link #add}, {@link #gap} and {@link #close} must be called
+ * from the acquiring thread; the results may be read from any thread.
+ */
+public class PpgSpectrum implements Closeable {
+
+    public static final int UPDATE_SECONDS = 5;
+    private static final float TARGET_RATE = 25f;
+    private static final int SEGMENT = 512;
+    private static final int HOP = SEGMENT / 2;
+    private static final int SEGMENTS = 5;
+    static final int HISTORY = SEGMENT + (SEGMENTS - 1) * HOP;
+    private static final float RESP_LOW_HZ = 0.1f, RESP_HIGH_HZ = 0.6f;
+    private static final float PULSE_LOW_HZ = 0.7f, PULSE_HIGH_HZ = 3.5f;
+    // the Hann window's main lobe is four bins wide
+    private static final int PEAK_BINS = 2;
+    // the respiration peak must stand this far above the rest of its band, else it is noise
+    private static final float MIN_RESP_PROMINENCE = 5f;
+    private static final float[] STOP = new float[0];
+
+    private final int decimation;
+    private final float rate;
+    private final int updateEvery;
+
+    // acquiring thread
+    private final float[] ring = new float[HISTORY];
+    private int ringPos, filled, sinceUpdate;
+    private float sum;
+    private int summed;
+    private final BlockingQueue<float[]> free = new ArrayBlockingQueue<>(2);
+    private final BlockingQueue<float[]> full = new ArrayBlockingQueue<>(3);
+    private Thread thread;
+    private boolean closed;
+
+    // worker thread
+    private final Fft fft = new Fft(SEGMENT);
+    private final float[] window = new float[SEGMENT];
+    private final float[] a = new float[SEGMENT], b = new float[SEGMENT];
+    private final float[] power = new float[SEGMENT / 2 + 1];
+    private final double trendNorm;
+
+    private volatile float pulseRate = Float.NaN, respirationRate = Float.NaN, quality = Float.NaN;
+    private volatile long updates, skipped;
+
+    public PpgSpectrum(float sampleRate) {
+        decimation = Math.max(1, Math.round(sampleRate / TARGET_RATE));
+        rate = sampleRate / decimation;
+        updateEvery = Math.round(UPDATE_SECONDS * rate);
+        double norm = 0;
+        for (int i = 0; i < SEGMENT; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / SEGMENT));
+            double c = i - (SEGMENT - 1) / 2.0;
+            norm += c * c;
+        }
+        trendNorm = norm;
+        free.add(new float[HISTORY]);
+        free.add(new float[HISTORY]);
+    }
+
+    /** Adds the next PPG sample, raw (the baseline carries the breathing), or NaN for a gap. */
+    public void add(float ppg) {
+        if (Float.isNaN(ppg)) {
+            gap();
+            return;
+        }
+        sum += ppg;
+        if (++summed < decimation) return;
+        ring[ringPos] = sum / decimation;
+        if (++ringPos == HISTORY) ringPos = 0;
+        sum = 0;
+        summed = 0;
+        if (filled < HISTORY) {
+            if (++filled == HISTORY) submit();
+        } else if (++sinceUpdate >= updateEvery) {
+            submit();
+        }
+    }
+
+    /** Drops the history, e.g. after lost samples; the last results stand until the next minute. */
+    public void gap() {
+        filled = 0;
+        sinceUpdate = 0;
+        sum = 0;
+        summed = 0;
+    }
+
+    private void submit() {
+        sinceUpdate = 0;
+        if (closed) return;
+        float[] copy = free.poll();
+        if (copy == null) {
+            skipped++;
+            return;
+        }
+        // oldest first
+        System.arraycopy(ring, ringPos, copy, 0, HISTORY - ringPos);
+        System.arraycopy(ring, 0, copy, HISTORY - ringPos, ringPos);
+        full.add(copy);
+        if (thread == null) {
+            thread = new Thread(this::analyseLoop, "BioWave-Spectrum");
+            // nothing to lose if a pipeline is abandoned without closing it
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /** Stops the worker, waiting for an update in progress. */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        if (thread == null) return;
+        full.add(STOP);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void analyseLoop() {
+        while (true) {
+            float[] history;
+            try {
+                history = full.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (history == STOP) return;
+            analyse(history);
+            free.add(history);
+        }
+    }
+
+    /** Computes the results from a minute of decimated samples, oldest first. Worker thread. */
+    void analyse(float[] history) {
+        Arrays.fill(power, 0f);
+        for (int s = 0; s < SEGMENTS; s += 2) {
+            prepare(history, s * HOP, a);
+            if (s + 1 < SEGMENTS) prepare(history, (s + 1) * HOP, b);
+            else Arrays.fill(b, 0f);
+            // both spectra go into the same sum
+            fft.powerSpectra(a, b, power, power);
+        }
+        float binHz = rate / SEGMENT;
+
+        int pulse = peak(PULSE_LOW_HZ / binHz, PULSE_HIGH_HZ / binHz);
+        float pulseHz = Float.NaN, share = 0;
+        if (pulse > 0) {
+            pulseHz = interpolate(pulse) * binHz;
+            double total = bandPower(Math.round(PULSE_LOW_HZ / binHz) - PEAK_BINS, Math.min(power.length - 1, Math.round(2 * PULSE_HIGH_HZ / binHz)));
+            double peaks = bandPower(pulse - PEAK_BINS, pulse + PEAK_BINS)
+                    + bandPower(2 * pulse - PEAK_BINS, Math.min(power.length - 1, 2 * pulse + PEAK_BINS));
+            share = total > 0 ? (float) Math.min(1, peaks / total) : 0;
+        }
+
+        int resp = peak(RESP_LOW_HZ / binHz, RESP_HIGH_HZ / binHz);
+        float respHz = Float.NaN;
+        if (resp > 0) {
+            int from = (int) Math.ceil(RESP_LOW_HZ / binHz), to = (int) Math.floor(RESP_HIGH_HZ / binHz);
+            double rest = bandPower(from, to) - bandPower(resp - PEAK_BINS, resp + PEAK_BINS);
+            int restBins = to - from + 1 - (2 * PEAK_BINS + 1);
+            if (restBins <= 0 || power[resp] >= MIN_RESP_PROMINENCE * rest / restBins) {
+                respHz = interpolate(resp) * binHz;
+            }
+        }
+
+        pulseRate = pulseHz * 60;
+        respirationRate = respHz * 60;
+        quality = share;
+        updates++;
+    }
+
+    // Detrended, windowed segment
+    private void prepare(float[] history, int offset, float[] out) {
+        double mean = 0, slope = 0;
+        for (int i = 0; i < SEGMENT; i++) mean += history[offset + i];
+        mean /= SEGMENT;
+        double centre = (SEGMENT - 1) / 2.0;
+        for (int i = 0; i < SEGMENT; i++) slope += (i - centre) * (history[offset + i] - mean);
+        slope /= trendNorm;
+        for (int i = 0; i < SEGMENT; i++) {
+            out[i] = (float) (history[offset + i] - mean - slope * (i - centre)) * window[i];
+        }
+    }
+
+    // Strongest bin in [low, high] (in bins), or -1 if it is no local maximum, i.e. the band is a
+    // slope
+    private int peak(float low, float high) {
+        int from = Math.max(1, (int) Math.ceil(low)), to = Math.min(power.length - 2, (int) Math.floor(high));
+        int best = from;
+        for (int k = from + 1; k <= to; k++) if (power[k] > power[best]) best = k;
+        return power[best] > power[best - 1] && power[best] >= power[best + 1] ? best : -1;
+    }
+
+    // Peak position to a fraction of a bin, from a parabola through the log powers around it
+    private float interpolate(int k) {
+        double l = Math.log(power[k - 1] + 1e-30), c = Math.log(power[k] + 1e-30), r = Math.log(power[k + 1] + 1e-30);
+        double curvature = l - 2 * c + r;
+        return curvature < 0 ? (float) (k + 0.5 * (l - r) / curvature) : k;
+    }
+
+    private double bandPower(int from, int to) {
+        double total = 0;
+        for (int k = Math.max(0, from); k <= to; k++) total += power[k];
+        return total;
+    }
+
+    /** Pulse rate in bpm from the PPG's fundamental, or NaN. */
+    public float getPulseRate() {
+        return pulseRate;
+    }
+
+    /** Respiration rate in breaths per minute, or NaN if no breathing stands out. */
+    public float getRespirationRate() {
+        return respirationRate;
+    }
+
+    /** Share of the pulse band's power in the pulse's fundamental and harmonic, 0 to 1, or NaN. */
+    public float getQuality() {
+        return quality;
+    }
+
+    /** Number of updates published so far. */
+    public long getUpdateCount() {
+        return updates;
+    }
+
+    /** Updates dropped because the worker was still busy with the previous one. */
+    public long getSkippedCount() {
+        return skipped;
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.biowave;
+
+/**
+ * Beat-by-beat pulse transit time: from the R peak of the ECG to the foot of the pulse wave it
+ * causes in the PPG, a surrogate for changes in blood pressure.
+ * <p>
+ * The foot of each pulse is found with the intersecting-tangent method: the steepest point of
+ * the upstroke (slope over 60 ms, located to a fraction of a sample) extended down to the trough
+ * before it. An upstroke starts where the slope crosses a fraction of the usual pulse's steepest
+ * slope, which is learnt over the first seconds and then tracked from pulse to pulse, and ends
+ * once the slope has halved again; one that never got near the usual steepness is ignored.
+ * A beat is paired with the first foot 60-500 ms after its R peak and before the next one; the
+ * QRS detector reports a beat a little late, so beats are paired once that window has passed.
+ * <p>
+ * Transit times more than a quarter away from the median of the last nine are rejected as
+ * mismatches; a run of rejections starts the median over, so a real change is followed within a
+ * few beats. Every sample costs O(1) and nothing is allocated. Not thread-safe.
+ */
+public class PulseTransitTime {
+
+    private static final float SLOPE_SPAN_S = 0.06f;
+    private static final float LEARNING_S = 2f;
+    // an upstroke is where the slope exceeds this fraction of the usual steepest slope
+    private static final float THRESHOLD = 0.4f;
+    // and ends where the slope has fallen below this fraction of its maximum
+    private static final float PAST_STEEPEST = 0.5f;
+    // upstrokes less steep than this fraction of the usual are noise on the way up, not pulses
+    private static final float MIN_STEEPEST = 0.6f;
+    private static final float LEVEL_RATE = 0.125f;
+    private static final float REFRACTORY_S = 0.25f;
+    private static final float MAX_UPSTROKE_S = 0.3f;
+    // without a pulse for this long, the slope level halves so a weaker signal is found again
+    private static final float LEVEL_TIMEOUT_S = 3f;
+    private static final float MIN_PTT_S = 0.06f;
+    private static final float MAX_PTT_S = 0.5f;
+    // how long after the window a foot can still be reported: the rest of the upstroke
+    private static final float FOOT_LATENCY_S = 0.3f;
+    private static final int MEDIAN_BEATS = 9;
+    private static final int MIN_BEATS = 3;
+    private static final float OUTLIER = 0.25f;
+    private static final int MAX_REJECTS = 5;
+    private static final int RING = 8;
+
+    private final float sampleRate;
+    private final int span;
+    private final float invSpan, halfSpan;
+    private final int learningSamples, refractory, maxUpstroke, levelTimeout;
+    private final float minLag, maxLag, resolveDelay;
+
+    // last span + 1 samples
+    private final float[] ring;
+    private int pos;
+    private long index = -1;
+    private int valid;
+
+    // upstroke detection
+    private float level;
+    private float prevSlope;
+    private float trough = Float.POSITIVE_INFINITY;
+    private boolean rising;
+    private long riseStart, lastPulse, lastLevelChange;
+    private long steepestAt;
+    private float steepest, steepestValue, slopeBefore, slopeAfter;
+
+    // feet waiting for their beat, and beats waiting for their window to pass, in samples
+    private final double[] feet = new double[RING];
+    private final boolean[] footUsed = new boolean[RING];
+    private long footCount;
+    private final double[] beats = new double[RING];
+    private long beatStart, beatEnd;
+
+    private final MedianFilter median = new MedianFilter(MEDIAN_BEATS);
+    private int medianCount, rejectRun;
+    private float ptt = Float.NaN, lastPtt = Float.NaN;
+    private long accepted, rejected;
+
+    public PulseTransitTime(float sampleRate) {
+        this.sampleRate = sampleRate;
+        span = Math.max(2, Math.round(SLOPE_SPAN_S * sampleRate));
+        invSpan = 1f / span;
+        halfSpan = span / 2f;
+        ring = new float[span + 1];
+        learningSamples = Math.round(LEARNING_S * sampleRate);
+        refractory = Math.round(REFRACTORY_S * sampleRate);
+        maxUpstroke = Math.round(MAX_UPSTROKE_S * sampleRate);
+        levelTimeout = Math.round(LEVEL_TIMEOUT_S * sampleRate);
+        minLag = MIN_PTT_S * sampleRate;
+        maxLag = MAX_PTT_S * sampleRate;
+        resolveDelay = (MAX_PTT_S + FOOT_LATENCY_S) * sampleRate;
+    }
+
+    /**
+     * Adds the next PPG sample, oriented so that the pulse rises (as displayed), or NaN where it
+     * cannot be trusted. Samples are counted from the first, like {@link QrsDetector}'s.
+     */
+    public void process(float ppg) {
+        index++;
+        if (Float.isNaN(ppg)) {
+            valid = 0;
+            rising = false;
+            trough = Float.POSITIVE_INFINITY;
+        } else {
+            ring[pos] = ppg;
+            if (++pos == ring.length) pos = 0;
+            // pos is now the oldest sample, span samples back
+            if (++valid > span) {
+                float old = ring[pos];
+                detect((ppg - old) * invSpan, 0.5f * (ppg + old));
+            }
+        }
+        while (beatStart < beatEnd && index >= beats[(int) (beatStart % RING)] + resolveDelay) {
+            pair(beatStart++);
+        }
+    }
+
+    /**
+     * Adds an R peak at sample {@code rSample}, counted like the PPG samples; it may lie a little
+     * in the past.
+     */
+    public void addBeat(double rSample) {
+        beats[(int) (beatEnd++ % RING)] = rSample;
+        // beats that somehow pile up are dropped unpaired
+        if (beatEnd - beatStart > RING) beatStart = beatEnd - RING;
+    }
+
+    // slope per sample and value, both centred half a span back
+    private void detect(float slope, float value) {
+        long n = index;
+        if (n < learningSamples) {
+            level = Math.max(level, slope);
+            trough = Math.min(trough, value);
+        } else if (rising) {
+            if (slope > steepest) {
+                slopeBefore = prevSlope;
+                steepest = slope;
+                steepestAt = n;
+                steepestValue = value;
+                slopeAfter = Float.NaN;
+            } else if (Float.isNaN(slopeAfter)) {
+                slopeAfter = slope;
+            }
+            // well past the steepest point; noise around the threshold doesn't end it early
+            if (slope < PAST_STEEPEST * steepest) {
+                endUpstroke(n);
+            } else if (n - riseStart > maxUpstroke) {
+                // too slow for a pulse, e.g. a baseline shift
+                rising = false;
+                trough = value;
+            }
+        } else if (level > 0 && slope > THRESHOLD * level && n - lastPulse > refractory) {
+            rising = true;
+            riseStart = n;
+            slopeBefore = prevSlope;
+            steepest = slope;
+            steepestAt = n;
+            steepestValue = value;
+            slopeAfter = Float.NaN;
+        } else {
+            trough = Math.min(trough, value);
+            if (n - lastLevelChange > levelTimeout) {
+                level *= 0.5f;
+                lastLevelChange = n;
+            }
+        }
+        prevSlope = slope;
+    }
+
+    private void endUpstroke(long n) {
+        rising = false;
+        if (steepest < MIN_STEEPEST * level) return;
+        lastPulse = lastLevelChange = n;
+        level += LEVEL_RATE * (steepest - level);
+        float offset = 0;
+        if (!Float.isNaN(slopeAfter)) {
+            // vertex of the parabola through the slopes around the steepest one
+            float curvature = slopeBefore - 2 * steepest + slopeAfter;
+            if (curvature < 0) offset = 0.5f * (slopeBefore - slopeAfter) / curvature;
+        }
+        float rise = steepestValue - trough;
+        trough = Float.POSITIVE_INFINITY;
+        if (!(rise >= 0) || Float.isInfinite(rise)) return;
+        feet[(int) (footCount % RING)] = steepestAt - halfSpan + offset - rise / steepest;
+        footUsed[(int) (footCount % RING)] = false;
+        footCount++;
+    }
+
+    // The first unused foot in the beat's window, and before the next beat
+    private void pair(long beat) {
+        double r = beats[(int) (beat % RING)];
+        double next = beat + 1 < beatEnd ? beats[(int) ((beat + 1) % RING)] : Double.POSITIVE_INFINITY;
+        int best = -1;
+        for (long i = Math.max(0, footCount - RING); i < footCount; i++) {
+            int s = (int) (i % RING);
+            double lag = feet[s] - r;
+            if (footUsed[s] || lag < minLag || lag > maxLag || feet[s] >= next) continue;
+            if (best < 0 || feet[s] < feet[best]) best = s;
+        }
+        if (best < 0) return;
+        footUsed[best] = true;
+        accept((float) ((feet[best] - r) * 1000 / sampleRate));
+    }
+
+    private void accept(float millis) {
+        if (medianCount >= MIN_BEATS && Math.abs(millis - ptt) > OUTLIER * ptt) {
+            rejected++;
+            if (++rejectRun >= MAX_REJECTS) {
+                // the transit time really changed, or the median locked on to mismatches
+                median.reset();
+                medianCount = 0;
+                rejectRun = 0;
+            }
+            return;
+        }
+        rejectRun = 0;
+        accepted++;
+        medianCount = Math.min(medianCount + 1, MEDIAN_BEATS);
+        lastPtt = millis;
+        ptt = median.process(millis);
+    }
+
+    /** Drops unpaired beats and the upstroke in progress, e.g. after a gap; the median is kept. */
+    public void reset() {
+        valid = 0;
+        rising = false;
+        trough = Float.POSITIVE_INFINITY;
+        beatStart = beatEnd;
+        for (int i = 0; i < RING; i++) footUsed[i] = true;
+    }
+
+    /** Median transit time of the last nine accepted beats in ms, or NaN before the first. */
+    public float getPtt() {
+        return ptt;
+    }
+
+    /** Transit time of the last accepted beat in ms, or NaN. */
+    public float getLastPtt() {
+        return lastPtt;
+    }
+
+    public long getAcceptedCount() {
+        return accepted;
+    }
+
+    public long getRejectedCount() {
+        return rejected;
+    }
+}
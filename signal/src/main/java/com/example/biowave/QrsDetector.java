@@ -0,0 +1,204 @@
+package com.example.biowave;
+
+/**
+ * Streaming QRS detector after Pan &amp; Tompkins (1985): 5-15 Hz band-pass, five-point
+ * derivative, squaring and 150 ms moving-window integration, followed by adaptive signal/noise
+ * thresholds, a 200 ms refractory period, T-wave rejection and search-back for missed beats.
+ * <p>
+ * Every {@link #process} call does a constant amount of work and allocates nothing; only the
+ * rare beat localisation scans back over the integration window. Beat positions are reported
+ * as the index of the largest band-passed deflection, corrected for the band-pass group delay,
+ * i.e. the R peak.
+ */
+public class QrsDetector {
+
+    public interface Listener {
+        /**
+         * @param sampleIndex index of the R peak, counted from the first processed sample
+         * @param rrSamples   distance to the previous R peak in samples, or 0 for the first beat
+         */
+        void onBeat(long sampleIndex, int rrSamples);
+    }
+
+    private static final float REFRACTORY_S = 0.2f;
+    private static final float T_WAVE_WINDOW_S = 0.36f;
+    private static final float INTEGRATION_S = 0.15f;
+    private static final float LEARNING_S = 2f;
+    private static final float HISTORY_S = 5f;
+    private static final float SEARCH_BACK_FACTOR = 1.66f;
+
+    private final Listener listener;
+    private final Biquad highPass, lowPass;
+    private final float derivativeScale;
+    private final int refractory, tWaveWindow, learningSamples;
+    private final int filterDelay;
+
+    // derivative input history
+    private float f1, f2, f3, f4;
+
+    // moving-window integration
+    private final float[] window;
+    private int windowPos = 0;
+    private double windowSum = 0;
+
+    // band-passed magnitude, for locating the R peak
+    private final float[] history;
+
+    // peak detection on the integrated signal
+    private float i1, i2;
+    private float slopeSincePeak = 0;
+    private long index = -1;
+
+    // adaptive thresholds
+    private float learnMax = 0;
+    private double learnSum = 0;
+    private float spki, npki, threshold1, threshold2;
+
+    private long lastBeat = -1;     // integrated-signal peak of the last QRS
+    private long lastR = -1;        // R peak of the last QRS
+    private float lastQrsSlope = 0;
+
+    // last eight RR intervals, for the search-back limit
+    private final int[] rr = new int[8];
+    private int rrCount = 0, rrPos = 0;
+    private long rrSum = 0;
+
+    // best sub-threshold peak since the last beat
+    private long candidateIndex = -1;
+    private float candidateValue = 0;
+    private float candidateSlope = 0;
+
+    public QrsDetector(float sampleRate, Listener listener) {
+        this.listener = listener;
+        highPass = Biquad.highPass(sampleRate, 5, 0.707);
+        lowPass = Biquad.lowPass(sampleRate, 15, 0.707);
+        derivativeScale = sampleRate / 8f;
+        // delay at the centre of the QRS band
+        filterDelay = (int) Math.round(highPass.groupDelay(sampleRate, 10) + lowPass.groupDelay(sampleRate, 10));
+        refractory = Math.round(REFRACTORY_S * sampleRate);
+        tWaveWindow = Math.round(T_WAVE_WINDOW_S * sampleRate);
+        learningSamples = Math.round(LEARNING_S * sampleRate);
+        window = new float[Math.max(1, Math.round(INTEGRATION_S * sampleRate))];
+        history = new float[Math.round(HISTORY_S * sampleRate)];
+    }
+
+    public void process(float ecg) {
+        index++;
+        float f = lowPass.process(highPass.process(ecg));
+        history[(int) (index % history.length)] = Math.abs(f);
+
+        float d = (2 * f + f1 - f3 - 2 * f4) * derivativeScale;
+        f4 = f3;
+        f3 = f2;
+        f2 = f1;
+        f1 = f;
+        float slope = Math.abs(d);
+        if (slope > slopeSincePeak) slopeSincePeak = slope;
+
+        float squared = d * d;
+        windowSum += squared - window[windowPos];
+        window[windowPos] = squared;
+        windowPos = (windowPos + 1) % window.length;
+        float integrated = (float) Math.max(0, windowSum / window.length);
+
+        if (index < learningSamples) {
+            if (integrated > learnMax) learnMax = integrated;
+            learnSum += integrated;
+            if (index == learningSamples - 1) {
+                spki = learnMax / 3;
+                npki = (float) (learnSum / learningSamples) / 2;
+                updateThresholds();
+            }
+        } else {
+            if (i1 > i2 && i1 >= integrated) {
+                onPeak(index - 1, i1);
+                slopeSincePeak = slope;
+            }
+            searchBack();
+        }
+        i2 = i1;
+        i1 = integrated;
+    }
+
+    private void onPeak(long peak, float value) {
+        if (lastBeat >= 0 && peak - lastBeat < refractory) return;
+
+        float slope = slopeSincePeak;
+        boolean isSignal = value > threshold1;
+        // a peak shortly after a QRS with a much flatter slope is a T wave
+        if (isSignal && lastBeat >= 0 && peak - lastBeat < tWaveWindow && slope < lastQrsSlope / 2) {
+            isSignal = false;
+        }
+
+        if (isSignal) {
+            spki = 0.125f * value + 0.875f * spki;
+            beat(peak, slope);
+        } else {
+            npki = 0.125f * value + 0.875f * npki;
+            if (value > threshold2 && value > candidateValue) {
+                candidateIndex = peak;
+                candidateValue = value;
+                candidateSlope = slope;
+            }
+        }
+        updateThresholds();
+    }
+
+    private void searchBack() {
+        if (lastBeat < 0 || rrCount == 0 || candidateIndex < 0) return;
+        float rrAverage = rrSum / (float) rrCount;
+        if (index - lastBeat > SEARCH_BACK_FACTOR * rrAverage) {
+            spki = 0.25f * candidateValue + 0.75f * spki;
+            beat(candidateIndex, candidateSlope);
+            updateThresholds();
+        }
+    }
+
+    private void beat(long peak, float slope) {
+        // the R peak is the largest band-passed deflection in the integration window before the peak
+        long from = Math.max(Math.max(0, peak - window.length - 2), index - history.length + 1);
+        long r = peak;
+        float best = -1;
+        for (long i = from; i <= peak; i++) {
+            float v = history[(int) (i % history.length)];
+            if (v > best) {
+                best = v;
+                r = i;
+            }
+        }
+
+        r = Math.max(0, r - filterDelay);
+
+        int interval = 0;
+        if (lastR >= 0 && r > lastR) {
+            interval = (int) (r - lastR);
+            rrSum += interval - rr[rrPos];
+            rr[rrPos] = interval;
+            rrPos = (rrPos + 1) % rr.length;
+            if (rrCount < rr.length) rrCount++;
+        }
+        lastBeat = peak;
+        lastR = r;
+        lastQrsSlope = slope;
+        candidateIndex = -1;
+        candidateValue = 0;
+        listener.onBeat(r, interval);
+    }
+
+    private void updateThresholds() {
+        threshold1 = npki + 0.25f * (spki - npki);
+        threshold2 = 0.5f * threshold1;
+    }
+
+    /** Forgets the previous beat, e.g. after lost samples made the next RR interval meaningless. */
+    public void resetRr() {
+        lastBeat = -1;
+        lastR = -1;
+        candidateIndex = -1;
+        candidateValue = 0;
+    }
+
+    public long getSampleCount() {
+        return index + 1;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.biowave;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Plays a {@link StreamCapture} back with its original timing, sped up by a factor (1x-100x
+ * for load tests, or {@link Float#POSITIVE_INFINITY} for as fast as the consumer takes it).
+ */
+public class ReplaySignalSource implements SignalSource {
+
+    private final File file;
+    private final float speed;
+    private final boolean loop;
+
+    private volatile Thread thread;
+
+    public ReplaySignalSource(File file, float speed, boolean loop) {
+        if (!(speed > 0)) throw new IllegalArgumentException("speed must be positive");
+        this.file = file;
+        this.speed = speed;
+        this.loop = loop;
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        if (thread != null) return;
+        thread = new Thread(() -> run(listener), "BioWave-Replay");
+        thread.start();
+    }
+
+    private void run(Listener listener) {
+        listener.onStatus("Replaying " + file.getName() + " at " + speed + "x");
+        String status;
+        try {
+            do {
+                replayOnce(listener);
+                // a new pass starts a new stream, like a reconnect
+                listener.onDisconnected();
+            } while (loop && thread == Thread.currentThread());
+            status = "Replay finished.";
+        } catch (IOException e) {
+            status = "Replay failed: " + e.getMessage();
+        } catch (InterruptedException e) {
+            status = "Replay stopped.";
+        }
+        // not running any more by the time the listener hears so, so it may start again
+        synchronized (this) {
+            if (thread == Thread.currentThread()) thread = null;
+        }
+        listener.onStatus(status);
+    }
+
+    private void replayOnce(Listener listener) throws IOException, InterruptedException {
+        try (StreamCapture.Reader reader = new StreamCapture.Reader(new FileInputStream(file))) {
+            long start = System.nanoTime();
+            byte[] data;
+            while ((data = reader.next()) != null) {
+                if (thread != Thread.currentThread()) throw new InterruptedException();
+                if (speed != Float.POSITIVE_INFINITY) {
+                    long due = start + (long) (reader.getTimeMicros() * 1000 / speed);
+                    long wait = due - System.nanoTime();
+                    if (wait > 1_000_000) Thread.sleep(wait / 1_000_000);
+                }
+                listener.onData(data);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        Thread t = thread;
+        thread = null;
+        if (t != null) t.interrupt();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return thread != null;
+    }
+}
@@ -0,0 +1,617 @@
+package com.example.biowave;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Lossless compression for long recordings of the sample stream.
+ * <p>
+ * Every signal channel of a block is mapped to integers by the coarsest step that gives back
+ * exactly the same floats: the sensor's own resolution ({@link BinaryFrame} LSBs) for binary
+ * frames, a decimal step 10<sup>-k</sup> for the numbers of ASCII lines (divided the way
+ * {@link FrameParser} does), or else the raw float bits. Each channel of a
+ * block is predicted by the fixed polynomial (order 0, 1 or 2, i.e. {@code 2x[i-1] - x[i-2]})
+ * with the smallest residuals, which are zig-zag mapped and Rice coded in partitions of
+ * {@value #PARTITION} samples, each with its own parameter. Blocks are independent and listed
+ * in an index at the end of the file, so reading from any sample decodes one block, not the
+ * whole file.
+ * <pre>
+ * "BWSC2"                                   5-byte magic
+ * per block:
+ *   first sample index                      int64 LE
+ *   time of first sample, ms                int64 LE
+ *   sample count N                          uint16 LE
+ *   payload length                          uint32 LE
+ *   payload                                 channels time, ECG, PPG, temperature, SpO2,
+ *                                           each signal channel after its 4-bit step
+ *   CRC-16/CCITT-FALSE over the above       uint16 LE
+ * index, written by close():
+ *   per block: first sample index, offset   int64 LE each
+ *   index offset                            int64 LE
+ *   block count                             uint32 LE
+ *   "BWIX"                                  4-byte magic
+ * </pre>
+ * A dense channel is its predictor order in 2 bits, then partitions of a 5-bit Rice parameter
+ * k and, per sample, the quotient in unary (ones, then a zero) and k remainder bits. k = 31
+ * marks an all-zero partition; a quotient of {@value #ESCAPE} or more is sent as
+ * {@value #ESCAPE} ones and 32 raw bits. The signal channels may have missing values (NaN),
+ * such as vitals that come once per frame or samples lost on the link, and are sent as the
+ * number present (16 bits) followed by two dense channels: the distances between present
+ * samples and their values. Time (ms since the block's first sample) only changes with each
+ * notification, so it is sent the same way with repeats treated as missing. A file without an
+ * index (not closed) is still read, by scanning. Files of version 1 ("BWSC1"), which always
+ * used the sensor's resolution and carry no steps, are still read.
+ */
+public final class SampleCodec {
+
+    static final int CHANNELS = 5;
+    static final int PARTITION = 64;
+    static final int ESCAPE = 24;
+    private static final int ZERO_PARTITION = 31;
+    private static final int MAX_K = 28;
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private static final byte[] MAGIC = {'B', 'W', 'S', 'C', '2'};
+    private static final byte[] MAGIC_V1 = {'B', 'W', 'S', 'C', '1'};
+    private static final int INDEX_MAGIC = 0x58495742; // "BWIX"
+    static final int BLOCK_HEADER = 8 + 8 + 2 + 4;
+    private static final int TRAILER = 8 + 4 + 4;
+    /** Samples per block: about 4 s at 250 Hz, the seek granularity. */
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private SampleCodec() {
+    }
+
+    // Steps of a signal channel: the sensor's LSB, 10^-k for STEP_DECIMAL + k, or the float bits
+    static final int STEP_SENSOR = 0, STEP_DECIMAL = 1, STEP_RAW = 15;
+    private static final int[] STEPS = {STEP_SENSOR, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, STEP_RAW};
+    private static final float[] SENSOR_LSB = {
+            0, BinaryFrame.ECG_LSB, BinaryFrame.PPG_LSB, BinaryFrame.TEMP_LSB, 1f
+    };
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+
+    static int quantize(float value, int channel, int step) {
+        if (Float.isNaN(value)) return NONE;
+        // NaN bits never occur, so the bits plus one never hit NONE
+        if (step == STEP_RAW) return Float.floatToIntBits(value) + 1;
+        long q = step == STEP_SENSOR ? Math.round(value / (double) SENSOR_LSB[channel])
+                : Math.round(value * POW10[step - STEP_DECIMAL]);
+        // NONE itself stays reserved
+        return (int) Math.max(-Integer.MAX_VALUE, Math.min(Integer.MAX_VALUE, q));
+    }
+
+    static float dequantize(int q, int channel, int step) {
+        if (q == NONE) return Float.NaN;
+        if (step == STEP_RAW) return Float.intBitsToFloat(q - 1);
+        return step == STEP_SENSOR ? q * SENSOR_LSB[channel] : (float) (q / POW10[step - STEP_DECIMAL]);
+    }
+
+    /** Appends samples in blocks; not thread-safe. Nothing is buffered beyond one block. */
+    public static class Encoder implements Closeable {
+        private final OutputStream out;
+        private final int blockSize;
+        private final int[][] values;
+        private final float[][] samples;
+        private final ChannelCoder coder;
+        private final BitWriter bits;
+        private long[] index = new long[64];
+        private int blocks;
+        private int count;
+        private long firstTime;
+        private long sampleCount;
+        private long offset;
+
+        public Encoder(OutputStream out) throws IOException {
+            this(out, DEFAULT_BLOCK_SIZE);
+        }
+
+        public Encoder(OutputStream out, int blockSize) throws IOException {
+            if (blockSize < 1 || blockSize > 0xFFFF) throw new IllegalArgumentException("block size out of range");
+            this.out = out;
+            this.blockSize = blockSize;
+            values = new int[CHANNELS][blockSize];
+            samples = new float[CHANNELS][blockSize];
+            coder = new ChannelCoder(blockSize);
+            // worst case: every value escaped, plus the parameters
+            bits = new BitWriter(BLOCK_HEADER + 2 + 8 + CHANNELS + (2 * CHANNELS - 1) * (blockSize * (ESCAPE + 32) / 8 + blockSize / PARTITION + 2));
+            out.write(MAGIC);
+            offset = MAGIC.length;
+        }
+
+        public void append(long timeMillis, float ecg, float ppg, float temp, float spo2) throws IOException {
+            if (count == 0) firstTime = timeMillis;
+            values[0][count] = (int) Math.max(-Integer.MAX_VALUE, Math.min(Integer.MAX_VALUE, timeMillis - firstTime));
+            samples[1][count] = ecg;
+            samples[2][count] = ppg;
+            samples[3][count] = temp;
+            samples[4][count] = spo2;
+            if (++count == blockSize) flush();
+        }
+
+        /**
+         * Writes the current block, even if short, and flushes the stream, so that a file cut
+         * off later still holds it. Called for every full block.
+         */
+        public void flush() throws IOException {
+            if (count == 0) return;
+            BitWriter w = bits;
+            w.reset(BLOCK_HEADER);
+            coder.encodeSteps(values[0], count, w);
+            for (int c = 1; c < CHANNELS; c++) {
+                w.write(quantizeBlock(c), 4);
+                coder.encodeSparse(values[c], count, w);
+            }
+            int length = w.finish();
+            byte[] buf = w.buffer();
+            putLong(buf, 0, sampleCount);
+            putLong(buf, 8, firstTime);
+            buf[16] = (byte) count;
+            buf[17] = (byte) (count >>> 8);
+            putInt(buf, 18, length - BLOCK_HEADER);
+            int crc = BinaryFrame.crc16(buf, 0, length);
+            buf[length] = (byte) crc;
+            buf[length + 1] = (byte) (crc >>> 8);
+            out.write(buf, 0, length + 2);
+            out.flush();
+
+            if (2 * blocks + 2 > index.length) index = Arrays.copyOf(index, index.length * 2);
+            index[2 * blocks] = sampleCount;
+            index[2 * blocks + 1] = offset;
+            blocks++;
+            offset += length + 2;
+            sampleCount += count;
+            count = 0;
+        }
+
+        // Quantises channel c of the block by the first step under which every value comes back
+        // bit for bit; the first one, the sensor's, nearly always does for binary frames
+        private int quantizeBlock(int c) {
+            float[] x = samples[c];
+            int[] q = values[c];
+            for (int step : STEPS) {
+                int i = 0;
+                for (; i < count; i++) {
+                    q[i] = quantize(x[i], c, step);
+                    if (Float.floatToIntBits(dequantize(q[i], c, step)) != Float.floatToIntBits(x[i])) break;
+                }
+                if (i == count) return step;
+            }
+            throw new AssertionError("raw bits always round-trip");
+        }
+
+        /** Samples appended so far. */
+        public long getSampleCount() {
+            return sampleCount + count;
+        }
+
+        /** Bytes written so far, not counting the block in progress. */
+        public long getBytesWritten() {
+            return offset;
+        }
+
+        /** Writes the last block and the index, then closes the stream. */
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                byte[] trailer = new byte[blocks * 16 + TRAILER];
+                for (int i = 0; i < 2 * blocks; i++) putLong(trailer, 8 * i, index[i]);
+                int p = blocks * 16;
+                putLong(trailer, p, offset);
+                putInt(trailer, p + 8, blocks);
+                putInt(trailer, p + 12, INDEX_MAGIC);
+                out.write(trailer);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /** Random access to a file written by {@link Encoder}. */
+    public static class Reader implements Closeable {
+        private final RandomAccessFile file;
+        private final long[] firstIndex;
+        private final long[] offsets;
+        private final long sampleCount;
+        private final boolean steps;
+        private final int[] step = new int[CHANNELS];
+        private final int[][] values = new int[CHANNELS][];
+        private ChannelCoder coder;
+        private final byte[] header = new byte[BLOCK_HEADER];
+        private byte[] block = new byte[0];
+        private int cachedBlock = -1;
+        private long cachedTime;
+        private int cachedCount;
+
+        public Reader(File path) throws IOException {
+            file = new RandomAccessFile(path, "r");
+            try {
+                byte[] magic = new byte[MAGIC.length];
+                file.readFully(magic);
+                steps = Arrays.equals(magic, MAGIC);
+                if (!steps && !Arrays.equals(magic, MAGIC_V1)) throw new IOException("not a BioWave sample file");
+                long[][] index = readIndex();
+                if (index == null) index = scan();
+                firstIndex = index[0];
+                offsets = index[1];
+                int n = firstIndex.length;
+                sampleCount = n == 0 ? 0 : firstIndex[n - 1] + blockCount(n - 1);
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+        }
+
+        private long[][] readIndex() throws IOException {
+            long length = file.length();
+            if (length < MAGIC.length + TRAILER) return null;
+            byte[] trailer = new byte[TRAILER];
+            file.seek(length - TRAILER);
+            file.readFully(trailer);
+            int blocks = getInt(trailer, 8);
+            long at = getLong(trailer, 0);
+            if (getInt(trailer, 12) != INDEX_MAGIC || blocks < 0 || at + blocks * 16L + TRAILER != length) return null;
+            byte[] raw = new byte[blocks * 16];
+            file.seek(at);
+            file.readFully(raw);
+            long[][] index = {new long[blocks], new long[blocks]};
+            for (int i = 0; i < blocks; i++) {
+                index[0][i] = getLong(raw, 16 * i);
+                index[1][i] = getLong(raw, 16 * i + 8);
+            }
+            return index;
+        }
+
+        // No index: the recording was cut off, walk the block headers up to the first bad one
+        private long[][] scan() throws IOException {
+            long[] first = new long[16], at = new long[16];
+            int blocks = 0;
+            long position = MAGIC.length;
+            long length = file.length();
+            while (position + BLOCK_HEADER + 2 <= length) {
+                file.seek(position);
+                file.readFully(header);
+                long size = BLOCK_HEADER + (getInt(header, 18) & 0xFFFFFFFFL) + 2;
+                if (position + size > length || !checkBlock(position, (int) size)) break;
+                if (blocks == first.length) {
+                    first = Arrays.copyOf(first, blocks * 2);
+                    at = Arrays.copyOf(at, blocks * 2);
+                }
+                first[blocks] = getLong(header, 0);
+                at[blocks++] = position;
+                position += size;
+            }
+            return new long[][]{Arrays.copyOf(first, blocks), Arrays.copyOf(at, blocks)};
+        }
+
+        private boolean checkBlock(long position, int size) throws IOException {
+            if (block.length < size) block = new byte[size];
+            file.seek(position);
+            file.readFully(block, 0, size);
+            int crc = (block[size - 2] & 0xFF) | (block[size - 1] & 0xFF) << 8;
+            return BinaryFrame.crc16(block, 0, size - 2) == crc;
+        }
+
+        private int blockCount(int b) throws IOException {
+            file.seek(offsets[b] + 16);
+            return file.readUnsignedByte() | file.readUnsignedByte() << 8;
+        }
+
+        public long getSampleCount() {
+            return sampleCount;
+        }
+
+        public int getBlockCount() {
+            return firstIndex.length;
+        }
+
+        /**
+         * Visits up to {@code max} samples from index {@code from} on; returns how many. Only
+         * the blocks covering them are read and decoded.
+         */
+        public int read(long from, int max, FlightRecorder.Visitor visitor) throws IOException {
+            int visited = 0;
+            int b = Arrays.binarySearch(firstIndex, Math.max(0, from));
+            if (b < 0) b = -b - 2;
+            long index = Math.max(0, from);
+            while (visited < max && b >= 0 && b < firstIndex.length) {
+                load(b);
+                for (int i = (int) (index - firstIndex[b]); i < cachedCount && visited < max; i++, visited++, index++) {
+                    visitor.onRecord(index, cachedTime + values[0][i],
+                            dequantize(values[1][i], 1, step[1]),
+                            dequantize(values[2][i], 2, step[2]),
+                            dequantize(values[3][i], 3, step[3]),
+                            dequantize(values[4][i], 4, step[4]));
+                }
+                b++;
+            }
+            return visited;
+        }
+
+        private void load(int b) throws IOException {
+            if (b == cachedBlock) return;
+            file.seek(offsets[b]);
+            file.readFully(header);
+            int size = BLOCK_HEADER + getInt(header, 18) + 2;
+            if (!checkBlock(offsets[b], size)) throw new IOException("block " + b + " is corrupt");
+            cachedTime = getLong(block, 8);
+            cachedCount = (block[16] & 0xFF) | (block[17] & 0xFF) << 8;
+            BitReader r = new BitReader(block, BLOCK_HEADER, size - 2);
+            if (values[0] == null || values[0].length < cachedCount) {
+                for (int c = 0; c < CHANNELS; c++) values[c] = new int[cachedCount];
+                coder = new ChannelCoder(cachedCount);
+            }
+            coder.decodeSteps(values[0], cachedCount, r);
+            for (int c = 1; c < CHANNELS; c++) {
+                step[c] = steps ? r.read(4) : STEP_SENSOR;
+                coder.decodeSparse(values[c], cachedCount, r);
+            }
+            cachedBlock = b;
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    /** Codes the channels of one block; its arrays are scratch space for up to a block. */
+    static final class ChannelCoder {
+        private final int[] u;
+        private final int[] gaps;
+        private final int[] present;
+        private final int[] changes;
+
+        ChannelCoder(int blockSize) {
+            u = new int[blockSize];
+            gaps = new int[blockSize];
+            present = new int[blockSize];
+            changes = new int[blockSize];
+        }
+
+        /**
+         * A step function such as the arrival time, which repeats for every sample of a
+         * notification: coded as a sparse channel of the values that differ from the previous.
+         * It must not contain {@code NONE}.
+         */
+        void encodeSteps(int[] x, int n, BitWriter w) {
+            for (int i = 0; i < n; i++) changes[i] = i > 0 && x[i] == x[i - 1] ? NONE : x[i];
+            encodeSparse(changes, n, w);
+        }
+
+        void decodeSteps(int[] x, int n, BitReader r) {
+            decodeSparse(x, n, r);
+            for (int i = 0; i < n; i++) if (x[i] == NONE) x[i] = i > 0 ? x[i - 1] : 0;
+        }
+
+        /**
+         * A channel with missing values: their count (16 bits), then the distances between
+         * present values and the values themselves, each a dense channel. Vitals that come once
+         * per frame thus cost next to nothing, and a dense channel pays a few bits per block.
+         */
+        void encodeSparse(int[] x, int n, BitWriter w) {
+            int m = 0;
+            int last = -1;
+            for (int i = 0; i < n; i++) {
+                if (x[i] == NONE) continue;
+                gaps[m] = i - last;
+                present[m++] = x[i];
+                last = i;
+            }
+            w.write(m, 16);
+            encode(gaps, m, w);
+            encode(present, m, w);
+        }
+
+        void decodeSparse(int[] x, int n, BitReader r) {
+            int m = Math.min(r.read(16), n);
+            decode(gaps, m, r);
+            decode(present, m, r);
+            Arrays.fill(x, 0, n, NONE);
+            int i = -1;
+            for (int j = 0; j < m; j++) {
+                i += gaps[j];
+                // a corrupt count or gap must not run past the block
+                if (i < 0 || i >= n) break;
+                x[i] = present[j];
+            }
+        }
+
+        /** A dense channel: predictor order (2 bits), then the Rice-coded residual partitions. */
+        void encode(int[] x, int n, BitWriter w) {
+            int order = predictorOrder(x, n);
+            w.write(order, 2);
+            for (int i = 0; i < n; i++) {
+                // wrapping arithmetic: exact inverse on decode, whatever the values
+                int r = x[i] - predict(x, i, order);
+                u[i] = (r << 1) ^ (r >> 31);
+            }
+            for (int start = 0; start < n; start += PARTITION) {
+                int len = Math.min(n, start + PARTITION) - start;
+                long sum = 0;
+                for (int i = start; i < start + len; i++) sum += u[i] & 0xFFFFFFFFL;
+                if (sum == 0) {
+                    w.write(ZERO_PARTITION, 5);
+                    continue;
+                }
+                int k = riceParameter(u, start, len, sum);
+                w.write(k, 5);
+                for (int i = start; i < start + len; i++) {
+                    long z = u[i] & 0xFFFFFFFFL;
+                    long q = z >>> k;
+                    if (q < ESCAPE) {
+                        // q ones, a zero, then the low k bits
+                        w.write((((1L << q) - 1) << (k + 1)) | (z & ((1L << k) - 1)), (int) q + 1 + k);
+                    } else {
+                        w.write((1L << ESCAPE) - 1, ESCAPE);
+                        w.write(z, 32);
+                    }
+                }
+            }
+        }
+
+        void decode(int[] x, int n, BitReader r) {
+            int order = r.read(2);
+            for (int start = 0; start < n; start += PARTITION) {
+                int end = Math.min(n, start + PARTITION);
+                int k = r.read(5);
+                for (int i = start; i < end; i++) {
+                    int z;
+                    if (k == ZERO_PARTITION) {
+                        z = 0;
+                    } else {
+                        int q = r.readUnary(ESCAPE);
+                        z = q < ESCAPE ? (q << k) | r.read(k) : r.read(32);
+                    }
+                    x[i] = ((z >>> 1) ^ -(z & 1)) + predict(x, i, order);
+                }
+            }
+        }
+    }
+
+    // Fixed polynomial predictors: 0, the previous value, or the line through the last two
+    private static int predict(int[] x, int i, int order) {
+        if (order == 0 || i == 0) return 0;
+        if (order == 1 || i == 1) return x[i - 1];
+        return 2 * x[i - 1] - x[i - 2];
+    }
+
+    // Second order suits smooth signals, first order noisy ones; pick by summed residuals
+    private static int predictorOrder(int[] x, int n) {
+        long[] cost = new long[3];
+        for (int i = 2; i < n; i++) {
+            cost[0] += Math.abs((long) x[i]);
+            cost[1] += Math.abs((long) x[i] - x[i - 1]);
+            cost[2] += Math.abs((long) x[i] - 2L * x[i - 1] + x[i - 2]);
+        }
+        int best = 2;
+        if (cost[1] < cost[best]) best = 1;
+        if (cost[0] < cost[best]) best = 0;
+        return best;
+    }
+
+    // The Rice parameter with the fewest bits, searched around the one the mean suggests
+    private static int riceParameter(int[] u, int start, int len, long sum) {
+        long mean = sum / len;
+        int guess = mean == 0 ? 0 : Math.min(MAX_K, 63 - Long.numberOfLeadingZeros(mean));
+        int best = guess;
+        long bestBits = Long.MAX_VALUE;
+        for (int k = Math.max(0, guess - 1); k <= Math.min(MAX_K, guess + 1); k++) {
+            long total = (long) len * (k + 1);
+            for (int i = start; i < start + len; i++) {
+                long q = (u[i] & 0xFFFFFFFFL) >>> k;
+                total += q < ESCAPE ? q : ESCAPE + 32 - k - 1;
+            }
+            if (total < bestBits) {
+                bestBits = total;
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    /** MSB-first bit packer into a byte array with room for a header in front. */
+    static final class BitWriter {
+        private byte[] buf;
+        private int pos;
+        private long acc;
+        private int bits;
+
+        BitWriter(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        void reset(int start) {
+            pos = start;
+            acc = 0;
+            bits = 0;
+        }
+
+        /** Appends the low {@code count} bits of {@code value}, at most 56. */
+        void write(long value, int count) {
+            if (count == 0) return;
+            acc = (acc << count) | (value & (-1L >>> (64 - count)));
+            bits += count;
+            while (bits >= 8) {
+                bits -= 8;
+                buf[pos++] = (byte) (acc >>> bits);
+            }
+        }
+
+        /** Pads to a whole byte and returns the length; the buffer keeps two spare bytes. */
+        int finish() {
+            if (bits > 0) {
+                buf[pos++] = (byte) (acc << (8 - bits));
+                bits = 0;
+            }
+            if (pos + 2 > buf.length) buf = Arrays.copyOf(buf, pos + 2);
+            return pos;
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    /** Reads what {@link BitWriter} wrote; past the end it reads zeros. */
+    static final class BitReader {
+        private final byte[] buf;
+        private final int end;
+        private int pos;
+        private long acc;
+        private int bits;
+
+        BitReader(byte[] buf, int start, int end) {
+            this.buf = buf;
+            this.pos = start;
+            this.end = end;
+        }
+
+        private void refill() {
+            while (bits <= 56) {
+                acc = (acc << 8) | (pos < end ? buf[pos] & 0xFF : 0);
+                pos++;
+                bits += 8;
+            }
+        }
+
+        /** The next {@code count} bits, 0 to 32, as an unsigned value. */
+        int read(int count) {
+            if (count == 0) return 0;
+            if (bits < count) refill();
+            bits -= count;
+            return (int) ((acc >>> bits) & (-1L >>> (64 - count)));
+        }
+
+        /** Counts ones up to the terminating zero, which is consumed; stops at {@code limit} ones. */
+        int readUnary(int limit) {
+            if (bits < limit + 1) refill();
+            long window = acc << (64 - bits);
+            int ones = Math.min(limit, Long.numberOfLeadingZeros(~window));
+            bits -= ones < limit ? ones + 1 : ones;
+            return ones;
+        }
+    }
+
+    private static void putLong(byte[] b, int p, long v) {
+        for (int i = 0; i < 8; i++) b[p + i] = (byte) (v >>> (8 * i));
+    }
+
+    private static void putInt(byte[] b, int p, int v) {
+        for (int i = 0; i < 4; i++) b[p + i] = (byte) (v >>> (8 * i));
+    }
+
+    private static long getLong(byte[] b, int p) {
+        long v = 0;
+        for (int i = 7; i >= 0; i--) v = v << 8 | (b[p + i] & 0xFF);
+        return v;
+    }
+
+    private static int getInt(byte[] b, int p) {
+        return (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 | (b[p + 2] & 0xFF) << 16 | (b[p + 3] & 0xFF) << 24;
+    }
+}
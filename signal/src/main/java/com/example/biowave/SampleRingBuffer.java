@@ -0,0 +1,154 @@
+package com.example.biowave;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer / single-consumer queue of samples, stored column-wise in primitive
+ * arrays. The ingestion thread {@link #offer offers} parsed samples and the UI thread
+ * {@link #drain drains} whatever has arrived once per display frame.
+ * <p>
+ * When the consumer falls behind and the buffer is full, new samples are dropped (the samples
+ * already queued are kept so the trace stays continuous) and counted in {@link #getDroppedCount()}.
+ * Each sample can carry a timestamp (e.g. the arrival time of its notification) for latency
+ * measurements; the consumer sees the newest drained one in {@link #getLastDrainedTimestamp()}.
+ */
+public class SampleRingBuffer {
+
+    public interface Consumer {
+        void onSample(float ecg, float ppg, float temp, float spo2);
+    }
+
+    /** Like {@link Consumer}, plus the timestamp the sample was offered with. */
+    public interface TimedConsumer {
+        void onSample(float ecg, float ppg, float temp, float spo2, long timestamp);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final float[] ecg, ppg, temp, spo2;
+    private final long[] timestamps;
+
+    // index of the next slot to write / read; published with lazySet (release) and read with get (acquire)
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // producer-local state
+    private long producerHead = 0;
+    private long cachedTail = 0;
+    private boolean overflowing = false;
+
+    // consumer-local state
+    private long lastDrainedTimestamp = 0;
+
+    // written by the producer only
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+    private final AtomicLong highWaterMark = new AtomicLong();
+
+    /** @param capacity number of samples; rounded up to a power of two */
+    public SampleRingBuffer(int capacity) {
+        if (capacity < 2) throw new IllegalArgumentException("capacity must be at least 2");
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        ecg = new float[size];
+        ppg = new float[size];
+        temp = new float[size];
+        spo2 = new float[size];
+        timestamps = new long[size];
+    }
+
+    /** Producer side. Returns false (and counts the drop) when the buffer is full. */
+    public boolean offer(float ecgValue, float ppgValue, float tempValue, float spo2Value) {
+        return offer(ecgValue, ppgValue, tempValue, spo2Value, 0);
+    }
+
+    public boolean offer(float ecgValue, float ppgValue, float tempValue, float spo2Value, long timestamp) {
+        long h = producerHead;
+        if (h - cachedTail >= capacity) {
+            cachedTail = tail.get();
+            if (h - cachedTail >= capacity) {
+                if (!overflowing) {
+                    overflowing = true;
+                    overflows.lazySet(overflows.get() + 1);
+                }
+                dropped.lazySet(dropped.get() + 1);
+                return false;
+            }
+        }
+        overflowing = false;
+
+        int i = (int) h & mask;
+        ecg[i] = ecgValue;
+        ppg[i] = ppgValue;
+        temp[i] = tempValue;
+        spo2[i] = spo2Value;
+        timestamps[i] = timestamp;
+        producerHead = h + 1;
+        head.lazySet(h + 1);
+
+        long depth = h + 1 - cachedTail;
+        if (depth > highWaterMark.get()) highWaterMark.lazySet(depth);
+        return true;
+    }
+
+    /** Consumer side. Hands up to {@code max} queued samples to {@code consumer}, oldest first. */
+    public int drain(Consumer consumer, int max) {
+        long t = tail.get();
+        long available = head.get() - t;
+        int n = (int) Math.min(available, max);
+        for (int k = 0; k < n; k++) {
+            int i = (int) (t + k) & mask;
+            consumer.onSample(ecg[i], ppg[i], temp[i], spo2[i]);
+        }
+        if (n > 0) lastDrainedTimestamp = timestamps[(int) (t + n - 1) & mask];
+        tail.lazySet(t + n);
+        return n;
+    }
+
+    public int drain(Consumer consumer) {
+        return drain(consumer, capacity);
+    }
+
+    /** Consumer side. Hands every queued sample and its timestamp to {@code consumer}, oldest first. */
+    public int drainTimed(TimedConsumer consumer) {
+        long t = tail.get();
+        int n = (int) (head.get() - t);
+        for (int k = 0; k < n; k++) {
+            int i = (int) (t + k) & mask;
+            consumer.onSample(ecg[i], ppg[i], temp[i], spo2[i], timestamps[i]);
+        }
+        if (n > 0) lastDrainedTimestamp = timestamps[(int) (t + n - 1) & mask];
+        tail.lazySet(t + n);
+        return n;
+    }
+
+    /** Approximate number of queued samples; exact when called from either end. */
+    public int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    /** Consumer side: timestamp of the newest sample drained so far, 0 before the first. */
+    public long getLastDrainedTimestamp() {
+        return lastDrainedTimestamp;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** Total samples rejected because the buffer was full. */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /** Number of distinct episodes in which the buffer ran full. */
+    public long getOverflowCount() {
+        return overflows.get();
+    }
+
+    /** Largest queue depth seen by the producer (may overestimate by the consumer's progress). */
+    public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+}
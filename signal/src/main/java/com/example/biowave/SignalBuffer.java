@@ -0,0 +1,86 @@
+package com.example.biowave;
+
+/**
+ * Fixed-size store for the most recent ECG and PPG samples, kept column-wise in circular
+ * {@code float[]} arrays. Every sample gets a monotonically increasing index; appending and
+ * evicting the oldest sample are both O(1) and the memory footprint never changes.
+ * <p>
+ * Readers that must not copy can use {@link #channel(int)} together with {@link #slot(long)}
+ * to address the backing arrays directly. Not thread-safe; owned by the UI thread.
+ */
+public class SignalBuffer {
+
+    public static final int ECG = 0;
+    public static final int PPG = 1;
+    public static final int CHANNEL_COUNT = 2;
+
+    private final int capacity;
+    private final float[][] channels;
+    private long nextIndex = 0;
+
+    public SignalBuffer(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        channels = new float[CHANNEL_COUNT][capacity];
+    }
+
+    /** Appends one sample pair, overwriting the oldest one when full. Returns its index. */
+    public long append(float ecg, float ppg) {
+        int slot = (int) (nextIndex % capacity);
+        channels[ECG][slot] = ecg;
+        channels[PPG][slot] = ppg;
+        return nextIndex++;
+    }
+
+    public float get(int channel, long index) {
+        if (index < getFirstIndex() || index >= nextIndex) {
+            throw new IndexOutOfBoundsException("sample " + index + " not in [" + getFirstIndex() + ", " + nextIndex + ")");
+        }
+        return channels[channel][slot(index)];
+    }
+
+    /**
+     * Copies {@code count} samples starting at {@code fromIndex} into {@code out}. Use it when a
+     * contiguous array is needed; otherwise read through {@link #channel(int)}.
+     */
+    public void copy(int channel, long fromIndex, int count, float[] out, int outOffset) {
+        if (fromIndex < getFirstIndex() || fromIndex + count > nextIndex) {
+            throw new IndexOutOfBoundsException("range not retained");
+        }
+        int slot = slot(fromIndex);
+        int first = Math.min(count, capacity - slot);
+        System.arraycopy(channels[channel], slot, out, outOffset, first);
+        System.arraycopy(channels[channel], 0, out, outOffset + first, count - first);
+    }
+
+    /** Backing array of a channel; sample {@code i} lives at {@code channel(c)[slot(i)]}. */
+    public float[] channel(int channel) {
+        return channels[channel];
+    }
+
+    public int slot(long index) {
+        return (int) (index % capacity);
+    }
+
+    /** Index of the oldest retained sample. */
+    public long getFirstIndex() {
+        return Math.max(0, nextIndex - capacity);
+    }
+
+    /** Index the next appended sample will get, i.e. the total number of samples seen. */
+    public long getNextIndex() {
+        return nextIndex;
+    }
+
+    public int size() {
+        return (int) Math.min(nextIndex, capacity);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        nextIndex = 0;
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.biowave;
+
+/**
+ * Streaming signal-quality index for one channel: artifact flags and a score from 0 (unusable)
+ * to 1 (clean), updated with every sample in O(1) over a one-second window.
+ * <p>
+ * On the raw samples: the window's range ({@link #FLATLINE}, e.g. lead-off) and samples at the
+ * converter's rails or stuck at the window's extreme ({@link #CLIPPING}). On the filtered samples,
+ * i.e. what the display and the analysis see (so mains hum the notch removes does not count):
+ * second-difference energy relative to the window's variance ({@link #NOISE}, e.g. muscle), the
+ * last tenth of a second's mean against the window's ({@link #BASELINE_JUMP}, e.g. electrode
+ * movement) and kurtosis against the channel's usual shape ({@link #SPIKE}). These three compare
+ * with references learnt from clean windows, since what is normal depends on the filter
+ * bandwidth, so until one has been seen only gross noise is detected.
+ * Flags are held for half a second after the artifact leaves the window, so the recovery is not
+ * trusted too early.
+ * <p>
+ * Window sums are updated incrementally and recomputed exactly once per window, so rounding
+ * cannot build up. Not thread-safe.
+ */
+public class SignalQuality {
+
+    public static final int FLATLINE = 1;
+    public static final int CLIPPING = 2;
+    public static final int NOISE = 4;
+    public static final int BASELINE_JUMP = 8;
+    public static final int SPIKE = 16;
+
+    private static final String[] NAMES = {"flat", "clipping", "noise", "baseline jump", "spike"};
+    private static final float CLIP_RUN_SECONDS = 0.02f;
+    private static final float SHORT_SECONDS = 0.1f;
+    private static final float HOLD_SECONDS = 0.5f;
+    // clean windows blend into the references with this weight
+    private static final double LEARN_RATE = 0.2;
+    // noise ratios: below the floor never relative noise, above the ceiling always noise
+    private static final double NOISE_FLOOR = 0.01;
+    private static final double NOISE_CEILING = 2.0;
+
+    private final int window, shortWindow, clipRun, hold;
+    private final float railLow, railHigh, flatRange;
+    private final double noiseLimit, jumpLimit, spikeLimit;
+    private final double invWindow, invShort, clipScale;
+    // 1 / (reference * limit), so that evaluating a sample needs a single division
+    private double noiseScale, jumpScale, spikeScale;
+
+    private final float[] ring;
+    private final float[] d2Ring;
+    private final boolean[] clipRing;
+    private final SlidingMinMax range;
+    private long count;
+    // ring positions of the next sample and of the oldest one of the short window
+    private int slot, shortSlot;
+    private float prevRaw, prev1, prev2;
+    private int run;
+    private int clipped;
+    // sums of powers of (x - centre), and of squared second differences, over the window
+    private double centre, s1, s2, s3, s4, d2Sum, shortSum;
+
+    // noise ratio, standard deviation and kurtosis of the filtered signal in clean windows
+    private double refNoise = Double.NaN, refSpread = Double.NaN, refKurtosis = Double.NaN;
+    private int windowFlags;
+    private int flags;
+    private int holdFlags, holdLeft;
+    private float score = Float.NaN;
+
+    private SignalQuality(float sampleRate, float railLow, float railHigh, float flatRange,
+                          double noiseLimit, double jumpLimit, double spikeLimit) {
+        window = Math.max(16, Math.round(sampleRate));
+        shortWindow = Math.max(2, Math.round(sampleRate * SHORT_SECONDS));
+        clipRun = Math.max(3, Math.round(sampleRate * CLIP_RUN_SECONDS));
+        hold = Math.round(sampleRate * HOLD_SECONDS);
+        this.railLow = railLow;
+        this.railHigh = railHigh;
+        this.flatRange = flatRange;
+        this.noiseLimit = noiseLimit;
+        this.jumpLimit = jumpLimit;
+        this.spikeLimit = spikeLimit;
+        invWindow = 1.0 / window;
+        invShort = 1.0 / shortWindow;
+        // 5% of the window clipped makes it worthless
+        clipScale = 20.0 / window;
+        ring = new float[window];
+        d2Ring = new float[window];
+        clipRing = new boolean[window];
+        range = new SlidingMinMax(window);
+    }
+
+    /** ECG in mV: rails of the int16 frame format, flat below 10 µV. */
+    public static SignalQuality ecg(float sampleRate) {
+        float rail = Short.MAX_VALUE * BinaryFrame.ECG_LSB;
+        return new SignalQuality(sampleRate, -rail, rail, 0.01f, 4.0, 4.0, 2.0);
+    }
+
+    /** PPG in sensor units: rails of the int24 frame format, flat below 1 unit. */
+    public static SignalQuality ppg(float sampleRate) {
+        float rail = 0x7FFFFF * BinaryFrame.PPG_LSB;
+        return new SignalQuality(sampleRate, -rail, rail, 1f, 4.0, 4.0, 3.0);
+    }
+
+    /** Adds the next sample, raw and filtered, and returns the artifact flags now in effect. */
+    public int add(float raw, float x) {
+        if (count >= window) {
+            double old = ring[slot] - centre;
+            double old2 = old * old;
+            s1 -= old;
+            s2 -= old2;
+            s3 -= old2 * old;
+            s4 -= old2 * old2;
+            d2Sum -= d2Ring[slot];
+            if (clipRing[slot]) clipped--;
+        }
+        if (count >= shortWindow) {
+            shortSum -= ring[shortSlot] - centre;
+            if (++shortSlot == window) shortSlot = 0;
+        }
+
+        range.add(raw);
+        run = count > 0 && raw == prevRaw ? run + 1 : 1;
+        boolean clip = raw <= railLow || raw >= railHigh
+                || run >= clipRun && range.max() - range.min() > flatRange && (raw == range.max() || raw == range.min());
+        float d2 = count >= 2 ? x - 2 * prev1 + prev2 : 0f;
+
+        double v = x - centre;
+        double v2 = v * v;
+        ring[slot] = x;
+        d2Ring[slot] = d2 * d2;
+        clipRing[slot] = clip;
+        s1 += v;
+        s2 += v2;
+        s3 += v2 * v;
+        s4 += v2 * v2;
+        d2Sum += d2 * d2;
+        shortSum += v;
+        if (clip) clipped++;
+        prevRaw = raw;
+        prev2 = prev1;
+        prev1 = x;
+        count++;
+        if (++slot == window) slot = 0;
+
+        if (count >= window) evaluate();
+        if (slot == 0) endWindow();
+        return flags;
+    }
+
+    private void evaluate() {
+        double mean = s1 * invWindow;
+        double var = Math.max(0, s2 * invWindow - mean * mean);
+        double invVar = var > 0 ? 1 / var : 0;
+        // every feature as a fraction of its limit, so one score curve fits all
+        double noise = d2Sum * invWindow * invVar;
+        double clip = clipped * clipScale;
+        double gross = noise * (1 / NOISE_CEILING);
+        int f = 0;
+        if (range.max() - range.min() < flatRange) f |= FLATLINE;
+        if (clipped > 0) f |= CLIPPING;
+        boolean noisy = gross >= 1;
+        double worst = Math.max(clip, gross);
+        if (!Double.isNaN(refSpread)) {
+            double relative = noise * noiseScale;
+            double jump = Math.abs(shortSum * invShort - mean) * jumpScale;
+            double spike = kurtosis(mean, var) * spikeScale;
+            if (relative >= 1) noisy = true;
+            if (jump >= 1) f |= BASELINE_JUMP;
+            if (spike >= 1) f |= SPIKE;
+            worst = Math.max(worst, Math.max(relative, Math.max(jump, spike)));
+        }
+        if (noisy) f |= NOISE;
+        windowFlags |= f;
+
+        if (f != 0) {
+            holdFlags |= f;
+            holdLeft = hold;
+        } else if (holdLeft > 0 && --holdLeft == 0) {
+            holdFlags = 0;
+        }
+        flags = f | (holdLeft > 0 ? holdFlags : 0);
+        // 1 up to 60% of a limit, falling to 0 at the limit; at most 0.5 while flagged
+        double score = Math.max(0, Math.min(1, (1 - worst) * 2.5));
+        if ((f & FLATLINE) != 0) score = 0;
+        if (flags != 0) score = Math.min(score, 0.5);
+        this.score = (float) score;
+    }
+
+    private double kurtosis(double mean, double var) {
+        if (var <= 0) return 0;
+        double m4 = (s4 - 4 * mean * s3 + 6 * mean * mean * s2) * invWindow - 3 * mean * mean * mean * mean;
+        return m4 / (var * var);
+    }
+
+    // Once per window: learn from clean windows, then recentre and recompute the sums exactly
+    private void endWindow() {
+        if (windowFlags == 0) {
+            double mean = s1 / window;
+            double var = Math.max(0, s2 / window - mean * mean);
+            double spread = Math.sqrt(var);
+            double kurtosis = kurtosis(mean, var);
+            double noise = d2Sum / window / var;
+            if (var <= 0) {
+                // nothing to learn from
+            } else if (Double.isNaN(refSpread)) {
+                refNoise = noise;
+                refSpread = spread;
+                refKurtosis = kurtosis;
+            } else {
+                refNoise += LEARN_RATE * (noise - refNoise);
+                refSpread += LEARN_RATE * (spread - refSpread);
+                refKurtosis += LEARN_RATE * (kurtosis - refKurtosis);
+            }
+            noiseScale = 1 / (Math.max(refNoise, NOISE_FLOOR) * noiseLimit);
+            jumpScale = 1 / (refSpread * jumpLimit);
+            spikeScale = 1 / (refKurtosis * spikeLimit);
+        }
+        windowFlags = 0;
+
+        double sum = 0;
+        for (float x : ring) sum += x;
+        centre = sum / window;
+        s1 = s2 = s3 = s4 = d2Sum = shortSum = 0;
+        for (int i = 0; i < window; i++) {
+            double v = ring[i] - centre;
+            double v2 = v * v;
+            s1 += v;
+            s2 += v2;
+            s3 += v2 * v;
+            s4 += v2 * v2;
+            d2Sum += d2Ring[i];
+        }
+        for (int i = window - shortWindow; i < window; i++) shortSum += ring[i] - centre;
+    }
+
+    /** Artifact flags in effect after the last sample; 0 also while the first window fills. */
+    public int getFlags() {
+        return flags;
+    }
+
+    /** 0 (unusable) to 1 (clean), or NaN until a window has been seen. */
+    public float getScore() {
+        return score;
+    }
+
+    /** Starts over after a gap or a reconnect; what clean signal looks like is remembered. */
+    public void reset() {
+        count = 0;
+        slot = shortSlot = 0;
+        run = 0;
+        clipped = 0;
+        centre = s1 = s2 = s3 = s4 = d2Sum = shortSum = 0;
+        range.clear();
+        windowFlags = flags = holdFlags = holdLeft = 0;
+        score = Float.NaN;
+    }
+
+    /** The names of {@code flags}, e.g. "noise, spike", or "" for none. */
+    public static String describe(int flags) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            if ((flags & (1 << i)) == 0) continue;
+            if (s.length() > 0) s.append(", ");
+            s.append(NAMES[i]);
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.biowave;
+
+/**
+ * Where the raw byte stream comes from: the BLE link to the sensor, or a stand-in for testing
+ * without hardware ({@link SyntheticSignalSource}, {@link ReplaySignalSource}).
+ * <p>
+ * Sources deliver data in notification-sized chunks, exactly like the HM-10 does, so whatever
+ * consumes them (normally an {@link Acquisition} device) cannot tell the difference.
+ */
+public interface SignalSource {
+
+    interface Listener {
+        /** A chunk of the byte stream; called on the source's own thread, the array is not reused. */
+        void onData(byte[] data);
+
+        /** Human-readable progress ("Scanning...", "Connected", ...); any thread. */
+        void onStatus(String status);
+
+        /** The stream was interrupted; a partial frame may have been lost. Any thread. */
+        void onDisconnected();
+    }
+
+    void start(Listener listener);
+
+    void stop();
+
+    /** True from {@link #start} until the source stops, by request or by itself. */
+    boolean isRunning();
+}
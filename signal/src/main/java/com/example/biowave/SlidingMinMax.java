@@ -0,0 +1,112 @@
+package com.example.biowave;
+
+/**
+ * Minimum and maximum over the last {@code window} values, maintained with two monotonic
+ * deques so that every {@link #add} costs amortised O(1) regardless of the window size.
+ */
+public class SlidingMinMax {
+
+    private final int window;
+    private final Deque maxDeque;
+    private final Deque minDeque;
+    private long count = 0;
+
+    public SlidingMinMax(int window) {
+        if (window <= 0) throw new IllegalArgumentException("window must be positive");
+        this.window = window;
+        maxDeque = new Deque(window);
+        minDeque = new Deque(window);
+    }
+
+    /** Adds the next value; NaN (a gap) occupies a window slot but never becomes an extreme. */
+    public void add(float value) {
+        long index = count++;
+        long expired = index - window;
+
+        if (!Float.isNaN(value)) {
+            // values dominated by the new one can never become the extreme again
+            while (!maxDeque.isEmpty() && maxDeque.backValue() <= value) maxDeque.popBack();
+            maxDeque.pushBack(index, value);
+            while (!minDeque.isEmpty() && minDeque.backValue() >= value) minDeque.popBack();
+            minDeque.pushBack(index, value);
+        }
+        while (!maxDeque.isEmpty() && maxDeque.frontIndex() <= expired) maxDeque.popFront();
+        while (!minDeque.isEmpty() && minDeque.frontIndex() <= expired) minDeque.popFront();
+    }
+
+    /** Largest value in the window, or NaN when the window holds no values. */
+    public float max() {
+        return maxDeque.isEmpty() ? Float.NaN : maxDeque.frontValue();
+    }
+
+    /** Smallest value in the window, or NaN when the window holds no values. */
+    public float min() {
+        return minDeque.isEmpty() ? Float.NaN : minDeque.frontValue();
+    }
+
+    public boolean isEmpty() {
+        return maxDeque.isEmpty();
+    }
+
+    public int window() {
+        return window;
+    }
+
+    public void clear() {
+        count = 0;
+        maxDeque.clear();
+        minDeque.clear();
+    }
+
+    /** Fixed-capacity circular deque of (sample index, value) pairs. */
+    private static final class Deque {
+        private final long[] indices;
+        private final float[] values;
+        private final int capacity;
+        private int head = 0, size = 0;
+
+        Deque(int window) {
+            // at most window + 1 entries exist between a push and the expiry check
+            capacity = window + 1;
+            indices = new long[capacity];
+            values = new float[capacity];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long frontIndex() {
+            return indices[head];
+        }
+
+        float frontValue() {
+            return values[head];
+        }
+
+        float backValue() {
+            return values[(head + size - 1) % capacity];
+        }
+
+        void pushBack(long index, float value) {
+            int slot = (head + size) % capacity;
+            indices[slot] = index;
+            values[slot] = value;
+            size++;
+        }
+
+        void popBack() {
+            size--;
+        }
+
+        void popFront() {
+            head = (head + 1) % capacity;
+            size--;
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+    }
+}
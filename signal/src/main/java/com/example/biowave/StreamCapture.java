@@ -0,0 +1,103 @@
+package com.example.biowave;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * File format for captured notification streams, replayed by {@link ReplaySignalSource}.
+ * <pre>
+ * "BWCAP1"                              6-byte magic
+ * per notification:
+ *   time since start of capture, µs     int64 LE
+ *   length                              uint16 LE
+ *   payload                             length bytes
+ * </pre>
+ */
+public final class StreamCapture {
+
+    private static final byte[] MAGIC = {'B', 'W', 'C', 'A', 'P', '1'};
+
+    private StreamCapture() {
+    }
+
+    /** Appends notifications as they arrive; not thread-safe. */
+    public static class Writer implements Closeable {
+        private final OutputStream out;
+        private final byte[] header = new byte[10];
+        private long startNanos = -1;
+
+        public Writer(OutputStream out) throws IOException {
+            this.out = new BufferedOutputStream(out);
+            this.out.write(MAGIC);
+        }
+
+        /** Stamps the notification with the time elapsed since the first one. */
+        public void write(byte[] data) throws IOException {
+            long now = System.nanoTime();
+            if (startNanos < 0) startNanos = now;
+            write((now - startNanos) / 1000, data, 0, data.length);
+        }
+
+        public void write(long timeMicros, byte[] data, int offset, int length) throws IOException {
+            for (int i = 0; i < 8; i++) header[i] = (byte) (timeMicros >>> (8 * i));
+            header[8] = (byte) length;
+            header[9] = (byte) (length >>> 8);
+            out.write(header);
+            out.write(data, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /** Reads the notifications back in order. */
+    public static class Reader implements Closeable {
+        private final DataInputStream in;
+        private final byte[] header = new byte[10];
+        private long time;
+
+        public Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in));
+            byte[] magic = new byte[MAGIC.length];
+            this.in.readFully(magic);
+            if (!java.util.Arrays.equals(magic, MAGIC)) throw new IOException("not a BioWave capture");
+        }
+
+        /** The next notification, or null at the end of the capture. */
+        public byte[] next() throws IOException {
+            int first = in.read();
+            if (first < 0) return null;
+            header[0] = (byte) first;
+            in.readFully(header, 1, header.length - 1);
+            long t = 0;
+            for (int i = 7; i >= 0; i--) t = t << 8 | (header[i] & 0xFF);
+            time = t;
+            byte[] data = new byte[(header[8] & 0xFF) | (header[9] & 0xFF) << 8];
+            try {
+                in.readFully(data);
+            } catch (EOFException e) {
+                // capture cut off mid-write
+                return null;
+            }
+            return data;
+        }
+
+        /** Capture time of the notification last returned by {@link #next}, in µs. */
+        public long getTimeMicros() {
+            return time;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.biowave;
+
+/**
+ * Decodes the BLE byte stream, accepting both {@link BinaryFrame binary frames} and the legacy
+ * ASCII lines handled by {@link FrameParser}, in any mix.
+ * <p>
+ * A sync byte starts a binary frame candidate; everything else goes to the ASCII parser. A
+ * candidate that turns out invalid (bad header or CRC) is not simply skipped: its bytes after
+ * the first sync byte are scanned again, so a real frame hidden inside a corrupted one is still
+ * found. Allocation-free; not thread-safe.
+ */
+public class StreamDecoder {
+
+    public interface Listener extends FrameParser.Listener {
+        /**
+         * Called when binary sequence numbers show that {@code lostFrames} frames went missing,
+         * {@code lostSamples} samples in all if they were as long as the last frame received.
+         */
+        void onSequenceGap(int lostFrames, int lostSamples);
+    }
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_SYNC = 1;
+    private static final int STATE_HEADER = 2;
+    private static final int STATE_BODY = 3;
+
+    private final Listener listener;
+    private final FrameParser asciiParser;
+
+    private final byte[] frame = new byte[BinaryFrame.MAX_FRAME_SIZE];
+    private final byte[] replay = new byte[BinaryFrame.MAX_FRAME_SIZE];
+    private int state = STATE_IDLE;
+    private int frameLength = 0;
+    private int expectedLength = 0;
+    private int lastSequence = -1;
+    // samples in the last frame received, the best guess for the length of lost ones
+    private int lastCount;
+
+    private long binaryFrames = 0;
+    private long binaryErrors = 0;
+    private long lostFrames = 0;
+    private long lostSamples = 0;
+
+    public StreamDecoder(Listener listener) {
+        this.listener = listener;
+        this.asciiParser = new FrameParser(listener);
+    }
+
+    public void feed(byte[] data) {
+        feed(data, 0, data.length);
+    }
+
+    public void feed(byte[] data, int offset, int count) {
+        int end = offset + count;
+        int asciiStart = -1;
+        for (int i = offset; i < end; i++) {
+            byte b = data[i];
+            if (state == STATE_IDLE && b != BinaryFrame.SYNC0) {
+                // batch runs of text for the ASCII parser
+                if (asciiStart < 0) asciiStart = i;
+                continue;
+            }
+            if (asciiStart >= 0) {
+                asciiParser.feed(data, asciiStart, i - asciiStart);
+                asciiStart = -1;
+            }
+            process(b);
+        }
+        if (asciiStart >= 0) asciiParser.feed(data, asciiStart, end - asciiStart);
+    }
+
+    private void process(byte b) {
+        switch (state) {
+            case STATE_IDLE:
+                if (b == BinaryFrame.SYNC0) {
+                    frame[0] = b;
+                    frameLength = 1;
+                    state = STATE_SYNC;
+                } else {
+                    frame[0] = b;
+                    asciiParser.feed(frame, 0, 1);
+                }
+                break;
+            case STATE_SYNC:
+                if (b == BinaryFrame.SYNC1) {
+                    frame[frameLength++] = b;
+                    state = STATE_HEADER;
+                } else if (b != BinaryFrame.SYNC0) {
+                    // lone sync byte; the byte after it is ordinary data
+                    state = STATE_IDLE;
+                    frameLength = 0;
+                    process(b);
+                }
+                break;
+            case STATE_HEADER:
+                frame[frameLength++] = b;
+                if (frameLength == BinaryFrame.HEADER_SIZE) {
+                    int flags = frame[2] & 0xFF;
+                    int count = frame[4] & 0xFF;
+                    if ((flags & 0x0F) != BinaryFrame.VERSION || (flags & 0xE0) != 0
+                            || count < 1 || count > BinaryFrame.MAX_SAMPLES) {
+                        resync();
+                    } else {
+                        expectedLength = BinaryFrame.frameSize(count, (flags & BinaryFrame.FLAG_VITALS) != 0);
+                        state = STATE_BODY;
+                    }
+                }
+                break;
+            default:
+                frame[frameLength++] = b;
+                if (frameLength == expectedLength) {
+                    int crc = (frame[frameLength - 2] & 0xFF) | (frame[frameLength - 1] & 0xFF) << 8;
+                    if (crc == BinaryFrame.crc16(frame, 2, frameLength - 4)) {
+                        deliver();
+                        state = STATE_IDLE;
+                        frameLength = 0;
+                    } else {
+                        resync();
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Drops the sync byte of a rejected candidate and runs the remaining bytes through the state
+     * machine again. A nested resync only rewrites replay bytes that were already consumed, so the
+     * shared buffer is safe; every level drops at least one byte, so the recursion is bounded.
+     */
+    private void resync() {
+        binaryErrors++;
+        int n = frameLength - 1;
+        System.arraycopy(frame, 1, replay, 0, n);
+        state = STATE_IDLE;
+        frameLength = 0;
+        for (int i = 0; i < n; i++) process(replay[i]);
+    }
+
+    private void deliver() {
+        binaryFrames++;
+        int sequence = frame[3] & 0xFF;
+        int count = frame[4] & 0xFF;
+        if (lastSequence >= 0) {
+            int gap = (sequence - lastSequence - 1) & 0xFF;
+            if (gap > 0) {
+                lostFrames += gap;
+                lostSamples += gap * lastCount;
+                listener.onSequenceGap(gap, gap * lastCount);
+            }
+        }
+        lastSequence = sequence;
+        lastCount = count;
+
+        boolean vitals = (frame[2] & BinaryFrame.FLAG_VITALS) != 0;
+        float temp = Float.NaN, spo2 = Float.NaN;
+        int p = BinaryFrame.HEADER_SIZE + count * BinaryFrame.SAMPLE_SIZE;
+        if (vitals) {
+            int t = (short) ((frame[p] & 0xFF) | frame[p + 1] << 8);
+            int s = frame[p + 2] & 0xFF;
+            if (t != BinaryFrame.TEMP_NONE) temp = t * BinaryFrame.TEMP_LSB;
+            if (s != BinaryFrame.SPO2_NONE) spo2 = s;
+        }
+
+        p = BinaryFrame.HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            int e = (short) ((frame[p] & 0xFF) | frame[p + 1] << 8);
+            // sign-extend the 24-bit PPG value
+            int v = ((frame[p + 2] & 0xFF) | (frame[p + 3] & 0xFF) << 8 | frame[p + 4] << 16);
+            p += BinaryFrame.SAMPLE_SIZE;
+            // vitals ride along with the last sample of the frame
+            boolean last = i == count - 1;
+            listener.onFrame(e * BinaryFrame.ECG_LSB, v * BinaryFrame.PPG_LSB,
+                    last ? temp : Float.NaN, last ? spo2 : Float.NaN);
+        }
+    }
+
+    /** Drops any partially received frame or line and forgets the last sequence number. */
+    public void reset() {
+        state = STATE_IDLE;
+        frameLength = 0;
+        lastSequence = -1;
+        asciiParser.reset();
+    }
+
+    public long getFrameCount() {
+        return binaryFrames + asciiParser.getFrameCount();
+    }
+
+    public long getErrorCount() {
+        return binaryErrors + asciiParser.getErrorCount();
+    }
+
+    public long getBinaryFrameCount() {
+        return binaryFrames;
+    }
+
+    public long getBinaryErrorCount() {
+        return binaryErrors;
+    }
+
+    public long getLostFrameCount() {
+        return lostFrames;
+    }
+
+    public long getLostSampleCount() {
+        return lostSamples;
+    }
+}
@@ -0,0 +1,312 @@
+package com.example.biowave;
+
+import java.util.Random;
+
+/**
+ * Deterministic ECG/PPG generator that produces the same byte stream the sensor would send,
+ * chopped into BLE-sized notifications, for exercising the pipeline without hardware.
+ * <p>
+ * The ECG is a sum of Gaussian P, Q, R, S and T waves per beat (after McSharry et al.), the PPG
+ * a systolic pulse plus a dicrotic wave following each R peak. RR intervals vary slowly around
+ * the configured heart rate. Premature ventricular and atrial beats and atrial fibrillation can
+ * be switched on, with the type of every beat on record for tests. Streams are binary frames
+ * ({@link BinaryFrameEncoder}) or legacy ASCII lines; notifications can be dropped at random to
+ * mimic a lossy link. The same seed always gives the same stream.
+ */
+public class SyntheticSignal {
+
+    // wave offset from R (s), width (s), amplitude (mV): P, Q, R, S, T
+    private static final float[][] ECG_WAVES = {
+            {-0.20f, 0.025f, 0.15f}, {-0.03f, 0.010f, -0.15f}, {0, 0.012f, 1.2f}, {0.03f, 0.010f, -0.25f}, {0.25f, 0.050f, 0.3f}};
+    // ventricular ectopic: no P wave, a wide tall QRS and a T wave of the opposite direction
+    private static final float[][] PVC_WAVES = {{0, 0.040f, 1.6f}, {0.08f, 0.030f, -0.4f}, {0.30f, 0.070f, -0.45f}};
+    // atrial ectopic: an early, inverted P wave, normally conducted
+    private static final float[][] PAC_WAVES = {
+            {-0.15f, 0.020f, -0.10f}, {-0.03f, 0.010f, -0.15f}, {0, 0.012f, 1.2f}, {0.03f, 0.010f, -0.25f}, {0.25f, 0.050f, 0.3f}};
+    // atrial fibrillation: no P waves
+    private static final float[][] AF_WAVES = {{-0.03f, 0.010f, -0.15f}, {0, 0.012f, 1.2f}, {0.03f, 0.010f, -0.25f}, {0.25f, 0.050f, 0.3f}};
+    // coupling interval of an ectopic beat relative to the sinus one
+    private static final double PVC_PREMATURITY = 0.65, PAC_PREMATURITY = 0.7;
+    // a PVC leaves the sinus node alone (full compensatory pause); a PAC resets it
+    private static final double PAC_PAUSE = 1.05;
+    // pulse arrival after R (s), width (s), relative amplitude: systolic peak, dicrotic wave
+    private static final float[][] PPG_WAVES = {{0.25f, 0.08f, 1f}, {0.55f, 0.10f, 0.4f}};
+    private static final float PPG_BASELINE = 20000f;
+    private static final float PPG_AMPLITUDE = 3000f;
+    private static final int BUFFER_SIZE = 4096;
+
+    /** Beat types reported by {@link #getBeatType}. */
+    public static final int BEAT_NORMAL = 0, BEAT_PVC = 1, BEAT_PAC = 2;
+
+    /** Rate of the current sensor firmware. */
+    public static final float DEFAULT_SAMPLE_RATE = 250f;
+
+    private final Random random;
+
+    private float sampleRate = DEFAULT_SAMPLE_RATE;
+    private float heartRate = 72f;
+    private float noise = 0.02f;
+    // shift of the PPG against the default pulse arrival
+    private float pulseShift = 0f;
+    private float breathsPerMinute = 15f, breathDepth = 0f;
+    private float pvcProbability = 0f, pacProbability = 0f;
+    private boolean fibrillation = false;
+    private float packetLoss = 0f;
+    private int notificationSize = 20;
+    private int samplesPerFrame = 2;
+    private boolean binary = true;
+
+    private long sampleIndex = 0;
+    // R peak times (s) of recent beats; the PPG of one beat lasts longer than a short RR interval
+    private final double[] beats = new double[8];
+    private final int[] types = new int[8];
+    private int beatCount = 0;
+
+    private final BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+    private final float[] ecg = new float[BinaryFrame.MAX_SAMPLES];
+    private final float[] ppg = new float[BinaryFrame.MAX_SAMPLES];
+    private final byte[] pending = new byte[BUFFER_SIZE];
+    private int pendingStart = 0, pendingEnd = 0;
+    private long droppedNotifications = 0;
+
+    public SyntheticSignal(long seed) {
+        random = new Random(seed);
+        java.util.Arrays.fill(beats, Double.NEGATIVE_INFINITY);
+        beats[0] = 0.5;
+        beatCount = 1;
+    }
+
+    public void setSampleRate(float sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public void setHeartRate(float bpm) {
+        this.heartRate = bpm;
+    }
+
+    /** White noise added to the ECG, in mV (PPG noise scales along). */
+    public void setNoise(float noise) {
+        this.noise = noise;
+    }
+
+    /**
+     * Delay from each R peak to the systolic peak of its PPG pulse, 0.25 s by default; the
+     * pulse's foot (intersecting tangent) comes about 0.16 s earlier.
+     */
+    public void setPulseArrival(float seconds) {
+        this.pulseShift = seconds - PPG_WAVES[0][0];
+    }
+
+    /**
+     * Breathing at {@code breathsPerMinute}, which shifts the PPG baseline by {@code depth} times
+     * the pulse amplitude and scales the pulse by half as much; off (depth 0) by default.
+     */
+    public void setRespiration(float breathsPerMinute, float depth) {
+        this.breathsPerMinute = breathsPerMinute;
+        this.breathDepth = depth;
+    }
+
+    /**
+     * Probability that a beat following a sinus beat is a premature ventricular or atrial beat;
+     * none by default.
+     */
+    public void setEctopy(float pvcProbability, float pacProbability) {
+        this.pvcProbability = pvcProbability;
+        this.pacProbability = pacProbability;
+    }
+
+    /** Atrial fibrillation: no P waves and RR intervals drawn at random within ±40 %. */
+    public void setAtrialFibrillation(boolean fibrillation) {
+        this.fibrillation = fibrillation;
+    }
+
+    /** Probability of dropping a whole notification. */
+    public void setPacketLoss(float probability) {
+        this.packetLoss = probability;
+    }
+
+    /** Bytes per notification; 20 for a default HM-10 link, up to 244 with a larger MTU. */
+    public void setNotificationSize(int bytes) {
+        this.notificationSize = bytes;
+    }
+
+    public void setSamplesPerFrame(int samples) {
+        if (samples < 1 || samples > BinaryFrame.MAX_SAMPLES) throw new IllegalArgumentException("1.." + BinaryFrame.MAX_SAMPLES);
+        this.samplesPerFrame = samples;
+    }
+
+    /** Binary frames (default) or legacy ASCII lines. */
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    /** Samples generated so far, including those in dropped notifications. */
+    public long getSampleCount() {
+        return sampleIndex;
+    }
+
+    /** R peak time in seconds of the {@code n}-th beat, for the last few beats only. */
+    public double getBeatTime(int n) {
+        if (n < beatCount - beats.length || n >= beatCount) throw new IndexOutOfBoundsException();
+        return beats[n % beats.length];
+    }
+
+    /** {@link #BEAT_NORMAL}, {@link #BEAT_PVC} or {@link #BEAT_PAC}, for the last few beats only. */
+    public int getBeatType(int n) {
+        if (n < beatCount - beats.length || n >= beatCount) throw new IndexOutOfBoundsException();
+        return types[n % beats.length];
+    }
+
+    /** Beats scheduled so far; the latest ones may lie slightly ahead of the last sample. */
+    public int getBeatCount() {
+        return beatCount;
+    }
+
+    public long getDroppedNotificationCount() {
+        return droppedNotifications;
+    }
+
+    /** The next notification that makes it over the link. */
+    public byte[] nextNotification() {
+        while (true) {
+            while (pendingEnd - pendingStart < notificationSize) generate();
+            byte[] out = new byte[notificationSize];
+            System.arraycopy(pending, pendingStart, out, 0, notificationSize);
+            pendingStart += notificationSize;
+            if (packetLoss > 0 && random.nextFloat() < packetLoss) {
+                droppedNotifications++;
+                continue;
+            }
+            return out;
+        }
+    }
+
+    /** Fills {@code ecg} (mV) and {@code ppg} (raw units) with the next samples, bypassing the encoding. */
+    public void nextSamples(float[] ecg, float[] ppg, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            double t = sampleIndex++ / (double) sampleRate;
+            // schedule beats before their P wave starts
+            double last = beats[(beatCount - 1) % beats.length];
+            while (t >= last - 0.5) {
+                double rr = 60.0 / heartRate;
+                if (fibrillation) {
+                    rr *= 0.6 + 0.8 * random.nextDouble();
+                } else {
+                    // slow sinus arrhythmia plus a little beat-to-beat variation
+                    rr *= 1 + 0.05 * Math.sin(beatCount * 0.4) + 0.02 * random.nextGaussian();
+                }
+                int previous = types[(beatCount - 1) % beats.length], type = BEAT_NORMAL;
+                if (previous == BEAT_PVC) {
+                    rr *= 2 - PVC_PREMATURITY;
+                } else if (previous == BEAT_PAC) {
+                    rr *= PAC_PAUSE;
+                } else if (pvcProbability + pacProbability > 0) {
+                    float u = random.nextFloat();
+                    if (u < pvcProbability) {
+                        type = BEAT_PVC;
+                        rr *= PVC_PREMATURITY;
+                    } else if (u < pvcProbability + pacProbability) {
+                        type = BEAT_PAC;
+                        rr *= PAC_PREMATURITY;
+                    }
+                }
+                last += rr;
+                types[beatCount % beats.length] = type;
+                beats[beatCount++ % beats.length] = last;
+            }
+            ecg[i] = ecgWaves(t) + (float) (noise * random.nextGaussian());
+            float pulse = waves(PPG_WAVES, t - pulseShift);
+            if (breathDepth != 0) {
+                float breath = breathDepth * (float) Math.sin(2 * Math.PI * breathsPerMinute / 60 * t);
+                pulse = pulse * (1 + 0.5f * breath) + breath;
+            }
+            ppg[i] = PPG_BASELINE + PPG_AMPLITUDE * pulse
+                    + (float) (noise * PPG_AMPLITUDE * random.nextGaussian());
+        }
+    }
+
+    private float waves(float[][] waves, double t) {
+        float sum = 0;
+        for (double r : beats) {
+            for (float[] w : waves) sum += gaussian(t - r - w[0], w[1]) * w[2];
+        }
+        return sum;
+    }
+
+    private float ecgWaves(double t) {
+        float sum = 0;
+        for (int k = 0; k < beats.length; k++) {
+            float[][] shape = types[k] == BEAT_PVC ? PVC_WAVES : types[k] == BEAT_PAC ? PAC_WAVES
+                    : fibrillation ? AF_WAVES : ECG_WAVES;
+            for (float[] w : shape) sum += gaussian(t - beats[k] - w[0], w[1]) * w[2];
+        }
+        return sum;
+    }
+
+    private static float gaussian(double x, double sigma) {
+        double z = x / sigma;
+        return z > 5 || z < -5 ? 0 : (float) Math.exp(-0.5 * z * z);
+    }
+
+    private void generate() {
+        // compact before appending
+        if (pendingStart > 0) {
+            System.arraycopy(pending, pendingStart, pending, 0, pendingEnd - pendingStart);
+            pendingEnd -= pendingStart;
+            pendingStart = 0;
+        }
+        nextSamples(ecg, ppg, 0, samplesPerFrame);
+        float temp = 36.8f + 0.1f * (float) Math.sin(sampleIndex / (sampleRate * 60.0));
+        float spo2 = 97f;
+        if (binary) {
+            pendingEnd += encoder.encode(ecg, ppg, 0, samplesPerFrame, temp, spo2, pending, pendingEnd);
+        } else {
+            for (int i = 0; i < samplesPerFrame; i++) {
+                pendingEnd = appendLine(ecg[i], ppg[i], i == samplesPerFrame - 1 ? temp : Float.NaN, pending, pendingEnd);
+            }
+        }
+    }
+
+    // "E0.123;P20000.00;T36.80\n" without going through String
+    private static int appendLine(float ecg, float ppg, float temp, byte[] out, int p) {
+        out[p++] = 'E';
+        p = appendFixed(ecg, 3, out, p);
+        out[p++] = ';';
+        out[p++] = 'P';
+        p = appendFixed(ppg, 2, out, p);
+        if (!Float.isNaN(temp)) {
+            out[p++] = ';';
+            out[p++] = 'T';
+            p = appendFixed(temp, 2, out, p);
+        }
+        out[p++] = '\n';
+        return p;
+    }
+
+    private static final int[] POW10 = {1, 10, 100, 1000};
+
+    static int appendFixed(float value, int decimals, byte[] out, int p) {
+        long scaled = Math.round(Math.abs((double) value) * POW10[decimals]);
+        if (value < 0 && scaled != 0) out[p++] = '-';
+        long integer = scaled / POW10[decimals];
+        int fraction = (int) (scaled % POW10[decimals]);
+        int start = p;
+        do {
+            out[p++] = (byte) ('0' + integer % 10);
+            integer /= 10;
+        } while (integer > 0);
+        // digits were written backwards
+        for (int i = start, j = p - 1; i < j; i++, j--) {
+            byte b = out[i];
+            out[i] = out[j];
+            out[j] = b;
+        }
+        out[p++] = '.';
+        for (int d = decimals - 1; d >= 0; d--) out[p++] = (byte) ('0' + fraction / POW10[d] % 10);
+        return p;
+    }
+}
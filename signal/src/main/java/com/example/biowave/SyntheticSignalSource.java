@@ -0,0 +1,63 @@
+package com.example.biowave;
+
+/**
+ * Feeds a {@link SyntheticSignal} in real time. Notifications are released in bursts once per
+ * simulated connection interval, with random extra latency, the way a BLE stack delivers them.
+ */
+public class SyntheticSignalSource implements SignalSource {
+
+    private final SyntheticSignal signal;
+    private final int connectionIntervalMs;
+    private final int jitterMs;
+    private final java.util.Random random;
+
+    private volatile Thread thread;
+
+    /**
+     * @param connectionIntervalMs time between bursts, 7.5-50 ms on real links
+     * @param jitterMs             maximum extra delay added to a burst
+     */
+    public SyntheticSignalSource(SyntheticSignal signal, int connectionIntervalMs, int jitterMs, long seed) {
+        this.signal = signal;
+        this.connectionIntervalMs = Math.max(1, connectionIntervalMs);
+        this.jitterMs = jitterMs;
+        this.random = new java.util.Random(seed);
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        if (thread != null) return;
+        thread = new Thread(() -> run(listener), "BioWave-Synthetic");
+        thread.start();
+    }
+
+    private void run(Listener listener) {
+        listener.onStatus("Synthetic signal, " + Math.round(signal.getSampleRate()) + " Hz");
+        long start = System.nanoTime();
+        long startSample = signal.getSampleCount();
+        try {
+            while (thread == Thread.currentThread()) {
+                Thread.sleep(connectionIntervalMs + (jitterMs > 0 ? random.nextInt(jitterMs + 1) : 0));
+                long due = startSample + (long) ((System.nanoTime() - start) * 1e-9 * signal.getSampleRate());
+                while (signal.getSampleCount() < due && thread == Thread.currentThread()) {
+                    listener.onData(signal.nextNotification());
+                }
+            }
+        } catch (InterruptedException ignored) {
+        }
+        listener.onDisconnected();
+        listener.onStatus("Synthetic signal stopped.");
+    }
+
+    @Override
+    public synchronized void stop() {
+        Thread t = thread;
+        thread = null;
+        if (t != null) t.interrupt();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return thread != null;
+    }
+}
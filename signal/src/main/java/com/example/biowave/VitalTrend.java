@@ -0,0 +1,179 @@
+package com.example.biowave;
+
+import java.util.Arrays;
+
+/**
+ * History of one low-rate vital, e.g. temperature or SpO2, as min/avg/max per time bucket at
+ * several resolutions: by default 1 s buckets for the last hour, 1 min for the last day and
+ * 15 min for the last week, about 115 KB in primitive arrays. Each level is a ring of buckets
+ * keyed by wall-clock time; values that arrive late still land in their bucket while it is kept.
+ * Sums are kept in double, so a vital sent with every frame, a quarter of a million readings
+ * per 15 min bucket, still averages to within float precision.
+ * <p>
+ * {@link #getVersion()} changes only when some bucket's min, avg or max does (or a bucket
+ * starts), so a display can poll it every frame and redraw about once per reading.
+ * {@link #read} picks the finest level that fits the requested columns, so a chart of hours
+ * costs the same as one of minutes. Thread-safe: written by the pipeline, read by the UI.
+ */
+public class VitalTrend {
+
+    /** Bucket sizes of the default levels, finest first. */
+    public static final long[] DEFAULT_BUCKET_MILLIS = {1000, 60_000, 15 * 60_000};
+    private static final int[] DEFAULT_CAPACITY = {3600, 24 * 60, 7 * 24 * 4};
+    // at most this many buckets are aggregated into a column
+    private static final int MAX_BUCKETS_PER_COLUMN = 4;
+
+    private static final class Level {
+        final long bucketMillis;
+        final int capacity;
+        final float[] min, max;
+        final double[] sum;
+        final int[] count;
+        // bucket number (time / bucketMillis) of the newest bucket, or MIN_VALUE while empty
+        long newest = Long.MIN_VALUE;
+
+        Level(long bucketMillis, int capacity) {
+            this.bucketMillis = bucketMillis;
+            this.capacity = capacity;
+            min = new float[capacity];
+            max = new float[capacity];
+            sum = new double[capacity];
+            count = new int[capacity];
+        }
+
+        int slot(long bucket) {
+            return (int) Math.floorMod(bucket, (long) capacity);
+        }
+
+        boolean holds(long bucket) {
+            return newest != Long.MIN_VALUE && bucket <= newest && bucket > newest - capacity;
+        }
+
+        /** Adds {@code value} to its bucket; returns whether the bucket's aggregate changed. */
+        boolean add(long time, float value) {
+            long bucket = Math.floorDiv(time, bucketMillis);
+            if (newest == Long.MIN_VALUE || bucket > newest) {
+                // clear the buckets skipped over, at most the whole ring
+                long from = newest == Long.MIN_VALUE ? bucket : Math.max(newest + 1, bucket - capacity + 1);
+                for (long b = from; b <= bucket; b++) count[slot(b)] = 0;
+                newest = bucket;
+            } else if (!holds(bucket)) {
+                return false;
+            }
+            int s = slot(bucket);
+            int n = count[s];
+            if (n == 0) {
+                min[s] = max[s] = value;
+                sum[s] = value;
+                count[s] = 1;
+                return true;
+            }
+            float oldMin = min[s], oldMax = max[s], oldAvg = (float) (sum[s] / n);
+            min[s] = Math.min(oldMin, value);
+            max[s] = Math.max(oldMax, value);
+            sum[s] += value;
+            count[s] = n + 1;
+            return min[s] != oldMin || max[s] != oldMax || (float) (sum[s] / (n + 1)) != oldAvg;
+        }
+    }
+
+    private final Level[] levels;
+    private float last = Float.NaN;
+    private long lastTime;
+    private volatile long version;
+
+    /** The default levels, see {@link #DEFAULT_BUCKET_MILLIS}. */
+    public VitalTrend() {
+        this(DEFAULT_BUCKET_MILLIS, DEFAULT_CAPACITY);
+    }
+
+    /** Levels of {@code bucketMillis[i]} buckets, {@code capacity[i]} of them kept, finest first. */
+    public VitalTrend(long[] bucketMillis, int[] capacity) {
+        if (bucketMillis.length == 0 || bucketMillis.length != capacity.length) {
+            throw new IllegalArgumentException("one capacity per level");
+        }
+        levels = new Level[bucketMillis.length];
+        for (int i = 0; i < levels.length; i++) {
+            if (i > 0 && bucketMillis[i] <= bucketMillis[i - 1]) throw new IllegalArgumentException("levels must get coarser");
+            levels[i] = new Level(bucketMillis[i], capacity[i]);
+        }
+    }
+
+    /** Adds a reading taken at {@code timeMillis}; NaN is ignored. */
+    public synchronized void add(long timeMillis, float value) {
+        if (Float.isNaN(value)) return;
+        boolean changed = false;
+        for (Level level : levels) changed |= level.add(timeMillis, value);
+        if (timeMillis >= lastTime || Float.isNaN(last)) {
+            last = value;
+            lastTime = timeMillis;
+        }
+        if (changed) version++;
+    }
+
+    /** Changes whenever a bucket does. */
+    public long getVersion() {
+        return version;
+    }
+
+    /** The most recent reading, or NaN before the first. */
+    public synchronized float getLast() {
+        return last;
+    }
+
+    public synchronized long getLastTime() {
+        return lastTime;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * Fills {@code columns} columns spanning {@code [fromMillis, toMillis)} with the min, average
+     * and max of the readings in each, NaN where there were none. Returns the level read, the
+     * finest that has at most a few buckets per column and still reaches back to
+     * {@code fromMillis} (else the coarsest).
+     */
+    public synchronized int read(long fromMillis, long toMillis, int columns, float[] min, float[] avg, float[] max) {
+        Arrays.fill(min, 0, columns, Float.NaN);
+        Arrays.fill(avg, 0, columns, Float.NaN);
+        Arrays.fill(max, 0, columns, Float.NaN);
+        if (toMillis <= fromMillis || columns <= 0) return -1;
+        double perColumn = (double) (toMillis - fromMillis) / columns;
+        int l = 0;
+        while (l < levels.length - 1) {
+            Level level = levels[l];
+            boolean fits = level.bucketMillis * MAX_BUCKETS_PER_COLUMN >= perColumn;
+            boolean reaches = level.newest != Long.MIN_VALUE
+                    && Math.floorDiv(fromMillis, level.bucketMillis) > level.newest - level.capacity;
+            if (fits && reaches) break;
+            l++;
+        }
+        Level level = levels[l];
+        if (level.newest == Long.MIN_VALUE) return l;
+        long oldest = level.newest - level.capacity + 1;
+        for (int c = 0; c < columns; c++) {
+            long t0 = fromMillis + (long) (c * perColumn), t1 = fromMillis + (long) ((c + 1) * perColumn);
+            // a column narrower than a bucket shows the bucket it lies in
+            long first = Math.max(oldest, Math.floorDiv(t0, level.bucketMillis));
+            long end = Math.min(level.newest, Math.floorDiv(Math.max(t0, t1 - 1), level.bucketMillis));
+            float lo = Float.POSITIVE_INFINITY, hi = Float.NEGATIVE_INFINITY;
+            double sum = 0;
+            int n = 0;
+            for (long b = first; b <= end; b++) {
+                int s = level.slot(b);
+                if (level.count[s] == 0) continue;
+                lo = Math.min(lo, level.min[s]);
+                hi = Math.max(hi, level.max[s]);
+                sum += level.sum[s];
+                n += level.count[s];
+            }
+            if (n == 0) continue;
+            min[c] = lo;
+            avg[c] = (float) (sum / n);
+            max[c] = hi;
+        }
+        return l;
+    }
+}
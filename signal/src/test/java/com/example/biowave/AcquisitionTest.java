@@ -0,0 +1,199 @@
+package com.example.biowave;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AcquisitionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Acquisition acquisition = new Acquisition(2, 4);
+
+    /** A source the test drives by hand. */
+    private static final class ManualSource implements SignalSource {
+        Listener listener;
+
+        @Override
+        public void start(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void stop() {
+            listener = null;
+        }
+
+        @Override
+        public boolean isRunning() {
+            return listener != null;
+        }
+    }
+
+    /** Stands in for one activity instance: attaches, then drains the display feed. */
+    private static final class Screen implements Acquisition.Observer {
+        final List<String> statuses = new ArrayList<>();
+        int disconnects;
+        long drained;
+
+        @Override
+        public synchronized void onStatus(Acquisition.Device device, String status) {
+            statuses.add(status);
+        }
+
+        @Override
+        public synchronized void onDisconnected(Acquisition.Device device) {
+            disconnects++;
+        }
+
+        void drain(Acquisition.Device device) {
+            drained += device.getRingBuffer().drain((ecg, ppg, temp, spo2) -> { });
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        acquisition.close(5000);
+    }
+
+    private static List<byte[]> notifications(int seconds) {
+        SyntheticSignal signal = new SyntheticSignal(3);
+        signal.setBinary(true);
+        List<byte[]> out = new ArrayList<>();
+        // 125 notifications per second at 250 Hz
+        for (int i = 0; i < seconds * 125; i++) out.add(signal.nextNotification());
+        return out;
+    }
+
+    private static long frameCount(List<byte[]> notifications) {
+        long[] frames = new long[1];
+        StreamDecoder decoder = new StreamDecoder(new StreamDecoder.Listener() {
+            @Override
+            public void onFrame(float ecg, float ppg, float temp, float spo2) {
+                frames[0]++;
+            }
+
+            @Override
+            public void onParseError() {
+            }
+
+            @Override
+            public void onSequenceGap(int lostFrames, int lostSamples) {
+            }
+        });
+        for (byte[] data : notifications) decoder.feed(data);
+        return frames[0];
+    }
+
+    private static void await(Acquisition.Device device) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        device.execute(done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void feed(ManualSource source, List<byte[]> data, int from, int to) {
+        for (int i = from; i < to; i++) source.listener.onData(data.get(i));
+    }
+
+    @Test
+    public void noSamplesAreLostWhileTheUiIsRecreated() throws InterruptedException, IOException {
+        ManualSource source = new ManualSource();
+        Acquisition.Device device = acquisition.addDevice("ECG", source, 1 << 16, 8192);
+        File recorder = folder.newFile();
+        device.execute(() -> {
+            try {
+                device.getPipeline().openRecorder(recorder);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        acquisition.start();
+        List<byte[]> data = notifications(20);
+
+        Screen first = new Screen();
+        acquisition.attach(first);
+        feed(source, data, 0, 1000);
+        await(device);
+        first.drain(device);
+        long shownBefore = first.drained;
+        assertTrue(shownBefore > 0);
+
+        // rotation or app switch: the activity goes away, acquisition carries on without a display
+        acquisition.detach(first);
+        feed(source, data, 1000, 2000);
+        await(device);
+        assertEquals(0, device.getRingBuffer().size());
+
+        Screen second = new Screen();
+        acquisition.attach(second);
+        feed(source, data, 2000, data.size());
+        await(device);
+        second.drain(device);
+
+        long samples = device.getMetrics().getSampleCount();
+        assertEquals(frameCount(data), samples);
+        assertEquals(0, device.getRingBuffer().getDroppedCount());
+        assertTrue(second.drained > 0);
+        // only what arrived while nobody watched skipped the display
+        assertEquals(samples, shownBefore + second.drained + frameCount(data.subList(1000, 2000)), 1);
+        assertTrue(device.getPipeline().getBeatCount() > 15);
+
+        acquisition.close(5000);
+        FlightRecorder reopened = new FlightRecorder(recorder,
+                Math.round(DevicePipeline.RECORDER_MINUTES * 60 * DevicePipeline.SAMPLE_RATE_HZ));
+        assertEquals(samples, reopened.getRecoveredCount());
+        reopened.close();
+    }
+
+    @Test
+    public void newObserverSeesLatestStatusAndLaterEvents() {
+        ManualSource source = new ManualSource();
+        Acquisition.Device device = acquisition.addDevice("ECG", source, 256, 64);
+        acquisition.start();
+        source.listener.onStatus("Connected");
+
+        Screen screen = new Screen();
+        acquisition.attach(screen);
+        assertEquals("Connected", device.getStatus());
+        source.listener.onStatus("Streaming");
+        source.listener.onDisconnected();
+        assertEquals(List.of("Streaming"), screen.statuses);
+        assertEquals(1, screen.disconnects);
+
+        // a stale observer detaching does not cut off the current one
+        acquisition.detach(new Screen());
+        assertTrue(acquisition.isAttached());
+        acquisition.detach(screen);
+        source.listener.onStatus("Reconnecting");
+        assertEquals(List.of("Streaming"), screen.statuses);
+        assertEquals("Reconnecting", device.getStatus());
+    }
+
+    @Test
+    public void tapSeesEveryNotification() throws InterruptedException {
+        ManualSource source = new ManualSource();
+        Acquisition.Device device = acquisition.addDevice("ECG", source, 256, 64);
+        List<byte[]> tapped = new ArrayList<>();
+        device.setTap(tapped::add);
+        acquisition.start();
+        assertTrue(acquisition.isRunning());
+        List<byte[]> data = notifications(1);
+        feed(source, data, 0, 50);
+        await(device);
+        assertEquals(data.subList(0, 50), tapped);
+
+        acquisition.stop();
+        assertFalse(acquisition.isRunning());
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AlarmEngineTest {
+
+    // ticks per second
+    private static final int RATE = 10;
+
+    private final List<String> events = new ArrayList<>();
+    private AlarmEngine engine;
+
+    private AlarmEngine compile(String rules) {
+        engine = AlarmEngine.compile(rules, RATE, (rule, active) -> events.add((active ? "+" : "-") + engine.getName(rule)));
+        return engine;
+    }
+
+    /** Holds {@code value} on {@code channel} for {@code seconds}, ticking every sample. */
+    private void hold(int channel, float value, float seconds) {
+        for (int i = 0; i < Math.round(seconds * RATE); i++) {
+            engine.update(channel, value);
+            engine.tick();
+        }
+    }
+
+    @Test
+    public void defaultRulesCompile() {
+        compile(AlarmEngine.DEFAULT_RULES);
+        assertEquals(7, engine.getRuleCount());
+        assertEquals(0, engine.getActiveCount());
+        assertEquals(-1, engine.getHighestActive());
+    }
+
+    @Test
+    public void badRulesNameTheirLine() {
+        String[] bad = {"spo2 < 90", "Low: pulse < 90", "Low: spo2 = 90", "Low: spo2 < ninety",
+                "Low: spo2 < 90 for 10", "Low: spo2 < 90 urgent", "Low: spo2 < 90 high now"};
+        for (String rule : bad) {
+            try {
+                compile("# comment\n\n" + rule);
+                fail(rule);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("line 3: "));
+            }
+        }
+    }
+
+    @Test
+    public void aBriefDipDoesNotSustain() {
+        compile("Low SpO2: spo2 < 90 for 10 s hysteresis 2 high");
+        hold(AlarmEngine.SPO2, 97, 5);
+        hold(AlarmEngine.SPO2, 88, 9.9f);
+        hold(AlarmEngine.SPO2, 97, 5);
+        assertTrue(events.isEmpty());
+        // the timer starts over with the next dip and fires after exactly ten seconds
+        hold(AlarmEngine.SPO2, 88, 9.9f);
+        assertTrue(events.isEmpty());
+        hold(AlarmEngine.SPO2, 88, 0.1f);
+        assertEquals(List.of("+Low SpO2"), events);
+        assertTrue(engine.isActive(0));
+        assertEquals(AlarmEngine.HIGH, engine.getPriority(engine.getHighestActive()));
+    }
+
+    @Test
+    public void hysteresisKeepsAHoveringValueFromFlickering() {
+        compile("Low SpO2: spo2 < 90 for 10 s hysteresis 2 high");
+        hold(AlarmEngine.SPO2, 85, 10);
+        assertEquals(1, engine.getActiveCount());
+        // back over the threshold but not the hysteresis: still on
+        for (int i = 0; i < 60; i++) hold(AlarmEngine.SPO2, i % 2 == 0 ? 89.5f : 91.5f, 1);
+        assertEquals(List.of("+Low SpO2"), events);
+        // clear of it, but not for long enough
+        hold(AlarmEngine.SPO2, 93, 9.9f);
+        hold(AlarmEngine.SPO2, 91, 1);
+        assertEquals(1, events.size());
+        assertTrue(engine.isActive(0));
+        hold(AlarmEngine.SPO2, 93, 10);
+        assertEquals(List.of("+Low SpO2", "-Low SpO2"), events);
+        assertEquals(0, engine.getActiveCount());
+    }
+
+    @Test
+    public void unknownValuesNeitherRaiseNorClear() {
+        compile("Tachycardia: hr > 120 for 2 s hysteresis 5 medium");
+        hold(AlarmEngine.HEART_RATE, 130, 1);
+        hold(AlarmEngine.HEART_RATE, Float.NaN, 5);
+        assertTrue(events.isEmpty());
+        hold(AlarmEngine.HEART_RATE, 130, 2);
+        assertEquals(1, events.size());
+        hold(AlarmEngine.HEART_RATE, Float.NaN, 10);
+        assertEquals(1, engine.getActiveCount());
+    }
+
+    @Test
+    public void comparisonsAndInstantRules() {
+        compile("Above: temp > 38 low\nAt least: temp >= 38 medium\nLead off: leadoff >= 1 high");
+        engine.update(AlarmEngine.TEMPERATURE, 38);
+        assertEquals(List.of("+At least"), events);
+        engine.update(AlarmEngine.TEMPERATURE, 38.1f);
+        assertEquals(List.of("+At least", "+Above"), events);
+        engine.update(AlarmEngine.ECG_LEAD_OFF, 1);
+        assertEquals(3, engine.getActiveCount());
+        assertEquals("Lead off", engine.getName(engine.getHighestActive()));
+        // without hysteresis a rule clears once the value is below its threshold
+        engine.update(AlarmEngine.TEMPERATURE, 38);
+        assertEquals(3, engine.getActiveCount());
+        engine.update(AlarmEngine.TEMPERATURE, 37.9f);
+        assertEquals(1, engine.getActiveCount());
+    }
+
+    @Test
+    public void manyRulesOnOneChannelFireTogether() {
+        StringBuilder rules = new StringBuilder();
+        for (int i = 0; i < 200; i++) rules.append("R").append(i).append(": hr > ").append(60 + i % 20).append(" for ").append(1 + i % 3).append(" s\n");
+        compile(rules.toString());
+        hold(AlarmEngine.HEART_RATE, 70, 3);
+        // thresholds 60..69 are exceeded
+        assertEquals(100, engine.getActiveCount());
+        // lost frames count towards the sustain time
+        engine.update(AlarmEngine.HEART_RATE, 50);
+        engine.advance(3 * RATE);
+        assertEquals(0, engine.getActiveCount());
+        assertEquals(200, events.size());
+    }
+
+    /** Feeds {@code seconds} of the synthetic ECG and PPG, or a baseline with noise once stopped. */
+    private static void feed(DevicePipeline pipeline, SyntheticSignal signal, boolean beating, int seconds) {
+        int rate = (int) DevicePipeline.SAMPLE_RATE_HZ;
+        float[] ecg = new float[rate], ppg = new float[rate];
+        Random random = new Random(seconds);
+        for (int s = 0; s < seconds; s++) {
+            signal.nextSamples(ecg, ppg, 0, rate);
+            for (int i = 0; i < rate; i++) {
+                if (beating) pipeline.onFrame(ecg[i], ppg[i], 36.8f, 97);
+                else pipeline.onFrame(0.02f * (float) random.nextGaussian(), 0.01f * (float) random.nextGaussian(), 36.8f, 97);
+            }
+        }
+    }
+
+    @Test
+    public void pipelineAlarmsWhenTheBeatsStop() {
+        DevicePipeline pipeline = new DevicePipeline("ECG", new SampleRingBuffer(256), new PipelineMetrics());
+        pipeline.setDisplayEnabled(false);
+        SyntheticSignal signal = new SyntheticSignal(41);
+        feed(pipeline, signal, true, 30);
+        assertEquals(72, pipeline.getHeartRate(), 5);
+        assertNull(pipeline.getActiveAlarm());
+        // the last heart rate stays, but the rhythm is gone
+        feed(pipeline, signal, false, 6);
+        assertEquals("Asystole", pipeline.getActiveAlarm());
+        assertEquals(AlarmEngine.HIGH, pipeline.getActiveAlarmPriority());
+        feed(pipeline, signal, false, 12);
+        assertEquals(2, pipeline.getActiveAlarmCount());
+
+        // lost frames count towards the time without a beat, rather than starting it over
+        pipeline = new DevicePipeline("ECG", new SampleRingBuffer(256), new PipelineMetrics());
+        pipeline.setDisplayEnabled(false);
+        feed(pipeline, signal, true, 30);
+        feed(pipeline, signal, false, 2);
+        pipeline.onSequenceGap(125, 250);
+        assertNull(pipeline.getActiveAlarm());
+        feed(pipeline, signal, false, 2);
+        assertEquals("Asystole", pipeline.getActiveAlarm());
+
+        // after a reconnect nothing is known about the rhythm yet, so nothing starts
+        pipeline = new DevicePipeline("ECG", new SampleRingBuffer(256), new PipelineMetrics());
+        pipeline.setDisplayEnabled(false);
+        feed(pipeline, signal, true, 30);
+        feed(pipeline, signal, false, 3);
+        pipeline.reset();
+        feed(pipeline, signal, false, 20);
+        assertNull(pipeline.getActiveAlarm());
+    }
+}
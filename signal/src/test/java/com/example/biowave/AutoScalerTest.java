@@ -0,0 +1,165 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AutoScalerTest {
+
+    private static final int WINDOW = 800;
+
+    @Test
+    public void slidingMinMaxMatchesBruteForce() {
+        Random random = new Random(1);
+        int window = 37;
+        SlidingMinMax mm = new SlidingMinMax(window);
+        float[] values = new float[5000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(10) == 0 ? Float.NaN : (float) random.nextGaussian();
+            mm.add(values[i]);
+
+            float max = Float.NEGATIVE_INFINITY, min = Float.POSITIVE_INFINITY;
+            for (int k = Math.max(0, i - window + 1); k <= i; k++) {
+                if (Float.isNaN(values[k])) continue;
+                max = Math.max(max, values[k]);
+                min = Math.min(min, values[k]);
+            }
+            if (max == Float.NEGATIVE_INFINITY) {
+                assertTrue(mm.isEmpty());
+            } else {
+                assertEquals(max, mm.max(), 0f);
+                assertEquals(min, mm.min(), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void ecgTargetMatchesFullScan() {
+        AutoScaler scaler = AutoScaler.ecg(WINDOW, -3f, 3f);
+        checkAgainstScan(scaler, true, 4f);
+    }
+
+    @Test
+    public void ppgTargetMatchesFullScan() {
+        AutoScaler scaler = AutoScaler.ppg(WINDOW, -7000f, 7000f);
+        checkAgainstScan(scaler, false, 6000f);
+    }
+
+    private void checkAgainstScan(AutoScaler scaler, boolean isEcg, float amplitude) {
+        Random random = new Random(7);
+        float[] history = new float[20_000];
+        for (int i = 0; i < history.length; i++) {
+            // slow amplitude drift plus occasional spikes
+            float v = (float) (amplitude * Math.sin(i * 0.03) * (0.3 + 0.7 * Math.abs(Math.sin(i * 0.0005))));
+            if (random.nextInt(500) == 0) v *= 3;
+            history[i] = v;
+            scaler.add(v);
+            if (i % 13 != 0) continue;
+
+            scaler.computeTarget();
+            float[] expected = bruteForce(history, i + 1, isEcg);
+            assertEquals(expected[0], scaler.getTargetLower(), 0f);
+            assertEquals(expected[1], scaler.getTargetUpper(), 0f);
+        }
+    }
+
+    // the per-sample scan adjustYAxis used to do
+    private static float[] bruteForce(float[] values, int count, boolean isEcg) {
+        float maxY = Float.NEGATIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        for (int k = Math.max(0, count - WINDOW); k < count; k++) {
+            if (values[k] > maxY) maxY = values[k];
+            if (values[k] < minY) minY = values[k];
+        }
+        float margin = 0.1f;
+        if (isEcg) {
+            float upper = Math.max(maxY * (1 + margin), 3f);
+            float lower = Math.min(minY * (1 - margin), -3f);
+            return new float[]{lower, upper};
+        }
+        float upper = maxY * (1 + margin);
+        float lower = minY * (1 - margin);
+        if (upper == lower) {
+            upper += 1f;
+            lower -= 1f;
+        }
+        return new float[]{lower, upper};
+    }
+
+    @Test
+    public void emptyWindowUsesDefaults() {
+        AutoScaler scaler = AutoScaler.ppg(WINDOW, -7000f, 7000f);
+        assertTrue(scaler.update());
+        assertEquals(-7000f, scaler.getLower(), 0f);
+        assertEquals(7000f, scaler.getUpper(), 0f);
+    }
+
+    @Test
+    public void flatLineGetsMinimalRange() {
+        AutoScaler scaler = AutoScaler.ppg(WINDOW, -7000f, 7000f);
+        for (int i = 0; i < 10; i++) scaler.add(0f);
+        scaler.update();
+        assertEquals(-1f, scaler.getLower(), 0f);
+        assertEquals(1f, scaler.getUpper(), 0f);
+    }
+
+    @Test
+    public void ecgNeverNarrowerThanDefaults() {
+        AutoScaler scaler = AutoScaler.ecg(WINDOW, -3f, 3f);
+        for (int i = 0; i < 100; i++) scaler.add(0.5f * (float) Math.sin(i));
+        scaler.update();
+        assertEquals(-3f, scaler.getLower(), 0f);
+        assertEquals(3f, scaler.getUpper(), 0f);
+    }
+
+    @Test
+    public void smallFluctuationsDoNotRelayout() {
+        AutoScaler scaler = AutoScaler.ppg(WINDOW, -7000f, 7000f);
+        for (int i = 0; i < WINDOW; i++) scaler.add((float) (1000 * Math.sin(i * 0.05)));
+        assertTrue(scaler.update());
+
+        int relayouts = 0;
+        for (int frame = 0; frame < 200; frame++) {
+            for (int k = 0; k < 4; k++) {
+                int i = WINDOW + frame * 4 + k;
+                scaler.add((float) (990 * Math.sin(i * 0.05)));
+            }
+            if (scaler.update()) relayouts++;
+        }
+        assertEquals(0, relayouts);
+    }
+
+    @Test
+    public void expandsImmediatelyWithHeadroom() {
+        AutoScaler scaler = AutoScaler.ppg(WINDOW, -7000f, 7000f);
+        for (int i = 0; i < 100; i++) scaler.add(i % 2 == 0 ? -100f : 100f);
+        scaler.update();
+        scaler.add(500f);
+        assertTrue(scaler.update());
+        assertTrue(scaler.getUpper() > 500f * 1.1f);
+        assertTrue(scaler.getLower() <= -90f);
+    }
+
+    @Test
+    public void contractsOnlyAfterDelay() {
+        AutoScaler scaler = AutoScaler.ppg(WINDOW, -7000f, 7000f);
+        for (int i = 0; i < WINDOW; i++) scaler.add(i % 2 == 0 ? -5000f : 5000f);
+        scaler.update();
+        float wideUpper = scaler.getUpper();
+
+        // signal shrinks; nothing may happen until the wide samples aged out of the window
+        // and the narrow target then persisted for half a window
+        int frame = 0, contractedAt = -1;
+        while (contractedAt < 0 && frame < 1000) {
+            for (int k = 0; k < 4; k++) scaler.add(k % 2 == 0 ? -100f : 100f);
+            if (scaler.update()) contractedAt = frame;
+            else assertEquals(wideUpper, scaler.getUpper(), 0f);
+            frame++;
+        }
+        // the target turns narrow in frame WINDOW / 4 - 1, then needs WINDOW / 2 more samples
+        int narrowFrom = WINDOW / 4 - 1;
+        assertEquals(narrowFrom + WINDOW / 2 / 4 - 1, contractedAt);
+        assertEquals(110f, scaler.getUpper(), 1e-3f);
+    }
+}
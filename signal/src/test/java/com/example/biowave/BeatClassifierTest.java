@@ -0,0 +1,155 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BeatClassifierTest {
+
+    private static final int RATE = 250;
+
+    /**
+     * Synthetic ECG through the monitor filters and the QRS detector, with every label checked
+     * against the type of the beat the generator made there.
+     */
+    private static final class Session implements BeatClassifier.Listener {
+        final SyntheticSignal signal;
+        final BeatClassifier classifier = new BeatClassifier(RATE, this);
+        final QrsDetector detector = new QrsDetector(RATE, classifier::addBeat);
+        final FilterChain filter = FilterChain.ecg(RATE, FilterChain.BANDWIDTH_MONITOR, FilterChain.MAINS_50HZ);
+        final float[] ecg = new float[RATE], ppg = new float[RATE];
+        // generated type by label
+        final int[][] confusion = new int[3][4];
+        final List<Long> reported = new ArrayList<>();
+        int seconds, irregularSeconds;
+
+        Session(long seed) {
+            signal = new SyntheticSignal(seed);
+        }
+
+        void run(int count) {
+            for (int s = 0; s < count; s++) {
+                signal.nextSamples(ecg, ppg, 0, RATE);
+                filter.process(ecg, 0, RATE);
+                for (int i = 0; i < RATE; i++) {
+                    classifier.process(ecg[i]);
+                    detector.process(ecg[i]);
+                }
+                // the rhythm window needs half a minute
+                if (++seconds > 60 && classifier.isIrregular()) irregularSeconds++;
+            }
+        }
+
+        @Override
+        public void onBeatClassified(long sampleIndex, int label) {
+            reported.add(sampleIndex);
+            for (int n = Math.max(0, signal.getBeatCount() - 8); n < signal.getBeatCount(); n++) {
+                if (Math.abs(signal.getBeatTime(n) * RATE - sampleIndex) < 15) {
+                    confusion[signal.getBeatType(n)][label]++;
+                    return;
+                }
+            }
+            fail("no beat at " + sampleIndex);
+        }
+
+        int count(int type, int label) {
+            return confusion[type][label];
+        }
+
+        int total(int type) {
+            int sum = 0;
+            for (int n : confusion[type]) sum += n;
+            return sum;
+        }
+    }
+
+    @Test
+    public void sinusBeatsAreNormal() {
+        Session session = new Session(31);
+        session.run(180);
+        int normal = session.total(SyntheticSignal.BEAT_NORMAL);
+        assertTrue(normal > 200);
+        // only the learning beats are unknown
+        assertTrue(session.count(SyntheticSignal.BEAT_NORMAL, BeatClassifier.UNKNOWN) <= 9);
+        assertEquals(0, session.count(SyntheticSignal.BEAT_NORMAL, BeatClassifier.PVC));
+        assertEquals(0, session.count(SyntheticSignal.BEAT_NORMAL, BeatClassifier.PAC));
+        assertEquals(1, session.classifier.getTemplateCount());
+        assertEquals(0, session.irregularSeconds);
+        assertEquals(0.03f, session.classifier.getIrregularity(), 0.03f);
+    }
+
+    @Test
+    public void prematureVentricularBeatsAreFound() {
+        Session session = new Session(32);
+        session.signal.setEctopy(0.1f, 0);
+        session.run(240);
+        int pvcs = session.total(SyntheticSignal.BEAT_PVC);
+        assertTrue(pvcs > 15);
+        assertTrue(session.count(SyntheticSignal.BEAT_PVC, BeatClassifier.PVC) >= 0.9 * pvcs);
+        assertEquals(0, session.count(SyntheticSignal.BEAT_NORMAL, BeatClassifier.PVC));
+        assertEquals(0, session.count(SyntheticSignal.BEAT_NORMAL, BeatClassifier.PAC));
+        // PVCs and their pauses are no irregular rhythm
+        assertEquals(0, session.irregularSeconds);
+    }
+
+    @Test
+    public void prematureAtrialBeatsAreFound() {
+        Session session = new Session(33);
+        session.signal.setEctopy(0, 0.15f);
+        session.run(240);
+        int pacs = session.total(SyntheticSignal.BEAT_PAC);
+        assertTrue(pacs > 20);
+        // same QRS as a sinus beat: only the timing tells
+        assertTrue(session.count(SyntheticSignal.BEAT_PAC, BeatClassifier.PAC) >= 0.85 * pacs);
+        assertEquals(0, session.count(SyntheticSignal.BEAT_PAC, BeatClassifier.PVC));
+        assertTrue(session.count(SyntheticSignal.BEAT_NORMAL, BeatClassifier.PAC) <= 2);
+        assertEquals(0, session.irregularSeconds);
+    }
+
+    @Test
+    public void atrialFibrillationIsIrregular() {
+        for (long seed = 34; seed < 37; seed++) {
+            Session session = new Session(seed);
+            session.signal.setAtrialFibrillation(true);
+            // ventricular ectopy on top must not hide it
+            if (seed == 36) session.signal.setEctopy(0.1f, 0);
+            session.run(240);
+            assertTrue("seed " + seed, session.irregularSeconds >= 0.9 * (240 - 60));
+            assertTrue(session.classifier.getIrregularity() > 0.1f);
+            assertEquals(0, session.count(SyntheticSignal.BEAT_NORMAL, BeatClassifier.PVC));
+        }
+    }
+
+    @Test
+    public void mostComparisonsAreAbandonedEarly() {
+        Session session = new Session(37);
+        session.signal.setEctopy(0.1f, 0.1f);
+        session.run(120);
+        BeatClassifier classifier = session.classifier;
+        assertTrue(classifier.getTemplateCount() >= 2);
+        assertTrue(classifier.getAbandonedCount() > classifier.getComparisonCount() / 2);
+    }
+
+    @Test
+    public void beatsAreReportedInOrderAndDroppedOnReset() {
+        List<Long> labelled = new ArrayList<>();
+        BeatClassifier classifier = new BeatClassifier(RATE, (sample, label) -> labelled.add(sample));
+        for (int i = 0; i < 2 * RATE; i++) classifier.process(0);
+        // reported late: both are complete already
+        classifier.addBeat(100, 0);
+        classifier.addBeat(300, 200);
+        assertEquals(List.of(100L, 300L), labelled);
+        // not yet complete, then dropped by the reset
+        classifier.addBeat(2 * RATE - 10, 200);
+        assertEquals(2, labelled.size());
+        classifier.reset();
+        for (int i = 0; i < RATE; i++) classifier.process(0);
+        assertEquals(2, labelled.size());
+        // a flat line is no beat of any shape
+        assertEquals(BeatClassifier.UNKNOWN, classifier.getLastLabel());
+        assertEquals(0, classifier.getTemplateCount());
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class DevicePipelineTest {
+
+    private static final int FRAMES = 1000, PER_FRAME = 4;
+
+    /**
+     * Feeds {@value #FRAMES} binary frames of {@value #PER_FRAME} samples, every 20th one lost on
+     * the way, so exactly {@code FRAMES * PER_FRAME} samples should come out with the gaps.
+     */
+    private static void feedWithLoss(DevicePipeline pipeline) {
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+        byte[] out = new byte[BinaryFrame.MAX_FRAME_SIZE];
+        float[] ecg = new float[PER_FRAME], ppg = new float[PER_FRAME];
+        for (int f = 0; f < FRAMES; f++) {
+            for (int i = 0; i < PER_FRAME; i++) {
+                ecg[i] = (float) Math.sin((f * PER_FRAME + i) * 0.05);
+                ppg[i] = 1000 + f;
+            }
+            int n = encoder.encode(ecg, ppg, 0, PER_FRAME, Float.NaN, Float.NaN, out, 0);
+            if (f % 20 != 10) pipeline.onData(Arrays.copyOf(out, n), System.nanoTime());
+        }
+    }
+
+    @Test
+    public void lostFramesKeepTheSampleClock() {
+        DevicePipeline pipeline = new DevicePipeline("ECG", new SampleRingBuffer(1 << 13), new PipelineMetrics());
+        feedWithLoss(pipeline);
+        assertEquals((FRAMES - FRAMES / 20) * PER_FRAME, pipeline.getMetrics().getSampleCount());
+        int[] counts = new int[2];
+        pipeline.getRingBuffer().drain((ecg, ppg, temp, spo2) -> counts[Float.isNaN(ecg) ? 1 : 0]++);
+        assertEquals(FRAMES * PER_FRAME, counts[0] + counts[1]);
+        assertEquals(FRAMES / 20 * PER_FRAME, counts[1]);
+    }
+
+    @Test
+    public void historyKeepsTheSampleClockOverLostFrames() {
+        DevicePipeline pipeline = new DevicePipeline("ECG", new SampleRingBuffer(1 << 13), new PipelineMetrics());
+        MinMaxPyramid ecg = new MinMaxPyramid(4, 1024), ppg = new MinMaxPyramid(4, 1024);
+        pipeline.setHistory(ecg, ppg);
+        feedWithLoss(pipeline);
+        assertEquals(FRAMES * PER_FRAME, ecg.getSampleCount());
+        assertEquals(FRAMES * PER_FRAME, ppg.getSampleCount());
+        // the last lost frame reads as a gap exactly where it was
+        int lost = FRAMES - 10;
+        float[] min = new float[PER_FRAME], max = new float[PER_FRAME];
+        ppg.read(lost * PER_FRAME, (lost + 1) * PER_FRAME, PER_FRAME, min, max);
+        for (float v : min) assertTrue(Float.isNaN(v));
+        ppg.read((lost + 1) * PER_FRAME, (lost + 2) * PER_FRAME, PER_FRAME, min, max);
+        for (float v : min) assertFalse(Float.isNaN(v));
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.biowave;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EdfExporterTest {
+
+    private static final int RATE = 250;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** A minimal EDF+ reader: header, physical samples per signal and all TALs in order. */
+    private static final class Edf {
+        final String version, patient, recording, reserved;
+        final int records;
+        final double recordSeconds;
+        final String[] labels, dimensions, prefiltering;
+        final int[] samplesPerRecord;
+        final double[][] samples;
+        final List<String> stamps = new ArrayList<>();
+        final List<String[]> annotations = new ArrayList<>();
+
+        Edf(File file) throws IOException {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            String header = new String(bytes, 0, 256, StandardCharsets.US_ASCII);
+            version = header.substring(0, 8).trim();
+            patient = header.substring(8, 88).trim();
+            recording = header.substring(88, 168).trim();
+            int headerBytes = Integer.parseInt(header.substring(184, 192).trim());
+            reserved = header.substring(192, 236).trim();
+            records = Integer.parseInt(header.substring(236, 244).trim());
+            recordSeconds = Double.parseDouble(header.substring(244, 252).trim());
+            int ns = Integer.parseInt(header.substring(252, 256).trim());
+            assertEquals(256 * (ns + 1), headerBytes);
+            String signals = new String(bytes, 256, 256 * ns, StandardCharsets.US_ASCII);
+            int[] pos = {0};
+            labels = fields(signals, pos, ns, 16);
+            fields(signals, pos, ns, 80);
+            dimensions = fields(signals, pos, ns, 8);
+            double[] physMin = numbers(fields(signals, pos, ns, 8));
+            double[] physMax = numbers(fields(signals, pos, ns, 8));
+            double[] digMin = numbers(fields(signals, pos, ns, 8));
+            double[] digMax = numbers(fields(signals, pos, ns, 8));
+            prefiltering = fields(signals, pos, ns, 80);
+            samplesPerRecord = new int[ns];
+            String[] spr = fields(signals, pos, ns, 8);
+            for (int s = 0; s < ns; s++) samplesPerRecord[s] = Integer.parseInt(spr[s]);
+
+            int recordBytes = 0;
+            for (int n : samplesPerRecord) recordBytes += 2 * n;
+            assertEquals(headerBytes + (long) records * recordBytes, bytes.length);
+            ByteBuffer data = ByteBuffer.wrap(bytes, headerBytes, bytes.length - headerBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            samples = new double[ns - 1][];
+            for (int s = 0; s < ns - 1; s++) samples[s] = new double[records * samplesPerRecord[s]];
+            for (int r = 0; r < records; r++) {
+                for (int s = 0; s < ns; s++) {
+                    int n = samplesPerRecord[s];
+                    if (!labels[s].equals("EDF Annotations")) {
+                        double gain = (physMax[s] - physMin[s]) / (digMax[s] - digMin[s]);
+                        for (int i = 0; i < n; i++) {
+                            samples[s][r * n + i] = physMin[s] + (data.getShort() - digMin[s]) * gain;
+                        }
+                    } else {
+                        byte[] tal = new byte[2 * n];
+                        data.get(tal);
+                        parseTals(new String(tal, StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        }
+
+        private void parseTals(String s) {
+            boolean first = true;
+            for (String tal : s.split("\u0000")) {
+                if (tal.isEmpty()) continue;
+                String[] parts = tal.split("\u0014", -1);
+                if (first) {
+                    // the record's time-keeping TAL
+                    assertEquals("", parts[1]);
+                    stamps.add(parts[0]);
+                    first = false;
+                }
+                for (int i = 1; i < parts.length; i++) {
+                    if (parts[i].isEmpty()) continue;
+                    String[] onset = parts[0].split("\u0015");
+                    annotations.add(new String[]{onset[0], onset.length > 1 ? onset[1] : "", parts[i]});
+                }
+            }
+        }
+
+        private static String[] fields(String s, int[] pos, int n, int width) {
+            String[] out = new String[n];
+            for (int i = 0; i < n; i++) out[i] = s.substring(pos[0] + i * width, pos[0] + (i + 1) * width).trim();
+            pos[0] += n * width;
+            return out;
+        }
+
+        private static double[] numbers(String[] s) {
+            double[] out = new double[s.length];
+            for (int i = 0; i < s.length; i++) out[i] = Double.parseDouble(s[i]);
+            return out;
+        }
+    }
+
+    private static float ecg(int i) {
+        return (float) (2.5 * Math.sin(i * 0.05));
+    }
+
+    private static float ppg(int i) {
+        return (float) (8000 * Math.cos(i * 0.01));
+    }
+
+    @Test
+    public void roundTripsSignalsAndAnnotations() throws IOException {
+        File file = folder.newFile("session.edf");
+        // 02 Jan 2024 03:04:05 UTC, written in the local time zone
+        EdfExporter export = new EdfExporter(file, "Sensor 1", 1_704_164_645_000L, RATE,
+                FilterChain.describeEcg(RATE, FilterChain.BANDWIDTH_MONITOR, FilterChain.MAINS_50HZ),
+                FilterChain.describePpg(RATE, FilterChain.BANDWIDTH_MONITOR));
+        // 150 s before the gap spans three batches; blocks as the pipeline writes them
+        int before = 150 * RATE, lost = 100, after = 10 * RATE + 125;
+        float[] e = new float[256], p = new float[256], t = new float[256], s = new float[256];
+        for (int i = 0; i < before + after; ) {
+            int n = Math.min(256, (i < before ? before : before + after) - i);
+            for (int j = 0; j < n; j++) {
+                int k = i + j;
+                e[j] = ecg(k);
+                p[j] = ppg(k);
+                // vitals come now and then
+                t[j] = k % 100 == 50 ? 36f + k / 10000f : Float.NaN;
+                s[j] = k % 500 == 10 ? 97f : Float.NaN;
+            }
+            export.write(e, p, t, s, n);
+            i += n;
+            if (i == before) export.gap(lost);
+        }
+        export.annotate(RATE / 2, 0, EdfExporter.BEAT);
+        // late, as the detector reports beats, into an already written record
+        export.annotate(120 * RATE + 25, 0, EdfExporter.BEAT);
+        export.annotate(export.getSampleCount(), 0, "Event");
+        assertEquals(before + lost + after, export.getSampleCount());
+        export.close();
+        assertNull(export.getError());
+
+        Edf edf = new Edf(file);
+        assertEquals("0", edf.version);
+        assertEquals("EDF+C", edf.reserved);
+        assertEquals("X X X X", edf.patient);
+        assertTrue(edf.recording, edf.recording.matches("Startdate 0[12]-JAN-2024 X X BioWave_Sensor_1"));
+        assertEquals(1.0, edf.recordSeconds, 0);
+        // the last half second is padded to a whole record
+        assertEquals(161, edf.records);
+        assertArrayEquals(new String[]{"ECG", "Pleth", "Temp", "SpO2", "EDF Annotations"}, edf.labels);
+        assertEquals("mV", edf.dimensions[0]);
+        assertEquals("HP:0.5Hz LP:40Hz N:50Hz", edf.prefiltering[0]);
+        assertArrayEquals(new int[]{RATE, RATE, 1, 1, EdfExporter.ANNOTATION_BYTES / 2}, edf.samplesPerRecord);
+
+        for (int i = 0; i < before + after; i++) {
+            int k = i < before ? i : i + lost;
+            assertEquals(ecg(i), edf.samples[0][k], 0.0006);
+            assertEquals(ppg(i), edf.samples[1][k], 0.26);
+        }
+        for (int k = before; k < before + lost; k++) assertEquals(0, edf.samples[0][k], 0.0006);
+        // the last reading of each second, held through seconds without one
+        assertEquals(36.015, edf.samples[2][0], 0.006);
+        assertEquals(36.265, edf.samples[2][10], 0.006);
+        assertEquals(97, edf.samples[3][0], 0);
+        assertEquals(97, edf.samples[3][1], 0);
+
+        for (int r = 0; r < edf.records; r++) assertEquals("+" + r, edf.stamps.get(r));
+        assertEquals(4, edf.annotations.size());
+        assertArrayEquals(new String[]{"+0.500", "", "R"}, edf.annotations.get(0));
+        assertArrayEquals(new String[]{"+120.100", "", "R"}, edf.annotations.get(1));
+        assertArrayEquals(new String[]{"+150", "0.400", "Signal gap"}, edf.annotations.get(2));
+        assertArrayEquals(new String[]{"+160.900", "", "Event"}, edf.annotations.get(3));
+    }
+
+    @Test
+    public void annotationsThatDoNotFitMoveToLaterRecords() throws IOException {
+        File file = folder.newFile("busy.edf");
+        EdfExporter export = new EdfExporter(file, "S", 0, RATE, "None", "None");
+        float[] zero = new float[RATE];
+        export.write(zero, zero, zero, zero, RATE);
+        for (int i = 0; i < 40; i++) export.annotate(i, 0, "Event " + i);
+        export.close();
+
+        Edf edf = new Edf(file);
+        assertTrue(edf.records > 1);
+        assertEquals(edf.records, edf.stamps.size());
+        assertEquals(40, edf.annotations.size());
+        for (int i = 0; i < 40; i++) assertEquals("Event " + i, edf.annotations.get(i)[2]);
+    }
+
+    @Test
+    public void pipelineExportsLostSamplesAndOutagesAsGaps() throws IOException {
+        DevicePipeline pipeline = new DevicePipeline("ECG", new SampleRingBuffer(256), new PipelineMetrics());
+        pipeline.setDisplayEnabled(false);
+        File file = folder.newFile("outage.edf");
+        // the session started a minute ago: what its 20 s of samples don't fill was an outage
+        pipeline.openExport(file, System.currentTimeMillis() - 60_000);
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+        byte[] out = new byte[BinaryFrame.MAX_FRAME_SIZE];
+        float[] ecg = new float[4], ppg = new float[4];
+        for (int f = 0; f < 2 * 10 * RATE / 4; f++) {
+            for (int i = 0; i < 4; i++) {
+                ecg[i] = ecg(4 * f + i);
+                ppg[i] = ppg(4 * f + i);
+            }
+            int n = encoder.encode(ecg, ppg, 0, 4, Float.NaN, Float.NaN, out, 0);
+            // one four-sample frame lost, then the link drops halfway
+            if (f == 100) continue;
+            if (f == 10 * RATE / 4) pipeline.reset();
+            pipeline.onData(Arrays.copyOf(out, n), System.nanoTime());
+        }
+        pipeline.close();
+
+        Edf edf = new Edf(file);
+        List<Double> gaps = new ArrayList<>();
+        for (String[] a : edf.annotations) if (a[2].equals(EdfExporter.GAP)) gaps.add(Double.parseDouble(a[1]));
+        assertEquals(2, gaps.size());
+        assertEquals(4.0 / RATE, gaps.get(0), 1e-9);
+        assertEquals(50, gaps.get(1), 0.5);
+        // the samples after the outage are where the wall clock puts them
+        assertEquals(70, edf.records, 1);
+    }
+
+    @Test
+    public void emptyExportIsAValidFile() throws IOException {
+        File file = folder.newFile("empty.edf");
+        new EdfExporter(file, "S", 0, RATE, "None", "None").close();
+        Edf edf = new Edf(file);
+        assertEquals(0, edf.records);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FilterChainTest {
+
+    private static final float FS = 250f;
+
+    /** Steady-state amplitude ratio for a sine at {@code freq}, measured after the transient. */
+    private static double measuredGain(FilterStage filter, double freq) {
+        int settle = Math.round(20 * FS), measure = Math.round(4 * FS);
+        double peak = 0;
+        for (int i = 0; i < settle + measure; i++) {
+            float y = filter.process((float) Math.sin(2 * Math.PI * freq * i / FS));
+            if (i >= settle) peak = Math.max(peak, Math.abs(y));
+        }
+        return peak;
+    }
+
+    private static double db(double gain) {
+        return 20 * Math.log10(gain);
+    }
+
+    @Test
+    public void biquadResponseMatchesDesign() {
+        assertEquals(-3.01, db(Biquad.lowPass(FS, 40, 0.7071).gain(FS, 40)), 0.05);
+        assertEquals(-3.01, db(Biquad.highPass(FS, 0.5, 0.7071).gain(FS, 0.5)), 0.05);
+        assertEquals(0, db(Biquad.bandPass(FS, 10, 1).gain(FS, 10)), 0.01);
+        assertTrue(Biquad.notch(FS, 50, 30).gain(FS, 50) < 1e-6);
+
+        Biquad lp = Biquad.lowPass(FS, 20, 0.7071);
+        for (double f : new double[]{1, 10, 20, 40, 80}) {
+            lp.reset();
+            assertEquals(lp.gain(FS, f), measuredGain(lp, f), 0.01);
+        }
+    }
+
+    @Test
+    public void monitorEcgRejectsWanderHumAndNoise() {
+        FilterChain chain = FilterChain.ecg(FS, FilterChain.BANDWIDTH_MONITOR, FilterChain.MAINS_50HZ);
+        assertEquals(0, db(chain.gain(FS, 10)), 0.5);
+        assertTrue(db(chain.gain(FS, 0.05)) < -30);
+        assertTrue(db(chain.gain(FS, 50)) < -60);
+        assertTrue(db(chain.gain(FS, 100)) < -30);
+
+        for (double f : new double[]{0.1, 5, 50}) {
+            chain.reset();
+            assertEquals(chain.gain(FS, f), measuredGain(chain, f), 0.01);
+        }
+    }
+
+    @Test
+    public void diagnosticEcgKeepsLowAndHighFrequencies() {
+        FilterChain chain = FilterChain.ecg(FS, FilterChain.BANDWIDTH_DIAGNOSTIC, FilterChain.MAINS_60HZ);
+        for (double f : new double[]{0.2, 1, 10, 40, 80}) {
+            assertEquals("at " + f + " Hz", 0, db(chain.gain(FS, f)), 1);
+        }
+        assertTrue(db(chain.gain(FS, 60)) < -60);
+        // the 50 Hz notch is not part of a 60 Hz chain
+        assertEquals(0, db(chain.gain(FS, 50)), 1);
+    }
+
+    @Test
+    public void highPassRemovesOffset() {
+        FilterChain chain = FilterChain.ecg(FS, FilterChain.BANDWIDTH_MONITOR, FilterChain.MAINS_50HZ);
+        float y = 0;
+        for (int i = 0; i < 30 * FS; i++) y = chain.process(1.5f);
+        assertEquals(0, y, 1e-3);
+    }
+
+    @Test
+    public void blockProcessingMatchesPerSample() {
+        Random random = new Random(1);
+        float[] input = new float[5000];
+        for (int i = 0; i < input.length; i++) input[i] = (float) random.nextGaussian() + 2;
+
+        FilterChain[] perSample = {FilterChain.ecg(FS, FilterChain.BANDWIDTH_MONITOR, 50),
+                FilterChain.ppg(FS, FilterChain.BANDWIDTH_MONITOR), FilterChain.ppg(FS, FilterChain.BANDWIDTH_DIAGNOSTIC)};
+        FilterChain[] block = {FilterChain.ecg(FS, FilterChain.BANDWIDTH_MONITOR, 50),
+                FilterChain.ppg(FS, FilterChain.BANDWIDTH_MONITOR), FilterChain.ppg(FS, FilterChain.BANDWIDTH_DIAGNOSTIC)};
+        for (int c = 0; c < perSample.length; c++) {
+            float[] data = input.clone();
+            // uneven block sizes, like notifications of varying length
+            for (int off = 0; off < data.length; ) {
+                int n = Math.min(1 + random.nextInt(64), data.length - off);
+                block[c].process(data, off, n);
+                off += n;
+            }
+            for (int i = 0; i < input.length; i++) {
+                assertEquals(perSample[c].process(input[i]), data[i], 0f);
+            }
+        }
+    }
+
+    @Test
+    public void movingAverageMatchesDirectMean() {
+        Random random = new Random(2);
+        int length = 7;
+        MovingAverage average = new MovingAverage(length);
+        float[] x = new float[1000];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = 1000 + (float) random.nextGaussian();
+            double sum = 0;
+            int n = 0;
+            for (int k = Math.max(0, i - length + 1); k <= i; k++, n++) sum += x[k];
+            assertEquals(sum / n, average.process(x[i]), 1e-3);
+        }
+    }
+
+    @Test
+    public void medianRemovesSpikes() {
+        Random random = new Random(3);
+        int length = 5;
+        MedianFilter median = new MedianFilter(length);
+        float[] x = new float[2000];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = random.nextInt(4) == 0 ? random.nextInt(10) : (float) random.nextGaussian();
+            float[] window = java.util.Arrays.copyOfRange(x, Math.max(0, i - length + 1), i + 1);
+            java.util.Arrays.sort(window);
+            assertEquals(window[window.length / 2], median.process(x[i]), 0f);
+        }
+
+        median.reset();
+        float[] signal = {1, 1, 1, 50, 1, 1, 1, 1};
+        float y = 0;
+        for (float v : signal) y = Math.max(y, median.process(v));
+        assertEquals(1, y, 0f);
+    }
+}
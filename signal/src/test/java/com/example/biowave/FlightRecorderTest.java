@@ -0,0 +1,212 @@
+package com.example.biowave;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FlightRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void append(FlightRecorder recorder, long i) {
+        recorder.append(1_000_000 + i * 4, i * 0.001f, -i, 36.5f, i % 100 == 0 ? 97 : Float.NaN);
+    }
+
+    private static List<Long> readAll(FlightRecorder recorder) {
+        List<Long> indices = new ArrayList<>();
+        recorder.read(0, Integer.MAX_VALUE, (index, time, ecg, ppg, temp, spo2) -> {
+            assertEquals(1_000_000 + index * 4, time);
+            assertEquals(index * 0.001f, ecg, 0f);
+            assertEquals(-index, ppg, 0f);
+            assertEquals(36.5f, temp, 0f);
+            if (index % 100 == 0) assertEquals(97, spo2, 0f);
+            else assertTrue(Float.isNaN(spo2));
+            indices.add(index);
+        });
+        return indices;
+    }
+
+    private static void assertContiguous(List<Long> indices, long first, long next) {
+        assertEquals(next - first, indices.size());
+        for (int i = 0; i < indices.size(); i++) assertEquals(first + i, (long) indices.get(i));
+    }
+
+    @Test
+    public void recoversAfterReopen() throws IOException {
+        File file = folder.newFile();
+        FlightRecorder recorder = new FlightRecorder(file, 1000);
+        for (long i = 0; i < 300; i++) append(recorder, i);
+        recorder.commit();
+        // no close(): the process dies here
+        FlightRecorder reopened = new FlightRecorder(file, 1000);
+        assertEquals(300, reopened.getRecoveredCount());
+        assertContiguous(readAll(reopened), 0, 300);
+
+        // recording continues where it stopped
+        for (long i = 300; i < 400; i++) append(reopened, i);
+        assertContiguous(readAll(reopened), 0, 400);
+        reopened.close();
+    }
+
+    @Test
+    public void keepsTheLastCapacitySamplesAcrossWraparound() throws IOException {
+        File file = folder.newFile();
+        int capacity = 1000;
+        FlightRecorder recorder = new FlightRecorder(file, capacity);
+        for (long i = 0; i < 2500; i++) {
+            append(recorder, i);
+            if (i % 7 == 0) recorder.commit();
+        }
+        recorder.close();
+
+        FlightRecorder reopened = new FlightRecorder(file, capacity);
+        assertEquals(2500, reopened.getNextIndex());
+        assertEquals(1500, reopened.getFirstIndex());
+        assertContiguous(readAll(reopened), 1500, 2500);
+
+        List<Long> tail = new ArrayList<>();
+        assertEquals(10, reopened.read(2400, 10, (index, time, ecg, ppg, temp, spo2) -> tail.add(index)));
+        assertContiguous(tail, 2400, 2410);
+    }
+
+    @Test
+    public void keepsUncommittedButIntactRecords() throws IOException {
+        File file = folder.newFile();
+        FlightRecorder recorder = new FlightRecorder(file, 1000);
+        for (long i = 0; i < 100; i++) append(recorder, i);
+        recorder.commit();
+        for (long i = 100; i < 150; i++) append(recorder, i);
+
+        FlightRecorder reopened = new FlightRecorder(file, 1000);
+        assertContiguous(readAll(reopened), 0, 150);
+    }
+
+    @Test
+    public void stopsAtTornRecord() throws IOException {
+        File file = folder.newFile();
+        FlightRecorder recorder = new FlightRecorder(file, 1000);
+        for (long i = 0; i < 1200; i++) append(recorder, i);
+        recorder.commit();
+        for (long i = 1200; i < 1250; i++) append(recorder, i);
+        recorder.close();
+
+        // power loss in the middle of record 1230: only half of it reached the disk
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long p = FlightRecorder.HEADER_SIZE + (1230 % 1000) * FlightRecorder.RECORD_SIZE + 20;
+            raf.seek(p);
+            raf.write(new byte[FlightRecorder.RECORD_SIZE - 20]);
+            // and the header still says 1200
+            raf.seek(16);
+            raf.write(new byte[32]);
+        }
+        File copy = folder.newFile();
+        java.nio.file.Files.copy(file.toPath(), copy.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+
+        FlightRecorder reopened = new FlightRecorder(file, 1000);
+        // both commit slots lost: recovery starts from index 0, which was overwritten long ago
+        assertEquals(0, reopened.getNextIndex());
+        reopened.close();
+
+        // with one intact commit slot the torn record ends recovery
+        try (RandomAccessFile raf = new RandomAccessFile(copy, "rw")) {
+            raf.seek(16);
+            byte[] slot = new byte[16];
+            java.nio.ByteBuffer.wrap(slot).order(java.nio.ByteOrder.LITTLE_ENDIAN)
+                    .putLong(1200).putInt(FlightRecorder.check(1200, ~1200L, 0x52465742, 0, 0, 0));
+            raf.write(slot);
+        }
+        FlightRecorder recovered = new FlightRecorder(copy, 1000);
+        assertEquals(1230, recovered.getNextIndex());
+        // 230..1249 had already been overwritten by the uncommitted 1230..1249
+        assertContiguous(readAll(recovered), 250, 1230);
+    }
+
+    @Test
+    public void evenSizedCommitsSurviveATornSlot() throws IOException {
+        File file = folder.newFile();
+        FlightRecorder recorder = new FlightRecorder(file, 100);
+        // two samples per notification, one commit each
+        for (long i = 0; i < 300; i += 2) {
+            append(recorder, i);
+            append(recorder, i + 1);
+            recorder.commit();
+        }
+        recorder.close();
+        for (int slot : new int[]{16, 32}) {
+            File copy = folder.newFile();
+            java.nio.file.Files.copy(file.toPath(), copy.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            // a torn write of one slot's check
+            try (RandomAccessFile raf = new RandomAccessFile(copy, "rw")) {
+                raf.seek(slot + 8);
+                raf.writeInt(0);
+            }
+            FlightRecorder reopened = new FlightRecorder(copy, 100);
+            assertEquals(100, reopened.getRecoveredCount());
+            assertContiguous(readAll(reopened), 200, 300);
+            // and the next commits keep alternating from there
+            for (long i = 300; i < 310; i += 2) {
+                append(reopened, i);
+                append(reopened, i + 1);
+                reopened.commit();
+            }
+            reopened.close();
+            FlightRecorder again = new FlightRecorder(copy, 100);
+            assertContiguous(readAll(again), 210, 310);
+            again.close();
+        }
+    }
+
+    @Test
+    public void skipsCorruptRecordInsideTheRing() throws IOException {
+        File file = folder.newFile();
+        FlightRecorder recorder = new FlightRecorder(file, 100);
+        for (long i = 0; i < 80; i++) append(recorder, i);
+        recorder.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(FlightRecorder.HEADER_SIZE + 40L * FlightRecorder.RECORD_SIZE + 16);
+            raf.writeInt(12345);
+        }
+        List<Long> indices = readAll(new FlightRecorder(file, 100));
+        assertEquals(79, indices.size());
+        assertFalse(indices.contains(40L));
+    }
+
+    @Test
+    public void ignoresStaleDataFromAnotherLayout() throws IOException {
+        File file = folder.newFile();
+        FlightRecorder recorder = new FlightRecorder(file, 100);
+        for (long i = 0; i < 50; i++) append(recorder, i);
+        recorder.close();
+        FlightRecorder resized = new FlightRecorder(file, 200);
+        assertEquals(0, resized.getRecoveredCount());
+        assertTrue(readAll(resized).isEmpty());
+    }
+
+    @Test
+    public void sustainsHighWriteRate() throws IOException {
+        File file = folder.newFile();
+        int capacity = 150_000; // 10 minutes at 250 Hz
+        FlightRecorder recorder = new FlightRecorder(file, capacity);
+        int samples = 3_000_000;
+        long t0 = System.nanoTime();
+        for (long i = 0; i < samples; i++) {
+            append(recorder, i);
+            if (i % 4 == 3) recorder.commit(); // a commit per notification
+        }
+        long elapsed = System.nanoTime() - t0;
+        recorder.close();
+        double perSecond = samples * 1e9 / elapsed;
+        // generous bound, three orders of magnitude above the real 250 Hz
+        assertTrue("only " + perSecond + " samples/s", perSecond > 250_000);
+        assertContiguous(readAll(new FlightRecorder(file, capacity)), samples - capacity, samples);
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.biowave;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameParserTest {
+
+    private final List<float[]> frames = new ArrayList<>();
+    private int errors;
+    private FrameParser parser;
+
+    @Before
+    public void setUp() {
+        frames.clear();
+        errors = 0;
+        parser = new FrameParser(new FrameParser.Listener() {
+            @Override
+            public void onFrame(float ecg, float ppg, float temp, float spo2) {
+                frames.add(new float[]{ecg, ppg, temp, spo2});
+            }
+
+            @Override
+            public void onParseError() {
+                errors++;
+            }
+        });
+    }
+
+    private void feed(String s) {
+        parser.feed(s.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void parsesFullFrame() {
+        feed("E0.245;P0.370;T36.8;S98\n");
+        assertEquals(1, frames.size());
+        assertArrayEquals(new float[]{0.245f, 0.370f, 36.8f, 98f}, frames.get(0), 0f);
+        assertEquals(0, errors);
+    }
+
+    @Test
+    public void missingVitalsAreNaN() {
+        feed("E-1.5;P6543\n");
+        assertEquals(1, frames.size());
+        assertEquals(-1.5f, frames.get(0)[0], 0f);
+        assertEquals(6543f, frames.get(0)[1], 0f);
+        assertTrue(Float.isNaN(frames.get(0)[2]));
+        assertTrue(Float.isNaN(frames.get(0)[3]));
+    }
+
+    @Test
+    public void reassemblesFramesSplitAcrossNotifications() {
+        feed("E0.1;P2");
+        feed("00;T3");
+        feed("6.5\r\nE0.2;");
+        assertEquals(1, frames.size());
+        feed("P300\n");
+        assertEquals(2, frames.size());
+        assertArrayEquals(new float[]{0.1f, 200f, 36.5f}, slice(frames.get(0), 3), 0f);
+        assertEquals(300f, frames.get(1)[1], 0f);
+    }
+
+    @Test
+    public void stripsControlCharactersAndWhitespace() {
+        feed("\u0000  E0.5;P1.5 \r\n");
+        assertEquals(1, frames.size());
+        assertEquals(0.5f, frames.get(0)[0], 0f);
+        assertEquals(1.5f, frames.get(0)[1], 0f);
+    }
+
+    @Test
+    public void acceptsReadmeColonSpelling() {
+        feed("E:0.25;P:-12;S:97\n");
+        assertEquals(1, frames.size());
+        assertArrayEquals(new float[]{0.25f, -12f}, slice(frames.get(0), 2), 0f);
+        assertEquals(97f, frames.get(0)[3], 0f);
+    }
+
+    @Test
+    public void ignoresNonFrameLines() {
+        feed("OK+CONN\n\n\nE1;P2\n");
+        assertEquals(1, frames.size());
+        assertEquals(0, errors);
+    }
+
+    @Test
+    public void recoversFromMalformedLines() {
+        feed("E0.1;Pabc\nE0.2\nE0.3;P1.2.3\nE-;P1\nE0.4;P4\n");
+        assertEquals(4, errors);
+        assertEquals(1, frames.size());
+        assertEquals(0.4f, frames.get(0)[0], 0f);
+    }
+
+    @Test
+    public void recoversFromTruncatedFrameMergedIntoNext() {
+        // a lost notification glues the head of one frame onto the next one
+        feed("E0.1;P0.E0.2;P0.5;T36.6\nE0.3;P0.6\n");
+        assertEquals(1, errors);
+        assertEquals(1, frames.size());
+        assertEquals(0.3f, frames.get(0)[0], 0f);
+    }
+
+    @Test
+    public void dropsOverlongLines() {
+        StringBuilder sb = new StringBuilder("E");
+        for (int i = 0; i < FrameParser.MAX_LINE_LENGTH * 2; i++) sb.append('1');
+        sb.append(";P1\nE2;P3\n");
+        feed(sb.toString());
+        assertEquals(1, errors);
+        assertEquals(1, frames.size());
+        assertEquals(2f, frames.get(0)[0], 0f);
+    }
+
+    @Test
+    public void resetDiscardsPartialLine() {
+        feed("E0.1;P");
+        parser.reset();
+        feed("E0.2;P0.3\n");
+        assertEquals(1, frames.size());
+        assertEquals(0.2f, frames.get(0)[0], 0f);
+        assertEquals(0, errors);
+    }
+
+    @Test
+    public void matchesFloatParseFloat() {
+        String[] values = {"0", "-0.0", "3.14159", "-2.718281828", "123456.789", "0.000123",
+                "7000", "-6999.5", "1.00000011920928955078125", "99999999999999999999", ".5", "5."};
+        for (String v : values) {
+            frames.clear();
+            feed("E" + v + ";P" + v + "\n");
+            assertEquals(v, 1, frames.size());
+            float expected = Float.parseFloat(v);
+            assertEquals(v, expected, frames.get(0)[0], Math.ulp(expected));
+        }
+    }
+
+    @Test
+    public void countsFramesAndErrors() {
+        feed("E1;P1\nE1\nE2;P2\n");
+        assertEquals(2, parser.getFrameCount());
+        assertEquals(1, parser.getErrorCount());
+    }
+
+    private static float[] slice(float[] a, int n) {
+        float[] r = new float[n];
+        System.arraycopy(a, 0, r, 0, n);
+        return r;
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class JitterBufferTest {
+
+    private static final float NOMINAL = 250f;
+    private static final long FRAME = 16_666_667L;
+    private static final long MS = 1_000_000L;
+
+    /**
+     * Sensor at {@code rate} Hz sending 5-sample notifications, delivered in bursts at BLE
+     * connection events every {@code intervalMs} with up to {@code jitterMs} extra delay; frames
+     * at 60 Hz drain the ring into the jitter buffer and release. Notifications for which
+     * {@code lost} returns true never arrive; {@code markLoss} makes the producer insert NaN
+     * placeholders as sequence numbers would.
+     */
+    private static final class Sim {
+        final JitterBuffer buffer = new JitterBuffer(NOMINAL, 4096);
+        final SampleRingBuffer ring = new SampleRingBuffer(4096);
+        final List<Integer> releasedPerFrame = new ArrayList<>();
+        final List<Float> released = new ArrayList<>();
+        final Random random = new Random(11);
+        double rate = NOMINAL;
+        long intervalMs = 30, jitterMs = 10;
+        boolean markLoss = true;
+        java.util.function.LongPredicate lost = n -> false;
+
+        long produced = 0;          // samples the sensor generated
+        long notification = 0;
+        long pending = 0;           // notifications generated but not yet delivered
+        long nextEvent = 0, nextFrame = 0;
+
+        void run(double seconds) {
+            long end = (long) (seconds * 1e9) + nextFrame;
+            while (nextFrame < end) {
+                long eventTime = nextEvent + (long) (random.nextDouble() * jitterMs * MS);
+                if (eventTime <= nextFrame) {
+                    deliver(eventTime);
+                    nextEvent += intervalMs * MS;
+                } else {
+                    frame(nextFrame);
+                    nextFrame += FRAME;
+                }
+            }
+        }
+
+        private void deliver(long now) {
+            // everything the sensor finished by the connection event goes out in that event
+            long ready = (long) Math.floor(nextEvent / 1e9 * rate) / 5;
+            for (; notification < ready; notification++) {
+                if (lost.test(notification)) {
+                    if (markLoss) for (int i = 0; i < 5; i++) ring.offer(Float.NaN, Float.NaN, Float.NaN, Float.NaN, now);
+                } else {
+                    for (int i = 0; i < 5; i++) ring.offer(produced + i, 0, 0, 0, now);
+                }
+                produced += 5;
+            }
+        }
+
+        private void frame(long now) {
+            ring.drainTimed(buffer);
+            int n = buffer.release(now, (e, p, t, s) -> released.add(e));
+            releasedPerFrame.add(n);
+        }
+
+        int frames(double fromSeconds) {
+            return (int) (fromSeconds * 1e9 / FRAME);
+        }
+    }
+
+    @Test
+    public void tracksSensorRateAndPacesSteadily() {
+        Sim sim = new Sim();
+        sim.rate = 252.5; // 1% fast crystal
+        sim.run(120);
+
+        assertEquals(252.5, sim.buffer.getSampleRate(), 0.1);
+        long underrunsAfterWarmup = sim.buffer.getUnderrunCount();
+        sim.releasedPerFrame.clear();
+        sim.run(60);
+        // 252.5 / 60 = 4.2 samples per frame: only 4s and 5s, never a burst or a stall
+        for (int n : sim.releasedPerFrame) assertTrue("released " + n, n == 4 || n == 5);
+        assertEquals(underrunsAfterWarmup, sim.buffer.getUnderrunCount());
+        // connection interval plus jitter plus batch, not much more
+        assertTrue("latency " + sim.buffer.getLatency() / MS + " ms", sim.buffer.getLatency() < 60 * MS);
+        assertEquals(0, sim.buffer.getInferredGapCount());
+        assertEquals(0, sim.buffer.getOverflowCount());
+    }
+
+    @Test
+    public void releasesSamplesInOrderWithoutLoss() {
+        Sim sim = new Sim();
+        sim.run(30);
+        for (int i = 0; i < sim.released.size(); i++) assertEquals(i, sim.released.get(i), 0f);
+        // everything but the latency's worth is out
+        assertTrue(sim.produced - sim.released.size() < 0.1 * NOMINAL);
+    }
+
+    @Test
+    public void adaptsLatencyToJitter() {
+        Sim calm = new Sim();
+        calm.intervalMs = 15;
+        calm.jitterMs = 1;
+        calm.run(60);
+        Sim rough = new Sim();
+        rough.intervalMs = 45;
+        rough.jitterMs = 40;
+        rough.run(60);
+        assertTrue(calm.buffer.getLatency() < 30 * MS);
+        assertTrue(rough.buffer.getLatency() > 2 * calm.buffer.getLatency());
+        // after settling neither runs dry
+        long calmUnderruns = calm.buffer.getUnderrunCount(), roughUnderruns = rough.buffer.getUnderrunCount();
+        calm.run(30);
+        rough.run(30);
+        assertEquals(calmUnderruns, calm.buffer.getUnderrunCount());
+        assertEquals(roughUnderruns, rough.buffer.getUnderrunCount());
+    }
+
+    @Test
+    public void markedLossKeepsTimeAxis() {
+        Sim sim = new Sim();
+        sim.lost = n -> n % 50 == 7;
+        sim.run(30);
+        List<Float> out = sim.released;
+        for (int i = 0; i < out.size(); i++) {
+            if ((i / 5) % 50 == 7) assertTrue(Float.isNaN(out.get(i)));
+            else assertEquals(i, out.get(i), 0f);
+        }
+        assertEquals(0, sim.buffer.getInferredGapCount());
+    }
+
+    @Test
+    public void unmarkedOutageBecomesGapOfTheRightLength() {
+        Sim sim = new Sim();
+        sim.markLoss = false;
+        // about two seconds lost 20 s in
+        sim.lost = n -> n >= 1000 && n < 1100;
+        sim.run(40);
+        assertEquals(1, sim.buffer.getInferredGapCount());
+        assertEquals(0, sim.buffer.getRelockCount());
+
+        List<Float> out = sim.released;
+        int gapStart = out.indexOf(Float.NaN);
+        int gapEnd = gapStart;
+        while (Float.isNaN(out.get(gapEnd))) gapEnd++;
+        assertEquals(5000f - 1, out.get(gapStart - 1), 0f);
+        assertEquals(5500f, out.get(gapEnd), 0f);
+        // the gap replaces the 500 missing samples to within a notification or two
+        assertEquals(500, gapEnd - gapStart, 10);
+    }
+
+    @Test
+    public void relocksAfterLongSilence() {
+        Sim sim = new Sim();
+        sim.markLoss = false;
+        sim.lost = n -> n >= 1000 && n < 1000 + 50 * 40; // 40 s
+        sim.run(80);
+        assertEquals(1, sim.buffer.getRelockCount());
+        assertEquals(0, sim.buffer.getInferredGapCount());
+        long underruns = sim.buffer.getUnderrunCount();
+        sim.releasedPerFrame.clear();
+        sim.run(10);
+        for (int n : sim.releasedPerFrame) assertTrue(n == 4 || n == 5);
+        assertEquals(underruns, sim.buffer.getUnderrunCount());
+    }
+
+    @Test
+    public void resetUnlocks() {
+        JitterBuffer buffer = new JitterBuffer(NOMINAL, 64);
+        for (int i = 0; i < 10; i++) buffer.onSample(i, 0, 0, 0, i < 5 ? 100 : 200);
+        assertTrue(buffer.isLocked());
+        buffer.reset();
+        assertFalse(buffer.isLocked());
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.release(1_000_000_000L, (e, p, t, s) -> fail()));
+    }
+}
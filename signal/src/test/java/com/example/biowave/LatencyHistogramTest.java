@@ -0,0 +1,111 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreContiguousAndTight() {
+        assertEquals(0, LatencyHistogram.lowerBound(0));
+        for (int b = 1; b < LatencyHistogram.BUCKET_COUNT; b++) {
+            long lower = LatencyHistogram.lowerBound(b);
+            assertEquals(LatencyHistogram.upperBound(b - 1) + 1, lower);
+            assertEquals(b, LatencyHistogram.bucket(lower));
+            assertEquals(b - 1, LatencyHistogram.bucket(lower - 1));
+            if (b < LatencyHistogram.BUCKET_COUNT - 1) {
+                long upper = LatencyHistogram.upperBound(b);
+                assertTrue("bucket " + b, upper - lower <= lower / LatencyHistogram.SUB_BUCKETS);
+            }
+        }
+        assertEquals(0, LatencyHistogram.bucket(-5));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesStayWithinBucketError() {
+        Random random = new Random(3);
+        LatencyHistogram h = new LatencyHistogram();
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // log-normal around 2 ms, like a frame-to-pixel latency
+            values[i] = (long) (2e6 * Math.exp(random.nextGaussian() * 0.6));
+            h.record(values[i]);
+        }
+        Arrays.sort(values);
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        h.copyTo(counts);
+        assertEquals(values.length, LatencyHistogram.count(counts));
+        for (double q : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            long exact = values[(int) Math.ceil(q * values.length) - 1];
+            long reported = LatencyHistogram.percentile(counts, q);
+            assertTrue(q + ": " + reported + " < " + exact, reported >= exact);
+            assertTrue(q + ": " + reported + " vs " + exact,
+                    reported <= exact + exact / LatencyHistogram.SUB_BUCKETS);
+        }
+        assertEquals(-1, LatencyHistogram.percentile(new long[LatencyHistogram.BUCKET_COUNT], 0.5));
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws InterruptedException {
+        LatencyHistogram h = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 50_000; i++) h.record(random.nextInt(1000));
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) t.join();
+        assertEquals(200_000, h.getCount());
+        h.reset();
+        assertEquals(0, h.getCount());
+    }
+
+    @Test
+    public void reportCoversOnlyTheLastInterval() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics();
+        PipelineMetrics.Report report = new PipelineMetrics.Report();
+        metrics.report(0, report);
+
+        for (int i = 0; i < 125; i++) {
+            metrics.onNotification(20);
+            metrics.onSamples(2);
+            metrics.parseLatency.record(100_000);
+        }
+        metrics.onLostFrames(3);
+        metrics.setQueueDepth(7);
+        metrics.setQueueDepth(2);
+        metrics.report(1_000_000_000L, report);
+        assertEquals(1.0, report.seconds, 1e-9);
+        assertEquals(125, report.notificationsPerSecond, 1e-9);
+        assertEquals(250, report.samplesPerSecond, 1e-9);
+        assertEquals(2500, report.bytesPerSecond, 1e-9);
+        assertEquals(3, report.lostFrames);
+        assertEquals(2, report.queueDepth);
+        assertEquals(7, report.maxQueueDepth);
+        assertTrue(report.parse[0] >= 100_000 && report.parse[2] <= 100_000 * 17 / 16);
+        assertEquals(-1, report.pixel[0]);
+
+        // only slow notifications in the second interval
+        for (int i = 0; i < 10; i++) metrics.parseLatency.record(5_000_000);
+        metrics.report(3_000_000_000L, report);
+        assertEquals(0, report.notificationsPerSecond, 1e-9);
+        assertTrue(report.parse[0] >= 5_000_000);
+        assertEquals(3, report.lostFrames);
+
+        StringWriter out = new StringWriter();
+        report.writeTo(out);
+        metrics.writeHistogramsTo(out);
+        assertTrue(out.toString().contains("lost_frames=3"));
+        assertTrue(out.toString().contains("\nparse "));
+        assertTrue(report.toOverlayText().contains("gap 3"));
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.biowave;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MinMaxPyramidTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static float sample(long i) {
+        // a slow sine with a spike every 1000 samples and a gap every 7919
+        if (i % 7919 < 20) return Float.NaN;
+        return (float) Math.sin(i * 0.001) + (i % 1000 == 500 ? 5f : 0f);
+    }
+
+    private static MinMaxPyramid filled(int levels, int capacity, long samples) {
+        MinMaxPyramid pyramid = new MinMaxPyramid(levels, capacity);
+        for (long i = 0; i < samples; i++) pyramid.append(sample(i));
+        return pyramid;
+    }
+
+    /** Each column's extremes contain every sample of the column and come from its neighbourhood. */
+    private static void assertColumns(MinMaxPyramid pyramid, long from, long to, int columns) {
+        float[] min = new float[columns], max = new float[columns];
+        pyramid.read(from, to, columns, min, max);
+        double per = (double) (to - from) / columns;
+        for (int c = 0; c < columns; c++) {
+            long a = from + (long) Math.floor(c * per), b = from + (long) Math.floor((c + 1) * per);
+            // what was definitely inside, and what the snapped column may have reached
+            float innerMin = Float.POSITIVE_INFINITY, innerMax = Float.NEGATIVE_INFINITY;
+            float outerMin = Float.POSITIVE_INFINITY, outerMax = Float.NEGATIVE_INFINITY;
+            long slack = (long) Math.ceil(per);
+            for (long i = a - slack; i < b + slack; i++) {
+                if (i < 0) continue;
+                float v = sample(i);
+                if (Float.isNaN(v)) continue;
+                outerMin = Math.min(outerMin, v);
+                outerMax = Math.max(outerMax, v);
+                if (i >= a + slack && i < b - slack) {
+                    innerMin = Math.min(innerMin, v);
+                    innerMax = Math.max(innerMax, v);
+                }
+            }
+            if (innerMin <= innerMax) {
+                assertTrue(min[c] <= innerMin && max[c] >= innerMax);
+            }
+            if (!Float.isNaN(min[c])) assertTrue(min[c] >= outerMin && max[c] <= outerMax);
+        }
+    }
+
+    @Test
+    public void columnsMatchTheSamplesAtEveryZoom() {
+        MinMaxPyramid pyramid = filled(6, 4096, 200_000);
+        assertEquals(200_000, pyramid.getSampleCount());
+        assertColumns(pyramid, 199_000, 200_000, 1000);
+        assertColumns(pyramid, 190_000, 200_000, 800);
+        assertColumns(pyramid, 100_000, 200_000, 1000);
+        assertColumns(pyramid, 0, 200_000, 777);
+    }
+
+    @Test
+    public void spikesSurviveZoomingOut() {
+        MinMaxPyramid pyramid = filled(8, 1024, 1_000_000);
+        float[] min = new float[500], max = new float[500];
+        int level = pyramid.read(0, 1_000_000, 500, min, max);
+        // 1024-sample buckets, the coarsest that fit a column
+        assertEquals(5, level);
+        // every column spans 2000 samples and so contains spikes
+        for (int c = 1; c < 499; c++) assertTrue(max[c] > 4f);
+    }
+
+    @Test
+    public void coarseLevelsReachBackFurtherThanFineOnes() {
+        MinMaxPyramid pyramid = filled(6, 1024, 300_000);
+        assertEquals(0, pyramid.getFirstIndex());
+        float[] min = new float[100], max = new float[100];
+        // the samples themselves are gone
+        pyramid.read(1000, 1100, 100, min, max);
+        for (float v : max) assertTrue(Float.isNaN(v));
+        // ... but zoomed out the start is still there
+        pyramid.read(0, 300_000, 100, min, max);
+        assertFalse(Float.isNaN(max[0]));
+    }
+
+    @Test
+    public void spillKeepsFullResolution() throws IOException {
+        MinMaxPyramid pyramid = new MinMaxPyramid(4, 1024);
+        for (long i = 0; i < 1500; i++) pyramid.append(sample(i));
+        // started late: from the next whole chunk on
+        pyramid.spillTo(folder.getRoot(), "ecg");
+        for (long i = 1500; i < 100_000; i++) pyramid.append(sample(i));
+
+        assertEquals(2048, pyramid.getFirstIndex());
+        float[] min = new float[100], max = new float[100];
+        pyramid.read(1000, 1100, 100, min, max);
+        for (float v : max) assertTrue(Float.isNaN(v));
+        pyramid.read(5000, 5100, 100, min, max);
+        for (int c = 0; c < 100; c++) {
+            assertEquals(sample(5000 + c), min[c], 0f);
+            assertEquals(sample(5000 + c), max[c], 0f);
+        }
+        assertColumns(pyramid, 2048, 20_000, 1000);
+        pyramid.close();
+    }
+
+    @Test
+    public void spilledHistoryReadsWhileAppending() throws Exception {
+        MinMaxPyramid pyramid = new MinMaxPyramid(4, 1024);
+        pyramid.spillTo(folder.getRoot(), "ppg");
+        for (long i = 0; i < 10_000; i++) pyramid.append(sample(i));
+        float[] values = new float[1000];
+        for (int i = 0; i < values.length; i++) values[i] = sample(10_000 + i);
+        Thread appender = new Thread(() -> {
+            for (int n = 0; n < 200; n++) pyramid.append(values, 0, values.length);
+        });
+        appender.start();
+        // full resolution from the file, then the chunks spilled meanwhile
+        float[] min = new float[512], max = new float[512];
+        Random random = new Random(5);
+        while (appender.isAlive()) {
+            long from = random.nextInt(8000);
+            pyramid.read(from, from + 512, 512, min, max);
+            for (int c = 0; c < 512; c++) {
+                assertEquals(sample(from + c), min[c], 0f);
+                assertEquals(sample(from + c), max[c], 0f);
+            }
+        }
+        appender.join();
+        assertEquals(0, pyramid.getFirstIndex());
+        pyramid.close();
+    }
+
+    @Test
+    public void gapsReadAsNaN() {
+        MinMaxPyramid pyramid = new MinMaxPyramid(3, 1024);
+        Random random = new Random(2);
+        for (int i = 0; i < 1000; i++) pyramid.append(i >= 400 && i < 600 ? Float.NaN : random.nextFloat());
+        float[] min = new float[10], max = new float[10];
+        pyramid.read(0, 1000, 10, min, max);
+        assertTrue(Float.isNaN(min[4]) && Float.isNaN(max[5]));
+        assertFalse(Float.isNaN(min[3]) || Float.isNaN(max[6]));
+        // the future is unknown too
+        pyramid.read(900, 1100, 10, min, max);
+        assertFalse(Float.isNaN(max[0]));
+        assertTrue(Float.isNaN(max[9]));
+    }
+
+    @Test
+    public void levelsForSpan() {
+        assertEquals(1, MinMaxPyramid.levelsFor(1000, 1024));
+        assertEquals(2, MinMaxPyramid.levelsFor(4096, 1024));
+        assertEquals(3, MinMaxPyramid.levelsFor(4097, 1024));
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.biowave;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class PipelineExecutorTest {
+
+    private final PipelineExecutor executor = new PipelineExecutor(2, 8);
+
+    @After
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static DevicePipeline pipeline(String name) {
+        return new DevicePipeline(name, new SampleRingBuffer(1 << 16), new PipelineMetrics());
+    }
+
+    /** Notifications of {@code seconds} of binary stream from a sensor seeded with {@code seed}. */
+    private static List<byte[]> notifications(long seed, int seconds) {
+        SyntheticSignal signal = new SyntheticSignal(seed);
+        signal.setBinary(true);
+        List<byte[]> out = new ArrayList<>();
+        // 125 notifications per second at 250 Hz
+        for (int i = 0; i < seconds * 125; i++) out.add(signal.nextNotification());
+        return out;
+    }
+
+    private static long frameCount(List<byte[]> notifications) {
+        long[] frames = new long[1];
+        StreamDecoder decoder = new StreamDecoder(new StreamDecoder.Listener() {
+            @Override
+            public void onFrame(float ecg, float ppg, float temp, float spo2) {
+                frames[0]++;
+            }
+
+            @Override
+            public void onParseError() {
+            }
+
+            @Override
+            public void onSequenceGap(int lostFrames, int lostSamples) {
+            }
+        });
+        for (byte[] data : notifications) decoder.feed(data);
+        return frames[0];
+    }
+
+    /** Waits until everything queued on {@code channel} so far has been processed. */
+    private static void await(PipelineExecutor.Channel channel) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        channel.execute(done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void processesOneChannelInOrderOnOneThreadAtATime() throws InterruptedException {
+        PipelineExecutor.Channel channel = executor.register(pipeline("a"), 64);
+        List<Integer> seen = new ArrayList<>();
+        AtomicBoolean busy = new AtomicBoolean();
+        boolean[] overlapped = new boolean[1];
+        for (int i = 0; i < 1000; i++) {
+            int n = i;
+            channel.execute(() -> {
+                if (!busy.compareAndSet(false, true)) overlapped[0] = true;
+                seen.add(n);
+                busy.set(false);
+            });
+            // keep within the task reserve
+            if (i % 10 == 9) await(channel);
+        }
+        await(channel);
+        assertFalse(overlapped[0]);
+        assertEquals(1000, seen.size());
+        for (int i = 0; i < seen.size(); i++) assertEquals(i, (int) seen.get(i));
+    }
+
+    @Test
+    public void failingDeviceDoesNotAffectTheOthers() throws InterruptedException {
+        DevicePipeline good = pipeline("good");
+        PipelineExecutor.Channel goodChannel = executor.register(good, 4096);
+        PipelineExecutor.Channel badChannel = executor.register(pipeline("bad"), 4096);
+
+        List<byte[]> data = notifications(1, 2);
+        for (byte[] d : data) {
+            assertTrue(goodChannel.post(d));
+            badChannel.post("garbage\n".getBytes());
+        }
+        badChannel.execute(() -> {
+            throw new IllegalStateException("boom");
+        });
+        await(goodChannel);
+        await(badChannel);
+
+        assertEquals(frameCount(data), good.getMetrics().getSampleCount());
+        assertEquals(0, goodChannel.getFailureCount());
+        assertEquals(1, badChannel.getFailureCount());
+        // and the bad device itself keeps going
+        badChannel.post(data.get(0));
+        await(badChannel);
+        assertEquals(1, badChannel.getFailureCount());
+        assertTrue(badChannel.getPipeline().getMetrics().getSampleCount() > 0);
+    }
+
+    @Test
+    public void fullMailboxDropsNotificationsButNotTasks() throws InterruptedException {
+        PipelineExecutor single = new PipelineExecutor(1, 1);
+        try {
+            PipelineExecutor.Channel channel = single.register(pipeline("a"), 16);
+            CountDownLatch blocked = new CountDownLatch(1), release = new CountDownLatch(1);
+            channel.execute(() -> {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+            byte[] data = notifications(1, 1).get(0);
+            int accepted = 0;
+            for (int i = 0; i < 100; i++) if (channel.post(data)) accepted++;
+            assertTrue(accepted >= 16);
+            assertEquals(100 - accepted, channel.getDroppedCount());
+
+            boolean[] ran = new boolean[1];
+            channel.execute(() -> ran[0] = true);
+            release.countDown();
+            await(channel);
+            assertTrue(ran[0]);
+            assertEquals(100 - accepted, channel.getDroppedCount());
+            assertTrue(channel.post(data));
+        } finally {
+            single.shutdown();
+        }
+        try {
+            single.register(pipeline("b"), 16);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void devicesStreamConcurrently() throws InterruptedException {
+        int devices = 6;
+        DevicePipeline[] pipelines = new DevicePipeline[devices];
+        PipelineExecutor.Channel[] channels = new PipelineExecutor.Channel[devices];
+        List<List<byte[]>> streams = new ArrayList<>();
+        Thread[] senders = new Thread[devices];
+        for (int d = 0; d < devices; d++) {
+            pipelines[d] = pipeline("device " + d);
+            channels[d] = executor.register(pipelines[d], 8192);
+            streams.add(notifications(d, 10));
+            PipelineExecutor.Channel channel = channels[d];
+            List<byte[]> stream = streams.get(d);
+            // one thread per device, like the binder threads delivering GATT callbacks
+            senders[d] = new Thread(() -> {
+                for (byte[] data : stream) channel.post(data);
+            });
+        }
+        for (Thread t : senders) t.start();
+        for (Thread t : senders) t.join();
+        for (PipelineExecutor.Channel channel : channels) await(channel);
+
+        for (int d = 0; d < devices; d++) {
+            assertEquals(0, channels[d].getDroppedCount());
+            assertEquals(0, channels[d].getFailureCount());
+            assertEquals(frameCount(streams.get(d)), pipelines[d].getMetrics().getSampleCount());
+            assertTrue(channels[d].getProcessedCount() >= streams.get(d).size());
+            assertTrue(pipelines[d].getBeatCount() > 5);
+        }
+    }
+}
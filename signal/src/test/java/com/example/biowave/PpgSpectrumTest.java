@@ -0,0 +1,115 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PpgSpectrumTest {
+
+    private static final int RATE = 250;
+
+    /** Feeds {@code seconds} of the synthetic PPG, then waits for the updates by closing. */
+    private static PpgSpectrum run(SyntheticSignal signal, int seconds) {
+        PpgSpectrum spectrum = new PpgSpectrum(RATE);
+        float[] ecg = new float[RATE], ppg = new float[RATE];
+        for (int s = 0; s < seconds; s++) {
+            signal.nextSamples(ecg, ppg, 0, RATE);
+            for (int i = 0; i < RATE; i++) spectrum.add(ppg[i]);
+        }
+        spectrum.close();
+        return spectrum;
+    }
+
+    @Test
+    public void fftMatchesTheDefinition() {
+        int n = 64;
+        Random random = new Random(1);
+        float[] re = new float[n], im = new float[n], x = new float[n], y = new float[n];
+        for (int i = 0; i < n; i++) {
+            re[i] = x[i] = (float) random.nextGaussian();
+            im[i] = y[i] = (float) random.nextGaussian();
+        }
+        new Fft(n).transform(re, im);
+        for (int k = 0; k < n; k++) {
+            double sr = 0, si = 0;
+            for (int i = 0; i < n; i++) {
+                double a = -2 * Math.PI * k * i / n;
+                sr += x[i] * Math.cos(a) - y[i] * Math.sin(a);
+                si += x[i] * Math.sin(a) + y[i] * Math.cos(a);
+            }
+            assertEquals(sr, re[k], 1e-3);
+            assertEquals(si, im[k], 1e-3);
+        }
+    }
+
+    @Test
+    public void pairedPowerSpectraMatchSeparateOnes() {
+        int n = 128;
+        Fft fft = new Fft(n);
+        Random random = new Random(2);
+        float[] a = new float[n], b = new float[n];
+        float[] ar = new float[n], ai = new float[n], br = new float[n], bi = new float[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = ar[i] = (float) random.nextGaussian();
+            b[i] = br[i] = (float) Math.sin(i * 0.3);
+        }
+        float[] powerA = new float[n / 2 + 1], powerB = new float[n / 2 + 1];
+        fft.powerSpectra(a, b, powerA, powerB);
+        fft.transform(ar, ai);
+        fft.transform(br, bi);
+        for (int k = 0; k <= n / 2; k++) {
+            assertEquals(ar[k] * ar[k] + ai[k] * ai[k], powerA[k], 1e-2 * (1 + powerA[k]));
+            assertEquals(br[k] * br[k] + bi[k] * bi[k], powerB[k], 1e-2 * (1 + powerB[k]));
+        }
+    }
+
+    @Test
+    public void pulseAndBreathingRatesAreFound() {
+        float[][] cases = {{72, 15}, {100, 10}, {55, 24}};
+        for (float[] c : cases) {
+            SyntheticSignal signal = new SyntheticSignal(21);
+            signal.setHeartRate(c[0]);
+            signal.setRespiration(c[1], 0.3f);
+            PpgSpectrum spectrum = run(signal, 70);
+            assertEquals(2, spectrum.getUpdateCount());
+            assertEquals(c[0], spectrum.getPulseRate(), 2f);
+            assertEquals(c[1], spectrum.getRespirationRate(), 1f);
+            assertTrue(spectrum.getQuality() > 0.6f);
+        }
+    }
+
+    @Test
+    public void noBreathingNoRespirationRate() {
+        SyntheticSignal signal = new SyntheticSignal(22);
+        PpgSpectrum spectrum = run(signal, 62);
+        assertEquals(72f, spectrum.getPulseRate(), 2f);
+        assertTrue(Float.isNaN(spectrum.getRespirationRate()));
+    }
+
+    @Test
+    public void noiseLowersTheQuality() {
+        SyntheticSignal clean = new SyntheticSignal(23), noisy = new SyntheticSignal(23);
+        noisy.setNoise(1f);
+        float good = run(clean, 62).getQuality(), bad = run(noisy, 62).getQuality();
+        assertTrue(good > 0.6f);
+        assertTrue(bad < good - 0.2f);
+    }
+
+    @Test
+    public void aGapStartsTheMinuteOver() {
+        PpgSpectrum spectrum = new PpgSpectrum(RATE);
+        SyntheticSignal signal = new SyntheticSignal(24);
+        float[] ecg = new float[RATE], ppg = new float[RATE];
+        for (int s = 0; s < 100; s++) {
+            signal.nextSamples(ecg, ppg, 0, RATE);
+            // a lost second every 50 s: never a whole minute
+            if (s % 50 == 49) spectrum.gap();
+            else for (int i = 0; i < RATE; i++) spectrum.add(ppg[i]);
+        }
+        spectrum.close();
+        assertEquals(0, spectrum.getUpdateCount());
+        assertTrue(Float.isNaN(spectrum.getPulseRate()));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PulseTransitTimeTest {
+
+    private static final int RATE = 250;
+
+    /** Synthetic sensor with the R peaks it generated handed to the estimator as they pass. */
+    private static final class Session {
+        final SyntheticSignal signal = new SyntheticSignal(11);
+        final PulseTransitTime ptt = new PulseTransitTime(RATE);
+        final float[] ecg = new float[RATE], ppg = new float[RATE];
+        long sample;
+        int nextBeat;
+        // R peaks handed over are moved by this much, in samples
+        double beatError;
+
+        Session(float pulseArrival) {
+            signal.setPulseArrival(pulseArrival);
+        }
+
+        void run(int seconds) {
+            for (int s = 0; s < seconds; s++) {
+                signal.nextSamples(ecg, ppg, 0, RATE);
+                for (int i = 0; i < RATE; i++) {
+                    ptt.process(ppg[i]);
+                    sample++;
+                    while (nextBeat < signal.getBeatCount() && signal.getBeatTime(nextBeat) * RATE < sample) {
+                        ptt.addBeat(signal.getBeatTime(nextBeat++) * RATE + beatError);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void knownDelaysAreMeasured() {
+        for (float arrival : new float[] {0.30f, 0.40f}) {
+            Session session = new Session(arrival);
+            session.run(60);
+            // foot = systolic peak minus two pulse widths
+            float expected = (arrival - 0.16f) * 1000;
+            assertEquals(expected, session.ptt.getPtt(), 6f);
+            assertEquals(expected, session.ptt.getLastPtt(), 15f);
+            // about 72 beats, nearly all paired
+            assertTrue(session.ptt.getAcceptedCount() > 60);
+            assertEquals(0, session.ptt.getRejectedCount());
+        }
+    }
+
+    @Test
+    public void detectedBeatsArePairedDespiteTheirLatency() {
+        SyntheticSignal signal = new SyntheticSignal(12);
+        signal.setPulseArrival(0.35f);
+        PulseTransitTime ptt = new PulseTransitTime(RATE);
+        QrsDetector detector = new QrsDetector(RATE, (sampleIndex, rr) -> ptt.addBeat(sampleIndex));
+        float[] ecg = new float[RATE], ppg = new float[RATE];
+        for (int s = 0; s < 60; s++) {
+            signal.nextSamples(ecg, ppg, 0, RATE);
+            for (int i = 0; i < RATE; i++) {
+                detector.process(ecg[i]);
+                ptt.process(ppg[i]);
+            }
+        }
+        // the detector places the R peak to within a few samples
+        assertEquals(190f, ptt.getPtt(), 15f);
+        assertTrue(ptt.getAcceptedCount() > 50);
+    }
+
+    @Test
+    public void mismatchesAreRejectedAndAChangeIsFollowed() {
+        Session session = new Session(0.30f);
+        session.run(30);
+        // a few beats placed 50 ms early leave the median alone
+        session.beatError = -0.05 * RATE;
+        session.run(2);
+        session.beatError = 0;
+        assertTrue(session.ptt.getRejectedCount() > 0);
+        assertEquals(140f, session.ptt.getPtt(), 6f);
+        // a lasting change is taken over after a few rejections
+        session.signal.setPulseArrival(0.40f);
+        session.run(20);
+        assertEquals(240f, session.ptt.getPtt(), 6f);
+    }
+
+    @Test
+    public void noPulseNoTransitTime() {
+        PulseTransitTime ptt = new PulseTransitTime(RATE);
+        for (int i = 0; i < 20 * RATE; i++) {
+            ptt.process(i % RATE < RATE / 2 ? 20000f : Float.NaN);
+            if (i % 200 == 0) ptt.addBeat(i);
+        }
+        assertTrue(Float.isNaN(ptt.getPtt()));
+        assertEquals(0, ptt.getAcceptedCount());
+    }
+
+    @Test
+    public void resetKeepsTheMedian() {
+        Session session = new Session(0.30f);
+        session.run(20);
+        session.ptt.reset();
+        assertEquals(140f, session.ptt.getPtt(), 6f);
+        long accepted = session.ptt.getAcceptedCount();
+        session.run(5);
+        assertTrue(session.ptt.getAcceptedCount() > accepted);
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QrsDetectorTest {
+
+    private static final float FS = 250f;
+    // R peaks within 40 ms of the truth count as detected
+    private static final int TOLERANCE = Math.round(0.04f * FS);
+
+    /**
+     * Sum-of-Gaussians PQRST beat train (after McSharry et al.) in mV, with R peaks at
+     * {@code rPeaks}. Adds white noise of {@code noise} mV and a 0.3 Hz baseline wander of
+     * {@code wander} mV.
+     */
+    static float[] synthesize(int[] rPeaks, int length, float noise, float wander, Random random) {
+        // wave offset from R (s), width (s), amplitude (mV): P, Q, R, S, T
+        double[][] waves = {
+                {-0.20, 0.025, 0.15}, {-0.03, 0.010, -0.15}, {0, 0.012, 1.2}, {0.03, 0.010, -0.25}, {0.25, 0.050, 0.3}};
+        float[] ecg = new float[length];
+        for (int r : rPeaks) {
+            for (double[] w : waves) {
+                double center = r + w[0] * FS, sigma = w[1] * FS;
+                int from = (int) Math.max(0, center - 4 * sigma), to = (int) Math.min(length - 1, center + 4 * sigma);
+                for (int i = from; i <= to; i++) {
+                    double x = (i - center) / sigma;
+                    ecg[i] += (float) (w[2] * Math.exp(-0.5 * x * x));
+                }
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            ecg[i] += (float) (noise * random.nextGaussian() + wander * Math.sin(2 * Math.PI * 0.3 * i / FS));
+        }
+        return ecg;
+    }
+
+    static int[] regularBeats(float bpm, int length) {
+        int rr = Math.round(60 * FS / bpm);
+        List<Integer> peaks = new ArrayList<>();
+        for (int r = rr / 2; r < length; r += rr) peaks.add(r);
+        return toArray(peaks);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] a = new int[list.size()];
+        for (int i = 0; i < a.length; i++) a[i] = list.get(i);
+        return a;
+    }
+
+    private static final class Recorder implements QrsDetector.Listener {
+        final List<Long> beats = new ArrayList<>();
+        final List<Integer> intervals = new ArrayList<>();
+
+        @Override
+        public void onBeat(long sampleIndex, int rrSamples) {
+            beats.add(sampleIndex);
+            if (rrSamples > 0) intervals.add(rrSamples);
+        }
+    }
+
+    private static Recorder detect(float[] ecg) {
+        Recorder recorder = new Recorder();
+        QrsDetector detector = new QrsDetector(FS, recorder);
+        for (float v : ecg) detector.process(v);
+        assertEquals(ecg.length, detector.getSampleCount());
+        return recorder;
+    }
+
+    /** Every true beat after the learning phase must be matched exactly once, with no extras. */
+    private static void assertMatches(int[] truth, List<Long> detected) {
+        int learning = Math.round(2 * FS);
+        int matched = 0, expected = 0;
+        for (int r : truth) {
+            if (r < learning + TOLERANCE) continue;
+            expected++;
+            for (long d : detected) {
+                if (Math.abs(d - r) <= TOLERANCE) {
+                    matched++;
+                    break;
+                }
+            }
+        }
+        assertEquals("missed beats", expected, matched);
+        long late = 0;
+        for (long d : detected) if (d >= learning) late++;
+        assertTrue("false beats: " + late + " detected for " + expected, late <= expected + 1);
+    }
+
+    @Test
+    public void detectsCleanRegularRhythm() {
+        int length = Math.round(60 * FS);
+        int[] truth = regularBeats(72, length);
+        Recorder recorder = detect(synthesize(truth, length, 0, 0, new Random(1)));
+
+        assertMatches(truth, recorder.beats);
+        int rr = Math.round(60 * FS / 72);
+        for (int interval : recorder.intervals) assertEquals(rr, interval, 2);
+    }
+
+    @Test
+    public void toleratesNoiseAndBaselineWander() {
+        for (float bpm : new float[]{45, 90, 150}) {
+            int length = Math.round(60 * FS);
+            int[] truth = regularBeats(bpm, length);
+            Recorder recorder = detect(synthesize(truth, length, 0.05f, 0.5f, new Random(2)));
+            assertMatches(truth, recorder.beats);
+        }
+    }
+
+    @Test
+    public void followsIrregularRhythm() {
+        Random random = new Random(3);
+        int length = Math.round(120 * FS);
+        List<Integer> peaks = new ArrayList<>();
+        for (int r = 100; r < length; ) {
+            peaks.add(r);
+            // 0.5-1.3 s, roughly atrial fibrillation
+            r += Math.round((0.5f + 0.8f * random.nextFloat()) * FS);
+        }
+        int[] truth = toArray(peaks);
+        Recorder recorder = detect(synthesize(truth, length, 0.02f, 0.2f, random));
+        assertMatches(truth, recorder.beats);
+    }
+
+    @Test
+    public void searchBackRecoversSmallBeat() {
+        int length = Math.round(30 * FS);
+        int[] truth = regularBeats(60, length);
+        float[] ecg = synthesize(truth, length, 0.01f, 0, new Random(4));
+        // one weaker beat: its energy falls between the secondary and the primary threshold
+        int weak = truth[truth.length / 2];
+        for (int i = weak - 30; i <= weak + 30; i++) ecg[i] *= 0.45f;
+
+        Recorder recorder = detect(ecg);
+        assertMatches(truth, recorder.beats);
+    }
+
+    @Test
+    public void heartRateAndHrvMatchDirectComputation() {
+        Random random = new Random(6);
+        int window = 30;
+        HeartRateTracker tracker = new HeartRateTracker(1000, window);
+        List<Integer> accepted = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int rr = 600 + random.nextInt(400);
+            if (i % 97 == 50) rr = 100; // artefact
+            if (tracker.addRrSamples(rr)) accepted.add(rr);
+            else accepted.add(-1);
+
+            List<Integer> recent = new ArrayList<>();
+            for (int k = accepted.size() - 1; k >= 0 && recent.size() < window; k--) {
+                if (accepted.get(k) > 0) recent.add(0, accepted.get(k));
+            }
+            if (recent.size() < 2) continue;
+
+            double mean = 0;
+            for (int v : recent) mean += v;
+            mean /= recent.size();
+            double ss = 0;
+            for (int v : recent) ss += (v - mean) * (v - mean);
+            assertEquals(Math.sqrt(ss / (recent.size() - 1)), tracker.getSdnn(), 1e-3);
+
+            double hrSum = 0;
+            int hrN = Math.min(8, recent.size());
+            for (int k = recent.size() - hrN; k < recent.size(); k++) hrSum += recent.get(k);
+            assertEquals(60_000 * hrN / hrSum, tracker.getHeartRate(), 1e-3);
+        }
+    }
+
+    @Test
+    public void rmssdSkipsPairsAcrossGaps() {
+        HeartRateTracker tracker = new HeartRateTracker(1000, 10);
+        tracker.addRrMillis(800);
+        tracker.addRrMillis(810);  // diff 10
+        tracker.onGap();
+        tracker.addRrMillis(1000); // not paired with 810
+        tracker.addRrMillis(980);  // diff 20
+        assertEquals(Math.sqrt((100 + 400) / 2.0), tracker.getRmssd(), 1e-4);
+        assertFalse(tracker.addRrMillis(4000));
+        tracker.addRrMillis(990);  // previous interval was rejected, no pair
+        assertEquals(Math.sqrt((100 + 400) / 2.0), tracker.getRmssd(), 1e-4);
+    }
+
+    @Test
+    public void detectorHrvMatchesTruth() {
+        Random random = new Random(7);
+        int length = Math.round(90 * FS);
+        List<Integer> peaks = new ArrayList<>();
+        for (int r = 100; r < length; ) {
+            peaks.add(r);
+            r += Math.round((0.8f + 0.1f * (float) Math.sin(peaks.size() * 0.7)) * FS);
+        }
+        int[] truth = toArray(peaks);
+        Recorder recorder = detect(synthesize(truth, length, 0.02f, 0.1f, random));
+
+        int window = 30;
+        HeartRateTracker detected = new HeartRateTracker(FS, window);
+        for (int rr : recorder.intervals) detected.addRrSamples(rr);
+        HeartRateTracker expected = new HeartRateTracker(FS, window);
+        for (int i = 1; i < truth.length; i++) expected.addRrSamples(truth[i] - truth[i - 1]);
+
+        assertEquals(expected.getHeartRate(), detected.getHeartRate(), 0.5f);
+        assertEquals(expected.getSdnn(), detected.getSdnn(), 4f);
+        assertEquals(expected.getRmssd(), detected.getRmssd(), 6f);
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.biowave;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SampleCodecTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Samples as the pipeline sees them: decoded from the synthetic sensor's binary stream. */
+    private static final class Trace implements StreamDecoder.Listener {
+        float[][] samples = new float[4][1 << 16];
+        long[] times = new long[1 << 16];
+        int count;
+        long time = 1_700_000_000_000L;
+
+        @Override
+        public void onFrame(float ecg, float ppg, float temp, float spo2) {
+            times[count] = time;
+            samples[0][count] = ecg;
+            samples[1][count] = ppg;
+            samples[2][count] = temp;
+            samples[3][count++] = spo2;
+        }
+
+        @Override
+        public void onParseError() {
+        }
+
+        @Override
+        public void onSequenceGap(int lostFrames, int lostSamples) {
+        }
+    }
+
+    private static Trace trace(int notifications) {
+        return trace(notifications, true);
+    }
+
+    private static Trace trace(int notifications, boolean binary) {
+        SyntheticSignal signal = new SyntheticSignal(5);
+        signal.setBinary(binary);
+        Trace trace = new Trace();
+        StreamDecoder decoder = new StreamDecoder(trace);
+        for (int i = 0; i < notifications; i++) {
+            trace.time += 8;
+            decoder.feed(signal.nextNotification());
+        }
+        return trace;
+    }
+
+    private File write(Trace trace, int blockSize, boolean close) throws IOException {
+        File file = folder.newFile();
+        SampleCodec.Encoder encoder = new SampleCodec.Encoder(new FileOutputStream(file), blockSize);
+        for (int i = 0; i < trace.count; i++) {
+            encoder.append(trace.times[i], trace.samples[0][i], trace.samples[1][i], trace.samples[2][i], trace.samples[3][i]);
+        }
+        if (close) encoder.close();
+        else encoder.flush();
+        return file;
+    }
+
+    private static int readAndCheck(SampleCodec.Reader reader, Trace trace, long from, int max) throws IOException {
+        return reader.read(from, max, (index, time, ecg, ppg, temp, spo2) -> {
+            int i = (int) index;
+            assertEquals(trace.times[i], time);
+            // bit-exact, NaN vitals included
+            assertEquals(Float.floatToIntBits(trace.samples[0][i]), Float.floatToIntBits(ecg));
+            assertEquals(Float.floatToIntBits(trace.samples[1][i]), Float.floatToIntBits(ppg));
+            assertEquals(Float.floatToIntBits(trace.samples[2][i]), Float.floatToIntBits(temp));
+            assertEquals(Float.floatToIntBits(trace.samples[3][i]), Float.floatToIntBits(spo2));
+        });
+    }
+
+    @Test
+    public void decodedStreamRoundTripsExactly() throws IOException {
+        Trace trace = trace(20_000);
+        File file = write(trace, SampleCodec.DEFAULT_BLOCK_SIZE, true);
+        try (SampleCodec.Reader reader = new SampleCodec.Reader(file)) {
+            assertEquals(trace.count, reader.getSampleCount());
+            assertEquals((trace.count + 1023) / 1024, reader.getBlockCount());
+            assertEquals(trace.count, readAndCheck(reader, trace, 0, Integer.MAX_VALUE));
+        }
+        // four float32 channels alone would take 16 bytes per sample
+        assertTrue("bytes per sample " + (double) file.length() / trace.count, file.length() * 4 < trace.count * 16L);
+    }
+
+    @Test
+    public void asciiStreamRoundTripsExactly() throws IOException {
+        Trace trace = trace(20_000, false);
+        // the firmware's three decimals for both signals, off the sensor LSBs, and a negative zero
+        Random random = new Random(3);
+        StreamDecoder decoder = new StreamDecoder(trace);
+        StringBuilder lines = new StringBuilder("E-0.000;P0.000\n");
+        for (int i = 0; i < 5_000; i++) {
+            lines.append(String.format(Locale.US, "E%.3f;P%.3f;T%.1f;S%d%n",
+                    random.nextInt(65_536) / 1000f - 32.768f, random.nextInt(1_000_000) / 1000f,
+                    36 + random.nextInt(30) / 10f, 90 + random.nextInt(10)));
+        }
+        decoder.feed(lines.toString().getBytes(StandardCharsets.US_ASCII));
+        File file = write(trace, SampleCodec.DEFAULT_BLOCK_SIZE, true);
+        try (SampleCodec.Reader reader = new SampleCodec.Reader(file)) {
+            assertEquals(trace.count, readAndCheck(reader, trace, 0, Integer.MAX_VALUE));
+        }
+        assertTrue("bytes per sample " + (double) file.length() / trace.count, file.length() * 2 < trace.count * 16L);
+    }
+
+    @Test
+    public void seeksIntoTheMiddle() throws IOException {
+        Trace trace = trace(10_000);
+        File file = write(trace, 500, true);
+        try (SampleCodec.Reader reader = new SampleCodec.Reader(file)) {
+            assertEquals(10, readAndCheck(reader, trace, 7_777, 10));
+            // across a block boundary, and clipped at the end
+            assertEquals(20, readAndCheck(reader, trace, 990, 20));
+            assertEquals(5, readAndCheck(reader, trace, trace.count - 5, 100));
+            assertEquals(0, readAndCheck(reader, trace, trace.count, 100));
+        }
+    }
+
+    @Test
+    public void unclosedFileIsReadByScanning() throws IOException {
+        Trace trace = trace(5_000);
+        File file = write(trace, 1000, false);
+        // the process died in the middle of writing the next block
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(raw.length());
+            raw.write(new byte[]{1, 2, 3, 4, 5, 6, 7});
+        }
+        try (SampleCodec.Reader reader = new SampleCodec.Reader(file)) {
+            assertEquals(trace.count, reader.getSampleCount());
+            assertEquals(trace.count, readAndCheck(reader, trace, 0, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void corruptBlockIsDetected() throws IOException {
+        Trace trace = trace(5_000);
+        File file = write(trace, 1000, true);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(file.length() / 2);
+            int b = raw.read();
+            raw.seek(file.length() / 2);
+            raw.write(b ^ 0x10);
+        }
+        try (SampleCodec.Reader reader = new SampleCodec.Reader(file)) {
+            assertEquals(1000, readAndCheck(reader, trace, 0, 1000));
+            reader.read(0, Integer.MAX_VALUE, (index, time, ecg, ppg, temp, spo2) -> { });
+            fail("corruption not detected");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void pipelineArchivesLostFramesAsGaps() throws IOException {
+        SyntheticSignal signal = new SyntheticSignal(7);
+        signal.setBinary(true);
+        signal.setPacketLoss(0.02f);
+        signal.setSamplesPerFrame(4);
+        DevicePipeline pipeline = new DevicePipeline("ECG", new SampleRingBuffer(256), new PipelineMetrics());
+        pipeline.setDisplayEnabled(false);
+        File file = folder.newFile();
+        pipeline.openArchive(file);
+        for (int i = 0; i < 5_000; i++) pipeline.onData(signal.nextNotification(), System.nanoTime());
+        pipeline.close();
+        assertNull(pipeline.getArchiveError());
+
+        long[] counts = new long[2];
+        try (SampleCodec.Reader reader = new SampleCodec.Reader(file)) {
+            reader.read(0, Integer.MAX_VALUE, (index, time, ecg, ppg, temp, spo2) -> counts[Float.isNaN(ecg) ? 1 : 0]++);
+        }
+        assertEquals(pipeline.getMetrics().getSampleCount(), counts[0]);
+        // every lost frame leaves a gap as long as its samples
+        PipelineMetrics.Report report = new PipelineMetrics.Report();
+        pipeline.getMetrics().report(System.nanoTime(), report);
+        assertTrue(report.lostFrames > 0);
+        assertEquals(4 * report.lostFrames, counts[1]);
+    }
+
+    @Test
+    public void anyIntegersRoundTrip() {
+        Random random = new Random(1);
+        int n = 1000;
+        int[] x = new int[n];
+        for (int i = 0; i < n; i++) {
+            switch (i / 100) {
+                case 0: x[i] = 0; break;
+                case 1: x[i] = Integer.MIN_VALUE; break;
+                case 2: x[i] = random.nextInt(); break;
+                case 3: x[i] = i % 2 == 0 ? Integer.MAX_VALUE : Integer.MIN_VALUE; break;
+                default: x[i] = random.nextInt(200) - 100 + i * 1000; break;
+            }
+        }
+        SampleCodec.BitWriter writer = new SampleCodec.BitWriter(n * 8);
+        SampleCodec.ChannelCoder coder = new SampleCodec.ChannelCoder(n);
+        writer.reset(0);
+        coder.encode(x, n, writer);
+        int length = writer.finish();
+        int[] decoded = new int[n];
+        coder.decode(decoded, n, new SampleCodec.BitReader(writer.buffer(), 0, length));
+        assertArrayEquals(x, decoded);
+    }
+
+    @Test
+    public void emptyFileHasNoSamples() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new SampleCodec.Encoder(bytes).close();
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes.toByteArray());
+        }
+        try (SampleCodec.Reader reader = new SampleCodec.Reader(file)) {
+            assertEquals(0, reader.getSampleCount());
+            assertEquals(0, reader.read(0, 10, (index, time, ecg, ppg, temp, spo2) -> fail()));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SampleRingBufferTest {
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(8, new SampleRingBuffer(5).capacity());
+        assertEquals(4096, new SampleRingBuffer(4096).capacity());
+    }
+
+    @Test
+    public void drainsInOrder() {
+        SampleRingBuffer rb = new SampleRingBuffer(8);
+        for (int i = 0; i < 5; i++) assertTrue(rb.offer(i, -i, 36f, Float.NaN));
+        assertEquals(5, rb.size());
+
+        List<Float> seen = new ArrayList<>();
+        assertEquals(3, rb.drain((ecg, ppg, temp, spo2) -> {
+            assertEquals(-ecg, ppg, 0f);
+            assertEquals(36f, temp, 0f);
+            assertTrue(Float.isNaN(spo2));
+            seen.add(ecg);
+        }, 3));
+        assertEquals(2, rb.drain((ecg, ppg, temp, spo2) -> seen.add(ecg)));
+        assertEquals(0, rb.drain((ecg, ppg, temp, spo2) -> fail()));
+        assertEquals(List.of(0f, 1f, 2f, 3f, 4f), seen);
+    }
+
+    @Test
+    public void tracksTimestampOfLastDrainedSample() {
+        SampleRingBuffer rb = new SampleRingBuffer(8);
+        rb.offer(1, 0, 0, 0, 100L);
+        rb.offer(2, 0, 0, 0, 200L);
+        rb.offer(3, 0, 0, 0, 300L);
+        rb.drain((ecg, ppg, temp, spo2) -> { }, 2);
+        assertEquals(200L, rb.getLastDrainedTimestamp());
+        rb.drain((ecg, ppg, temp, spo2) -> { });
+        assertEquals(300L, rb.getLastDrainedTimestamp());
+    }
+
+    @Test
+    public void dropsNewestWhenFullAndCountsOverflows() {
+        SampleRingBuffer rb = new SampleRingBuffer(4);
+        for (int i = 0; i < 6; i++) rb.offer(i, 0, 0, 0);
+        assertEquals(2, rb.getDroppedCount());
+        assertEquals(1, rb.getOverflowCount());
+        assertEquals(4, rb.getHighWaterMark());
+
+        List<Float> seen = new ArrayList<>();
+        rb.drain((ecg, ppg, temp, spo2) -> seen.add(ecg));
+        assertEquals(List.of(0f, 1f, 2f, 3f), seen);
+
+        // a second episode is counted separately
+        for (int i = 0; i < 5; i++) rb.offer(i, 0, 0, 0);
+        assertEquals(3, rb.getDroppedCount());
+        assertEquals(2, rb.getOverflowCount());
+    }
+
+    @Test
+    public void concurrentProducerAndConsumerSeeEverySampleInOrder() throws Exception {
+        final int total = 2_000_000;
+        SampleRingBuffer rb = new SampleRingBuffer(1024);
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < total; ) {
+                if (rb.offer(i, i + 1, i + 2, i + 3)) i++;
+                else Thread.yield();
+            }
+        });
+
+        final long[] expected = {0};
+        final boolean[] ok = {true};
+        SampleRingBuffer.Consumer consumer = (ecg, ppg, temp, spo2) -> {
+            float e = expected[0]++;
+            if (ecg != e || ppg != e + 1 || temp != e + 2 || spo2 != e + 3) ok[0] = false;
+        };
+
+        producer.start();
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (expected[0] < total && System.currentTimeMillis() < deadline) {
+            if (rb.drain(consumer, 256) == 0) Thread.yield();
+        }
+        producer.join();
+
+        assertTrue(ok[0]);
+        assertEquals(total, expected[0]);
+        // the producer retried instead of dropping, but every rejection is still counted
+        assertTrue(rb.getDroppedCount() >= rb.getOverflowCount());
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SignalBufferTest {
+
+    @Test
+    public void indicesIncreaseMonotonically() {
+        SignalBuffer buffer = new SignalBuffer(4);
+        for (int i = 0; i < 10; i++) assertEquals(i, buffer.append(i, -i));
+        assertEquals(10, buffer.getNextIndex());
+        assertEquals(6, buffer.getFirstIndex());
+        assertEquals(4, buffer.size());
+    }
+
+    @Test
+    public void evictsOldestWhenFull() {
+        SignalBuffer buffer = new SignalBuffer(3);
+        for (int i = 0; i < 5; i++) buffer.append(i, 10 * i);
+        assertEquals(2f, buffer.get(SignalBuffer.ECG, 2), 0f);
+        assertEquals(40f, buffer.get(SignalBuffer.PPG, 4), 0f);
+        try {
+            buffer.get(SignalBuffer.ECG, 1);
+            fail("evicted sample still readable");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    @Test
+    public void channelViewAddressesSamplesBySlot() {
+        SignalBuffer buffer = new SignalBuffer(5);
+        for (int i = 0; i < 12; i++) buffer.append(i, 0);
+        float[] ecg = buffer.channel(SignalBuffer.ECG);
+        for (long i = buffer.getFirstIndex(); i < buffer.getNextIndex(); i++) {
+            assertEquals(i, ecg[buffer.slot(i)], 0f);
+        }
+    }
+
+    @Test
+    public void copyHandlesWrapAround() {
+        SignalBuffer buffer = new SignalBuffer(4);
+        for (int i = 0; i < 7; i++) buffer.append(0, i);
+        float[] out = new float[5];
+        buffer.copy(SignalBuffer.PPG, 3, 4, out, 1);
+        assertArrayEquals(new float[]{0, 3, 4, 5, 6}, out, 0f);
+    }
+
+    @Test
+    public void clearRestartsIndices() {
+        SignalBuffer buffer = new SignalBuffer(4);
+        buffer.append(1, 1);
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.append(2, 2));
+    }
+}
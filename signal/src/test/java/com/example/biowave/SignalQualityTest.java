@@ -0,0 +1,147 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SignalQualityTest {
+
+    private static final int RATE = 250;
+
+    /** A modification of the raw samples of second {@code second}, sample {@code i} of the session. */
+    private interface Artifact {
+        void apply(long i, float[] ecg, float[] ppg, int at);
+    }
+
+    /** Synthetic sensor through the monitor filters into both indices, like the pipeline. */
+    private static final class Session {
+        final SyntheticSignal signal = new SyntheticSignal(3);
+        final FilterChain ecgFilter = FilterChain.ecg(RATE, FilterChain.BANDWIDTH_MONITOR, FilterChain.MAINS_50HZ);
+        final FilterChain ppgFilter = FilterChain.ppg(RATE, FilterChain.BANDWIDTH_MONITOR);
+        final SignalQuality ecg = SignalQuality.ecg(RATE), ppg = SignalQuality.ppg(RATE);
+        final float[] e = new float[RATE], p = new float[RATE], rawE = new float[RATE], rawP = new float[RATE];
+        long sample;
+        int ecgFlags, ppgFlags;
+        float ecgMinScore, ppgMinScore;
+
+        /** Runs {@code seconds}, returning the flags seen on both channels. */
+        void run(int seconds, Artifact artifact) {
+            ecgFlags = ppgFlags = 0;
+            ecgMinScore = ppgMinScore = 1f;
+            for (int s = 0; s < seconds; s++) {
+                signal.nextSamples(e, p, 0, RATE);
+                for (int i = 0; artifact != null && i < RATE; i++) artifact.apply(sample + i, e, p, i);
+                System.arraycopy(e, 0, rawE, 0, RATE);
+                System.arraycopy(p, 0, rawP, 0, RATE);
+                ecgFilter.process(e, 0, RATE);
+                ppgFilter.process(p, 0, RATE);
+                for (int i = 0; i < RATE; i++) {
+                    ecgFlags |= ecg.add(rawE[i], e[i]);
+                    ppgFlags |= ppg.add(rawP[i], p[i]);
+                    ecgMinScore = Math.min(ecgMinScore, ecg.getScore());
+                    ppgMinScore = Math.min(ppgMinScore, ppg.getScore());
+                }
+                sample += RATE;
+            }
+        }
+
+        /** Settles the filters and learns the clean signal. */
+        static Session warmedUp() {
+            Session session = new Session();
+            session.run(10, null);
+            return session;
+        }
+    }
+
+    @Test
+    public void cleanSignalHasNoArtifacts() {
+        Session session = Session.warmedUp();
+        session.run(60, null);
+        assertEquals(0, session.ecgFlags);
+        assertEquals(0, session.ppgFlags);
+        assertTrue(session.ecgMinScore > 0.8f);
+        assertTrue(session.ppgMinScore > 0.8f);
+    }
+
+    @Test
+    public void leadOffIsFlat() {
+        Session session = Session.warmedUp();
+        session.run(2, (i, e, p, at) -> {
+            e[at] = 0.1f;
+            p[at] = 20000f;
+        });
+        assertTrue((session.ecgFlags & SignalQuality.FLATLINE) != 0);
+        assertTrue((session.ppgFlags & SignalQuality.FLATLINE) != 0);
+        assertEquals(0f, session.ecgMinScore, 0f);
+    }
+
+    @Test
+    public void saturationIsClipping() {
+        Session session = Session.warmedUp();
+        // PPG pulses cut off by the converter, a few ECG samples at the rail
+        session.run(2, (i, e, p, at) -> {
+            p[at] = Math.min(p[at], 21500f);
+            if (i % RATE < 5) e[at] = Short.MAX_VALUE * BinaryFrame.ECG_LSB;
+        });
+        assertTrue((session.ppgFlags & SignalQuality.CLIPPING) != 0);
+        assertTrue((session.ecgFlags & SignalQuality.CLIPPING) != 0);
+    }
+
+    @Test
+    public void muscleNoiseIsNoise() {
+        Session session = Session.warmedUp();
+        Random random = new Random(1);
+        session.run(2, (i, e, p, at) -> e[at] += 0.2f * random.nextGaussian());
+        assertTrue((session.ecgFlags & SignalQuality.NOISE) != 0);
+        // a little more noise than usual is no artifact
+        session.run(5, null);
+        session.run(3, (i, e, p, at) -> e[at] += 0.03f * random.nextGaussian());
+        assertEquals(0, session.ecgFlags);
+    }
+
+    @Test
+    public void electrodeMovementIsBaselineJump() {
+        Session session = Session.warmedUp();
+        session.run(2, (i, e, p, at) -> {
+            e[at] += 5f;
+            p[at] += 20000f;
+        });
+        assertTrue((session.ecgFlags & SignalQuality.BASELINE_JUMP) != 0);
+        assertTrue((session.ppgFlags & SignalQuality.BASELINE_JUMP) != 0);
+    }
+
+    @Test
+    public void spikeIsFlaggedAndHeld() {
+        Session session = Session.warmedUp();
+        session.run(1, (i, e, p, at) -> {
+            if (at == 100) e[at] += 8f;
+        });
+        assertTrue((session.ecgFlags & SignalQuality.SPIKE) != 0);
+        // still in the window, then held for half a second after it left
+        session.run(1, null);
+        assertTrue((session.ecgFlags & SignalQuality.SPIKE) != 0);
+        session.run(1, null);
+        assertEquals(0, session.ecg.getFlags());
+        assertTrue(session.ecg.getScore() > 0.8f);
+    }
+
+    @Test
+    public void resetForgetsTheWindowButNotTheReferences() {
+        Session session = Session.warmedUp();
+        session.ecg.reset();
+        assertTrue(Float.isNaN(session.ecg.getScore()));
+        assertEquals(0, session.ecg.getFlags());
+        // the first window after a gap already recognises noise relative to the clean signal
+        Random random = new Random(2);
+        session.run(1, (i, e, p, at) -> e[at] += 0.2f * random.nextGaussian());
+        assertTrue((session.ecgFlags & SignalQuality.NOISE) != 0);
+    }
+
+    @Test
+    public void describeNamesTheFlags() {
+        assertEquals("", SignalQuality.describe(0));
+        assertEquals("noise, spike", SignalQuality.describe(SignalQuality.NOISE | SignalQuality.SPIKE));
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.biowave;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SignalSourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class Collector implements StreamDecoder.Listener {
+        final List<float[]> samples = new ArrayList<>();
+        int errors, lost;
+
+        @Override
+        public void onFrame(float ecg, float ppg, float temp, float spo2) {
+            samples.add(new float[]{ecg, ppg, temp, spo2});
+        }
+
+        @Override
+        public void onParseError() {
+            errors++;
+        }
+
+        @Override
+        public void onSequenceGap(int lostFrames, int lostSamples) {
+            lost += lostFrames;
+        }
+    }
+
+    @Test
+    public void sameSeedGivesSameStream() {
+        SyntheticSignal a = new SyntheticSignal(42), b = new SyntheticSignal(42), c = new SyntheticSignal(43);
+        boolean differs = false;
+        for (int i = 0; i < 500; i++) {
+            byte[] x = a.nextNotification();
+            assertArrayEquals(x, b.nextNotification());
+            differs |= !Arrays.equals(x, c.nextNotification());
+        }
+        assertTrue(differs);
+    }
+
+    @Test
+    public void binaryStreamDecodesWithoutErrors() {
+        SyntheticSignal signal = new SyntheticSignal(1);
+        float[] ecg = new float[1000], ppg = new float[1000];
+        new SyntheticSignal(1).nextSamples(ecg, ppg, 0, ecg.length);
+
+        Collector collector = new Collector();
+        StreamDecoder decoder = new StreamDecoder(collector);
+        while (collector.samples.size() < 1000) decoder.feed(signal.nextNotification());
+        assertEquals(0, decoder.getErrorCount());
+        for (int i = 0; i < 1000; i++) {
+            // quantised to the binary format's resolution
+            assertEquals(ecg[i], collector.samples.get(i)[0], BinaryFrame.ECG_LSB);
+            assertEquals(ppg[i], collector.samples.get(i)[1], BinaryFrame.PPG_LSB);
+        }
+    }
+
+    @Test
+    public void asciiStreamDecodesWithoutErrors() {
+        SyntheticSignal signal = new SyntheticSignal(1);
+        signal.setBinary(false);
+        signal.setSamplesPerFrame(3);
+        Collector collector = new Collector();
+        StreamDecoder decoder = new StreamDecoder(collector);
+        while (collector.samples.size() < 3000) decoder.feed(signal.nextNotification());
+        assertEquals(0, decoder.getErrorCount());
+        int withTemp = 0;
+        for (float[] s : collector.samples) if (!Float.isNaN(s[2])) withTemp++;
+        assertEquals(collector.samples.size() / 3, withTemp, 1);
+
+        byte[] out = new byte[32];
+        int n = SyntheticSignal.appendFixed(-0.0004f, 3, out, 0);
+        assertEquals("0.000", new String(out, 0, n));
+        n = SyntheticSignal.appendFixed(-12.3456f, 2, out, 0);
+        assertEquals("-12.35", new String(out, 0, n));
+    }
+
+    @Test
+    public void packetLossShowsUpAsGaps() {
+        SyntheticSignal signal = new SyntheticSignal(2);
+        signal.setPacketLoss(0.05f);
+        Collector collector = new Collector();
+        StreamDecoder decoder = new StreamDecoder(collector);
+        for (int i = 0; i < 20_000; i++) decoder.feed(signal.nextNotification());
+        assertTrue(signal.getDroppedNotificationCount() > 500);
+        assertTrue(collector.lost > 500);
+        // everything that was not lost arrives; partially lost frames fail their CRC
+        assertTrue(collector.samples.size() > 0.8 * signal.getSampleCount());
+    }
+
+    @Test
+    public void detectorFindsGeneratedBeats() {
+        for (float bpm : new float[]{50, 75, 140}) {
+            SyntheticSignal signal = new SyntheticSignal(3);
+            signal.setHeartRate(bpm);
+            HeartRateTracker tracker = new HeartRateTracker(signal.getSampleRate(), 30);
+            QrsDetector detector = new QrsDetector(signal.getSampleRate(), (index, rr) -> {
+                if (rr > 0) tracker.addRrSamples(rr);
+            });
+            float[] ecg = new float[250], ppg = new float[250];
+            for (int block = 0; block < 240; block++) {
+                signal.nextSamples(ecg, ppg, 0, ecg.length);
+                for (float v : ecg) detector.process(v);
+            }
+            // the generated rhythm varies by about +-5 %
+            assertEquals(bpm, tracker.getHeartRate(), 0.08f * bpm);
+        }
+    }
+
+    @Test
+    public void replayDeliversCaptureInOrder() throws Exception {
+        File file = folder.newFile("test.bwcap");
+        SyntheticSignal signal = new SyntheticSignal(4);
+        List<byte[]> written = new ArrayList<>();
+        try (StreamCapture.Writer writer = new StreamCapture.Writer(new FileOutputStream(file))) {
+            for (int i = 0; i < 200; i++) {
+                byte[] data = signal.nextNotification();
+                written.add(data);
+                // 125 notifications per second at 250 Hz
+                writer.write(i * 8000L, data, 0, data.length);
+            }
+        }
+
+        List<byte[]> received = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        int[] disconnects = new int[1];
+        ReplaySignalSource source = new ReplaySignalSource(file, 100f, false);
+        long t0 = System.nanoTime();
+        source.start(new SignalSource.Listener() {
+            @Override
+            public void onData(byte[] data) {
+                received.add(data);
+            }
+
+            @Override
+            public void onStatus(String status) {
+                if (status.startsWith("Replay finished")) done.countDown();
+            }
+
+            @Override
+            public void onDisconnected() {
+                disconnects[0]++;
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        long elapsedMs = (System.nanoTime() - t0) / 1_000_000;
+        // 1.6 s of capture at 100x
+        assertTrue("took " + elapsedMs + " ms", elapsedMs >= 10);
+        assertFalse(source.isRunning());
+        assertEquals(1, disconnects[0]);
+        assertEquals(written.size(), received.size());
+        for (int i = 0; i < written.size(); i++) assertArrayEquals(written.get(i), received.get(i));
+    }
+
+    @Test
+    public void truncatedCaptureEndsCleanly() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (StreamCapture.Writer writer = new StreamCapture.Writer(bytes)) {
+            writer.write(5, new byte[]{1, 2, 3}, 0, 3);
+            writer.write(10, new byte[]{4, 5, 6}, 0, 3);
+        }
+        byte[] data = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 1);
+        StreamCapture.Reader reader = new StreamCapture.Reader(new java.io.ByteArrayInputStream(data));
+        assertArrayEquals(new byte[]{1, 2, 3}, reader.next());
+        assertEquals(5, reader.getTimeMicros());
+        assertNull(reader.next());
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.biowave;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StreamDecoderTest {
+
+    private final List<float[]> samples = new ArrayList<>();
+    private int gaps, gapSamples;
+    private StreamDecoder decoder;
+
+    @Before
+    public void setUp() {
+        samples.clear();
+        gaps = gapSamples = 0;
+        decoder = new StreamDecoder(new StreamDecoder.Listener() {
+            @Override
+            public void onFrame(float ecg, float ppg, float temp, float spo2) {
+                samples.add(new float[]{ecg, ppg, temp, spo2});
+            }
+
+            @Override
+            public void onParseError() {
+            }
+
+            @Override
+            public void onSequenceGap(int lostFrames, int lostSamples) {
+                gaps += lostFrames;
+                gapSamples += lostSamples;
+            }
+        });
+    }
+
+    @Test
+    public void crcMatchesCheckValue() {
+        byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0x29B1, BinaryFrame.crc16(check, 0, check.length));
+    }
+
+    @Test
+    public void twoSamplesWithVitalsFitOneNotification() {
+        assertEquals(20, BinaryFrame.frameSize(2, true));
+    }
+
+    @Test
+    public void roundTripsSamplesAndVitals() {
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+        byte[] out = new byte[BinaryFrame.MAX_FRAME_SIZE];
+        int n = encoder.encode(new float[]{0.245f, -1.5f}, new float[]{0.37f, -6999.99f}, 0, 2, 36.8f, 98f, out, 0);
+        decoder.feed(out, 0, n);
+
+        assertEquals(2, samples.size());
+        assertEquals(0.245f, samples.get(0)[0], 1e-6f);
+        assertEquals(0.37f, samples.get(0)[1], 1e-5f);
+        assertTrue(Float.isNaN(samples.get(0)[2]));
+        assertEquals(-1.5f, samples.get(1)[0], 1e-6f);
+        assertEquals(-6999.99f, samples.get(1)[1], 1e-2f);
+        assertEquals(36.8f, samples.get(1)[2], 1e-4f);
+        assertEquals(98f, samples.get(1)[3], 0f);
+    }
+
+    @Test
+    public void framesWithoutVitalsReportNaN() {
+        byte[] stream = encodeFrames(3, 4, false, new Random(1), null);
+        decoder.feed(stream);
+        assertEquals(12, samples.size());
+        for (float[] s : samples) {
+            assertTrue(Float.isNaN(s[2]));
+            assertTrue(Float.isNaN(s[3]));
+        }
+    }
+
+    @Test
+    public void decodesFramesSplitAcrossNotifications() {
+        List<float[]> expected = new ArrayList<>();
+        byte[] stream = encodeFrames(50, 3, true, new Random(2), expected);
+        for (int i = 0; i < stream.length; i += 7) {
+            decoder.feed(stream, i, Math.min(7, stream.length - i));
+        }
+        assertSamples(expected);
+        assertEquals(0, decoder.getBinaryErrorCount());
+    }
+
+    @Test
+    public void acceptsMixedAsciiAndBinary() {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        byte[] ascii = "E0.5;P100;T36.6\n".getBytes(StandardCharsets.US_ASCII);
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+        byte[] frame = new byte[BinaryFrame.MAX_FRAME_SIZE];
+        int n = encoder.encode(new float[]{1f}, new float[]{2f}, 0, 1, Float.NaN, Float.NaN, frame, 0);
+
+        stream.write(ascii, 0, ascii.length);
+        stream.write(frame, 0, n);
+        stream.write(ascii, 0, ascii.length);
+        decoder.feed(stream.toByteArray());
+
+        assertEquals(3, samples.size());
+        assertEquals(0.5f, samples.get(0)[0], 0f);
+        assertEquals(1f, samples.get(1)[0], 1e-6f);
+        assertEquals(100f, samples.get(2)[1], 0f);
+    }
+
+    @Test
+    public void reportsSequenceGaps() {
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+        byte[] out = new byte[BinaryFrame.MAX_FRAME_SIZE];
+        float[] one = {0f};
+        decoder.feed(out, 0, encoder.encode(one, one, 0, 1, Float.NaN, Float.NaN, out, 0));
+        encoder.setSequence(4);
+        decoder.feed(out, 0, encoder.encode(one, one, 0, 1, Float.NaN, Float.NaN, out, 0));
+        // wrap-around is not a gap
+        encoder.setSequence(255);
+        decoder.feed(out, 0, encoder.encode(one, one, 0, 1, Float.NaN, Float.NaN, out, 0));
+        decoder.feed(out, 0, encoder.encode(one, one, 0, 1, Float.NaN, Float.NaN, out, 0));
+        assertEquals(3 + 250, gaps);
+        assertEquals(253, decoder.getLostFrameCount());
+    }
+
+    @Test
+    public void gapsCountTheSamplesOfTheLostFrames() {
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+        byte[] out = new byte[BinaryFrame.MAX_FRAME_SIZE];
+        float[] four = {0f, 0f, 0f, 0f};
+        decoder.feed(out, 0, encoder.encode(four, four, 0, 4, Float.NaN, Float.NaN, out, 0));
+        // two four-sample frames lost
+        encoder.setSequence(3);
+        decoder.feed(out, 0, encoder.encode(four, four, 0, 2, Float.NaN, Float.NaN, out, 0));
+        // lost frames are taken to be as long as the last one received
+        encoder.setSequence(5);
+        decoder.feed(out, 0, encoder.encode(four, four, 0, 4, Float.NaN, Float.NaN, out, 0));
+        assertEquals(3, gaps);
+        assertEquals(8 + 2, gapSamples);
+        assertEquals(10, decoder.getLostSampleCount());
+    }
+
+    @Test
+    public void findsFrameHiddenInsideRejectedCandidate() {
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+        byte[] frame = new byte[BinaryFrame.MAX_FRAME_SIZE];
+        int n = encoder.encode(new float[]{0.1f, 0.2f}, new float[]{1f, 2f}, 0, 2, Float.NaN, Float.NaN, frame, 0);
+
+        // a truncated frame header promising many samples, immediately followed by a real frame
+        byte[] stream = new byte[5 + n];
+        stream[0] = BinaryFrame.SYNC0;
+        stream[1] = BinaryFrame.SYNC1;
+        stream[2] = BinaryFrame.VERSION;
+        stream[3] = 0;
+        stream[4] = 3;
+        System.arraycopy(frame, 0, stream, 5, n);
+        decoder.feed(stream);
+
+        assertEquals(2, samples.size());
+        assertEquals(0.2f, samples.get(1)[0], 1e-6f);
+    }
+
+    @Test
+    public void fuzzedStreamsNeverThrowAndOnlyDeliverValidSamples() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            setUp();
+            List<float[]> expected = new ArrayList<>();
+            byte[] stream = encodeFrames(40, 1 + random.nextInt(6), random.nextBoolean(), random, expected);
+
+            // corrupt: flip bits, drop and insert bytes
+            ByteArrayOutputStream corrupted = new ByteArrayOutputStream();
+            for (byte b : stream) {
+                int r = random.nextInt(400);
+                if (r == 0) continue;
+                if (r == 1) corrupted.write(random.nextInt(256));
+                if (r == 2) corrupted.write(BinaryFrame.SYNC0);
+                corrupted.write(r == 3 ? b ^ (1 << random.nextInt(8)) : b);
+            }
+            byte[] data = corrupted.toByteArray();
+            int pos = 0;
+            while (pos < data.length) {
+                int len = Math.min(1 + random.nextInt(20), data.length - pos);
+                decoder.feed(data, pos, len);
+                pos += len;
+            }
+
+            // every delivered sample must be one that was sent, in order
+            int e = 0;
+            for (float[] s : samples) {
+                while (e < expected.size() && !matches(expected.get(e), s)) e++;
+                assertTrue("unexpected sample in round " + round, e < expected.size());
+                e++;
+            }
+            // and most of the stream survives
+            assertTrue(samples.size() > expected.size() / 2);
+        }
+    }
+
+    @Test
+    public void recoversAfterGarbage() {
+        Random random = new Random(3);
+        byte[] garbage = new byte[1000];
+        random.nextBytes(garbage);
+        decoder.feed(garbage);
+        samples.clear();
+
+        List<float[]> expected = new ArrayList<>();
+        byte[] stream = encodeFrames(10, 2, true, random, expected);
+        // the garbage may leave a partial candidate or ASCII line behind; a newline and one
+        // frame's worth of bytes are enough to flush them
+        decoder.feed(new byte[]{'\n'});
+        decoder.feed(stream);
+        assertTrue(samples.size() >= expected.size() - 2 * 2);
+        assertTrue(matches(expected.get(expected.size() - 1), samples.get(samples.size() - 1)));
+    }
+
+    private void assertSamples(List<float[]> expected) {
+        assertEquals(expected.size(), samples.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue("sample " + i, matches(expected.get(i), samples.get(i)));
+        }
+    }
+
+    private static boolean matches(float[] expected, float[] actual) {
+        return Math.abs(expected[0] - actual[0]) <= BinaryFrame.ECG_LSB
+                && Math.abs(expected[1] - actual[1]) <= BinaryFrame.PPG_LSB
+                && sameOrNaN(expected[2], actual[2], BinaryFrame.TEMP_LSB)
+                && sameOrNaN(expected[3], actual[3], 0f);
+    }
+
+    private static boolean sameOrNaN(float a, float b, float tolerance) {
+        if (Float.isNaN(a)) return Float.isNaN(b);
+        return Math.abs(a - b) <= tolerance;
+    }
+
+    /** Encodes random frames; expected per-sample values go to {@code expected} when non-null. */
+    static byte[] encodeFrames(int frames, int perFrame, boolean vitals, Random random, List<float[]> expected) {
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        byte[] out = new byte[BinaryFrame.MAX_FRAME_SIZE];
+        float[] ecg = new float[perFrame], ppg = new float[perFrame];
+        for (int f = 0; f < frames; f++) {
+            for (int i = 0; i < perFrame; i++) {
+                ecg[i] = Math.round((random.nextFloat() * 6 - 3) * 1000) / 1000f;
+                ppg[i] = Math.round((random.nextFloat() * 14000 - 7000) * 100) / 100f;
+            }
+            float temp = vitals ? Math.round((36 + random.nextFloat()) * 100) / 100f : Float.NaN;
+            float spo2 = vitals ? 90 + random.nextInt(10) : Float.NaN;
+            int n = encoder.encode(ecg, ppg, 0, perFrame, temp, spo2, out, 0);
+            stream.write(out, 0, n);
+            if (expected != null) {
+                for (int i = 0; i < perFrame; i++) {
+                    boolean last = i == perFrame - 1;
+                    expected.add(new float[]{ecg[i], ppg[i], last ? temp : Float.NaN, last ? spo2 : Float.NaN});
+                }
+            }
+        }
+        return stream.toByteArray();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.biowave;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VitalTrendTest {
+
+    // on a 15-minute boundary, so buckets of every level start with it
+    private static final long START = 1_699_999_200_000L;
+
+    private final float[] min = new float[64], avg = new float[64], max = new float[64];
+
+    @Test
+    public void bucketsHoldMinAverageMax() {
+        VitalTrend trend = new VitalTrend();
+        trend.add(START, 36.0f);
+        trend.add(START + 200, 37.0f);
+        trend.add(START + 400, 36.5f);
+        trend.add(START + 1000, 38.0f);
+        assertEquals(0, trend.read(START, START + 2000, 2, min, avg, max));
+        assertEquals(36.0f, min[0], 0f);
+        assertEquals(36.5f, avg[0], 1e-5f);
+        assertEquals(37.0f, max[0], 0f);
+        assertEquals(38.0f, avg[1], 0f);
+        assertEquals(38.0f, trend.getLast(), 0f);
+        assertEquals(START + 1000, trend.getLastTime());
+    }
+
+    @Test
+    public void longSpansReadCoarserLevels() {
+        VitalTrend trend = new VitalTrend();
+        // one reading a second for two hours, rising by 0.001 each
+        int seconds = 2 * 3600;
+        for (int i = 0; i < seconds; i++) trend.add(START + i * 1000L, 36 + i * 0.001f);
+        long end = START + seconds * 1000L;
+        // a minute over 60 columns: one second each
+        assertEquals(0, trend.read(end - 60_000, end, 60, min, avg, max));
+        assertEquals(36 + (seconds - 1) * 0.001f, avg[59], 1e-4f);
+        // two hours no longer fit the hour of seconds, so minutes
+        assertEquals(1, trend.read(START, end, 60, min, avg, max));
+        assertEquals(36f, min[0], 1e-4f);
+        assertEquals(36 + 119 * 0.001f, max[0], 1e-4f);
+        assertEquals(36 + (seconds - 1) * 0.001f, max[59], 1e-4f);
+        // a week in 64 columns is 15-minute buckets
+        assertEquals(2, trend.read(end - 7 * 24 * 3_600_000L, end, 64, min, avg, max));
+        assertTrue(Float.isNaN(avg[0]));
+        assertFalse(Float.isNaN(avg[63]));
+    }
+
+    @Test
+    public void versionChangesOnlyWithTheBuckets() {
+        VitalTrend trend = new VitalTrend();
+        long version = trend.getVersion();
+        trend.add(START, 36.5f);
+        assertNotEquals(version, version = trend.getVersion());
+        // the same value again changes no bucket
+        trend.add(START + 500, 36.5f);
+        assertEquals(version, trend.getVersion());
+        trend.add(START + 600, Float.NaN);
+        assertEquals(version, trend.getVersion());
+        trend.add(START + 700, 36.6f);
+        assertNotEquals(version, version = trend.getVersion());
+        // a new second starts a bucket
+        trend.add(START + 1000, 36.6f);
+        assertNotEquals(version, trend.getVersion());
+    }
+
+    @Test
+    public void readingsWithEverySampleAverageExactly() {
+        VitalTrend temperature = new VitalTrend(), spo2 = new VitalTrend();
+        // 250 Hz for 15 minutes, as when the vitals ride along with every sample
+        for (long t = 0; t < 15 * 60_000; t += 4) {
+            temperature.add(START + t, 36.8f);
+            spo2.add(START + t, 97f);
+        }
+        for (long span : new long[] {60_000, 3_600_000, 24 * 3_600_000L}) {
+            temperature.read(START, START + span, 1, min, avg, max);
+            assertEquals(36.8f, avg[0], 0f);
+            assertEquals(36.8f, max[0], 0f);
+            spo2.read(START, START + span, 1, min, avg, max);
+            assertEquals(97f, avg[0], 0f);
+        }
+    }
+
+    @Test
+    public void oldBucketsExpire() {
+        VitalTrend trend = new VitalTrend(new long[] {1000, 10_000}, new int[] {10, 10});
+        trend.add(START, 99f);
+        for (int i = 1; i <= 20; i++) trend.add(START + i * 1000L, 36f);
+        // the first reading has left the fine level but not the coarse one
+        trend.read(START, START + 20_000, 2, min, avg, max);
+        assertEquals(99f, max[0], 0f);
+        long end = START + 21_000;
+        assertEquals(0, trend.read(end - 10_000, end, 10, min, avg, max));
+        for (int c = 0; c < 10; c++) assertEquals(36f, max[c], 0f);
+        // too late for any level
+        long version = trend.getVersion();
+        trend.add(START - 1_000_000, 20f);
+        assertEquals(version, trend.getVersion());
+    }
+
+    @Test
+    public void gapsReadAsNaN() {
+        VitalTrend trend = new VitalTrend();
+        trend.add(START, 97f);
+        trend.add(START + 5000, 98f);
+        assertEquals(0, trend.read(START, START + 6000, 6, min, avg, max));
+        assertEquals(97f, avg[0], 0f);
+        for (int c = 1; c < 5; c++) assertTrue(Float.isNaN(avg[c]));
+        assertEquals(98f, avg[5], 0f);
+        // an hour later the same ring slots come round again, cleared by the skip
+        trend.add(START + 3_600_000L + 5000, 96f);
+        long end = START + 3_600_000L + 6000;
+        assertEquals(0, trend.read(end - 60_000, end, 60, min, avg, max));
+        for (int c = 0; c < 59; c++) assertTrue(Float.isNaN(avg[c]));
+        assertEquals(96f, avg[59], 0f);
+    }
+}